@@ -55,6 +55,7 @@ import google.registry.model.domain.Period;
 import google.registry.model.registry.Registry;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.DomainTransactionRecord.TransactionReportField;
+import google.registry.model.reporting.IcannReportingCounterDao;
 import google.registry.persistence.VKey;
 import google.registry.request.Action;
 import google.registry.request.Parameter;
@@ -374,6 +375,7 @@ public class ExpandRecurringBillingEventsAction implements Runnable {
               .addAll(syntheticOneTimes)
               .build();
       tm().putAll(entitiesToSave);
+      historyEntries.forEach(IcannReportingCounterDao::recordTransactions);
     }
     return syntheticOneTimes.size();
   }
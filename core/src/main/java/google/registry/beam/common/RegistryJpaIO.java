@@ -14,21 +14,34 @@
 
 package google.registry.beam.common;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static org.apache.beam.sdk.values.TypeDescriptors.integers;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Streams;
 import google.registry.backup.AppEngineEnvironment;
 import google.registry.beam.common.RegistryQuery.QueryComposerFactory;
 import google.registry.beam.common.RegistryQuery.RegistryQueryFactory;
 import google.registry.model.ofy.ObjectifyService;
 import google.registry.persistence.transaction.JpaTransactionManager;
+import google.registry.persistence.transaction.PostgresCopyWriter;
 import google.registry.persistence.transaction.TransactionManagerFactory;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Objects;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
 import javax.persistence.criteria.CriteriaQuery;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.SerializableCoder;
@@ -78,6 +91,48 @@ public final class RegistryJpaIO {
     return Read.<R, T>builder().jpqlQueryFactory(jpql).resultMapper(resultMapper).build();
   }
 
+  /**
+   * Returns a {@link Read} connector that splits the given {@code jpql} query into {@code
+   * numPartitions} partitions, which are read concurrently, each in its own transaction.
+   *
+   * <p>The query must restrict its results to one partition using the {@code :partition} and
+   * {@code :numPartitions} parameters. The {@code hash_partition} SQL function is provided for
+   * this purpose, e.g., {@code "select d from Domain d where hash_partition(d.repoId,
+   * :numPartitions) = :partition"}. Use {@link Read#withSnapshotId} if the partitions must see
+   * the same state of the database.
+   *
+   * <p>User should take care to prevent sql-injection attacks.
+   */
+  public static <R, T> Read<R, T> read(
+      String jpql, int numPartitions, SerializableFunction<R, T> resultMapper) {
+    checkArgument(numPartitions > 0, "numPartitions must be positive");
+    return Read.<R, T>builder()
+        .queryFactory(RegistryQuery.createPartitionedQueryFactory(jpql, numPartitions))
+        .partitions(numPartitions)
+        .resultMapper(resultMapper)
+        .build();
+  }
+
+  /**
+   * Returns a {@link Read} connector that splits the given {@code jpql} query, with the given named
+   * parameters bound, into {@code numPartitions} partitions.
+   *
+   * @see #read(String, int, SerializableFunction)
+   */
+  public static <R, T> Read<R, T> read(
+      String jpql,
+      ImmutableMap<String, Object> parameters,
+      int numPartitions,
+      SerializableFunction<R, T> resultMapper) {
+    checkArgument(numPartitions > 0, "numPartitions must be positive");
+    return Read.<R, T>builder()
+        .queryFactory(
+            RegistryQuery.createPartitionedQueryFactory(jpql, parameters, numPartitions))
+        .partitions(numPartitions)
+        .resultMapper(resultMapper)
+        .build();
+  }
+
   public static <T> Write<T> write() {
     return Write.<T>builder().build();
   }
@@ -92,10 +147,25 @@ public final class RegistryJpaIO {
 
     public static final String DEFAULT_NAME = "RegistryJpaIO.Read";
 
+    /** The default number of rows fetched from the database in each round trip. */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static final Pattern SNAPSHOT_ID_PATTERN =
+        Pattern.compile("[0-9A-Fa-f]+(-[0-9A-Fa-f]+)+");
+
     abstract String name();
 
     abstract RegistryQueryFactory<R> queryFactory();
 
+    /** The number of partitions of the query, each of which is read in its own transaction. */
+    abstract int partitions();
+
+    abstract int fetchSize();
+
+    /** The exported Postgres snapshot that all partitions read from, if any. */
+    @Nullable
+    abstract String snapshotId();
+
     abstract SerializableFunction<R, T> resultMapper();
 
     abstract Coder<T> coder();
@@ -105,11 +175,21 @@ public final class RegistryJpaIO {
     @Override
     @SuppressWarnings("deprecation") // Reshuffle still recommended by GCP.
     public PCollection<T> expand(PBegin input) {
-      return input
-          .apply("Starting " + name(), Create.of((Void) null))
+      PCollection<Integer> partitionIndexes =
+          input.apply(
+              "Starting " + name(),
+              Create.of(IntStream.range(0, partitions()).boxed().collect(toImmutableList())));
+      if (partitions() > 1) {
+        // Keeps the runner from fusing the queries with the step above, which would run all of
+        // them on the same worker.
+        partitionIndexes =
+            partitionIndexes.apply("Distribute partitions of " + name(), Reshuffle.viaRandomKey());
+      }
+      return partitionIndexes
           .apply(
               "Run query for " + name(),
-              ParDo.of(new QueryRunner<>(queryFactory(), resultMapper())))
+              ParDo.of(
+                  new QueryRunner<>(queryFactory(), resultMapper(), fetchSize(), snapshotId())))
           .setCoder(coder())
           .apply("Reshuffle", Reshuffle.viaRandomKey());
     }
@@ -126,9 +206,30 @@ public final class RegistryJpaIO {
       return toBuilder().coder(coder).build();
     }
 
+    /** Sets the number of rows fetched from the database in each round trip. */
+    public Read<R, T> withFetchSize(int fetchSize) {
+      checkArgument(fetchSize > 0, "fetchSize must be positive");
+      return toBuilder().fetchSize(fetchSize).build();
+    }
+
+    /**
+     * Reads from the Postgres snapshot with the given id, as returned by {@code
+     * pg_export_snapshot()}, instead of the latest state of the database.
+     *
+     * <p>All partitions of a parallel read then see the same consistent state. The transaction
+     * that exported the snapshot must stay open until the pipeline has finished reading.
+     */
+    public Read<R, T> withSnapshotId(String snapshotId) {
+      checkArgument(
+          SNAPSHOT_ID_PATTERN.matcher(snapshotId).matches(), "Invalid snapshot id: %s", snapshotId);
+      return toBuilder().snapshotId(snapshotId).build();
+    }
+
     static <R, T> Builder<R, T> builder() {
       return new AutoValue_RegistryJpaIO_Read.Builder()
           .name(DEFAULT_NAME)
+          .partitions(1)
+          .fetchSize(DEFAULT_FETCH_SIZE)
           .resultMapper(x -> x)
           .coder(SerializableCoder.of(Serializable.class));
     }
@@ -140,6 +241,12 @@ public final class RegistryJpaIO {
 
       abstract Builder<R, T> queryFactory(RegistryQueryFactory<R> queryFactory);
 
+      abstract Builder<R, T> partitions(int partitions);
+
+      abstract Builder<R, T> fetchSize(int fetchSize);
+
+      abstract Builder<R, T> snapshotId(String snapshotId);
+
       abstract Builder<R, T> resultMapper(SerializableFunction<R, T> mapper);
 
       abstract Builder<R, T> coder(Coder coder);
@@ -155,29 +262,54 @@ public final class RegistryJpaIO {
       }
     }
 
-    static class QueryRunner<R, T> extends DoFn<Void, T> {
+    static class QueryRunner<R, T> extends DoFn<Integer, T> {
       private final RegistryQueryFactory<R> queryFactory;
       private final SerializableFunction<R, T> resultMapper;
-
-      QueryRunner(RegistryQueryFactory<R> queryFactory, SerializableFunction<R, T> resultMapper) {
+      private final int fetchSize;
+      @Nullable private final String snapshotId;
+
+      QueryRunner(
+          RegistryQueryFactory<R> queryFactory,
+          SerializableFunction<R, T> resultMapper,
+          int fetchSize,
+          @Nullable String snapshotId) {
         this.queryFactory = queryFactory;
         this.resultMapper = resultMapper;
+        this.fetchSize = fetchSize;
+        this.snapshotId = snapshotId;
       }
 
       @ProcessElement
-      public void processElement(OutputReceiver<T> outputReceiver) {
+      public void processElement(@Element Integer partition, OutputReceiver<T> outputReceiver) {
         // AppEngineEnvironment is need for handling VKeys, which involve Ofy keys. Unlike
         // SqlBatchWriter, it is unnecessary to initialize ObjectifyService in this class.
         try (AppEngineEnvironment env = new AppEngineEnvironment()) {
           // TODO(b/187210388): JpaTransactionManager should support non-transactional query.
           jpaTm()
               .transactNoRetry(
-                  () ->
-                      queryFactory.apply(jpaTm()).stream()
-                          .map(resultMapper::apply)
-                          .forEach(outputReceiver::output));
+                  () -> {
+                    if (snapshotId != null) {
+                      importSnapshot(snapshotId);
+                    }
+                    queryFactory.apply(jpaTm(), partition, fetchSize).stream()
+                        .map(resultMapper::apply)
+                        .forEach(outputReceiver::output);
+                  });
         }
       }
+
+      private static void importSnapshot(String snapshotId) {
+        EntityManager entityManager = jpaTm().getEntityManager();
+        // Both statements must precede all queries in the transaction. Snapshots can only be
+        // imported by repeatable read or serializable transactions.
+        entityManager
+            .createNativeQuery("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ")
+            .executeUpdate();
+        // The id has been validated, and SET statements do not accept bind parameters.
+        entityManager
+            .createNativeQuery(String.format("SET TRANSACTION SNAPSHOT '%s'", snapshotId))
+            .executeUpdate();
+      }
     }
   }
 
@@ -234,6 +366,15 @@ public final class RegistryJpaIO {
 
     public abstract SerializableFunction<T, Object> jpaConverter();
 
+    /**
+     * Whether to write entities with PostgreSQL {@code COPY} where possible.
+     *
+     * <p>This is much faster for large loads, but bypasses JPA lifecycle callbacks and the
+     * replication of transactions to Datastore. See {@link PostgresCopyWriter} for the entities
+     * that support it; all others are written through JPA as usual.
+     */
+    public abstract boolean useCopy();
+
     public Write<T> withName(String name) {
       return toBuilder().name(name).build();
     }
@@ -246,6 +387,10 @@ public final class RegistryJpaIO {
       return toBuilder().shards(shards).build();
     }
 
+    public Write<T> withCopy(boolean useCopy) {
+      return toBuilder().useCopy(useCopy).build();
+    }
+
     /**
      * An optional function that converts the input entities to a form that can be written into the
      * database.
@@ -270,7 +415,7 @@ public final class RegistryJpaIO {
               GroupIntoBatches.<Integer, T>ofSize(batchSize()).withShardedKey())
           .apply(
               "Write in batch for " + name(),
-              ParDo.of(new SqlBatchWriter<>(name(), jpaConverter())));
+              ParDo.of(new SqlBatchWriter<>(name(), jpaConverter(), useCopy())));
     }
 
     static <T> Builder<T> builder() {
@@ -278,7 +423,8 @@ public final class RegistryJpaIO {
           .name(DEFAULT_NAME)
           .batchSize(DEFAULT_BATCH_SIZE)
           .shards(DEFAULT_SHARDS)
-          .jpaConverter(x -> x);
+          .jpaConverter(x -> x)
+          .useCopy(false);
     }
 
     @AutoValue.Builder
@@ -292,6 +438,8 @@ public final class RegistryJpaIO {
 
       abstract Builder<T> jpaConverter(SerializableFunction<T, Object> jpaConverter);
 
+      abstract Builder<T> useCopy(boolean useCopy);
+
       abstract Write<T> build();
     }
   }
@@ -300,10 +448,12 @@ public final class RegistryJpaIO {
   private static class SqlBatchWriter<T> extends DoFn<KV<ShardedKey<Integer>, Iterable<T>>, Void> {
     private final Counter counter;
     private final SerializableFunction<T, Object> jpaConverter;
+    private final boolean useCopy;
 
-    SqlBatchWriter(String type, SerializableFunction<T, Object> jpaConverter) {
+    SqlBatchWriter(String type, SerializableFunction<T, Object> jpaConverter, boolean useCopy) {
       counter = Metrics.counter("SQL_WRITE", type);
       this.jpaConverter = jpaConverter;
+      this.useCopy = useCopy;
     }
 
     @Setup
@@ -326,14 +476,74 @@ public final class RegistryJpaIO {
                 .filter(Objects::nonNull)
                 .collect(ImmutableList.toImmutableList());
         try {
-          jpaTm().transact(() -> jpaTm().putAll(ofyEntities));
+          if (useCopy) {
+            writeWithCopy(ofyEntities);
+          } else {
+            writeWithJpa(ofyEntities);
+          }
           counter.inc(ofyEntities.size());
         } catch (RuntimeException e) {
-          processSingly(ofyEntities);
+          if (!useCopy) {
+            processSingly(ofyEntities);
+            return;
+          }
+          try {
+            // The failure may be specific to COPY, e.g., duplicate keys in the batch.
+            writeWithJpa(ofyEntities);
+            counter.inc(ofyEntities.size());
+          } catch (RuntimeException e2) {
+            processSingly(ofyEntities);
+          }
         }
       }
     }
 
+    private void writeWithJpa(ImmutableList<Object> ofyEntities) {
+      jpaTm().transact(() -> jpaTm().putAll(ofyEntities));
+      recordEntityCounts(Multimaps.index(ofyEntities, Object::getClass));
+    }
+
+    /**
+     * Writes the entities of each type that supports it with {@code COPY}, and all others through
+     * JPA, in a single transaction.
+     *
+     * <p>The time per entity of each {@code COPY} is recorded by type. Writes through JPA are only
+     * flushed at commit, so they cannot be timed per type.
+     */
+    private void writeWithCopy(ImmutableList<Object> ofyEntities) {
+      ImmutableListMultimap<Class<?>, Object> entitiesByType =
+          Multimaps.index(ofyEntities, Object::getClass);
+      jpaTm()
+          .transact(
+              () ->
+                  entitiesByType
+                      .asMap()
+                      .forEach(
+                          (type, entities) -> {
+                            if (PostgresCopyWriter.isSupported(type)) {
+                              writeTypeWithCopy(type, entities);
+                            } else {
+                              jpaTm().putAll(ImmutableList.copyOf(entities));
+                            }
+                          }));
+      recordEntityCounts(entitiesByType);
+    }
+
+    private static void writeTypeWithCopy(Class<?> type, Collection<Object> entities) {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      PostgresCopyWriter.write(type, entities);
+      Metrics.distribution("SQL_COPY_MICROS_PER_ENTITY", type.getSimpleName())
+          .update(stopwatch.elapsed(TimeUnit.MICROSECONDS) / entities.size());
+    }
+
+    /** Records the number of entities of each type written. */
+    private static void recordEntityCounts(ImmutableListMultimap<Class<?>, Object> entitiesByType) {
+      for (Class<?> type : entitiesByType.keySet()) {
+        Metrics.counter("SQL_WRITE_ENTITIES", type.getSimpleName())
+            .inc(entitiesByType.get(type).size());
+      }
+    }
+
     /**
      * Writes entities in a failed batch one by one to identify the first bad entity and throws a
      * {@link RuntimeException} on it.
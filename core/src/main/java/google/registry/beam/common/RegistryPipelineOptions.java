@@ -59,6 +59,14 @@ public interface RegistryPipelineOptions extends GcpOptions {
 
   void setSqlWriteShards(int maxConcurrentSqlWriters);
 
+  @Description(
+      "Whether to write entities to the SQL database with PostgreSQL COPY where possible. Please"
+          + " refer to the Javadoc of RegistryJpaIO.Write.useCopy() for the caveats.")
+  @Default.Boolean(false)
+  boolean getSqlWriteUseCopy();
+
+  void setSqlWriteUseCopy(boolean sqlWriteUseCopy);
+
   static RegistryPipelineComponent toRegistryPipelineComponent(RegistryPipelineOptions options) {
     return DaggerRegistryPipelineComponent.builder()
         .isolationOverride(options.getIsolationOverride())
@@ -14,20 +14,35 @@
 
 package google.registry.beam.common;
 
+import com.google.common.collect.ImmutableMap;
 import google.registry.persistence.transaction.JpaTransactionManager;
 import google.registry.persistence.transaction.QueryComposer;
+import java.io.Serializable;
 import java.util.stream.Stream;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.hibernate.annotations.QueryHints;
 
 /** Interface for query instances used by {@link RegistryJpaIO.Read}. */
 public interface RegistryQuery<T> {
   Stream<T> stream();
 
-  /** Factory for {@link RegistryQuery}. */
-  interface RegistryQueryFactory<T>
-      extends SerializableFunction<JpaTransactionManager, RegistryQuery<T>> {}
+  /** Name of the JPQL parameter bound to the index of the partition being read. */
+  String PARTITION_PARAMETER = "partition";
+
+  /** Name of the JPQL parameter bound to the total number of partitions. */
+  String NUM_PARTITIONS_PARAMETER = "numPartitions";
+
+  /**
+   * Factory for {@link RegistryQuery}.
+   *
+   * <p>A parallel read invokes the factory once for each of its partitions, with the index of that
+   * partition. Factories for queries that are not partitioned ignore the index.
+   */
+  interface RegistryQueryFactory<T> extends Serializable {
+    RegistryQuery<T> apply(JpaTransactionManager jpa, int partition, int fetchSize);
+  }
 
   // TODO(mmuller): Consider detached JpaQueryComposer that works with any JpaTransactionManager
   // instance, i.e., change composer.buildQuery() to composer.buildQuery(JpaTransactionManager).
@@ -42,20 +57,79 @@ public interface RegistryQuery<T> {
    * @param <T> Type of each row in the result set, {@link Object} in single-select queries, and
    *     {@code Object[]} in multi-select queries.
    */
-  @SuppressWarnings("unchecked") // query.getResultStream: jpa api uses raw type
   static <T> RegistryQueryFactory<T> createQueryFactory(String jpql) {
-    return (JpaTransactionManager jpa) ->
+    return createQueryFactory(jpql, ImmutableMap.of());
+  }
+
+  /**
+   * Returns a {@link RegistryQueryFactory} that creates a JPQL query from constant text, with the
+   * given named parameters bound.
+   *
+   * @param <T> Type of each row in the result set, {@link Object} in single-select queries, and
+   *     {@code Object[]} in multi-select queries.
+   */
+  static <T> RegistryQueryFactory<T> createQueryFactory(
+      String jpql, ImmutableMap<String, Object> parameters) {
+    return (JpaTransactionManager jpa, int partition, int fetchSize) ->
         () -> {
           EntityManager entityManager = jpa.getEntityManager();
           Query query = entityManager.createQuery(jpql);
-          return query.getResultStream().map(e -> detach(entityManager, e));
+          parameters.forEach(query::setParameter);
+          return streamDetached(entityManager, query, fetchSize);
+        };
+  }
+
+  /**
+   * Returns a {@link RegistryQueryFactory} that creates a JPQL query for one of {@code
+   * numPartitions} partitions of the result set.
+   *
+   * <p>The query must use the {@link #PARTITION_PARAMETER} and {@link #NUM_PARTITIONS_PARAMETER}
+   * parameters to restrict its results to those in the partition, e.g., {@code where
+   * hash_partition(d.repoId, :numPartitions) = :partition}.
+   */
+  static <T> RegistryQueryFactory<T> createPartitionedQueryFactory(
+      String jpql, int numPartitions) {
+    return createPartitionedQueryFactory(jpql, ImmutableMap.of(), numPartitions);
+  }
+
+  /**
+   * Returns a {@link RegistryQueryFactory} that creates a JPQL query for one of {@code
+   * numPartitions} partitions of the result set, with the given named parameters bound in addition
+   * to the partition parameters.
+   */
+  static <T> RegistryQueryFactory<T> createPartitionedQueryFactory(
+      String jpql, ImmutableMap<String, Object> parameters, int numPartitions) {
+    return (JpaTransactionManager jpa, int partition, int fetchSize) ->
+        () -> {
+          EntityManager entityManager = jpa.getEntityManager();
+          Query query =
+              entityManager
+                  .createQuery(jpql)
+                  .setParameter(PARTITION_PARAMETER, partition)
+                  .setParameter(NUM_PARTITIONS_PARAMETER, numPartitions);
+          parameters.forEach(query::setParameter);
+          return streamDetached(entityManager, query, fetchSize);
         };
   }
 
   static <T> RegistryQueryFactory<T> createQueryFactory(
       QueryComposerFactory<T> queryComposerFactory) {
-    return (JpaTransactionManager jpa) ->
-        () -> queryComposerFactory.apply(jpa).withAutoDetachOnLoad(true).stream();
+    return (JpaTransactionManager jpa, int partition, int fetchSize) ->
+        () ->
+            queryComposerFactory
+                .apply(jpa)
+                .withFetchSize(fetchSize)
+                .withAutoDetachOnLoad(true)
+                .stream();
+  }
+
+  /** Streams the results of the query, fetching {@code fetchSize} rows at a time. */
+  @SuppressWarnings("unchecked") // query.getResultStream: jpa api uses raw type
+  static <T> Stream<T> streamDetached(EntityManager entityManager, Query query, int fetchSize) {
+    return query
+        .setHint(QueryHints.FETCH_SIZE, fetchSize)
+        .getResultStream()
+        .map(e -> detach(entityManager, e));
   }
 
   /**
@@ -219,6 +219,7 @@ public class InitSqlPipeline implements Serializable {
             .withName(transformId)
             .withBatchSize(options.getSqlWriteBatchSize())
             .withShards(options.getSqlWriteShards())
+            .withCopy(options.getSqlWriteUseCopy())
             .withJpaConverter(Transforms::convertVersionedEntityToSqlEntity));
   }
 
@@ -22,6 +22,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import google.registry.model.billing.BillingEvent.Flag;
+import google.registry.model.billing.BillingEvent.OneTime;
 import google.registry.reporting.billing.BillingModule;
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,9 +39,11 @@ import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.io.gcp.bigquery.SchemaAndRecord;
+import org.joda.time.DateTime;
 
 /**
- * A POJO representing a single billable event, parsed from a {@code SchemaAndRecord}.
+ * A POJO representing a single billable event, parsed from a {@code SchemaAndRecord} or converted
+ * from a {@link OneTime} read from Cloud SQL.
  *
  * <p>This is a trivially serializable class that allows Beam to transform the results of a Bigquery
  * query into a standard Java representation, giving us the type guarantees and ease of manipulation
@@ -149,6 +152,58 @@ public abstract class BillingEvent implements Serializable {
         flags);
   }
 
+  /**
+   * Constructs a {@code BillingEvent} from a {@link OneTime} read from Cloud SQL.
+   *
+   * <p>The fields are derived the same way as in {@code billing_events.sql}, except for the billing
+   * account and PO number of the registrar, which are left empty to be set by {@link
+   * #withBillingAccount}. Flags are sorted by name so that the detailed report is deterministic.
+   */
+  static BillingEvent fromOneTime(OneTime oneTime) {
+    String flags =
+        oneTime.getFlags().stream().map(Flag::name).sorted().collect(Collectors.joining(" "));
+    String domain = oneTime.getTargetId();
+    return create(
+        oneTime.getId(),
+        toZonedDateTime(oneTime.getBillingTime()),
+        toZonedDateTime(oneTime.getEventTime()),
+        oneTime.getClientId(),
+        "",
+        "",
+        // Everything after the first dot in the domain is the TLD.
+        domain.substring(domain.indexOf('.') + 1),
+        oneTime.getReason().name(),
+        domain,
+        oneTime.getDomainRepoId(),
+        oneTime.getPeriodYears() == null ? 0 : oneTime.getPeriodYears(),
+        oneTime.getCost().getCurrencyUnit().getCode(),
+        getDiscountedAmount(oneTime.getCost().getAmount().doubleValue(), flags),
+        flags);
+  }
+
+  private static ZonedDateTime toZonedDateTime(DateTime dateTime) {
+    return Instant.ofEpochMilli(dateTime.getMillis()).atZone(ZoneId.of("UTC"));
+  }
+
+  /** Returns a copy of this {@code BillingEvent}, billed to the given account and PO number. */
+  BillingEvent withBillingAccount(String billingId, String poNumber) {
+    return create(
+        id(),
+        billingTime(),
+        eventTime(),
+        registrarId(),
+        billingId,
+        poNumber,
+        tld(),
+        action(),
+        domain(),
+        repositoryId(),
+        years(),
+        currency(),
+        amount(),
+        flags());
+  }
+
   /**
    * Applies a discount to sunrise creates and anchor tenant creates if applicable.
    *
@@ -175,7 +230,7 @@ public abstract class BillingEvent implements Serializable {
    * Creates a concrete {@code BillingEvent}.
    *
    * <p>This should only be used outside this class for testing- instances of {@code BillingEvent}
-   * should otherwise come from {@link #parseFromRecord}.
+   * should otherwise come from {@link #parseFromRecord} or {@link #fromOneTime}.
    */
   @VisibleForTesting
   static BillingEvent create(
@@ -14,11 +14,24 @@
 
 package google.registry.beam.invoicing;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static google.registry.beam.BeamUtils.getQueryFromFile;
+import static org.apache.beam.sdk.values.TypeDescriptors.kvs;
+import static org.apache.beam.sdk.values.TypeDescriptors.longs;
 import static org.apache.beam.sdk.values.TypeDescriptors.strings;
+import static org.joda.time.DateTimeZone.UTC;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import google.registry.beam.common.RegistryJpaIO;
 import google.registry.beam.invoicing.BillingEvent.InvoiceGroupingKey;
 import google.registry.beam.invoicing.BillingEvent.InvoiceGroupingKey.InvoiceGroupingKeyCoder;
+import google.registry.model.billing.BillingEvent.Cancellation;
+import google.registry.model.billing.BillingEvent.OneTime;
+import google.registry.model.billing.BillingEvent.Recurring;
+import google.registry.model.common.DatabaseMigrationStateSchedule.PrimaryDatabase;
+import google.registry.model.registrar.Registrar;
+import google.registry.persistence.VKey;
 import google.registry.reporting.billing.BillingModule;
 import google.registry.util.SqlTemplate;
 import java.io.Serializable;
@@ -26,22 +39,37 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.ListCoder;
 import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.io.FileIO;
 import org.apache.beam.sdk.io.TextIO;
 import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.Contextful;
-import org.apache.beam.sdk.transforms.Count;
+import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.Filter;
+import org.apache.beam.sdk.transforms.Flatten;
 import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.transforms.join.CoGbkResult;
+import org.apache.beam.sdk.transforms.join.CoGroupByKey;
+import org.apache.beam.sdk.transforms.join.KeyedPCollectionTuple;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TypeDescriptor;
+import org.joda.time.DateTime;
 
 /**
  * Definition of a Dataflow Flex pipeline template, which generates a given month's invoices.
@@ -50,6 +78,11 @@ import org.apache.beam.sdk.values.TypeDescriptor;
  *
  * <p>Then, you can run the staged template via the API client library, gCloud or a raw REST call.
  *
+ * <p>Billing events are read from the BigQuery export of Datastore by default. With {@code
+ * --database=CLOUD_SQL}, the month's {@link OneTime} and {@link Cancellation} events are instead
+ * read from Cloud SQL, partitioned by TLD, and joined in the pipeline with the same semantics as
+ * {@code billing_events.sql}.
+ *
  * @see <a href="https://cloud.google.com/dataflow/docs/guides/templates/using-flex-templates">Using
  *     Flex Templates</a>
  */
@@ -58,6 +91,33 @@ public class InvoicingPipeline implements Serializable {
   private static final DateTimeFormatter TIMESTAMP_FORMATTER =
       DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
 
+  /** The TLD of a billing event, which is everything after the first dot of its domain name. */
+  private static final String TLD_EXPRESSION =
+      "SUBSTRING(b.targetId, LOCATE('.', b.targetId) + 1)";
+
+  /** Selects one partition of the month's one-time billing events on invoicing-enabled TLDs. */
+  private static final String ONE_TIME_QUERY =
+      "SELECT b FROM BillingEvent b WHERE b.billingTime >= :startTime"
+          + " AND b.billingTime < :endTime"
+          + " AND "
+          + TLD_EXPRESSION
+          + " IN (SELECT t.tldStrId FROM Tld t WHERE t.invoicingEnabled = true)"
+          + " AND hash_partition("
+          + TLD_EXPRESSION
+          + ", :numPartitions) = :partition";
+
+  /** Selects one partition of the cancellations of charges billed in the month. */
+  private static final String CANCELLATION_QUERY =
+      "SELECT b FROM BillingCancellation b WHERE b.billingTime >= :startTime"
+          + " AND b.billingTime < :endTime"
+          + " AND hash_partition("
+          + TLD_EXPRESSION
+          + ", :numPartitions) = :partition";
+
+  private static final TupleTag<BillingEvent> ONE_TIME_TAG = new TupleTag<BillingEvent>() {};
+
+  private static final TupleTag<Long> CANCELLATION_TAG = new TupleTag<Long>() {};
+
   private final InvoicingPipelineOptions options;
 
   InvoicingPipeline(InvoicingPipelineOptions options) {
@@ -72,20 +132,161 @@ public class InvoicingPipeline implements Serializable {
 
   void setupPipeline(Pipeline pipeline) {
     PCollection<BillingEvent> billingEvents =
-        pipeline.apply(
-            "Read BillingEvents from Bigquery",
-            BigQueryIO.read(BillingEvent::parseFromRecord)
-                .fromQuery(makeQuery(options.getYearMonth(), options.getProject()))
-                .withCoder(SerializableCoder.of(BillingEvent.class))
-                .usingStandardSql()
-                .withoutValidation()
-                .withTemplateCompatibility());
+        options.getDatabase() == PrimaryDatabase.CLOUD_SQL
+            ? readFromCloudSql(pipeline)
+            : readFromBigQuery(pipeline);
 
     saveInvoiceCsv(billingEvents, options);
 
     saveDetailedCsv(billingEvents, options);
   }
 
+  private PCollection<BillingEvent> readFromBigQuery(Pipeline pipeline) {
+    return pipeline.apply(
+        "Read BillingEvents from Bigquery",
+        BigQueryIO.read(BillingEvent::parseFromRecord)
+            .fromQuery(makeQuery(options.getYearMonth(), options.getProject()))
+            .withCoder(SerializableCoder.of(BillingEvent.class))
+            .usingStandardSql()
+            .withoutValidation()
+            .withTemplateCompatibility());
+  }
+
+  /**
+   * Reads the month's billable events from Cloud SQL.
+   *
+   * <p>One-time events and cancellations are keyed by the event that a cancellation refers to and
+   * the billing time, and events with a matching cancellation are dropped. The remaining events are
+   * billed to the account of their registrar for their currency. Events of registrars that aren't
+   * {@link Registrar.Type#REAL} or have no such account are dropped, as they are in BigQuery.
+   */
+  private PCollection<BillingEvent> readFromCloudSql(Pipeline pipeline) {
+    // A "yyyy-MM" string parses to the first moment of the month.
+    DateTime startTime = new DateTime(options.getYearMonth(), UTC);
+    ImmutableMap<String, Object> parameters =
+        ImmutableMap.of("startTime", startTime, "endTime", startTime.plusMonths(1));
+
+    PCollectionView<Map<String, KV<String, String>>> billingAccounts =
+        pipeline
+            .apply(
+                "Read registrar billing accounts",
+                RegistryJpaIO.<Registrar, List<KV<String, KV<String, String>>>>read(
+                        "FROM Registrar", InvoicingPipeline::getBillingAccounts)
+                    .withName("Read registrar billing accounts")
+                    .withCoder(
+                        ListCoder.of(
+                            KvCoder.of(
+                                StringUtf8Coder.of(),
+                                KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of())))))
+            .apply("Flatten billing accounts", Flatten.iterables())
+            .apply("View billing accounts as map", View.asMap());
+
+    PCollection<KV<String, BillingEvent>> oneTimes =
+        pipeline.apply(
+            "Read one-time billing events",
+            RegistryJpaIO.<OneTime, KV<String, BillingEvent>>read(
+                    ONE_TIME_QUERY,
+                    parameters,
+                    options.getSqlReadPartitions(),
+                    oneTime ->
+                        KV.of(
+                            getCancellationKey(
+                                oneTime.getCancellationMatchingBillingEvent() == null
+                                    ? VKey.createSql(OneTime.class, oneTime.getId())
+                                    : oneTime.getCancellationMatchingBillingEvent(),
+                                oneTime.getBillingTime()),
+                            BillingEvent.fromOneTime(oneTime)))
+                .withName("Read one-time billing events")
+                .withCoder(
+                    KvCoder.of(StringUtf8Coder.of(), SerializableCoder.of(BillingEvent.class))));
+
+    PCollection<KV<String, Long>> cancellations =
+        pipeline.apply(
+            "Read cancellations",
+            RegistryJpaIO.<Cancellation, KV<String, Long>>read(
+                    CANCELLATION_QUERY,
+                    parameters,
+                    options.getSqlReadPartitions(),
+                    cancellation ->
+                        KV.of(
+                            getCancellationKey(
+                                cancellation.getEventKey(), cancellation.getBillingTime()),
+                            cancellation.getId()))
+                .withName("Read cancellations")
+                .withCoder(KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of())));
+
+    return KeyedPCollectionTuple.of(ONE_TIME_TAG, oneTimes)
+        .and(CANCELLATION_TAG, cancellations)
+        .apply("Join cancellations", CoGroupByKey.create())
+        .apply(
+            "Drop cancelled events and add billing accounts",
+            ParDo.of(new BillUncancelledEventsFn(billingAccounts)).withSideInputs(billingAccounts))
+        .setCoder(SerializableCoder.of(BillingEvent.class));
+  }
+
+  /**
+   * Returns the key by which a billable event is matched with its cancellations.
+   *
+   * <p>A cancellation refers to either a one-time event or the recurring event that synthetic
+   * one-time events are expanded from, and only cancels the charge at its billing time.
+   */
+  private static String getCancellationKey(VKey<?> eventKey, DateTime billingTime) {
+    return String.format(
+        "%s_%s_%d",
+        eventKey.getKind().equals(Recurring.class) ? "Recurring" : "OneTime",
+        eventKey.getSqlKey(),
+        billingTime.getMillis());
+  }
+
+  /** Returns the billing account and PO number of a registrar for each currency it's billed in. */
+  private static List<KV<String, KV<String, String>>> getBillingAccounts(Registrar registrar) {
+    if (registrar.getType() != Registrar.Type.REAL) {
+      return ImmutableList.of();
+    }
+    String poNumber = registrar.getPoNumber().orElse("");
+    return registrar.getBillingAccountMap().entrySet().stream()
+        .map(
+            entry ->
+                KV.of(
+                    getBillingAccountKey(registrar.getClientId(), entry.getKey().getCode()),
+                    KV.of(entry.getValue(), poNumber)))
+        .collect(toImmutableList());
+  }
+
+  private static String getBillingAccountKey(String registrarId, String currency) {
+    return String.format("%s_%s", registrarId, currency);
+  }
+
+  /**
+   * Drops the one-time events that have a matching cancellation, and bills the rest to the account
+   * of their registrar for their currency.
+   */
+  private static class BillUncancelledEventsFn
+      extends DoFn<KV<String, CoGbkResult>, BillingEvent> {
+
+    private final PCollectionView<Map<String, KV<String, String>>> billingAccounts;
+
+    BillUncancelledEventsFn(PCollectionView<Map<String, KV<String, String>>> billingAccounts) {
+      this.billingAccounts = billingAccounts;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext context) {
+      CoGbkResult result = context.element().getValue();
+      if (result.getAll(CANCELLATION_TAG).iterator().hasNext()) {
+        return;
+      }
+      Map<String, KV<String, String>> accounts = context.sideInput(billingAccounts);
+      for (BillingEvent event : result.getAll(ONE_TIME_TAG)) {
+        KV<String, String> account =
+            accounts.get(getBillingAccountKey(event.registrarId(), event.currency()));
+        if (account != null) {
+          context.output(event.withBillingAccount(account.getKey(), account.getValue()));
+        }
+      }
+    }
+  }
+
   /** Transform that converts a {@code BillingEvent} into an invoice CSV row. */
   private static class GenerateInvoiceRows
       extends PTransform<PCollection<BillingEvent>, PCollection<String>> {
@@ -99,7 +300,14 @@ public class InvoicingPipeline implements Serializable {
           .apply(
               "Filter out free events", Filter.by((InvoiceGroupingKey key) -> key.unitPrice() != 0))
           .setCoder(new InvoiceGroupingKeyCoder())
-          .apply("Count occurrences", Count.perElement())
+          .apply(
+              "Map to count of one",
+              MapElements.into(kvs(TypeDescriptor.of(InvoiceGroupingKey.class), longs()))
+                  .via((InvoiceGroupingKey key) -> KV.of(key, 1L)))
+          .setCoder(KvCoder.of(new InvoiceGroupingKeyCoder(), VarLongCoder.of()))
+          // Summing is combined on each worker before the shuffle, so only partial counts per key
+          // are sent over the network.
+          .apply("Count occurrences", Sum.longsPerKey())
           .apply(
               "Format as CSVs",
               MapElements.into(strings())
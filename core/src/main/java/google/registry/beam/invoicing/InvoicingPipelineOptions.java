@@ -15,6 +15,8 @@
 package google.registry.beam.invoicing;
 
 import google.registry.beam.common.RegistryPipelineOptions;
+import google.registry.model.common.DatabaseMigrationStateSchedule.PrimaryDatabase;
+import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 
 /** Custom options for running the invoicing pipeline. */
@@ -34,4 +36,18 @@ public interface InvoicingPipelineOptions extends RegistryPipelineOptions {
   String getBillingBucketUrl();
 
   void setBillingBucketUrl(String value);
+
+  @Description(
+      "The database to read billing events from: DATASTORE, through the BigQuery export of"
+          + " Datastore, or CLOUD_SQL.")
+  @Default.Enum("DATASTORE")
+  PrimaryDatabase getDatabase();
+
+  void setDatabase(PrimaryDatabase value);
+
+  @Description("The number of partitions in which billing events are read from Cloud SQL.")
+  @Default.Integer(20)
+  int getSqlReadPartitions();
+
+  void setSqlReadPartitions(int value);
 }
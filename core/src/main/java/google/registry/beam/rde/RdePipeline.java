@@ -0,0 +1,605 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.rde;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.google.common.base.Verify.verify;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
+import static google.registry.model.EppResourceUtils.isActive;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.BaseEncoding;
+import google.registry.beam.common.RegistryJpaIO;
+import google.registry.keyring.api.PgpHelper;
+import google.registry.model.EppResource;
+import google.registry.model.contact.ContactHistory;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.domain.DomainHistory;
+import google.registry.model.host.HostHistory;
+import google.registry.model.host.HostResource;
+import google.registry.model.rde.RdeMode;
+import google.registry.model.rde.RdeNamingUtils;
+import google.registry.model.rde.RdeRevision;
+import google.registry.model.registrar.Registrar;
+import google.registry.model.reporting.HistoryEntry;
+import google.registry.rde.DepositFragment;
+import google.registry.rde.Ghostryde;
+import google.registry.rde.PendingDeposit;
+import google.registry.rde.RdeCounter;
+import google.registry.rde.RdeMarshaller;
+import google.registry.rde.RdeResourceType;
+import google.registry.rde.RdeStagingMapper;
+import google.registry.rde.RdeUtil;
+import google.registry.tldconfig.idn.IdnTableEnum;
+import google.registry.util.SerializeUtils;
+import google.registry.xjc.rdeheader.XjcRdeHeader;
+import google.registry.xjc.rdeheader.XjcRdeHeaderElement;
+import google.registry.xml.ValidationMode;
+import google.registry.xml.XmlException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.security.Security;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.ListCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.apache.beam.sdk.util.MimeTypes;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionList;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.joda.time.DateTime;
+
+/**
+ * Definition of a Dataflow Flex pipeline template, which generates RDE and BRDA deposits from Cloud
+ * SQL.
+ *
+ * <p>Unlike {@link google.registry.rde.RdeStagingAction}, which reconstructs each resource at the
+ * watermark from its commit log revisions, the pipeline reads the state of all resources at the
+ * watermark from the history tables. For each history table and each watermark of the pending
+ * deposits, a single partitioned query selects the most recent history entry of every resource at
+ * or before the watermark. History entries are never modified, so these reads are consistent
+ * without a snapshot as long as the watermark is in the past. The workers that read the entries
+ * marshal them into fragments, which are grouped by deposit, so that all pending deposits are
+ * generated in one run.
+ *
+ * <p>Each deposit is written to the staging bucket as in {@link
+ * google.registry.rde.RdeStagingReducer}. Workers only talk to Cloud SQL and GCS: the revisions of
+ * the deposits are resolved in the primary database when the pending deposits are encoded, and
+ * once the job is done, {@link google.registry.rde.PublishRdeDepositsAction} rolls the cursors
+ * forward and enqueues the upload and BRDA copy tasks on the server.
+ *
+ * <p>To stage this template locally, run the {@code stage_beam_pipeline.sh} shell script.
+ *
+ * <p>Then, you can run the staged template via the API client library, gCloud or a raw REST call.
+ *
+ * @see <a href="https://cloud.google.com/dataflow/docs/guides/templates/using-flex-templates">Using
+ *     Flex Templates</a>
+ */
+public class RdePipeline implements Serializable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+  /**
+   * Selects the most recent history entry of each resource at or before {@code :watermark}, for
+   * resources that are not deleted at the watermark.
+   *
+   * <p>The arguments are the name of the history entity, the name of its field holding the state of
+   * the resource, and the name of its field holding the repo ID of the resource. Ties between
+   * entries with the same modification time are broken by the larger revision ID.
+   *
+   * <p>Entries that don't record the state of the resource, i.e. those migrated from Datastore, are
+   * selected too, so that {@link Fragmenter#checkRecorded} can fail the pipeline on them instead of
+   * silently leaving their resources out of the deposits.
+   */
+  private static final String HISTORY_AT_WATERMARK_QUERY =
+      "SELECT h FROM %1$s h"
+          + " WHERE (h.%2$s.deletionTime IS NULL OR h.%2$s.deletionTime > :watermark)"
+          + " AND h.modificationTime = (SELECT MAX(h2.modificationTime) FROM %1$s h2"
+          + " WHERE h2.%3$s = h.%3$s AND h2.modificationTime <= :watermark)"
+          + " AND h.id = (SELECT MAX(h3.id) FROM %1$s h3"
+          + " WHERE h3.%3$s = h.%3$s AND h3.modificationTime = h.modificationTime)"
+          + " AND hash_partition(h.%3$s, :numPartitions) = :partition";
+
+  /** Selects the history entries of a domain at or before a watermark, most recent first. */
+  private static final String DOMAIN_HISTORY_BEFORE_WATERMARK_QUERY =
+      "FROM DomainHistory WHERE domainRepoId = :repoId AND modificationTime <= :watermark"
+          + " ORDER BY modificationTime DESC, id DESC";
+
+  private static final KvCoder<String, DepositFragment> FRAGMENT_CODER =
+      KvCoder.of(StringUtf8Coder.of(), SerializableCoder.of(DepositFragment.class));
+
+  private final RdePipelineOptions options;
+  private final ImmutableSetMultimap<String, PendingDeposit> pendings;
+  private final ValidationMode validationMode;
+  private final double validationSampleRate;
+
+  RdePipeline(RdePipelineOptions options) {
+    this.options = options;
+    this.pendings = decodePendings(options.getPendings());
+    pendings
+        .values()
+        .forEach(
+            pending ->
+                checkArgument(
+                    pending.revision() != null, "Revision of %s is not resolved", pending));
+    this.validationMode = ValidationMode.valueOf(options.getValidationMode());
+    this.validationSampleRate = options.getValidationSampleRate();
+  }
+
+  PipelineResult run() {
+    Pipeline pipeline = Pipeline.create(options);
+    setupPipeline(pipeline);
+    return pipeline.run();
+  }
+
+  void setupPipeline(Pipeline pipeline) {
+    PCollectionList<KV<String, DepositFragment>> fragments =
+        PCollectionList.of(readRegistrars(pipeline));
+    ImmutableSet<DateTime> watermarks =
+        pendings.values().stream().map(PendingDeposit::watermark).collect(toImmutableSet());
+    for (DateTime watermark : watermarks) {
+      ImmutableSet<PendingDeposit> pendingsAtWatermark =
+          pendings.values().stream()
+              .filter(pending -> pending.watermark().equals(watermark))
+              .collect(toImmutableSet());
+      fragments =
+          fragments
+              .and(
+                  readHistory(
+                      pipeline,
+                      "DomainHistory",
+                      "domainContent",
+                      "domainRepoId",
+                      watermark,
+                      new DomainFragmenter(watermark, pendingsAtWatermark, createMarshaller())))
+              .and(
+                  readHistory(
+                      pipeline,
+                      "ContactHistory",
+                      "contactBase",
+                      "contactRepoId",
+                      watermark,
+                      new ContactFragmenter(watermark, pendingsAtWatermark, createMarshaller())))
+              .and(
+                  readHistory(
+                      pipeline,
+                      "HostHistory",
+                      "hostBase",
+                      "hostRepoId",
+                      watermark,
+                      new HostFragmenter(watermark, pendingsAtWatermark, createMarshaller())));
+    }
+    fragments
+        .apply("Merge fragments", Flatten.pCollections())
+        .apply("Group fragments by deposit", GroupByKey.create())
+        .apply(
+            "Write deposits",
+            ParDo.of(
+                new WriteDepositFn(
+                    pendings.values().stream()
+                        .collect(toImmutableMap(RdePipeline::getDepositKey, pending -> pending)),
+                    options.getRdeStagingBucketUrl(),
+                    ENCODING.decode(options.getStagingKey()),
+                    validationMode)));
+  }
+
+  /** Returns a marshaller for the resources that go in the deposits, with sampled validation. */
+  private RdeMarshaller createMarshaller() {
+    return new RdeMarshaller(validationMode, validationSampleRate);
+  }
+
+  private PCollection<KV<String, DepositFragment>> readRegistrars(Pipeline pipeline) {
+    ImmutableSet<PendingDeposit> allPendings = ImmutableSet.copyOf(pendings.values());
+    RdeMarshaller marshaller = createMarshaller();
+    return pipeline
+        .apply(
+            "Read registrars",
+            RegistryJpaIO.<Registrar, List<KV<String, DepositFragment>>>read(
+                    "FROM Registrar",
+                    (Registrar registrar) -> {
+                      // Registrars are included in every deposit.
+                      if (RdeStagingMapper.IGNORED_REGISTRAR_TYPES.contains(registrar.getType())) {
+                        return ImmutableList.of();
+                      }
+                      DepositFragment fragment = marshaller.marshalRegistrar(registrar);
+                      return allPendings.stream()
+                          .map(pending -> KV.of(getDepositKey(pending), fragment))
+                          .collect(toImmutableList());
+                    })
+                .withName("Read registrars")
+                .withCoder(ListCoder.of(FRAGMENT_CODER)))
+        .apply("Flatten registrar fragments", Flatten.iterables());
+  }
+
+  private <H extends HistoryEntry> PCollection<KV<String, DepositFragment>> readHistory(
+      Pipeline pipeline,
+      String historyEntityName,
+      String resourceFieldName,
+      String repoIdFieldName,
+      DateTime watermark,
+      Fragmenter<H> fragmenter) {
+    String name = String.format("%s at %s", historyEntityName, watermark);
+    return pipeline
+        .apply(
+            "Read " + name,
+            RegistryJpaIO.read(
+                    String.format(
+                        HISTORY_AT_WATERMARK_QUERY,
+                        historyEntityName,
+                        resourceFieldName,
+                        repoIdFieldName),
+                    ImmutableMap.of("watermark", watermark),
+                    options.getSqlReadPartitions(),
+                    fragmenter)
+                .withName(name)
+                .withCoder(ListCoder.of(FRAGMENT_CODER)))
+        .apply("Flatten fragments of " + name, Flatten.iterables());
+  }
+
+  /** Returns the key by which the fragments of the given deposit are grouped. */
+  private static String getDepositKey(PendingDeposit pending) {
+    return RdeNamingUtils.makePartialName(pending.tld(), pending.watermark(), pending.mode());
+  }
+
+  /**
+   * Encodes the given pending deposits as the value of the {@code --pendings} option.
+   *
+   * <p>This runs on the server that launches the pipeline. Deposits without a revision get the next
+   * one from the primary database, since {@link RdeRevision} can't be read on pipeline workers.
+   */
+  public static String encodePendings(ImmutableSetMultimap<String, PendingDeposit> pendings) {
+    return ENCODING.encode(
+        SerializeUtils.serialize(
+            pendings.entries().stream()
+                .collect(
+                    toImmutableSetMultimap(
+                        Map.Entry::getKey, entry -> resolveRevision(entry.getValue())))));
+  }
+
+  private static PendingDeposit resolveRevision(PendingDeposit pending) {
+    return pending.revision() != null
+        ? pending
+        : pending.withRevision(
+            RdeRevision.getNextRevision(pending.tld(), pending.watermark(), pending.mode()));
+  }
+
+  @SuppressWarnings("unchecked")
+  public static ImmutableSetMultimap<String, PendingDeposit> decodePendings(
+      String encodedPendings) {
+    return (ImmutableSetMultimap<String, PendingDeposit>)
+        SerializeUtils.deserialize(ImmutableSetMultimap.class, ENCODING.decode(encodedPendings));
+  }
+
+  /**
+   * Turns the history entry of a resource into fragments for the deposits at a watermark.
+   *
+   * <p>This runs in the transaction of the query that reads the history entries.
+   */
+  private abstract static class Fragmenter<H extends HistoryEntry>
+      implements SerializableFunction<H, List<KV<String, DepositFragment>>> {
+
+    final DateTime watermark;
+    final ImmutableSet<PendingDeposit> pendings;
+    final RdeMarshaller marshaller;
+
+    Fragmenter(
+        DateTime watermark, ImmutableSet<PendingDeposit> pendings, RdeMarshaller marshaller) {
+      this.watermark = watermark;
+      this.pendings = pendings;
+      this.marshaller = marshaller;
+    }
+
+    /**
+     * Returns the resource recorded in a history entry, failing if the entry doesn't record it.
+     *
+     * <p>Entries migrated from Datastore don't record the state of the resource, and leaving the
+     * resource out would silently produce an incomplete deposit.
+     */
+    static <R extends EppResource> R checkRecorded(
+        Optional<R> resource, String repoId, long historyId) {
+      checkState(
+          resource.isPresent(),
+          "History entry %s of %s doesn't record the resource, so it can't go in a deposit",
+          historyId,
+          repoId);
+      return resource.get();
+    }
+
+    /**
+     * Returns the given resource projected to the watermark, or empty if it doesn't exist at the
+     * watermark or is prober data.
+     */
+    @SuppressWarnings("unchecked")
+    <R extends EppResource> Optional<R> projectToWatermark(Optional<R> resource) {
+      return resource
+          .filter(r -> isActive(r, watermark))
+          .filter(
+              r ->
+                  !nullToEmpty(r.getCreationClientId()).startsWith("prober-")
+                      && !nullToEmpty(r.getPersistedCurrentSponsorClientId()).startsWith("prober-")
+                      && !nullToEmpty(r.getLastEppUpdateClientId()).startsWith("prober-"))
+          .map(r -> (R) r.cloneProjectedAtTime(watermark));
+    }
+
+    /** Returns the given fragment keyed by each full deposit, which contacts and hosts go in. */
+    List<KV<String, DepositFragment>> toFullDeposits(DepositFragment fragment) {
+      return pendings.stream()
+          .filter(pending -> pending.mode() == RdeMode.FULL)
+          .map(pending -> KV.of(getDepositKey(pending), fragment))
+          .collect(toImmutableList());
+    }
+  }
+
+  private static class DomainFragmenter extends Fragmenter<DomainHistory> {
+
+    DomainFragmenter(
+        DateTime watermark, ImmutableSet<PendingDeposit> pendings, RdeMarshaller marshaller) {
+      super(watermark, pendings, marshaller);
+    }
+
+    @Override
+    public List<KV<String, DepositFragment>> apply(DomainHistory history) {
+      Optional<DomainBase> domain =
+          projectToWatermark(
+              Optional.of(
+                  checkRecorded(
+                      history.getResourceAtPointInTime(),
+                      history.getDomainRepoId(),
+                      history.getId())));
+      if (!domain.isPresent()) {
+        return ImmutableList.of();
+      }
+      // Marshal the domain at most once for each mode.
+      Map<RdeMode, DepositFragment> fragments = new EnumMap<>(RdeMode.class);
+      return pendings.stream()
+          .filter(pending -> pending.tld().equals(domain.get().getTld()))
+          .map(
+              pending ->
+                  KV.of(
+                      getDepositKey(pending),
+                      fragments.computeIfAbsent(
+                          pending.mode(),
+                          mode -> marshaller.marshalDomain(domain.get(), mode, jpaTm()))))
+          .collect(toImmutableList());
+    }
+  }
+
+  private static class ContactFragmenter extends Fragmenter<ContactHistory> {
+
+    ContactFragmenter(
+        DateTime watermark, ImmutableSet<PendingDeposit> pendings, RdeMarshaller marshaller) {
+      super(watermark, pendings, marshaller);
+    }
+
+    @Override
+    public List<KV<String, DepositFragment>> apply(ContactHistory history) {
+      // Contacts get emitted on all TLDs, even if domains don't reference them.
+      return projectToWatermark(
+              Optional.of(
+                  checkRecorded(
+                      history.getResourceAtPointInTime(),
+                      history.getContactRepoId(),
+                      history.getId())))
+          .map(contact -> toFullDeposits(marshaller.marshalContact(contact)))
+          .orElse(ImmutableList.of());
+    }
+  }
+
+  private static class HostFragmenter extends Fragmenter<HostHistory> {
+
+    HostFragmenter(
+        DateTime watermark, ImmutableSet<PendingDeposit> pendings, RdeMarshaller marshaller) {
+      super(watermark, pendings, marshaller);
+    }
+
+    @Override
+    public List<KV<String, DepositFragment>> apply(HostHistory history) {
+      // Hosts get emitted on all TLDs, even if domains don't reference them.
+      return projectToWatermark(
+              Optional.of(
+                  checkRecorded(
+                      history.getResourceAtPointInTime(),
+                      history.getHostRepoId(),
+                      history.getId())))
+          .map(host -> toFullDeposits(marshalHost(host)))
+          .orElse(ImmutableList.of());
+    }
+
+    private DepositFragment marshalHost(HostResource host) {
+      if (!host.isSubordinate()) {
+        return marshaller.marshalExternalHost(host);
+      }
+      // Subordinate hosts are a small fraction of all hosts, so their superordinate domains are
+      // looked up one at a time, by primary key prefix.
+      Optional<DomainBase> superordinateDomain =
+          projectToWatermark(
+              jpaTm()
+                  .query(DOMAIN_HISTORY_BEFORE_WATERMARK_QUERY, DomainHistory.class)
+                  .setParameter("repoId", host.getSuperordinateDomain().getSqlKey())
+                  .setParameter("watermark", watermark)
+                  .setMaxResults(1)
+                  .getResultStream()
+                  .findFirst()
+                  .map(
+                      history ->
+                          checkRecorded(
+                              history.getResourceAtPointInTime(),
+                              history.getDomainRepoId(),
+                              history.getId())));
+      if (!superordinateDomain.isPresent()) {
+        String error =
+            String.format(
+                "Superordinate domain %s of host %s does not exist at %s",
+                host.getSuperordinateDomain(), host.getHostName(), watermark);
+        logger.atSevere().log(error);
+        return DepositFragment.create(RdeResourceType.HOST, "", error);
+      }
+      return marshaller.marshalSubordinateHost(host, superordinateDomain.get());
+    }
+  }
+
+  /** Writes the fragments of a deposit to the staging bucket. */
+  private static class WriteDepositFn extends DoFn<KV<String, Iterable<DepositFragment>>, Void> {
+
+    private final ImmutableMap<String, PendingDeposit> pendings;
+    private final String bucketUrl;
+    private final byte[] stagingKeyBytes;
+    private final ValidationMode validationMode;
+
+    private transient RdeMarshaller marshaller;
+    private transient PGPPublicKey stagingKey;
+
+    WriteDepositFn(
+        ImmutableMap<String, PendingDeposit> pendings,
+        String bucketUrl,
+        byte[] stagingKeyBytes,
+        ValidationMode validationMode) {
+      this.pendings = pendings;
+      this.bucketUrl = bucketUrl;
+      this.stagingKeyBytes = stagingKeyBytes;
+      this.validationMode = validationMode;
+    }
+
+    @Setup
+    public void setup() {
+      Security.addProvider(new BouncyCastleProvider());
+      marshaller = new RdeMarshaller(validationMode);
+      stagingKey = PgpHelper.loadPublicKeyBytes(stagingKeyBytes);
+    }
+
+    @ProcessElement
+    public void processElement(@Element KV<String, Iterable<DepositFragment>> kv) {
+      writeDeposit(pendings.get(kv.getKey()), kv.getValue());
+    }
+
+    private void writeDeposit(PendingDeposit key, Iterable<DepositFragment> fragments) {
+      logger.atInfo().log("Writing deposit %s", key);
+      RdeCounter counter = new RdeCounter();
+
+      // Determine some basic things about the deposit.
+      final RdeMode mode = key.mode();
+      final String tld = key.tld();
+      final DateTime watermark = key.watermark();
+      final int revision = key.revision();
+      String id = RdeUtil.timestampToId(watermark);
+      String prefix = RdeNamingUtils.makeRydeFilename(tld, watermark, mode, 1, revision);
+      if (key.manual()) {
+        checkState(key.directoryWithTrailingSlash() != null, "Manual subdirectory not specified");
+        prefix = "manual/" + key.directoryWithTrailingSlash() + prefix;
+      }
+      String xmlFilename = prefix + ".xml.ghostryde";
+      // The byte length (ASCII) of the raw unencrypted XML, which RdeUploadAction needs for the tar
+      // file header.
+      String xmlLengthFilename = prefix + ".xml.length";
+      String reportFilename = prefix + "-report.xml.ghostryde";
+
+      boolean failed = false;
+      XjcRdeHeader header;
+
+      logger.atInfo().log("Writing %s and %s", xmlFilename, xmlLengthFilename);
+      try (OutputStream gcsOutput = openOutputStream(xmlFilename);
+          OutputStream lengthOutput = openOutputStream(xmlLengthFilename);
+          OutputStream ghostrydeEncoder = Ghostryde.encoder(gcsOutput, stagingKey, lengthOutput);
+          Writer output = new OutputStreamWriter(ghostrydeEncoder, UTF_8)) {
+
+        output.write(marshaller.makeHeader(id, watermark, RdeResourceType.getUris(mode), revision));
+
+        for (DepositFragment fragment : fragments) {
+          if (!fragment.xml().isEmpty()) {
+            output.write(fragment.xml());
+            counter.increment(fragment.type());
+          }
+          if (!fragment.error().isEmpty()) {
+            failed = true;
+            logger.atSevere().log("Fragment error: %s", fragment.error());
+          }
+        }
+
+        // Don't write the IDN elements for BRDA.
+        if (mode == RdeMode.FULL) {
+          for (IdnTableEnum idn : IdnTableEnum.values()) {
+            output.write(marshaller.marshalIdn(idn.getTable()));
+            counter.increment(RdeResourceType.IDN);
+          }
+        }
+
+        header = counter.makeHeader(tld, mode);
+        output.write(marshaller.marshalOrDie(new XjcRdeHeaderElement(header)));
+        output.write(marshaller.makeFooter());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+
+      // If an entity was broken, abort after writing as much logs/deposit data as possible.
+      verify(!failed, "RDE staging failed for TLD %s", tld);
+
+      if (mode == RdeMode.FULL) {
+        logger.atInfo().log("Writing %s", reportFilename);
+        try (OutputStream gcsOutput = openOutputStream(reportFilename);
+            OutputStream ghostrydeEncoder = Ghostryde.encoder(gcsOutput, stagingKey)) {
+          counter.makeReport(id, watermark, header, revision).marshal(ghostrydeEncoder, UTF_8);
+        } catch (IOException | XmlException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
+    private OutputStream openOutputStream(String filename) throws IOException {
+      return Channels.newOutputStream(
+          FileSystems.create(
+              FileSystems.matchNewResource(String.format("%s/%s", bucketUrl, filename), false),
+              MimeTypes.BINARY));
+    }
+  }
+
+  public static void main(String[] args) {
+    PipelineOptionsFactory.register(RdePipelineOptions.class);
+    RdePipelineOptions options =
+        PipelineOptionsFactory.fromArgs(args).withValidation().as(RdePipelineOptions.class);
+    new RdePipeline(options).run();
+  }
+}
@@ -0,0 +1,56 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.rde;
+
+import google.registry.beam.common.RegistryPipelineOptions;
+import org.apache.beam.sdk.options.Default;
+import org.apache.beam.sdk.options.Description;
+
+/** Custom options for running the RDE pipeline. */
+public interface RdePipelineOptions extends RegistryPipelineOptions {
+
+  @Description("The pending deposits to generate, as encoded by RdePipeline.encodePendings().")
+  String getPendings();
+
+  void setPendings(String value);
+
+  @Description("The validation mode of the deposit XML, STRICT or LENIENT.")
+  @Default.String("STRICT")
+  String getValidationMode();
+
+  void setValidationMode(String value);
+
+  @Description("The fraction of resources validated in STRICT mode, from 0 to 1 (all).")
+  @Default.Double(1.0)
+  double getValidationSampleRate();
+
+  void setValidationSampleRate(double value);
+
+  @Description("The GCS bucket URL in which deposits are staged, e.g. gs://project-rde.")
+  String getRdeStagingBucketUrl();
+
+  void setRdeStagingBucketUrl(String value);
+
+  @Description("The base64-encoded PGP public key with which staged deposits are encrypted.")
+  String getStagingKey();
+
+  void setStagingKey(String value);
+
+  @Description("The number of partitions in which each history table is read.")
+  @Default.Integer(20)
+  int getSqlReadPartitions();
+
+  void setSqlReadPartitions(int value);
+}
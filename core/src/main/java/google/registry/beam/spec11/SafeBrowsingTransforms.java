@@ -14,20 +14,31 @@
 
 package google.registry.beam.spec11;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.http.HttpStatus.SC_OK;
+import static org.apache.http.HttpStatus.SC_SERVICE_UNAVAILABLE;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.RateLimiter;
 import google.registry.util.Retrier;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.function.Supplier;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
@@ -54,9 +65,21 @@ public class SafeBrowsingTransforms {
   private static final String SAFE_BROWSING_URL =
       "https://safebrowsing.googleapis.com/v4/threatMatches:find";
 
+  /** The default maximum number of SafeBrowsing requests in flight per {@link DoFn} instance. */
+  static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+  /** The default maximum rate of SafeBrowsing requests per {@link DoFn} instance. */
+  static final double DEFAULT_MAX_REQUESTS_PER_SECOND = 10;
+
   /**
    * {@link DoFn} mapping a {@link Subdomain} to its evaluation report from SafeBrowsing.
    *
+   * <p>Subdomains are evaluated in batches. Each instance keeps a single pooled HTTP client for its
+   * lifetime and sends up to {@code maxConcurrentRequests} batches at once, while it keeps
+   * buffering the next batch. Requests are rate limited on the client side. When the API reports
+   * that the quota is exceeded, the rate is halved and the request is retried with backoff; the
+   * rate then recovers gradually as requests succeed.
+   *
    * <p>Refer to the Lookup API documentation for the request/response format and other details.
    *
    * @see <a href=https://developers.google.com/safe-browsing/v4/lookup-api>Lookup API</a>
@@ -70,9 +93,27 @@ public class SafeBrowsingTransforms {
      */
     private static final int BATCH_SIZE = 490;
 
+    /** The HTTP status of responses to requests that exceed the quota. */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /** The lowest rate that quota errors can throttle requests down to. */
+    private static final double MIN_REQUESTS_PER_SECOND = 0.1;
+
+    /** The factor by which the request rate recovers after each successful request. */
+    private static final double RATE_RECOVERY_FACTOR = 1.1;
+
     /** Provides the SafeBrowsing API key at runtime. */
     private final String apiKey;
 
+    /** The URL to send SafeBrowsing API calls to, which can be replaced by a fake in tests. */
+    private final String safeBrowsingUrl;
+
+    /** The maximum number of batches that are evaluated at the same time. */
+    private final int maxConcurrentRequests;
+
+    /** The maximum rate of requests to the SafeBrowsing API from this instance. */
+    private final double maxRequestsPerSecond;
+
     /**
      * Maps a subdomain's {@code fullyQualifiedDomainName} to its corresponding {@link Subdomain} to
      * facilitate batching SafeBrowsing API requests.
@@ -83,26 +124,54 @@ public class SafeBrowsingTransforms {
      * Provides the HTTP client we use to interact with the SafeBrowsing API.
      *
      * <p>This is a supplier to enable mocking out the connection in unit tests while maintaining a
-     * serializable field.
+     * serializable field. It is called once per instance, in {@link #setup}.
      */
     private final Supplier<CloseableHttpClient> closeableHttpClientSupplier;
 
     /** Retries on receiving transient failures such as {@link IOException}. */
     private final Retrier retrier;
 
+    private transient CloseableHttpClient httpClient;
+
+    private transient ExecutorService executor;
+
+    /** Bounds the number of batches that are submitted but not yet evaluated. */
+    private transient Semaphore inFlightBatches;
+
+    private transient RateLimiter rateLimiter;
+
+    /** The results of the submitted batches, in the order they were submitted. */
+    private transient Queue<Future<ImmutableSet<KV<Subdomain, ThreatMatch>>>> pendingBatches;
+
+    /** Constructs a {@link EvaluateSafeBrowsingFn} with a given API key and request limits. */
+    EvaluateSafeBrowsingFn(
+        String apiKey, Retrier retrier, int maxConcurrentRequests, double maxRequestsPerSecond) {
+      this(apiKey, SAFE_BROWSING_URL, retrier, maxConcurrentRequests, maxRequestsPerSecond);
+    }
+
     /**
-     * Constructs a {@link EvaluateSafeBrowsingFn} with a given API key.
+     * Constructs a {@link EvaluateSafeBrowsingFn} that sends its requests to the given URL, allowing
+     * us to use a fake SafeBrowsing server for testing.
      *
      * <p>We need to dual-cast the closeableHttpClientSupplier lambda because all {@code DoFn}
      * member variables need to be serializable. The (Supplier & Serializable) dual cast is safe
-     * because class methods are generally serializable, especially a static function such as {@link
-     * HttpClients#createDefault()}.
+     * because the lambda only captures the connection limit.
      */
-    @SuppressWarnings("unchecked")
-    EvaluateSafeBrowsingFn(String apiKey, Retrier retrier) {
-      this.apiKey = apiKey;
-      this.retrier = retrier;
-      closeableHttpClientSupplier = (Supplier & Serializable) HttpClients::createDefault;
+    @VisibleForTesting
+    EvaluateSafeBrowsingFn(
+        String apiKey,
+        String safeBrowsingUrl,
+        Retrier retrier,
+        int maxConcurrentRequests,
+        double maxRequestsPerSecond) {
+      this(
+          apiKey,
+          safeBrowsingUrl,
+          retrier,
+          maxConcurrentRequests,
+          maxRequestsPerSecond,
+          (Supplier<CloseableHttpClient> & Serializable)
+              () -> createHttpClient(maxConcurrentRequests));
     }
 
     /**
@@ -114,76 +183,145 @@ public class SafeBrowsingTransforms {
     @VisibleForTesting
     EvaluateSafeBrowsingFn(
         String apiKey, Retrier retrier, Supplier<CloseableHttpClient> clientSupplier) {
+      this(
+          apiKey,
+          SAFE_BROWSING_URL,
+          retrier,
+          DEFAULT_MAX_CONCURRENT_REQUESTS,
+          DEFAULT_MAX_REQUESTS_PER_SECOND,
+          clientSupplier);
+    }
+
+    private EvaluateSafeBrowsingFn(
+        String apiKey,
+        String safeBrowsingUrl,
+        Retrier retrier,
+        int maxConcurrentRequests,
+        double maxRequestsPerSecond,
+        Supplier<CloseableHttpClient> clientSupplier) {
+      checkArgument(maxConcurrentRequests > 0, "maxConcurrentRequests must be positive");
+      checkArgument(maxRequestsPerSecond > 0, "maxRequestsPerSecond must be positive");
       this.apiKey = apiKey;
+      this.safeBrowsingUrl = safeBrowsingUrl;
       this.retrier = retrier;
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      this.maxRequestsPerSecond = maxRequestsPerSecond;
       closeableHttpClientSupplier = clientSupplier;
     }
 
+    /** Returns an HTTP client that keeps a connection open for each concurrent request. */
+    private static CloseableHttpClient createHttpClient(int maxConnections) {
+      return HttpClients.custom()
+          .setMaxConnPerRoute(maxConnections)
+          .setMaxConnTotal(maxConnections)
+          .build();
+    }
+
+    /** Creates the HTTP client and the request threads that this instance uses until teardown. */
+    @Setup
+    public void setup() {
+      httpClient = closeableHttpClientSupplier.get();
+      executor = Executors.newFixedThreadPool(maxConcurrentRequests);
+      inFlightBatches = new Semaphore(maxConcurrentRequests);
+      rateLimiter = RateLimiter.create(maxRequestsPerSecond);
+      pendingBatches = new ArrayDeque<>();
+    }
+
+    @Teardown
+    public void teardown() throws IOException {
+      executor.shutdownNow();
+      httpClient.close();
+    }
+
     /** Evaluates any buffered {@link Subdomain} objects upon completing the bundle. */
     @FinishBundle
     public void finishBundle(FinishBundleContext context) {
       if (!subdomainBuffer.isEmpty()) {
-        ImmutableSet<KV<Subdomain, ThreatMatch>> results = evaluateAndFlush();
-        results.forEach((kv) -> context.output(kv, Instant.now(), GlobalWindow.INSTANCE));
+        submitBatch();
+      }
+      while (!pendingBatches.isEmpty()) {
+        Futures.getUnchecked(pendingBatches.remove())
+            .forEach((kv) -> context.output(kv, Instant.now(), GlobalWindow.INSTANCE));
       }
     }
 
     /**
-     * Buffers {@link Subdomain} objects until we reach the batch size, then bulk-evaluate the URLs
-     * with the SafeBrowsing API.
+     * Buffers {@link Subdomain} objects until we reach the batch size, then submits the batch for
+     * evaluation with the SafeBrowsing API.
+     *
+     * <p>Blocks while {@code maxConcurrentRequests} batches are already being evaluated. Outputs
+     * the results of the batches that have completed so far.
      */
     @ProcessElement
     public void processElement(ProcessContext context) {
       Subdomain subdomain = context.element();
       subdomainBuffer.put(subdomain.domainName(), subdomain);
       if (subdomainBuffer.size() >= BATCH_SIZE) {
-        ImmutableSet<KV<Subdomain, ThreatMatch>> results = evaluateAndFlush();
-        results.forEach(context::output);
+        submitBatch();
+      }
+      while (!pendingBatches.isEmpty() && pendingBatches.peek().isDone()) {
+        Futures.getUnchecked(pendingBatches.remove()).forEach(context::output);
       }
     }
 
+    /** Submits all {@link Subdomain} objects in the buffer for evaluation, and flushes it. */
+    private void submitBatch() {
+      ImmutableMap<String, Subdomain> batch = ImmutableMap.copyOf(subdomainBuffer);
+      subdomainBuffer.clear();
+      inFlightBatches.acquireUninterruptibly();
+      pendingBatches.add(
+          executor.submit(
+              () -> {
+                try {
+                  return evaluate(batch);
+                } finally {
+                  inFlightBatches.release();
+                }
+              }));
+    }
+
     /**
-     * Evaluates all {@link Subdomain} objects in the buffer and returns a list of key-value pairs
-     * from {@link Subdomain} to its SafeBrowsing report.
+     * Evaluates a batch of {@link Subdomain} objects and returns a list of key-value pairs from
+     * {@link Subdomain} to its SafeBrowsing report.
      *
      * <p>If a {@link Subdomain} is safe according to the API, it will not emit a report.
      */
-    private ImmutableSet<KV<Subdomain, ThreatMatch>> evaluateAndFlush() {
+    private ImmutableSet<KV<Subdomain, ThreatMatch>> evaluate(
+        ImmutableMap<String, Subdomain> batch) {
       ImmutableSet.Builder<KV<Subdomain, ThreatMatch>> resultBuilder = new ImmutableSet.Builder<>();
       try {
-        URIBuilder uriBuilder = new URIBuilder(SAFE_BROWSING_URL);
+        URIBuilder uriBuilder = new URIBuilder(safeBrowsingUrl);
         // Add the API key param
         uriBuilder.addParameter("key", apiKey);
 
         HttpPost httpPost = new HttpPost(uriBuilder.build());
         httpPost.addHeader(HTTP.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
 
-        JSONObject requestBody = createRequestBody();
+        JSONObject requestBody = createRequestBody(batch);
         httpPost.setEntity(new ByteArrayEntity(requestBody.toString().getBytes(UTF_8)));
-        // Retry transient exceptions such as IOException
+        // Retry transient exceptions such as IOException, and exceeded quotas
         retrier.callWithRetry(
             () -> {
-              try (CloseableHttpClient client = closeableHttpClientSupplier.get();
-                  CloseableHttpResponse response = client.execute(httpPost)) {
-                processResponse(response, resultBuilder);
+              rateLimiter.acquire();
+              try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+                processResponse(response, batch, resultBuilder);
               }
             },
-            IOException.class);
+            IOException.class,
+            QuotaExceededException.class);
       } catch (URISyntaxException | JSONException e) {
         // Fail the pipeline on a parsing exception- this indicates the API likely changed.
         throw new RuntimeException("Caught parsing exception, failing pipeline.", e);
-      } finally {
-        // Flush the buffer
-        subdomainBuffer.clear();
       }
       return resultBuilder.build();
     }
 
     /** Creates a JSON object matching the request format for the SafeBrowsing API. */
-    private JSONObject createRequestBody() throws JSONException {
+    private static JSONObject createRequestBody(ImmutableMap<String, Subdomain> batch)
+        throws JSONException {
       // Accumulate all domain names to evaluate.
       JSONArray threatArray = new JSONArray();
-      for (String fullyQualifiedDomainName : subdomainBuffer.keySet()) {
+      for (String fullyQualifiedDomainName : batch.keySet()) {
         threatArray.put(new JSONObject().put("url", fullyQualifiedDomainName));
       }
       // Construct the JSON request body
@@ -211,9 +349,15 @@ public class SafeBrowsingTransforms {
      */
     private void processResponse(
         CloseableHttpResponse response,
+        ImmutableMap<String, Subdomain> batch,
         ImmutableSet.Builder<KV<Subdomain, ThreatMatch>> resultBuilder)
         throws JSONException, IOException {
       int statusCode = response.getStatusLine().getStatusCode();
+      if (statusCode == SC_TOO_MANY_REQUESTS || statusCode == SC_SERVICE_UNAVAILABLE) {
+        throttle();
+        throw new QuotaExceededException(statusCode);
+      }
+      recoverRate();
       if (statusCode != SC_OK) {
         logger.atWarning().log("Got unexpected status code %s from response", statusCode);
       } else {
@@ -231,7 +375,7 @@ public class SafeBrowsingTransforms {
           for (int i = 0; i < threatMatches.length(); i++) {
             JSONObject match = threatMatches.getJSONObject(i);
             String url = match.getJSONObject("threat").getString("url");
-            Subdomain subdomain = subdomainBuffer.get(url);
+            Subdomain subdomain = batch.get(url);
             resultBuilder.add(
                 KV.of(
                     subdomain,
@@ -240,5 +384,32 @@ public class SafeBrowsingTransforms {
         }
       }
     }
+
+    /** Halves the request rate, down to {@link #MIN_REQUESTS_PER_SECOND}. */
+    private void throttle() {
+      synchronized (rateLimiter) {
+        double rate = Math.max(MIN_REQUESTS_PER_SECOND, rateLimiter.getRate() / 2);
+        logger.atWarning().log("SafeBrowsing quota exceeded, throttling to %.2f requests/s", rate);
+        rateLimiter.setRate(rate);
+      }
+    }
+
+    /** Raises the request rate back towards {@link #maxRequestsPerSecond}. */
+    private void recoverRate() {
+      synchronized (rateLimiter) {
+        if (rateLimiter.getRate() < maxRequestsPerSecond) {
+          rateLimiter.setRate(
+              Math.min(maxRequestsPerSecond, rateLimiter.getRate() * RATE_RECOVERY_FACTOR));
+        }
+      }
+    }
+  }
+
+  /** Thrown when the SafeBrowsing API rejects a request because the quota is exceeded. */
+  static class QuotaExceededException extends RuntimeException {
+
+    QuotaExceededException(int statusCode) {
+      super(String.format("SafeBrowsing quota exceeded, got status code %d", statusCode));
+    }
   }
 }
@@ -222,7 +222,11 @@ public class Spec11Pipeline implements Serializable {
 
     @Provides
     EvaluateSafeBrowsingFn provideSafeBrowsingFn(Spec11PipelineOptions options, Retrier retrier) {
-      return new EvaluateSafeBrowsingFn(options.getSafeBrowsingApiKey(), retrier);
+      return new EvaluateSafeBrowsingFn(
+          options.getSafeBrowsingApiKey(),
+          retrier,
+          options.getSafeBrowsingMaxConcurrentRequests(),
+          options.getSafeBrowsingMaxRequestsPerSecond());
     }
 
     @Provides
@@ -15,6 +15,7 @@
 package google.registry.beam.spec11;
 
 import google.registry.beam.common.RegistryPipelineOptions;
+import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 
 /** Custom options for running the spec11 pipeline. */
@@ -30,6 +31,20 @@ public interface Spec11PipelineOptions extends RegistryPipelineOptions {
 
   void setSafeBrowsingApiKey(String value);
 
+  @Description("The maximum number of SafeBrowsing requests in flight per worker thread.")
+  @Default.Integer(SafeBrowsingTransforms.DEFAULT_MAX_CONCURRENT_REQUESTS)
+  int getSafeBrowsingMaxConcurrentRequests();
+
+  void setSafeBrowsingMaxConcurrentRequests(int value);
+
+  @Description(
+      "The maximum rate of SafeBrowsing requests per worker thread. The rate is lowered"
+          + " automatically while the API reports that the quota is exceeded.")
+  @Default.Double(SafeBrowsingTransforms.DEFAULT_MAX_REQUESTS_PER_SECOND)
+  double getSafeBrowsingMaxRequestsPerSecond();
+
+  void setSafeBrowsingMaxRequestsPerSecond(double value);
+
   @Description("The GCS bucket URL for Spec11 reports to be uploaded.")
   String getReportingBucketUrl();
 
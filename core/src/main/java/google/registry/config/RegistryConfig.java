@@ -29,6 +29,7 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import dagger.Module;
@@ -396,6 +397,14 @@ public final class RegistryConfig {
       return config.cloudSql.instanceConnectionName;
     }
 
+    @Provides
+    @Config("cloudSqlReplicaInstanceConnectionName")
+    public static Optional<String> providesCloudSqlReplicaInstanceConnectionName(
+        RegistryConfigSettings config) {
+      return Optional.ofNullable(
+          Strings.emptyToNull(config.cloudSql.replicaInstanceConnectionName));
+    }
+
     @Provides
     @Config("cloudSqlDbInstanceName")
     public static String providesCloudSqlDbInstance(RegistryConfigSettings config) {
@@ -797,6 +806,18 @@ public final class RegistryConfig {
       return URI.create(config.rde.uploadUrl);
     }
 
+    /**
+     * Fraction of the resources in a deposit whose XML is validated against the schema, unless
+     * staging is lenient.
+     *
+     * @see google.registry.rde.RdeMarshaller
+     */
+    @Provides
+    @Config("rdeValidationSampleRate")
+    public static double provideRdeValidationSampleRate(RegistryConfigSettings config) {
+      return config.rde.validationSampleRate;
+    }
+
     /**
      * Whether or not the registrar console is enabled.
      *
@@ -1012,6 +1033,25 @@ public final class RegistryConfig {
       return Duration.standardSeconds(config.monitoring.writeIntervalSeconds);
     }
 
+    /**
+     * The fraction of EPP responses that are logged, by command name (e.g. {@code DomainInfo}).
+     *
+     * @see google.registry.flows.AsyncEppLogger
+     */
+    @Provides
+    @Config("eppResponseLogSampleRates")
+    public static ImmutableMap<String, Double> provideEppResponseLogSampleRates(
+        RegistryConfigSettings config) {
+      return ImmutableMap.copyOf(config.monitoring.eppResponseLogSampleRates);
+    }
+
+    /** The fraction of EPP responses that are logged, for commands without a specific rate. */
+    @Provides
+    @Config("eppResponseLogDefaultSampleRate")
+    public static double provideEppResponseLogDefaultSampleRate(RegistryConfigSettings config) {
+      return config.monitoring.eppResponseLogDefaultSampleRate;
+    }
+
     /**
      * The global automatic transfer length for contacts. After this amount of time has elapsed, the
      * transfer is automatically approved.
@@ -1076,6 +1116,17 @@ public final class RegistryConfig {
       return config.registryPolicy.greetingServerId;
     }
 
+    /**
+     * Whether EPP sessions are carried in signed session tokens instead of the servlet session.
+     *
+     * @see google.registry.flows.SignedSessionMetadata
+     */
+    @Provides
+    @Config("eppSignedSessionTokensEnabled")
+    public static boolean provideEppSignedSessionTokensEnabled(RegistryConfigSettings config) {
+      return config.registryPolicy.eppSignedSessionTokensEnabled;
+    }
+
     @Provides
     @Config("activeKeyring")
     public static String provideKeyring(RegistryConfigSettings config) {
@@ -1487,6 +1538,19 @@ public final class RegistryConfig {
     return CONFIG_SETTINGS.get().hibernate.hikariIdleTimeout;
   }
 
+  /** Returns the minimum execution time of a SQL statement for it to be logged as slow. */
+  public static Duration getHibernateSlowQueryThreshold() {
+    return Duration.millis(CONFIG_SETTINGS.get().hibernate.slowQueryThresholdMillis);
+  }
+
+  /**
+   * Returns how stale the data read from the Cloud SQL read replica may be, for callers that do
+   * not specify their own bound.
+   */
+  public static Duration getCloudSqlReplicaMaxStaleness() {
+    return Duration.millis(CONFIG_SETTINGS.get().cloudSql.replicaMaxStalenessMillis);
+  }
+
   /**
    * Returns whether to replicate cloud SQL transactions to datastore.
    *
@@ -1502,6 +1566,35 @@ public final class RegistryConfig {
     CONFIG_SETTINGS.get().cloudSql.replicateTransactions = replicateTransactions;
   }
 
+  /**
+   * Returns whether DNS refresh requests are queued in Cloud SQL rather than in the dns-pull queue.
+   *
+   * @see google.registry.dns.SqlDnsQueue
+   */
+  public static boolean getCloudSqlDnsRefreshQueueEnabled() {
+    return CONFIG_SETTINGS.get().cloudSql.dnsRefreshQueueEnabled;
+  }
+
+  @VisibleForTesting
+  public static void overrideCloudSqlDnsRefreshQueueEnabled(boolean dnsRefreshQueueEnabled) {
+    CONFIG_SETTINGS.get().cloudSql.dnsRefreshQueueEnabled = dnsRefreshQueueEnabled;
+  }
+
+  /**
+   * Returns whether ICANN report counters are maintained in Cloud SQL as flows execute.
+   *
+   * @see google.registry.model.reporting.IcannReportingCounterDao
+   */
+  public static boolean getCloudSqlIcannReportingCountersEnabled() {
+    return CONFIG_SETTINGS.get().cloudSql.icannReportingCountersEnabled;
+  }
+
+  @VisibleForTesting
+  public static void overrideCloudSqlIcannReportingCountersEnabled(
+      boolean icannReportingCountersEnabled) {
+    CONFIG_SETTINGS.get().cloudSql.icannReportingCountersEnabled = icannReportingCountersEnabled;
+  }
+
   /** Returns the roid suffix to be used for the roids of all contacts and hosts. */
   public static String getContactAndHostRoidSuffix() {
     return CONFIG_SETTINGS.get().registryPolicy.contactAndHostRoidSuffix;
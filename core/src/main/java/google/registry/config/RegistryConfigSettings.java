@@ -85,6 +85,7 @@ public class RegistryConfigSettings {
     public String dnsCountQueryCoordinatorClass;
     public int contactAutomaticTransferDays;
     public String greetingServerId;
+    public boolean eppSignedSessionTokensEnabled;
     public List<String> registrarChangesNotificationEmailAddresses;
     public String defaultRegistrarWhoisServer;
     public String tmchCaMode;
@@ -118,6 +119,7 @@ public class RegistryConfigSettings {
     public String hikariMinimumIdle;
     public String hikariMaximumPoolSize;
     public String hikariIdleTimeout;
+    public int slowQueryThresholdMillis;
   }
 
   /** Configuration for Cloud SQL. */
@@ -126,7 +128,11 @@ public class RegistryConfigSettings {
     // TODO(05012021): remove username field after it is removed from all yaml files.
     public String username;
     public String instanceConnectionName;
+    public String replicaInstanceConnectionName;
+    public int replicaMaxStalenessMillis;
     public boolean replicateTransactions;
+    public boolean dnsRefreshQueueEnabled;
+    public boolean icannReportingCountersEnabled;
   }
 
   /** Configuration for Apache Beam (Cloud Dataflow). */
@@ -169,6 +175,7 @@ public class RegistryConfigSettings {
     public String reportUrlPrefix;
     public String uploadUrl;
     public String sshIdentityEmailAddress;
+    public double validationSampleRate;
   }
 
   /** Configuration for the web-based registrar console. */
@@ -192,6 +199,8 @@ public class RegistryConfigSettings {
     public int stackdriverMaxQps;
     public int stackdriverMaxPointsPerRequest;
     public int writeIntervalSeconds;
+    public Map<String, Double> eppResponseLogSampleRates;
+    public double eppResponseLogDefaultSampleRate;
   }
 
   /** Miscellaneous configuration that doesn't quite fit in anywhere else. */
@@ -24,6 +24,7 @@ import com.google.monitoring.metrics.FibonacciFitter;
 import com.google.monitoring.metrics.IncrementableMetric;
 import com.google.monitoring.metrics.LabelDescriptor;
 import com.google.monitoring.metrics.MetricRegistryImpl;
+import com.google.monitoring.metrics.SettableMetric;
 import google.registry.config.RegistryEnvironment;
 import javax.inject.Inject;
 import org.joda.time.Duration;
@@ -60,6 +61,9 @@ public class DnsMetrics {
           LabelDescriptor.create("status", "Whether the publish succeeded, or why it failed."),
           LabelDescriptor.create("dnsWriter", "The DnsWriter used."));
 
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_FOR_QUEUE =
+      ImmutableSet.of(LabelDescriptor.create("tld", "TLD"));
+
   // Finer-grained fitter than the DEFAULT_FITTER, allows values between 100 ms and just over 29
   // hours.
   private static final DistributionFitter EXPONENTIAL_FITTER =
@@ -182,6 +186,24 @@ public class DnsMetrics {
               LABEL_DESCRIPTORS_FOR_LATENCY,
               EXPONENTIAL_FITTER);
 
+  private static final SettableMetric<Long> queueDepth =
+      MetricRegistryImpl.getDefault()
+          .newSettableMetric(
+              "/dns/queue/depth",
+              "Number of pending DNS refresh requests in the Cloud SQL queue",
+              "count",
+              LABEL_DESCRIPTORS_FOR_QUEUE,
+              Long.class);
+
+  private static final SettableMetric<Long> queueOldestRequestAge =
+      MetricRegistryImpl.getDefault()
+          .newSettableMetric(
+              "/dns/queue/oldest_request_age",
+              "Time elapsed since the oldest pending DNS refresh request was due",
+              "milliseconds",
+              LABEL_DESCRIPTORS_FOR_QUEUE,
+              Long.class);
+
   @Inject
   DnsMetrics() {}
 
@@ -251,6 +273,16 @@ public class DnsMetrics {
     totalBatchSizePerItemDist.record(batchSize, batchSize, tld, status.name(), dnsWriter);
   }
 
+  /**
+   * Records the number of pending refresh requests of a TLD, and the age of the oldest one.
+   *
+   * <p>The age is zero if there are no pending requests.
+   */
+  void recordQueueStats(String tld, long depth, Duration oldestRequestAge) {
+    queueDepth.set(depth, tld);
+    queueOldestRequestAge.set(oldestRequestAge.getMillis(), tld);
+  }
+
   void recordActionResult(
       String tld,
       String dnsWriter,
@@ -37,6 +37,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.InternetDomainName;
 import com.google.common.util.concurrent.RateLimiter;
+import google.registry.config.RegistryConfig;
 import google.registry.dns.DnsConstants.TargetType;
 import google.registry.model.registry.Registries;
 import google.registry.util.Clock;
@@ -61,6 +62,10 @@ import org.joda.time.Duration;
  * {@link ReadDnsQueueAction}, which is run as a cron job with running time shorter than the cron
  * repeat time - meaning there should never be two instances running at once.
  *
+ * <p>If {@link RegistryConfig#getCloudSqlDnsRefreshQueueEnabled} is set, refresh requests are
+ * added to the {@link SqlDnsQueue} instead, which is read by {@link ReadDnsQueueAction} without any
+ * rate limit. The task-queue specific methods of this class must not be used in that case.
+ *
  * @see google.registry.config.RegistryConfig.ConfigModule#provideReadDnsQueueRuntime
  */
 public class DnsQueue {
@@ -69,6 +74,8 @@ public class DnsQueue {
 
   private final Queue queue;
 
+  private final SqlDnsQueue sqlDnsQueue;
+
   final Clock clock;
 
   // Queue.leaseTasks is limited to 10 requests per second as per
@@ -78,8 +85,9 @@ public class DnsQueue {
   private static final RateLimiter rateLimiter = RateLimiter.create(9);
 
   @Inject
-  public DnsQueue(@Named(DNS_PULL_QUEUE_NAME) Queue queue, Clock clock) {
+  public DnsQueue(@Named(DNS_PULL_QUEUE_NAME) Queue queue, SqlDnsQueue sqlDnsQueue, Clock clock) {
     this.queue = queue;
+    this.sqlDnsQueue = sqlDnsQueue;
     this.clock = clock;
   }
 
@@ -91,25 +99,35 @@ public class DnsQueue {
    * reducer classes in mapreduces that need to be Serializable.
    */
   public static DnsQueue create() {
-    return new DnsQueue(getQueue(DNS_PULL_QUEUE_NAME), new SystemClock());
+    Clock clock = new SystemClock();
+    return new DnsQueue(getQueue(DNS_PULL_QUEUE_NAME), new SqlDnsQueue(clock), clock);
   }
 
   @VisibleForTesting
   public static DnsQueue createForTesting(Clock clock) {
-    return new DnsQueue(getQueue(DNS_PULL_QUEUE_NAME), clock);
+    return new DnsQueue(getQueue(DNS_PULL_QUEUE_NAME), new SqlDnsQueue(clock), clock);
   }
 
   @NonFinalForTesting
   @VisibleForTesting
   long leaseTasksBatchSize = QueueConstants.maxLeaseCount();
 
+  /** Returns whether refresh requests are added to the {@link SqlDnsQueue}. */
+  public static boolean isSqlDnsQueueEnabled() {
+    return RegistryConfig.getCloudSqlDnsRefreshQueueEnabled();
+  }
+
   /** Enqueues the given task type with the given target name to the DNS queue. */
-  private TaskHandle addToQueue(
+  private void addToQueue(
       TargetType targetType, String targetName, String tld, Duration countdown) {
+    if (isSqlDnsQueueEnabled()) {
+      sqlDnsQueue.enqueue(targetType, targetName, tld, countdown);
+      return;
+    }
     logger.atInfo().log(
         "Adding task type=%s, target=%s, tld=%s to pull queue %s (%d tasks currently on queue)",
         targetType, targetName, tld, DNS_PULL_QUEUE_NAME, queue.fetchStatistics().getNumTasks());
-    return queue.add(
+    queue.add(
         TaskOptions.Builder.withDefaults()
             .method(Method.PULL)
             .countdownMillis(countdown.getMillis())
@@ -120,21 +138,21 @@ public class DnsQueue {
   }
 
   /** Adds a task to the queue to refresh the DNS information for the specified subordinate host. */
-  public TaskHandle addHostRefreshTask(String hostName) {
+  public void addHostRefreshTask(String hostName) {
     Optional<InternetDomainName> tld = Registries.findTldForName(InternetDomainName.from(hostName));
     checkArgument(
         tld.isPresent(), String.format("%s is not a subordinate host to a known tld", hostName));
-    return addToQueue(TargetType.HOST, hostName, tld.get().toString(), Duration.ZERO);
+    addToQueue(TargetType.HOST, hostName, tld.get().toString(), Duration.ZERO);
   }
 
   /** Enqueues a task to refresh DNS for the specified domain now. */
-  public TaskHandle addDomainRefreshTask(String domainName) {
-    return addDomainRefreshTask(domainName, Duration.ZERO);
+  public void addDomainRefreshTask(String domainName) {
+    addDomainRefreshTask(domainName, Duration.ZERO);
   }
 
   /** Enqueues a task to refresh DNS for the specified domain at some point in the future. */
-  public TaskHandle addDomainRefreshTask(String domainName, Duration countdown) {
-    return addToQueue(
+  public void addDomainRefreshTask(String domainName, Duration countdown) {
+    addToQueue(
         TargetType.DOMAIN,
         domainName,
         assertTldExists(getTldFromDomainName(domainName)),
@@ -142,8 +160,8 @@ public class DnsQueue {
   }
 
   /** Adds a task to the queue to refresh the DNS information for the specified zone. */
-  public TaskHandle addZoneRefreshTask(String zoneName) {
-    return addToQueue(TargetType.ZONE, zoneName, zoneName, Duration.ZERO);
+  public void addZoneRefreshTask(String zoneName) {
+    addToQueue(TargetType.ZONE, zoneName, zoneName, Duration.ZERO);
   }
 
   /**
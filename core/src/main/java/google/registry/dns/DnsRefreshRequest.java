@@ -0,0 +1,103 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns;
+
+import google.registry.dns.DnsConstants.TargetType;
+import google.registry.model.ImmutableObject;
+import google.registry.schema.replay.SqlOnlyEntity;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import org.joda.time.DateTime;
+
+/**
+ * A pending request to refresh the DNS records of a domain, host or zone, stored in Cloud SQL.
+ *
+ * <p>There is at most one row per target, so repeated refreshes of the same name are coalesced
+ * into a single request until it is processed. Rows are written and leased by {@link SqlDnsQueue}.
+ */
+@Entity
+@Table(
+    indexes = {
+      @Index(name = "dnsrefreshrequest_type_name_idx", columnList = "type, name", unique = true),
+      @Index(name = "dnsrefreshrequest_tld_request_time_idx", columnList = "tld, requestTime")
+    })
+public class DnsRefreshRequest extends ImmutableObject implements SqlOnlyEntity {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  Long id;
+
+  @Column(nullable = false)
+  @Enumerated(EnumType.STRING)
+  TargetType type;
+
+  @Column(nullable = false)
+  String name;
+
+  @Column(nullable = false)
+  String tld;
+
+  /** The time after which the request may be processed, i.e. its earliest pending refresh. */
+  @Column(nullable = false)
+  DateTime requestTime;
+
+  /**
+   * The time of the latest refresh that was coalesced into this request.
+   *
+   * <p>A processed request is only removed if no newer refresh arrived while it was leased.
+   */
+  @Column(nullable = false)
+  DateTime lastRequestTime;
+
+  /** The time at which the current lease expires, or null if the request is not leased. */
+  @Nullable DateTime leaseExpirationTime;
+
+  public long getId() {
+    return id;
+  }
+
+  public TargetType getType() {
+    return type;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getTld() {
+    return tld;
+  }
+
+  public DateTime getRequestTime() {
+    return requestTime;
+  }
+
+  public DateTime getLastRequestTime() {
+    return lastRequestTime;
+  }
+
+  public Optional<DateTime> getLeaseExpirationTime() {
+    return Optional.ofNullable(leaseExpirationTime);
+  }
+}
@@ -37,6 +37,7 @@ import com.google.appengine.api.taskqueue.TaskHandle;
 import com.google.appengine.api.taskqueue.TaskOptions;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
@@ -47,6 +48,7 @@ import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import google.registry.config.RegistryConfig.Config;
 import google.registry.dns.DnsConstants.TargetType;
+import google.registry.dns.SqlDnsQueue.TldQueueStats;
 import google.registry.model.registry.Registries;
 import google.registry.model.registry.Registry;
 import google.registry.request.Action;
@@ -57,10 +59,12 @@ import google.registry.util.TaskQueueUtils;
 import java.io.UnsupportedEncodingException;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -70,6 +74,9 @@ import org.joda.time.Duration;
 /**
  * Action for fanning out DNS refresh tasks by TLD, using data taken from the DNS pull queue.
  *
+ * <p>If the {@link SqlDnsQueue} is enabled, the refresh requests are leased from it instead, one
+ * TLD at a time, and the depth and age of the queue of each TLD are exported as metrics.
+ *
  * <h3>Parameters Reference</h3>
  *
  * <ul>
@@ -107,6 +114,8 @@ public final class ReadDnsQueueAction implements Runnable {
   @Inject @Parameter(PARAM_JITTER_SECONDS) Optional<Integer> jitterSeconds;
   @Inject Clock clock;
   @Inject DnsQueue dnsQueue;
+  @Inject SqlDnsQueue sqlDnsQueue;
+  @Inject DnsMetrics dnsMetrics;
   @Inject HashFunction hashFunction;
   @Inject TaskQueueUtils taskQueueUtils;
   @Inject ReadDnsQueueAction() {}
@@ -137,6 +146,10 @@ public final class ReadDnsQueueAction implements Runnable {
   /** Leases all tasks from the pull queue and creates per-tld update actions for them. */
   @Override
   public void run() {
+    if (DnsQueue.isSqlDnsQueueEnabled()) {
+      readSqlDnsQueue();
+      return;
+    }
     DateTime requestedEndTime = clock.nowUtc().plus(requestedMaximumDuration);
     ImmutableSet<String> tlds = Registries.getTlds();
     while (requestedEndTime.isAfterNow()) {
@@ -151,6 +164,81 @@ public final class ReadDnsQueueAction implements Runnable {
     }
   }
 
+  /**
+   * Leases all available requests from the {@link SqlDnsQueue} and creates per-tld update actions
+   * for them.
+   *
+   * <p>Requests of paused and unknown TLDs are simply not leased, so there is nothing to return to
+   * the queue. TLDs are read one batch at a time in turn, until they are all drained or the
+   * requested duration has passed, so that a TLD with a large backlog doesn't delay the others.
+   */
+  private void readSqlDnsQueue() {
+    DateTime requestedEndTime = clock.nowUtc().plus(requestedMaximumDuration);
+    int batchSize = (int) dnsQueue.getLeaseTasksBatchSize();
+    ImmutableSet<String> tlds = Registries.getTlds();
+    Set<String> tldsToRead = new LinkedHashSet<>();
+    for (String tld : tlds) {
+      if (Registry.get(tld).getDnsPaused()) {
+        logger.atInfo().log("The DNS refresh queue is paused for TLD %s.", tld);
+      } else {
+        tldsToRead.add(tld);
+      }
+    }
+    while (!tldsToRead.isEmpty() && clock.nowUtc().isBefore(requestedEndTime)) {
+      for (String tld : ImmutableList.copyOf(tldsToRead)) {
+        if (readSqlDnsQueueBatch(tld, batchSize) < batchSize) {
+          tldsToRead.remove(tld);
+        }
+      }
+    }
+    recordQueueStats(tlds);
+  }
+
+  /** Leases and dispatches a single batch of requests of the given TLD, returning its size. */
+  private int readSqlDnsQueueBatch(String tld, int batchSize) {
+    DateTime leaseTime = clock.nowUtc();
+    ImmutableList<DnsRefreshRequest> requests =
+        sqlDnsQueue.leaseRequests(
+            tld, leaseTime, requestedMaximumDuration.plus(LEASE_PADDING), batchSize);
+    logger.atInfo().log("Leased %d DNS refresh requests for TLD %s.", requests.size(), tld);
+    if (requests.isEmpty()) {
+      return 0;
+    }
+    ImmutableSetMultimap.Builder<String, RefreshItem> refreshItemsByTld =
+        new ImmutableSetMultimap.Builder<String, RefreshItem>().orderValuesBy(Ordering.natural());
+    for (DnsRefreshRequest request : requests) {
+      if (request.getType() == TargetType.ZONE) {
+        logger.atSevere().log(
+            "Discarding DNS refresh request of type ZONE for %s.", request.getName());
+      } else {
+        refreshItemsByTld.put(
+            tld,
+            RefreshItem.create(request.getType(), request.getName(), request.getRequestTime()));
+      }
+    }
+    bucketRefreshItems(refreshItemsByTld.build());
+    sqlDnsQueue.completeRequests(requests, leaseTime);
+    return requests.size();
+  }
+
+  /** Exports the depth and age of the {@link SqlDnsQueue} of each TLD. */
+  private void recordQueueStats(ImmutableSet<String> tlds) {
+    ImmutableMap<String, TldQueueStats> queueStats = sqlDnsQueue.getQueueStats();
+    DateTime now = clock.nowUtc();
+    for (String tld : tlds) {
+      TldQueueStats stats = queueStats.get(tld);
+      if (stats == null) {
+        dnsMetrics.recordQueueStats(tld, 0, Duration.ZERO);
+      } else {
+        Duration age =
+            stats.oldestRequestTime().isBefore(now)
+                ? new Duration(stats.oldestRequestTime(), now)
+                : Duration.ZERO;
+        dnsMetrics.recordQueueStats(tld, stats.depth(), age);
+      }
+    }
+  }
+
   /** A set of tasks grouped based on the action to take on them. */
   @AutoValue
   abstract static class ClassifiedTasks {
@@ -0,0 +1,197 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import google.registry.dns.DnsConstants.TargetType;
+import google.registry.util.Clock;
+import java.util.Collection;
+import javax.inject.Inject;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * A queue of DNS refresh requests stored in the {@link DnsRefreshRequest} table in Cloud SQL.
+ *
+ * <p>Unlike the App Engine dns-pull queue, this queue has no lease rate limit, and can be read
+ * by several readers at once: each reader leases a batch of requests of a single TLD using {@code
+ * SELECT ... FOR UPDATE SKIP LOCKED}, so concurrent readers never block on, or receive, the same
+ * requests.
+ *
+ * <p>Requests for a name that is already queued are coalesced into the existing row. If a name is
+ * refreshed again while its request is leased, the request is kept in the queue when the lease is
+ * completed, so that the newer change is published too.
+ */
+public class SqlDnsQueue {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String ENQUEUE_QUERY =
+      "INSERT INTO \"DnsRefreshRequest\" (type, name, tld, request_time, last_request_time)"
+          + " VALUES (:type, :name, :tld, :requestTime, :requestTime)"
+          + " ON CONFLICT (type, name) DO UPDATE SET"
+          + " request_time = LEAST(\"DnsRefreshRequest\".request_time, EXCLUDED.request_time),"
+          + " last_request_time ="
+          + " GREATEST(\"DnsRefreshRequest\".last_request_time, EXCLUDED.last_request_time)";
+
+  private static final String LEASE_QUERY =
+      "SELECT * FROM \"DnsRefreshRequest\" WHERE tld = :tld AND request_time <= :now"
+          + " AND (lease_expiration_time IS NULL OR lease_expiration_time <= :now)"
+          + " ORDER BY request_time LIMIT :limit FOR UPDATE SKIP LOCKED";
+
+  private final Clock clock;
+
+  @Inject
+  public SqlDnsQueue(Clock clock) {
+    this.clock = clock;
+  }
+
+  /** Statistics about the pending requests of a single TLD. */
+  @AutoValue
+  public abstract static class TldQueueStats {
+
+    /** The number of requests in the queue, whether leased or not. */
+    public abstract long depth();
+
+    /** The request time of the oldest request in the queue. */
+    public abstract DateTime oldestRequestTime();
+
+    static TldQueueStats create(long depth, DateTime oldestRequestTime) {
+      return new AutoValue_SqlDnsQueue_TldQueueStats(depth, oldestRequestTime);
+    }
+  }
+
+  /**
+   * Adds a refresh request for the given target, to be processed after the given countdown.
+   *
+   * <p>If a request for the same target is already queued, the two are coalesced.
+   */
+  void enqueue(TargetType type, String name, String tld, Duration countdown) {
+    DateTime requestTime = clock.nowUtc().plus(countdown);
+    jpaTm()
+        .transact(
+            () ->
+                jpaTm()
+                    .getEntityManager()
+                    .createNativeQuery(ENQUEUE_QUERY)
+                    .setParameter("type", type.name())
+                    .setParameter("name", name)
+                    .setParameter("tld", tld)
+                    .setParameter("requestTime", requestTime.toDate())
+                    .executeUpdate());
+    logger.atInfo().log("Added DNS refresh request type=%s, target=%s, tld=%s.", type, name, tld);
+  }
+
+  /**
+   * Leases up to {@code batchSize} of the oldest available requests of the given TLD.
+   *
+   * <p>Requests leased by another reader are skipped rather than waited for. The leased requests
+   * won't be returned again until {@code leaseDuration} has passed, unless they are completed
+   * first with {@link #completeRequests}, which must be given the same {@code leaseTime}.
+   */
+  ImmutableList<DnsRefreshRequest> leaseRequests(
+      String tld, DateTime leaseTime, Duration leaseDuration, int batchSize) {
+    checkArgument(batchSize > 0, "Batch size must be positive, got %s", batchSize);
+    return jpaTm()
+        .transact(
+            () -> {
+              @SuppressWarnings("unchecked")
+              ImmutableList<DnsRefreshRequest> requests =
+                  ImmutableList.copyOf(
+                      jpaTm()
+                          .getEntityManager()
+                          .createNativeQuery(LEASE_QUERY, DnsRefreshRequest.class)
+                          .setParameter("tld", tld)
+                          .setParameter("now", leaseTime.toDate())
+                          .setParameter("limit", batchSize)
+                          .getResultList());
+              if (!requests.isEmpty()) {
+                jpaTm()
+                    .query(
+                        "UPDATE DnsRefreshRequest SET leaseExpirationTime = :leaseExpirationTime"
+                            + " WHERE id IN :ids")
+                    .setParameter("leaseExpirationTime", leaseTime.plus(leaseDuration))
+                    .setParameter("ids", getIds(requests))
+                    .executeUpdate();
+              }
+              return requests;
+            });
+  }
+
+  /**
+   * Removes processed requests from the queue.
+   *
+   * <p>Requests that were refreshed again after {@code leaseTime}, or whose latest refresh is
+   * scheduled for later, are kept in the queue and made available again at that later time.
+   */
+  void completeRequests(Collection<DnsRefreshRequest> requests, DateTime leaseTime) {
+    if (requests.isEmpty()) {
+      return;
+    }
+    ImmutableList<Long> ids = getIds(requests);
+    jpaTm()
+        .transact(
+            () -> {
+              jpaTm()
+                  .query(
+                      "DELETE FROM DnsRefreshRequest WHERE id IN :ids"
+                          + " AND lastRequestTime <= :leaseTime")
+                  .setParameter("ids", ids)
+                  .setParameter("leaseTime", leaseTime)
+                  .executeUpdate();
+              int kept =
+                  jpaTm()
+                      .query(
+                          "UPDATE DnsRefreshRequest SET leaseExpirationTime = NULL,"
+                              + " requestTime = lastRequestTime WHERE id IN :ids")
+                      .setParameter("ids", ids)
+                      .executeUpdate();
+              if (kept > 0) {
+                logger.atInfo().log(
+                    "Keeping %d DNS refresh requests that were refreshed again.", kept);
+              }
+            });
+  }
+
+  /** Returns the depth and age of the queue for each TLD with pending requests. */
+  ImmutableMap<String, TldQueueStats> getQueueStats() {
+    return jpaTm()
+        .transact(
+            () ->
+                jpaTm()
+                    .query(
+                        "SELECT tld, COUNT(*), MIN(requestTime) FROM DnsRefreshRequest"
+                            + " GROUP BY tld",
+                        Object[].class)
+                    .getResultStream()
+                    .collect(
+                        toImmutableMap(
+                            row -> (String) row[0],
+                            row ->
+                                TldQueueStats.create((Long) row[1], (DateTime) row[2]))));
+  }
+
+  private static ImmutableList<Long> getIds(Collection<DnsRefreshRequest> requests) {
+    return requests.stream().map(DnsRefreshRequest::getId).collect(toImmutableList());
+  }
+}
@@ -0,0 +1,140 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.clouddns;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import google.registry.util.Sleeper;
+import java.io.IOException;
+import javax.annotation.concurrent.ThreadSafe;
+import org.joda.time.Duration;
+
+/**
+ * Limits the number of concurrent Cloud DNS API calls, backing off when the API reports that a
+ * quota was exceeded.
+ *
+ * <p>The limit is adjusted with additive increase and multiplicative decrease: every successful
+ * call raises it by {@code 1 / limit}, up to the configured maximum, and every quota error halves
+ * it. Calls that fail with a quota error are retried after an exponential backoff, up to {@link
+ * #MAX_ATTEMPTS} times.
+ *
+ * <p>A single instance should be shared by all writers of the process, since the quotas are
+ * enforced per project.
+ */
+@ThreadSafe
+class AdaptiveConcurrencyLimiter {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  @VisibleForTesting static final int MAX_ATTEMPTS = 5;
+
+  private static final Duration INITIAL_BACKOFF = Duration.millis(500);
+
+  private static final ImmutableSet<String> QUOTA_EXCEEDED_REASONS =
+      ImmutableSet.of("rateLimitExceeded", "userRateLimitExceeded", "quotaExceeded");
+
+  /** An API call to run under the limit. */
+  interface ApiCall<T> {
+    T execute() throws IOException;
+  }
+
+  private final int maxLimit;
+  private final Sleeper sleeper;
+
+  private double limit;
+  private int inFlight;
+
+  AdaptiveConcurrencyLimiter(int maxLimit, Sleeper sleeper) {
+    checkArgument(maxLimit > 0, "Maximum concurrency must be positive, got %s", maxLimit);
+    this.maxLimit = maxLimit;
+    this.sleeper = sleeper;
+    this.limit = maxLimit;
+  }
+
+  /** Runs the given call once a slot is available, retrying it on quota errors. */
+  <T> T call(ApiCall<T> apiCall) throws IOException {
+    Duration backoff = INITIAL_BACKOFF;
+    for (int attempt = 1; ; attempt++) {
+      acquire();
+      try {
+        T result = apiCall.execute();
+        onSuccess();
+        return result;
+      } catch (GoogleJsonResponseException e) {
+        if (!isQuotaExceeded(e)) {
+          throw e;
+        }
+        onQuotaExceeded();
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+        logger.atWarning().log(
+            "Cloud DNS quota exceeded, retrying in %s with a concurrency limit of %d.",
+            backoff, getLimit());
+      } finally {
+        release();
+      }
+      sleeper.sleepUninterruptibly(backoff);
+      backoff = backoff.multipliedBy(2);
+    }
+  }
+
+  /** Returns the current number of calls that may run at the same time. */
+  synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  private synchronized void acquire() {
+    while (inFlight >= (int) limit) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a Cloud DNS call slot", e);
+      }
+    }
+    inFlight++;
+  }
+
+  private synchronized void release() {
+    inFlight--;
+    notifyAll();
+  }
+
+  private synchronized void onSuccess() {
+    limit = Math.min(maxLimit, limit + 1 / limit);
+  }
+
+  private synchronized void onQuotaExceeded() {
+    limit = Math.max(1, limit / 2);
+  }
+
+  private static boolean isQuotaExceeded(GoogleJsonResponseException e) {
+    if (e.getStatusCode() == 429) {
+      return true;
+    }
+    GoogleJsonError details = e.getDetails();
+    return e.getStatusCode() == 403
+        && details != null
+        && details.getErrors() != null
+        && details.getErrors().stream()
+            .anyMatch(error -> QUOTA_EXCEEDED_REASONS.contains(error.getReason()));
+  }
+}
@@ -15,6 +15,8 @@
 package google.registry.dns.writer.clouddns;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
 import static google.registry.util.DomainNameUtils.getSecondLevelDomain;
@@ -32,6 +34,7 @@ import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.InternetDomainName;
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import google.registry.config.RegistryConfig.Config;
 import google.registry.dns.writer.BaseDnsWriter;
 import google.registry.dns.writer.DnsWriter;
@@ -48,6 +51,7 @@ import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -88,6 +92,8 @@ public class CloudDnsWriter extends BaseDnsWriter {
   private final String projectId;
   private final String zoneName;
   private final Dns dnsConnection;
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+  private final int maxRrsetsPerChange;
   private final HashMap<String, ImmutableSet<ResourceRecordSet>> desiredRecords = new HashMap<>();
 
   @Inject
@@ -100,6 +106,8 @@ public class CloudDnsWriter extends BaseDnsWriter {
       @Config("dnsDefaultDsTtl") Duration defaultDsTtl,
       @Named("cloudDns") RateLimiter rateLimiter,
       @Named("cloudDnsNumThreads") int numThreads,
+      @Named("cloudDnsMaxRrsetsPerChange") int maxRrsetsPerChange,
+      AdaptiveConcurrencyLimiter concurrencyLimiter,
       Clock clock,
       Retrier retrier) {
     this.dnsConnection = dnsConnection;
@@ -112,6 +120,8 @@ public class CloudDnsWriter extends BaseDnsWriter {
     this.clock = clock;
     this.retrier = retrier;
     this.numThreads = numThreads;
+    this.maxRrsetsPerChange = maxRrsetsPerChange;
+    this.concurrencyLimiter = concurrencyLimiter;
   }
 
   /** Publish the domain and all subordinate hosts. */
@@ -264,9 +274,11 @@ public class CloudDnsWriter extends BaseDnsWriter {
    *
    * <p>The zone for the TLD must exist first in Cloud DNS and must be DNSSEC enabled.
    *
-   * <p>The relevant resource records (including those of all subordinate hosts) will be retrieved
-   * and the operation will be retried until the state of the retrieved zone data matches the
-   * representation built via this writer.
+   * <p>The current resource records of every name (including those of all subordinate hosts) are
+   * read from Cloud DNS, and only the names whose records differ are changed. The changes are
+   * batched into as few Cloud DNS changes as the per-change quotas allow, and all reads and changes
+   * go through the shared {@link AdaptiveConcurrencyLimiter}. The operation will be retried until
+   * the state of the zone data matches the representation built via this writer.
    */
   @Override
   protected void commitUnchecked() {
@@ -284,36 +296,62 @@ public class CloudDnsWriter extends BaseDnsWriter {
         .filter(hostName -> hostName.endsWith("." + domainName) && !hostName.equals(domainName));
   }
 
-  /** Mutate the zone with the provided {@code desiredRecords}. */
+  /**
+   * Mutate the zone with the provided {@code desiredRecords}.
+   *
+   * <p>Every name is read from Cloud DNS, and those whose existing records differ from the desired
+   * ones are changed. The changes are coalesced into as few Cloud DNS changes as the per-change
+   * quotas allow, without ever splitting the records of a single name, and submitted concurrently.
+   */
   @VisibleForTesting
   void mutateZone(ImmutableMap<String, ImmutableSet<ResourceRecordSet>> desiredRecords) {
-    // Fetch all existing records for names that this writer is trying to modify
-    ImmutableSet.Builder<ResourceRecordSet> flattenedExistingRecords = new ImmutableSet.Builder<>();
+    // First, get the existing records for the given names.
+    Map<String, ImmutableSet<ResourceRecordSet>> existingRecords =
+        new HashMap<>(getResourceRecordsForDomains(desiredRecords.keySet()));
 
-    // First, fetch the records for the given domains
-    Map<String, List<ResourceRecordSet>> domainRecords =
-        getResourceRecordsForDomains(desiredRecords.keySet());
-
-    // add the records to the list of existing records
-    domainRecords.values().forEach(flattenedExistingRecords::addAll);
-
-    // Get the glue record host names from the given records
+    // Get the glue record host names from the existing records, so that stale glue is deleted.
     ImmutableSet<String> hostsToRead =
-        domainRecords
-            .entrySet()
-            .stream()
+        existingRecords.entrySet().stream()
             .flatMap(entry -> filterGlueRecords(entry.getKey(), entry.getValue().stream()))
+            .filter(hostName -> !existingRecords.containsKey(hostName))
             .collect(toImmutableSet());
 
-    // Then fetch and add the records for these hosts
-    getResourceRecordsForDomains(hostsToRead).values().forEach(flattenedExistingRecords::addAll);
-
-    // Flatten the desired records into one set.
-    ImmutableSet.Builder<ResourceRecordSet> flattenedDesiredRecords = new ImmutableSet.Builder<>();
-    desiredRecords.values().forEach(flattenedDesiredRecords::addAll);
+    // Then get the records for these hosts.
+    existingRecords.putAll(getResourceRecordsForDomains(hostsToRead));
+
+    ImmutableList<String> changedNames =
+        existingRecords.keySet().stream()
+            .sorted()
+            .filter(
+                name ->
+                    !existingRecords
+                        .get(name)
+                        .equals(desiredRecords.getOrDefault(name, ImmutableSet.of())))
+            .collect(toImmutableList());
+    // Exit early if we have nothing to update - dnsConnection doesn't work on empty changes
+    if (changedNames.isEmpty()) {
+      logger.atInfo().log("Returning early because no records changed");
+      return;
+    }
 
-    // Delete all existing records and add back the desired records
-    updateResourceRecords(flattenedDesiredRecords.build(), flattenedExistingRecords.build());
+    ImmutableList<ImmutableList<String>> batches =
+        batchChanges(changedNames, existingRecords, desiredRecords);
+    logger.atInfo().log(
+        "Changing the records of %d out of %d names in %d changes",
+        changedNames.size(), existingRecords.size(), batches.size());
+    try {
+      Concurrent.transform(
+          batches,
+          numThreads,
+          batch -> {
+            updateResourceRecords(batch, existingRecords, desiredRecords);
+            return batch;
+          });
+    } catch (UncheckedExecutionException e) {
+      // Let the retrier see the ZoneStateException thrown by one of the threads.
+      throwIfUnchecked(e.getCause());
+      throw e;
+    }
   }
 
   /**
@@ -321,7 +359,7 @@ public class CloudDnsWriter extends BaseDnsWriter {
    *
    * <p>The provided domain should be in absolute form.
    */
-  private Map<String, List<ResourceRecordSet>> getResourceRecordsForDomains(
+  private Map<String, ImmutableSet<ResourceRecordSet>> getResourceRecordsForDomains(
       Set<String> domainNames) {
     logger.atFine().log("Fetching records for %s", domainNames);
     // As per Concurrent.transform() - if numThreads or domainNames.size() < 2, it will not use
@@ -339,21 +377,64 @@ public class CloudDnsWriter extends BaseDnsWriter {
    *
    * <p>The provided domain should be in absolute form.
    */
-  private List<ResourceRecordSet> getResourceRecordsForDomain(String domainName) {
+  private ImmutableSet<ResourceRecordSet> getResourceRecordsForDomain(String domainName) {
     // TODO(b/70217860): do we want to use a retrier here?
     try {
       Dns.ResourceRecordSets.List listRecordsRequest =
           dnsConnection.resourceRecordSets().list(projectId, zoneName).setName(domainName);
 
-      rateLimiter.acquire();
-      return listRecordsRequest.execute().getRrsets();
+      List<ResourceRecordSet> records =
+          concurrencyLimiter.call(
+              () -> {
+                rateLimiter.acquire();
+                return listRecordsRequest.execute().getRrsets();
+              });
+      return records == null ? ImmutableSet.of() : ImmutableSet.copyOf(records);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
   /**
-   * Update {@link ResourceRecordSet}s under this zone.
+   * Splits the changed names into batches whose additions and deletions each fit in a single
+   * change.
+   *
+   * <p>A name whose changes alone exceed the quota is put in a batch of its own.
+   */
+  private ImmutableList<ImmutableList<String>> batchChanges(
+      ImmutableList<String> changedNames,
+      Map<String, ImmutableSet<ResourceRecordSet>> existingRecords,
+      Map<String, ImmutableSet<ResourceRecordSet>> desiredRecords) {
+    ImmutableList.Builder<ImmutableList<String>> batches = new ImmutableList.Builder<>();
+    List<String> batch = new ArrayList<>();
+    int batchAdditions = 0;
+    int batchDeletions = 0;
+    for (String name : changedNames) {
+      ImmutableSet<ResourceRecordSet> existing = existingRecords.get(name);
+      ImmutableSet<ResourceRecordSet> desired =
+          desiredRecords.getOrDefault(name, ImmutableSet.of());
+      int additions = Sets.difference(desired, existing).size();
+      int deletions = Sets.difference(existing, desired).size();
+      if (!batch.isEmpty()
+          && (batchAdditions + additions > maxRrsetsPerChange
+              || batchDeletions + deletions > maxRrsetsPerChange)) {
+        batches.add(ImmutableList.copyOf(batch));
+        batch.clear();
+        batchAdditions = 0;
+        batchDeletions = 0;
+      }
+      batch.add(name);
+      batchAdditions += additions;
+      batchDeletions += deletions;
+    }
+    if (!batch.isEmpty()) {
+      batches.add(ImmutableList.copyOf(batch));
+    }
+    return batches.build();
+  }
+
+  /**
+   * Update the {@link ResourceRecordSet}s of the given names under this zone in a single change.
    *
    * <p>This call should be used in conjunction with {@link #getResourceRecordsForDomains} in a
    * get-and-set retry loop.
@@ -366,28 +447,26 @@ public class CloudDnsWriter extends BaseDnsWriter {
    *     attributes since being queried.
    */
   private void updateResourceRecords(
-      ImmutableSet<ResourceRecordSet> additions, ImmutableSet<ResourceRecordSet> deletions) {
-    // Find records that are both in additions and deletions, so we can remove them from both before
-    // requesting the change. This is mostly for optimization reasons - not doing so doesn't affect
-    // the result.
-    ImmutableSet<ResourceRecordSet> intersection =
-        Sets.intersection(additions, deletions).immutableCopy();
-    logger.atInfo().log(
-        "There are %d common items out of the %d items in 'additions' and %d items in 'deletions'",
-        intersection.size(), additions.size(), deletions.size());
-    // Exit early if we have nothing to update - dnsConnection doesn't work on empty changes
-    if (additions.equals(deletions)) {
-      logger.atInfo().log("Returning early because additions is the same as deletions");
-      return;
+      ImmutableList<String> names,
+      Map<String, ImmutableSet<ResourceRecordSet>> existingRecords,
+      Map<String, ImmutableSet<ResourceRecordSet>> desiredRecords) {
+    ImmutableList.Builder<ResourceRecordSet> additions = new ImmutableList.Builder<>();
+    ImmutableList.Builder<ResourceRecordSet> deletions = new ImmutableList.Builder<>();
+    for (String name : names) {
+      ImmutableSet<ResourceRecordSet> existing = existingRecords.get(name);
+      ImmutableSet<ResourceRecordSet> desired =
+          desiredRecords.getOrDefault(name, ImmutableSet.of());
+      additions.addAll(Sets.difference(desired, existing));
+      deletions.addAll(Sets.difference(existing, desired));
     }
-    Change change =
-        new Change()
-            .setAdditions(ImmutableList.copyOf(Sets.difference(additions, intersection)))
-            .setDeletions(ImmutableList.copyOf(Sets.difference(deletions, intersection)));
+    Change change = new Change().setAdditions(additions.build()).setDeletions(deletions.build());
 
-    rateLimiter.acquire();
     try {
-      dnsConnection.changes().create(projectId, zoneName, change).execute();
+      concurrencyLimiter.call(
+          () -> {
+            rateLimiter.acquire();
+            return dnsConnection.changes().create(projectId, zoneName, change).execute();
+          });
     } catch (GoogleJsonResponseException e) {
       GoogleJsonError err = e.getDetails();
       // We did something really wrong here, just give up and re-throw
@@ -26,6 +26,7 @@ import google.registry.config.CredentialModule.DefaultCredential;
 import google.registry.config.RegistryConfig.Config;
 import google.registry.dns.writer.DnsWriter;
 import google.registry.util.GoogleCredentialsBundle;
+import google.registry.util.SystemSleeper;
 import java.util.Optional;
 import javax.inject.Named;
 
@@ -33,6 +34,11 @@ import javax.inject.Named;
 @Module
 public abstract class CloudDnsWriterModule {
 
+  // The writers are request-scoped, but the limiter is only useful if it outlives requests, so it
+  // is shared by the whole process.
+  private static final AdaptiveConcurrencyLimiter concurrencyLimiter =
+      new AdaptiveConcurrencyLimiter(provideNumThreads(), new SystemSleeper());
+
   @Provides
   static Dns provideDns(
       @DefaultCredential GoogleCredentialsBundle credentialsBundle,
@@ -83,5 +89,17 @@ public abstract class CloudDnsWriterModule {
     return 10;
   }
 
+  @Provides
+  static AdaptiveConcurrencyLimiter provideConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  @Provides
+  @Named("cloudDnsMaxRrsetsPerChange")
+  static int provideMaxRrsetsPerChange() {
+    // This is the default quota of both record set additions and deletions per change.
+    return 100;
+  }
+
   private CloudDnsWriterModule() {}
 }
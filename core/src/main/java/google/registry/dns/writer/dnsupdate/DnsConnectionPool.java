@@ -0,0 +1,172 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.dnsupdate;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.net.HostAndPort;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+
+/**
+ * A small pool of persistent TCP connections to a single DNS server.
+ *
+ * <p>Pools are shared by all {@link DnsMessageTransport}s of the same server and socket factory,
+ * so that connections outlive the requests that opened them, as recommended by <a
+ * href="https://tools.ietf.org/html/rfc7766">RFC 7766</a>. Each connection is used by one
+ * transport at a time. At most {@link #MAX_IDLE_CONNECTIONS} idle connections are kept, and idle
+ * connections are closed once they are older than {@link #MAX_IDLE_NANOS}, since the server is
+ * likely to have closed them by then.
+ */
+final class DnsConnectionPool {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int MAX_IDLE_CONNECTIONS = 4;
+
+  private static final long MAX_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private static final ConcurrentMap<PoolKey, DnsConnectionPool> pools = new ConcurrentHashMap<>();
+
+  private final SocketFactory factory;
+  private final HostAndPort server;
+  private final int timeoutMillis;
+  private final Deque<Connection> idleConnections = new ArrayDeque<>();
+
+  @AutoValue
+  abstract static class PoolKey {
+    abstract SocketFactory factory();
+
+    abstract HostAndPort server();
+
+    abstract int timeoutMillis();
+  }
+
+  private DnsConnectionPool(SocketFactory factory, HostAndPort server, int timeoutMillis) {
+    this.factory = factory;
+    this.server = server;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /** Returns the pool of connections to the given server. */
+  static DnsConnectionPool get(SocketFactory factory, HostAndPort server, int timeoutMillis) {
+    return pools.computeIfAbsent(
+        new AutoValue_DnsConnectionPool_PoolKey(factory, server, timeoutMillis),
+        key -> new DnsConnectionPool(key.factory(), key.server(), key.timeoutMillis()));
+  }
+
+  /** Closes all idle connections of all pools. */
+  @VisibleForTesting
+  static void closeAll() {
+    pools.values().forEach(DnsConnectionPool::closeIdleConnections);
+    pools.clear();
+  }
+
+  /** Returns an idle connection if there is one, or opens a new one. */
+  Connection borrow() throws IOException {
+    long now = System.nanoTime();
+    synchronized (idleConnections) {
+      Connection connection;
+      while ((connection = idleConnections.pollLast()) != null) {
+        if (now - connection.lastUsedNanos < MAX_IDLE_NANOS) {
+          connection.reused = true;
+          return connection;
+        }
+        connection.close();
+      }
+    }
+    return open();
+  }
+
+  /** Opens a new connection, bypassing the idle connections. */
+  Connection open() throws IOException {
+    // The server address is only resolved when a connection is opened, which is now rare.
+    Socket socket =
+        factory.createSocket(
+            InetAddress.getByName(server.getHost()),
+            server.getPortOrDefault(DnsMessageTransport.DNS_PORT));
+    try {
+      socket.setSoTimeout(timeoutMillis);
+      return new Connection(socket);
+    } catch (IOException | RuntimeException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /** Returns a healthy connection to the pool, after all of its responses have been read. */
+  void release(Connection connection) {
+    connection.lastUsedNanos = System.nanoTime();
+    synchronized (idleConnections) {
+      if (idleConnections.size() < MAX_IDLE_CONNECTIONS) {
+        idleConnections.addLast(connection);
+        return;
+      }
+    }
+    connection.close();
+  }
+
+  /** Closes a connection that may be in an inconsistent state, e.g. after an error. */
+  void discard(Connection connection) {
+    connection.close();
+  }
+
+  private void closeIdleConnections() {
+    synchronized (idleConnections) {
+      idleConnections.forEach(Connection::close);
+      idleConnections.clear();
+    }
+  }
+
+  /** A TCP connection to the DNS server. */
+  static final class Connection {
+    final DataInputStream inputStream;
+    final OutputStream outputStream;
+    private final Socket socket;
+    private long lastUsedNanos;
+    private boolean reused;
+
+    private Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      // The input is not buffered, so that the stream never reads past the last response.
+      this.inputStream = new DataInputStream(socket.getInputStream());
+      this.outputStream = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /** Returns whether this connection was used before, and so may have been closed by the peer. */
+    boolean isReused() {
+      return reused;
+    }
+
+    private void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to close DNS connection.");
+      }
+    }
+  }
+}
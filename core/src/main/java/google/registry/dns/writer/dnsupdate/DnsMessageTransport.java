@@ -18,29 +18,52 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verify;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.VerifyException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.net.HostAndPort;
 import com.google.common.primitives.Ints;
 import google.registry.config.RegistryConfig.Config;
+import google.registry.dns.writer.dnsupdate.DnsConnectionPool.Connection;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import javax.inject.Inject;
 import javax.net.SocketFactory;
 import org.joda.time.Duration;
 import org.xbill.DNS.Message;
 import org.xbill.DNS.Opcode;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
 
 /**
  * A transport for DNS messages. Sends/receives DNS messages over TCP using old-style {@link Socket}
  * s and the message framing defined in <a href="https://tools.ietf.org/html/rfc1035">RFC 1035</a>.
  * We would like use the dnsjava library's {@link org.xbill.DNS.SimpleResolver} class for this, but
  * it requires {@link java.nio.channels.SocketChannel} which is not supported on AppEngine.
+ *
+ * <p>Connections are kept open between messages in a {@link DnsConnectionPool}, and several
+ * messages can be sent on one connection without waiting for each response, which are then
+ * matched to their queries by message ID, as described in <a
+ * href="https://tools.ietf.org/html/rfc7766">RFC 7766</a>. Messages are optionally signed with a
+ * TSIG key (<a href="https://tools.ietf.org/html/rfc2845">RFC 2845</a>), in which case the
+ * signatures of the responses are verified too.
  */
 public class DnsMessageTransport {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   /**
    * Size of message length field for DNS TCP transport.
    *
@@ -56,25 +79,50 @@ public class DnsMessageTransport {
    */
   @VisibleForTesting static final int DNS_PORT = 53;
 
-  private final SocketFactory factory;
-  private final String updateHost;
-  private final int updateTimeout;
+  /** The maximum number of queries sent on a connection before their responses are read. */
+  @VisibleForTesting static final int MAX_PIPELINED_MESSAGES = 16;
+
+  private final DnsConnectionPool pool;
+  private final Optional<TSIG> tsig;
+
+  /**
+   * Class constructor.
+   *
+   * @param factory a factory for TCP sockets
+   * @param updateHost host name of the DNS server, optionally followed by a port number
+   * @param updateTimeout update I/O timeout
+   */
+  public DnsMessageTransport(SocketFactory factory, String updateHost, Duration updateTimeout) {
+    this(factory, updateHost, updateTimeout, Optional.empty());
+  }
 
   /**
    * Class constructor.
    *
    * @param factory a factory for TCP sockets
-   * @param updateHost host name of the DNS server
+   * @param updateHost host name of the DNS server, optionally followed by a port number
    * @param updateTimeout update I/O timeout
+   * @param tsigKey optional TSIG key used to sign the messages, in the form {@code
+   *     algorithm:name:base64-secret}
    */
   @Inject
   public DnsMessageTransport(
       SocketFactory factory,
       @Config("dnsUpdateHost") String updateHost,
-      @Config("dnsUpdateTimeout") Duration updateTimeout) {
-    this.factory = factory;
-    this.updateHost = updateHost;
-    this.updateTimeout = Ints.checkedCast(updateTimeout.getMillis());
+      @Config("dnsUpdateTimeout") Duration updateTimeout,
+      @Config("dnsUpdateTsigKey") Optional<String> tsigKey) {
+    this.pool =
+        DnsConnectionPool.get(
+            factory,
+            HostAndPort.fromString(updateHost),
+            Ints.checkedCast(updateTimeout.getMillis()));
+    this.tsig = tsigKey.map(DnsMessageTransport::parseTsigKey);
+  }
+
+  private static TSIG parseTsigKey(String tsigKey) {
+    List<String> parts = Splitter.on(':').limit(3).splitToList(tsigKey);
+    checkArgument(parts.size() == 3, "TSIG key must be of the form algorithm:name:base64-secret");
+    return new TSIG(parts.get(0), parts.get(1), parts.get(2));
   }
 
   /**
@@ -87,26 +135,140 @@ public class DnsMessageTransport {
    * @throws IllegalArgumentException if the query is too large to be sent (&gt; 65535 bytes)
    */
   public Message send(Message query) throws IOException {
-    try (Socket socket = factory.createSocket(InetAddress.getByName(updateHost), DNS_PORT)) {
-      socket.setSoTimeout(updateTimeout);
-      writeMessage(socket.getOutputStream(), query);
-      Message response = readMessage(socket.getInputStream());
-      checkValidResponse(query, response);
-      return response;
+    return sendAll(ImmutableList.of(query)).get(0);
+  }
+
+  /**
+   * Sends several DNS "query" messages on a single connection and returns their responses, in the
+   * order of the queries.
+   *
+   * <p>Up to {@link #MAX_PIPELINED_MESSAGES} queries are outstanding at any time. The server may
+   * answer them in any order. Queries may share a message ID, in which case the later query is
+   * only sent once the earlier one is answered.
+   *
+   * <p>If a pooled connection turns out to have been closed by the server before any response was
+   * read, the queries are sent again on a new connection, but only if they are all idempotent
+   * (see {@link #isIdempotent}).
+   *
+   * @throws IOException if the Socket input/output streams throws one
+   * @throws IllegalArgumentException if a query is too large to be sent (&gt; 65535 bytes)
+   */
+  public ImmutableList<Message> sendAll(List<Message> queries) throws IOException {
+    Connection connection = pool.borrow();
+    try {
+      return exchange(connection, queries);
+    } catch (StaleConnectionException e) {
+      // The server closed the connection before we read any response. Usually it had been idle
+      // for too long and nothing was processed, but the server may also have applied some of the
+      // queries before closing it. Sending them again is only safe if that has no further effect.
+      if (!queries.stream().allMatch(DnsMessageTransport::isIdempotent)) {
+        throw (IOException) e.getCause();
+      }
+      logger.atInfo().withCause(e.getCause()).log("Reopening stale DNS connection.");
+      return exchange(pool.open(), queries);
     }
   }
 
-  private void checkValidResponse(Message query, Message response) {
-    verify(
-        response.getHeader().getID() == query.getHeader().getID(),
-        "response ID %s does not match query ID %s",
-        response.getHeader().getID(),
-        query.getHeader().getID());
+  /**
+   * Returns whether processing the message twice has the same effect as processing it once.
+   *
+   * <p>This is true of queries, and of UPDATEs without prerequisites, since adding a record that
+   * already exists or deleting one that does not is a no-op (RFC 2136 section 3.4.2). The result
+   * of an UPDATE with prerequisites depends on whether they still hold, which applying it once may
+   * have changed.
+   */
+  @VisibleForTesting
+  static boolean isIdempotent(Message message) {
+    int opcode = message.getHeader().getOpcode();
+    return opcode == Opcode.QUERY
+        || (opcode == Opcode.UPDATE && message.getSection(Section.PREREQ).isEmpty());
+  }
+
+  /** Sends the queries on the given connection, and returns it to the pool if all went well. */
+  private ImmutableList<Message> exchange(Connection connection, List<Message> queries)
+      throws IOException {
+    Message[] signedQueries = new Message[queries.size()];
+    Message[] responses = new Message[queries.size()];
+    // Maps the ID of each outstanding query to its index.
+    Map<Integer, Integer> outstanding = new HashMap<>();
+    int numReceived = 0;
+    try {
+      for (int i = 0; i < queries.size(); i++) {
+        Message query = sign(queries.get(i));
+        int id = query.getHeader().getID();
+        while (outstanding.size() >= MAX_PIPELINED_MESSAGES || outstanding.containsKey(id)) {
+          connection.outputStream.flush();
+          readResponse(connection.inputStream, signedQueries, responses, outstanding);
+          numReceived++;
+        }
+        writeMessage(connection.outputStream, query);
+        signedQueries[i] = query;
+        outstanding.put(id, i);
+      }
+      connection.outputStream.flush();
+      while (!outstanding.isEmpty()) {
+        readResponse(connection.inputStream, signedQueries, responses, outstanding);
+        numReceived++;
+      }
+    } catch (EOFException | SocketException e) {
+      pool.discard(connection);
+      if (connection.isReused() && numReceived == 0) {
+        throw new StaleConnectionException(e);
+      }
+      throw e;
+    } catch (IOException | RuntimeException e) {
+      pool.discard(connection);
+      throw e;
+    }
+    pool.release(connection);
+    return ImmutableList.copyOf(responses);
+  }
+
+  private Message sign(Message query) {
+    if (!tsig.isPresent()) {
+      return query;
+    }
+    // Sign a copy, so that the caller's message can be sent again.
+    Message signedQuery = query.clone();
+    tsig.get().apply(signedQuery, null);
+    return signedQuery;
+  }
+
+  private void readResponse(
+      DataInputStream inputStream,
+      Message[] queries,
+      Message[] responses,
+      Map<Integer, Integer> outstanding)
+      throws IOException {
+    byte[] messageData = readMessage(inputStream);
+    Message response = new Message(messageData);
+    int id = response.getHeader().getID();
+    Integer index = outstanding.remove(id);
+    if (index == null) {
+      throw new VerifyException(
+          String.format(
+              "response ID %s does not match query ID %s",
+              id, Joiner.on(", ").join(outstanding.keySet())));
+    }
+    Message query = queries[index];
+    checkValidResponse(query, response, messageData);
+    responses[index] = response;
+  }
+
+  private void checkValidResponse(Message query, Message response, byte[] responseData) {
     verify(
         response.getHeader().getOpcode() == query.getHeader().getOpcode(),
         "response opcode '%s' does not match query opcode '%s'",
         Opcode.string(response.getHeader().getOpcode()),
         Opcode.string(query.getHeader().getOpcode()));
+    if (tsig.isPresent()) {
+      int error = tsig.get().verify(response, responseData, query.getTSIG());
+      verify(
+          error == Rcode.NOERROR,
+          "TSIG verification of response ID %s failed: %s",
+          response.getHeader().getID(),
+          Rcode.TSIGstring(error));
+    }
   }
 
   private void writeMessage(OutputStream outputStream, Message message) throws IOException {
@@ -122,11 +284,17 @@ public class DnsMessageTransport {
     outputStream.write(buffer.array());
   }
 
-  private Message readMessage(InputStream inputStream) throws IOException {
-    DataInputStream stream = new DataInputStream(inputStream);
+  private byte[] readMessage(DataInputStream stream) throws IOException {
     int length = stream.readUnsignedShort();
     byte[] messageData = new byte[length];
     stream.readFully(messageData);
-    return new Message(messageData);
+    return messageData;
+  }
+
+  /** Thrown when a reused connection turns out to have been closed by the server. */
+  private static class StaleConnectionException extends IOException {
+    StaleConnectionException(IOException cause) {
+      super(cause);
+    }
   }
 }
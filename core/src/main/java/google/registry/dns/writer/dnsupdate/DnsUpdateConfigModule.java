@@ -17,6 +17,7 @@ package google.registry.dns.writer.dnsupdate;
 import dagger.Module;
 import dagger.Provides;
 import google.registry.config.RegistryConfig.Config;
+import java.util.Optional;
 import org.joda.time.Duration;
 
 /** Dagger module that provides DNS configuration settings. */
@@ -24,7 +25,7 @@ import org.joda.time.Duration;
 public class DnsUpdateConfigModule {
 
   /**
-   * Host that receives DNS updates from the registry.
+   * Host that receives DNS updates from the registry, optionally followed by a port number.
    * Usually a "hidden master" for the TLDs.
    */
   @Provides
@@ -41,4 +42,14 @@ public class DnsUpdateConfigModule {
   public static Duration provideDnsUpdateTimeout() {
     return Duration.standardSeconds(30);
   }
+
+  /**
+   * TSIG key used to sign DNS update requests, in the form {@code algorithm:name:base64-secret},
+   * e.g. {@code hmac-sha256:registry-key:c2VjcmV0}. Updates are not signed if absent.
+   */
+  @Provides
+  @Config("dnsUpdateTsigKey")
+  public static Optional<String> provideDnsUpdateTsigKey() {
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,156 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows;
+
+import static com.google.appengine.api.ThreadManager.backgroundThreadFactory;
+import static com.google.common.base.Suppliers.memoize;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import google.registry.model.reporting.IcannReportingCounterDao;
+import google.registry.model.reporting.IcannReportingCounterDao.CounterKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+
+/**
+ * Counts EPP commands towards the ICANN activity report counters, in batches, off the request path.
+ *
+ * <p>Every command increments the same few counter rows, so writing each increment in its own
+ * transaction would serialize the commands of a registrar on the row locks. Instead, the request
+ * thread adds its increments to a bounded queue, and a single background thread, shared by all
+ * requests of the instance, sums up everything queued and writes it in one transaction.
+ *
+ * <p>Counting is best-effort and never fails the command: increments are dropped, and counted in a
+ * metric, when the queue is full or the write fails. The daily reconciliation against BigQuery
+ * reports any resulting difference. Background threads can't be created on automatically scaled
+ * instances, where the increments are written on the request thread instead.
+ */
+public class AsyncActivityCounter {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The maximum number of increments waiting to be written. */
+  @VisibleForTesting static final int QUEUE_CAPACITY = 10000;
+
+  private static final IncrementableMetric droppedIncrements =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/epp/dropped_icann_counter_increments",
+              "Count of ICANN activity counter increments that were not written",
+              "count",
+              ImmutableSet.of(
+                  LabelDescriptor.create("reason", "Why the increment was dropped.")));
+
+  // Created lazily, since background threads are only available on App Engine.
+  private static final Supplier<Executor> sharedExecutor =
+      memoize(AsyncActivityCounter::createSharedExecutor);
+
+  private static final BlockingQueue<CounterKey> sharedQueue =
+      new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+
+  private static final AtomicBoolean sharedFlushScheduled = new AtomicBoolean();
+
+  private final Supplier<Executor> executor;
+  private final BlockingQueue<CounterKey> queue;
+  private final AtomicBoolean flushScheduled;
+  private final Consumer<ImmutableMultiset<CounterKey>> writer;
+
+  @Inject
+  AsyncActivityCounter() {
+    this(sharedExecutor, sharedQueue, sharedFlushScheduled, IcannReportingCounterDao::incrementAll);
+  }
+
+  @VisibleForTesting
+  AsyncActivityCounter(
+      Supplier<Executor> executor,
+      BlockingQueue<CounterKey> queue,
+      AtomicBoolean flushScheduled,
+      Consumer<ImmutableMultiset<CounterKey>> writer) {
+    this.executor = executor;
+    this.queue = queue;
+    this.flushScheduled = flushScheduled;
+    this.writer = writer;
+  }
+
+  /**
+   * Returns an executor with a single background thread, or one that runs tasks on the calling
+   * thread if background threads can't be created.
+   */
+  private static Executor createSharedExecutor() {
+    try {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), backgroundThreadFactory());
+      // Start the thread now, so that an instance without background threads is detected once.
+      executor.prestartCoreThread();
+      return executor;
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Background threads are unavailable, counting ICANN activity on the request thread.");
+      return directExecutor();
+    }
+  }
+
+  /** Queues the given counter increments, and schedules a write if none is pending. */
+  public void increment(ImmutableList<CounterKey> keys) {
+    try {
+      long dropped = keys.stream().filter(key -> !queue.offer(key)).count();
+      if (dropped > 0) {
+        droppedIncrements.incrementBy(dropped, "queue_full");
+      }
+      if (flushScheduled.compareAndSet(false, true)) {
+        executor.get().execute(this::flush);
+      }
+    } catch (RuntimeException e) {
+      // Counting must never fail the command, so fall back to writing on the request thread.
+      logger.atWarning().withCause(e).log("Failed to hand off ICANN activity counts.");
+      flush();
+    }
+  }
+
+  /** Writes all queued increments in a single transaction. */
+  private void flush() {
+    // Clear the flag before draining, so that increments queued from now on schedule a new flush.
+    flushScheduled.set(false);
+    List<CounterKey> keys = new ArrayList<>();
+    queue.drainTo(keys);
+    if (keys.isEmpty()) {
+      return;
+    }
+    try {
+      writer.accept(ImmutableMultiset.copyOf(keys));
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Failed to write %d ICANN activity counter increments.", keys.size());
+      droppedIncrements.incrementBy(keys.size(), "write_failed");
+    }
+  }
+}
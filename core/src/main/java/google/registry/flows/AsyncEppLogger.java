@@ -0,0 +1,148 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows;
+
+import static com.google.appengine.api.ThreadManager.backgroundThreadFactory;
+import static com.google.common.base.Suppliers.memoize;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static google.registry.xml.XmlTransformer.prettyPrint;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import google.registry.config.RegistryConfig.Config;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+
+/**
+ * Logs EPP responses on a background thread.
+ *
+ * <p>Sanitizing and pretty-printing a large response can cost as much CPU as marshalling it, so
+ * the request thread only decides whether the response is sampled, and hands its raw bytes to a
+ * bounded queue. A single background thread, shared by all requests of the instance, does the
+ * formatting. Responses are dropped, and counted in a metric, when the queue is full.
+ *
+ * <p>Background threads can't be created on automatically scaled instances. There, and whenever
+ * handing a response to the background thread fails for any reason other than a full queue, the
+ * response is logged on the request thread instead, as it was before this class existed.
+ *
+ * <p>Responses are sampled by command name, as recorded in the EPP metrics: the simple name of the
+ * flow that produced them without its "Flow" suffix, e.g. {@code DomainInfo}. Requests that have
+ * no command name, i.e. dry runs and requests that couldn't be parsed, use the default rate.
+ */
+public class AsyncEppLogger {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The maximum number of responses waiting to be logged. */
+  @VisibleForTesting static final int QUEUE_CAPACITY = 1000;
+
+  private static final IncrementableMetric droppedLogs =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/epp/dropped_response_logs",
+              "Count of EPP responses not logged because the log queue was full",
+              "count",
+              ImmutableSet.of(LabelDescriptor.create("command", "The name of the command.")));
+
+  // Created lazily, since background threads are only available on App Engine.
+  private static final Supplier<Executor> sharedExecutor =
+      memoize(AsyncEppLogger::createSharedExecutor);
+
+  private final ImmutableMap<String, Double> sampleRates;
+  private final double defaultSampleRate;
+  private final Supplier<Executor> executor;
+
+  @Inject
+  AsyncEppLogger(
+      @Config("eppResponseLogSampleRates") ImmutableMap<String, Double> sampleRates,
+      @Config("eppResponseLogDefaultSampleRate") double defaultSampleRate) {
+    this(sampleRates, defaultSampleRate, sharedExecutor);
+  }
+
+  @VisibleForTesting
+  AsyncEppLogger(
+      ImmutableMap<String, Double> sampleRates,
+      double defaultSampleRate,
+      Supplier<Executor> executor) {
+    this.sampleRates = sampleRates;
+    this.defaultSampleRate = defaultSampleRate;
+    this.executor = executor;
+  }
+
+  /**
+   * Returns an executor with a single background thread, or one that runs tasks on the calling
+   * thread if background threads can't be created.
+   */
+  private static Executor createSharedExecutor() {
+    try {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              0,
+              TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+              backgroundThreadFactory());
+      // Start the thread now, so that an instance without background threads is detected once.
+      executor.prestartCoreThread();
+      return executor;
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Background threads are unavailable, logging EPP responses on the request thread.");
+      return directExecutor();
+    }
+  }
+
+  /**
+   * Logs the sanitized response of the given command, if it is sampled.
+   *
+   * @param commandName the command name recorded in the EPP metrics, or empty if there is none
+   */
+  public void logResponse(String commandName, byte[] responseXmlBytes) {
+    double sampleRate = sampleRates.getOrDefault(commandName, defaultSampleRate);
+    if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+      return;
+    }
+    try {
+      executor.get().execute(() -> log(responseXmlBytes));
+    } catch (RejectedExecutionException e) {
+      droppedLogs.increment(commandName);
+    } catch (RuntimeException e) {
+      // The response has already been committed, so logging must never fail the request.
+      logger.atWarning().withCause(e).log("Failed to hand off EPP response for logging.");
+      log(responseXmlBytes);
+    }
+  }
+
+  private static void log(byte[] responseXmlBytes) {
+    try {
+      logger.atInfo().log(
+          "EPP response: %s", prettyPrint(EppXmlSanitizer.sanitizeEppXml(responseXmlBytes)));
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log("Failed to log EPP response.");
+    }
+  }
+}
@@ -33,6 +33,9 @@ import google.registry.model.eppoutput.EppResponse;
 import google.registry.model.eppoutput.Result;
 import google.registry.model.eppoutput.Result.Code;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.monitoring.whitebox.RequestTrace;
+import google.registry.monitoring.whitebox.RequestTrace.Span;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.json.simple.JSONValue;
@@ -64,7 +67,7 @@ public final class EppController {
     eppMetricBuilder.setClientId(Optional.ofNullable(sessionMetadata.getClientId()));
     try {
       EppInput eppInput;
-      try {
+      try (Span span = RequestTrace.span(Stage.UNMARSHAL)) {
         eppInput = unmarshalEpp(EppInput.class, inputXmlBytes);
       } catch (EppException e) {
         // Log the unmarshalling error, with the raw bytes (in base64) to help with debugging.
@@ -119,6 +122,7 @@ public final class EppController {
         EppMetric metric = eppMetricBuilder.build();
         eppMetrics.incrementEppRequests(metric);
         eppMetrics.recordProcessingTime(metric);
+        RequestTrace.setCommandName(metric.getCommandName().orElse(""));
       }
     }
   }
@@ -18,10 +18,12 @@ import static com.google.monitoring.metrics.EventMetric.DEFAULT_FITTER;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.ExponentialFitter;
 import com.google.monitoring.metrics.IncrementableMetric;
 import com.google.monitoring.metrics.LabelDescriptor;
 import com.google.monitoring.metrics.MetricRegistryImpl;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.monitoring.whitebox.RequestTrace;
 import javax.inject.Inject;
 
 /** EPP Instrumentation. */
@@ -71,6 +73,46 @@ public class EppMetrics {
               LABEL_DESCRIPTORS,
               DEFAULT_FITTER);
 
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_BY_STAGE =
+      ImmutableSet.of(
+          LabelDescriptor.create("command", "The name of the command."),
+          LabelDescriptor.create("stage", "The stage of request processing."));
+
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_BY_COMMAND =
+      ImmutableSet.of(LabelDescriptor.create("command", "The name of the command."));
+
+  // Sub-millisecond stages are common, so the buckets start at 0.1 ms rather than 1 ms.
+  private static final ExponentialFitter STAGE_TIME_FITTER = ExponentialFitter.create(20, 2.0, 0.1);
+
+  private static final ExponentialFitter COUNT_FITTER = ExponentialFitter.create(12, 2.0, 1.0);
+
+  private static final EventMetric stageTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/stage_time",
+              "EPP Request Time By Processing Stage",
+              "milliseconds",
+              LABEL_DESCRIPTORS_BY_STAGE,
+              STAGE_TIME_FITTER);
+
+  private static final EventMetric transactionAttempts =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/transaction_attempts",
+              "Database Transaction Attempts Per EPP Request, Including Retries",
+              "count",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              COUNT_FITTER);
+
+  private static final EventMetric sqlStatements =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/sql_statements",
+              "SQL Statements Executed Per EPP Request",
+              "count",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              COUNT_FITTER);
+
   private enum TrafficType {
     CANARY, PROBER, REAL
   }
@@ -104,6 +146,25 @@ public class EppMetrics {
     requestTime.record(processingTime, commandName, getTrafficType(tld).toString(), eppStatusCode);
   }
 
+  /**
+   * Records the per-stage latency breakdown and database usage of a traced EPP request.
+   *
+   * <p>Does nothing if the trace was never labeled with a command name.
+   */
+  public void recordRequestTrace(RequestTrace trace) {
+    if (!trace.getCommandName().isPresent()) {
+      return;
+    }
+    String commandName = trace.getCommandName().get();
+    trace
+        .getStageNanos()
+        .forEach(
+            (stage, nanos) ->
+                stageTime.record(nanos / 1_000_000.0, commandName, stage.name()));
+    transactionAttempts.record(trace.getTransactionAttempts(), commandName);
+    sqlStatements.record(trace.getStatements(), commandName);
+  }
+
   private static TrafficType getTrafficType(String tld) {
     if (tld.endsWith("canary.test")) {
       return TrafficType.CANARY;
@@ -16,7 +16,6 @@ package google.registry.flows;
 
 import static google.registry.flows.FlowUtils.marshalWithLenientRetry;
 import static google.registry.model.eppoutput.Result.Code.SUCCESS_AND_CLOSE;
-import static google.registry.xml.XmlTransformer.prettyPrint;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
@@ -24,6 +23,9 @@ import static javax.servlet.http.HttpServletResponse.SC_OK;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.MediaType;
 import google.registry.model.eppoutput.EppOutput;
+import google.registry.monitoring.whitebox.RequestTrace;
+import google.registry.monitoring.whitebox.RequestTrace.Span;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
 import google.registry.request.Response;
 import google.registry.util.ProxyHttpHeaders;
 import javax.inject.Inject;
@@ -37,6 +39,8 @@ public class EppRequestHandler {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   @Inject EppController eppController;
+  @Inject EppMetrics eppMetrics;
+  @Inject AsyncEppLogger eppLogger;
   @Inject Response response;
 
   @Inject
@@ -55,10 +59,14 @@ public class EppRequestHandler {
           eppController.handleEppCommand(
               sessionMetadata, credentials, eppRequestSource, isDryRun, isSuperuser, inputXmlBytes);
       response.setContentType(APPLICATION_EPP_XML);
-      byte[] eppResponseXmlBytes = marshalWithLenientRetry(eppOutput);
+      byte[] eppResponseXmlBytes;
+      try (Span span = RequestTrace.span(Stage.MARSHAL)) {
+        eppResponseXmlBytes = marshalWithLenientRetry(eppOutput);
+      }
       response.setPayload(new String(eppResponseXmlBytes, UTF_8));
-      logger.atInfo().log(
-          "EPP response: %s", prettyPrint(EppXmlSanitizer.sanitizeEppXml(eppResponseXmlBytes)));
+      eppLogger.logResponse(
+          RequestTrace.current().flatMap(RequestTrace::getCommandName).orElse(""),
+          eppResponseXmlBytes);
       // Note that we always return 200 (OK) even if the EppController returns an error response.
       // This is because returning a non-OK HTTP status code will cause the proxy server to
       // silently close the connection without returning any data. The only time we will ever return
@@ -86,6 +94,9 @@ public class EppRequestHandler {
     } catch (Exception e) {
       logger.atWarning().withCause(e).log("handleEppCommand general exception");
       response.setStatus(SC_BAD_REQUEST);
+    } finally {
+      // The trace is started by RequestHandler and covers the whole action.
+      RequestTrace.current().ifPresent(eppMetrics::recordRequestTrace);
     }
   }
 }
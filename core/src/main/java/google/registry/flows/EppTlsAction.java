@@ -14,16 +14,25 @@
 
 package google.registry.flows;
 
+import google.registry.config.RegistryConfig.Config;
 import google.registry.request.Action;
 import google.registry.request.Action.Method;
 import google.registry.request.Payload;
+import google.registry.request.Response;
 import google.registry.request.auth.Auth;
+import google.registry.util.Clock;
 import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
 /**
  * Establishes a transport for EPP+TLS over HTTP. All commands and responses are EPP XML according
  * to RFC 5730. Commands must be requested via POST.
+ *
+ * <p>The EPP session is kept in the servlet {@link HttpSession}, unless signed session tokens are
+ * enabled. In that case it is kept in a {@link SignedSessionMetadata} token relayed by the proxy,
+ * and the servlet session is only created to count failed login attempts.
  */
 @Action(
     service = Action.Service.DEFAULT,
@@ -34,14 +43,22 @@ public class EppTlsAction implements Runnable {
 
   @Inject @Payload byte[] inputXmlBytes;
   @Inject TlsCredentials tlsCredentials;
-  @Inject HttpSession session;
+  @Inject Provider<HttpSession> session;
+  @Inject HttpServletRequest req;
+  @Inject Response response;
+  @Inject Clock clock;
+  @Inject @Config("eppSignedSessionTokensEnabled") boolean signedSessionTokensEnabled;
   @Inject EppRequestHandler eppRequestHandler;
   @Inject EppTlsAction() {}
 
   @Override
   public void run() {
+    SessionMetadata sessionMetadata =
+        signedSessionTokensEnabled
+            ? SignedSessionMetadata.fromRequest(req, response, clock)
+            : new HttpSessionMetadata(session.get());
     eppRequestHandler.executeEpp(
-        new HttpSessionMetadata(session),
+        sessionMetadata,
         tlsCredentials,
         EppRequestSource.TLS,
         false,  // This endpoint is never a dry run.
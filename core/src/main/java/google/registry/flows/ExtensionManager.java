@@ -34,6 +34,9 @@ import google.registry.model.domain.metadata.MetadataExtension;
 import google.registry.model.domain.superuser.SuperuserExtension;
 import google.registry.model.eppinput.EppInput;
 import google.registry.model.eppinput.EppInput.CommandExtension;
+import google.registry.monitoring.whitebox.RequestTrace;
+import google.registry.monitoring.whitebox.RequestTrace.Span;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
 import java.util.Set;
 import javax.inject.Inject;
 
@@ -67,6 +70,12 @@ public final class ExtensionManager {
   }
 
   public void validate() throws EppException {
+    try (Span span = RequestTrace.span(Stage.EXTENSION_VALIDATION)) {
+      validateExtensions();
+    }
+  }
+
+  private void validateExtensions() throws EppException {
     ImmutableSet.Builder<Class<? extends CommandExtension>> suppliedBuilder =
         new ImmutableSet.Builder<>();
     for (CommandExtension extension : eppInput.getCommandWrapper().getExtensions()) {
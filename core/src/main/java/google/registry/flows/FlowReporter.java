@@ -28,6 +28,8 @@ import google.registry.flows.FlowModule.InputXml;
 import google.registry.flows.annotations.ReportingSpec;
 import google.registry.model.eppcommon.Trid;
 import google.registry.model.eppinput.EppInput;
+import google.registry.model.reporting.IcannReportingCounterDao;
+import google.registry.util.Clock;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.json.simple.JSONValue;
@@ -49,6 +51,8 @@ public class FlowReporter {
   @Inject @InputXml byte[] inputXmlBytes;
   @Inject EppInput eppInput;
   @Inject Class<? extends Flow> flowClass;
+  @Inject Clock clock;
+  @Inject AsyncActivityCounter activityCounter;
   @Inject FlowReporter() {}
 
   /** Records information about the current flow execution in the GAE request logs. */
@@ -76,6 +80,33 @@ public class FlowReporter {
                 .build()));
   }
 
+  /**
+   * Counts the current flow execution towards the ICANN activity report counters in Cloud SQL.
+   *
+   * <p>This counts the same flows as the BigQuery queries over the logs written by {@link
+   * #recordToLogs}, so it is called at the same point. The counters are written in batches by
+   * {@link AsyncActivityCounter}, and failing to count never fails the flow.
+   *
+   * @see IcannReportingCounterDao#getActivityKeys
+   */
+  public void recordToCounters() {
+    try {
+      ReportingSpec reportingSpec = flowClass.getAnnotation(ReportingSpec.class);
+      if (reportingSpec == null || !IcannReportingCounterDao.isEnabled()) {
+        return;
+      }
+      activityCounter.increment(
+          IcannReportingCounterDao.getActivityKeys(
+              clientId,
+              reportingSpec.value(),
+              eppInput.isDomainType(),
+              eppInput.isDomainType() ? extractTlds(eppInput.getTargetIds()) : ImmutableSet.of(),
+              clock.nowUtc()));
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log("Failed to count flow towards ICANN activity reports.");
+    }
+  }
+
   /**
    * Returns the guessed TLD of the given domain name, assuming a second-level domain name, or
    * absent if no TLD could be detected.
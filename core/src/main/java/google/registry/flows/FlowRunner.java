@@ -27,7 +27,11 @@ import google.registry.flows.FlowModule.Transactional;
 import google.registry.flows.session.LoginFlow;
 import google.registry.model.eppcommon.Trid;
 import google.registry.model.eppoutput.EppOutput;
+import google.registry.model.eppoutput.EppOutput.ResponseOrGreeting;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.monitoring.whitebox.RequestTrace;
+import google.registry.monitoring.whitebox.RequestTrace.Span;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
 import javax.inject.Inject;
 import javax.inject.Provider;
 
@@ -66,13 +70,15 @@ public class FlowRunner {
         eppRequestSource,
         isDryRun ? "DRY_RUN" : "LIVE",
         isSuperuser ? "SUPERUSER" : "NORMAL");
-    // Record flow info to the GAE request logs for reporting purposes if it's not a dry run.
+    // Record flow info to the GAE request logs and the ICANN report counters for reporting
+    // purposes if it's not a dry run.
     if (!isDryRun) {
       flowReporter.recordToLogs();
+      flowReporter.recordToCounters();
     }
     eppMetricBuilder.setCommandNameFromFlow(flowClass.getSimpleName());
     if (!isTransactional) {
-      EppOutput eppOutput = EppOutput.create(flowProvider.get().run());
+      EppOutput eppOutput = EppOutput.create(runFlow());
       if (flowClass.equals(LoginFlow.class)) {
         // In LoginFlow, clientId isn't known until after the flow executes, so save it then.
         eppMetricBuilder.setClientId(sessionMetadata.getClientId());
@@ -84,7 +90,7 @@ public class FlowRunner {
           .transact(
               () -> {
                 try {
-                  EppOutput output = EppOutput.create(flowProvider.get().run());
+                  EppOutput output = EppOutput.create(runFlow());
                   if (isDryRun) {
                     throw new DryRunException(output);
                   }
@@ -100,6 +106,17 @@ public class FlowRunner {
     }
   }
 
+  /** Constructs and runs the flow, tracing each step separately. */
+  private ResponseOrGreeting runFlow() throws EppException {
+    Flow flow;
+    try (Span span = RequestTrace.span(Stage.FLOW_SETUP)) {
+      flow = flowProvider.get();
+    }
+    try (Span span = RequestTrace.span(Stage.FLOW_EXECUTION)) {
+      return flow.run();
+    }
+  }
+
   /** Exception for canceling a transaction while capturing what the output would have been. */
   private static class DryRunException extends RuntimeException {
     final EppOutput output;
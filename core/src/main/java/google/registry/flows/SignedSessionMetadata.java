@@ -0,0 +1,289 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.nullToEmpty;
+import static google.registry.request.RequestParameters.extractOptionalHeader;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.joda.time.DateTimeZone.UTC;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.net.HttpHeaders;
+import google.registry.model.server.ServerSecret;
+import google.registry.request.ProxyHttpHeaders;
+import google.registry.request.Response;
+import google.registry.util.Clock;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * A {@link SessionMetadata} that is carried in an HMAC-signed session token, rather than stored in
+ * the servlet {@link HttpSession}.
+ *
+ * <p>A new token is issued in a cookie whenever the session changes, i.e. on login attempts and
+ * logout, and the proxy sends it back with every later command of the same connection. Commands
+ * that don't change the session only have to verify the token, so unlike {@link
+ * HttpSessionMetadata} they don't read from or write to the session store.
+ *
+ * <p>Tokens are signed with a key derived from the {@link ServerSecret}. Rotating the secret
+ * invalidates all outstanding tokens, so clients have to log in again. A token whose signature
+ * doesn't verify is ignored, which leaves the connection logged out.
+ *
+ * <p>A token is bound to the hash of the TLS client certificate that the proxy reports for the
+ * connection, and it expires {@link #MAX_TOKEN_AGE} after it was issued. Tokens of active sessions
+ * are reissued once they are older than {@link #TOKEN_REFRESH_AGE}, so that a session that stays
+ * within the proxy's idle timeout never expires. Since there is no server-side record of issued
+ * tokens, a token captured before a logout remains usable until it expires, but only over a
+ * connection that presents the same client certificate.
+ *
+ * <p>Failed login attempts are not part of the token, since the client could reset them by
+ * replaying an older token. They are counted in the servlet {@link HttpSession}, which is only
+ * created once a login fails.
+ */
+public class SignedSessionMetadata implements SessionMetadata {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The name of the cookie that holds the session token. */
+  public static final String COOKIE_NAME = "EPP_SESSION";
+
+  /** Maximum age of an acceptable session token. */
+  private static final Duration MAX_TOKEN_AGE = Duration.standardHours(2);
+
+  /** Age after which the token of an active session is reissued. */
+  private static final Duration TOKEN_REFRESH_AGE = Duration.standardMinutes(30);
+
+  private static final String FAILED_LOGIN_ATTEMPTS = "FAILED_LOGIN_ATTEMPTS";
+  private static final byte TOKEN_VERSION = 2;
+  private static final String KEY_PURPOSE = "EPP session token";
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+  private final HashFunction hmac;
+  private final String certificateHash;
+  private final HttpServletRequest req;
+  private final Response response;
+  private final DateTime now;
+
+  private boolean invalidated;
+  @Nullable private String clientId;
+  private ImmutableSet<String> serviceExtensionUris = ImmutableSet.of();
+
+  @VisibleForTesting
+  SignedSessionMetadata(
+      byte[] secret,
+      Optional<String> token,
+      String certificateHash,
+      HttpServletRequest req,
+      Response response,
+      DateTime now) {
+    // Derive a key for this purpose only, since the server secret is also used for other tokens.
+    this.hmac =
+        Hashing.hmacSha256(Hashing.hmacSha256(secret).hashString(KEY_PURPOSE, UTF_8).asBytes());
+    this.certificateHash = certificateHash;
+    this.req = req;
+    this.response = response;
+    this.now = now;
+    token.ifPresent(this::readToken);
+  }
+
+  /**
+   * Returns the session of the token sent with the given request, if any.
+   *
+   * <p>Changes to the session are written to the given response as a new token.
+   */
+  public static SignedSessionMetadata fromRequest(
+      HttpServletRequest req, Response response, Clock clock) {
+    Optional<String> token =
+        Optional.ofNullable(req.getCookies())
+            .flatMap(
+                cookies ->
+                    Arrays.stream(cookies)
+                        .filter(cookie -> COOKIE_NAME.equals(cookie.getName()))
+                        .map(Cookie::getValue)
+                        .filter(value -> !nullToEmpty(value).isEmpty())
+                        .findFirst());
+    return new SignedSessionMetadata(
+        ServerSecret.get().asBytes(),
+        token,
+        extractOptionalHeader(req, ProxyHttpHeaders.CERTIFICATE_HASH).orElse(""),
+        req,
+        response,
+        clock.nowUtc());
+  }
+
+  @Override
+  public void invalidate() {
+    checkValid();
+    invalidated = true;
+    response.setHeader(HttpHeaders.SET_COOKIE, COOKIE_NAME + "=; Max-Age=0; Path=/");
+  }
+
+  @Override
+  public String getClientId() {
+    checkValid();
+    return clientId;
+  }
+
+  @Override
+  public Set<String> getServiceExtensionUris() {
+    checkValid();
+    return serviceExtensionUris;
+  }
+
+  @Override
+  public int getFailedLoginAttempts() {
+    checkValid();
+    return Optional.ofNullable(req.getSession(false))
+        .map(session -> (Integer) session.getAttribute(FAILED_LOGIN_ATTEMPTS))
+        .orElse(0);
+  }
+
+  @Override
+  public void setClientId(String clientId) {
+    checkValid();
+    this.clientId = clientId;
+    writeToken();
+  }
+
+  @Override
+  public void setServiceExtensionUris(Set<String> serviceExtensionUris) {
+    checkValid();
+    this.serviceExtensionUris = ImmutableSet.copyOf(serviceExtensionUris);
+    writeToken();
+  }
+
+  @Override
+  public void incrementFailedLoginAttempts() {
+    checkValid();
+    req.getSession(true).setAttribute(FAILED_LOGIN_ATTEMPTS, getFailedLoginAttempts() + 1);
+  }
+
+  @Override
+  public void resetFailedLoginAttempts() {
+    checkValid();
+    // Don't create a servlet session just to reset a count that was never incremented.
+    Optional.ofNullable(req.getSession(false))
+        .ifPresent(session -> session.removeAttribute(FAILED_LOGIN_ATTEMPTS));
+  }
+
+  private void checkValid() {
+    checkState(!invalidated, "Session has been invalidated");
+  }
+
+  /**
+   * Sets the session to the one in the given token, if its signature is valid, it hasn't expired
+   * and it was issued to the certificate of this connection.
+   */
+  private void readToken(String token) {
+    List<String> parts = Splitter.on('.').splitToList(token);
+    try {
+      if (parts.size() != 2) {
+        throw new IllegalArgumentException("Token doesn't have exactly two parts");
+      }
+      byte[] payload = ENCODING.decode(parts.get(0));
+      if (!MessageDigest.isEqual(sign(payload), ENCODING.decode(parts.get(1)))) {
+        logger.atWarning().log("Ignoring EPP session token with an invalid signature.");
+        return;
+      }
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+      byte version = input.readByte();
+      if (version != TOKEN_VERSION) {
+        throw new IllegalArgumentException("Unknown token version " + version);
+      }
+      DateTime issueTime = new DateTime(input.readLong(), UTC);
+      String tokenCertificateHash = input.readUTF();
+      String tokenClientId = input.readUTF();
+      ImmutableSet.Builder<String> tokenServiceExtensionUris = new ImmutableSet.Builder<>();
+      for (int i = input.readUnsignedShort(); i > 0; i--) {
+        tokenServiceExtensionUris.add(input.readUTF());
+      }
+      if (issueTime.plus(MAX_TOKEN_AGE).isBefore(now)) {
+        logger.atInfo().log("Ignoring EPP session token issued at %s.", issueTime);
+        return;
+      }
+      if (!tokenCertificateHash.equals(certificateHash)) {
+        logger.atWarning().log(
+            "Ignoring EPP session token issued to certificate %s, presented with %s.",
+            tokenCertificateHash, certificateHash);
+        return;
+      }
+      clientId = tokenClientId.isEmpty() ? null : tokenClientId;
+      serviceExtensionUris = tokenServiceExtensionUris.build();
+      if (clientId != null && issueTime.plus(TOKEN_REFRESH_AGE).isBefore(now)) {
+        writeToken();
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      logger.atWarning().withCause(e).log("Ignoring malformed EPP session token.");
+    }
+  }
+
+  /** Issues a token for the current session. */
+  private void writeToken() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(TOKEN_VERSION);
+      output.writeLong(now.getMillis());
+      output.writeUTF(certificateHash);
+      output.writeUTF(nullToEmpty(clientId));
+      output.writeShort(serviceExtensionUris.size());
+      for (String uri : serviceExtensionUris) {
+        output.writeUTF(uri);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Writing to a byte array can't fail", e);
+    }
+    byte[] payload = bytes.toByteArray();
+    response.setHeader(
+        HttpHeaders.SET_COOKIE,
+        String.format(
+            "%s=%s.%s; Path=/; HttpOnly",
+            COOKIE_NAME, ENCODING.encode(payload), ENCODING.encode(sign(payload))));
+  }
+
+  private byte[] sign(byte[] payload) {
+    return hmac.hashBytes(payload).asBytes();
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(getClass())
+        .add("clientId", clientId)
+        .add("serviceExtensionUris", Joiner.on('.').join(serviceExtensionUris))
+        .toString();
+  }
+}
@@ -110,6 +110,7 @@ import google.registry.model.registry.label.ReservationType;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.DomainTransactionRecord.TransactionReportField;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.IcannReportingCounterDao;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.tmch.LordnTaskUtils;
 import java.util.Optional;
@@ -361,6 +362,7 @@ public class DomainCreateFlow implements TransactionalFlow {
             .build();
     DomainHistory domainHistory =
         buildDomainHistory(domain, registry, now, period, registry.getAddGracePeriodLength());
+    IcannReportingCounterDao.recordTransactions(domainHistory);
     if (reservationTypes.contains(NAME_COLLISION)) {
       entitiesToSave.add(
           createNameCollisionOneTimePollMessage(targetId, domainHistory, clientId, now));
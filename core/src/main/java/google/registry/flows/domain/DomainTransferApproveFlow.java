@@ -59,6 +59,7 @@ import google.registry.model.poll.PollMessage;
 import google.registry.model.registry.Registry;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.IcannReportingCounterDao;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.model.transfer.DomainTransferData;
 import google.registry.model.transfer.TransferStatus;
@@ -210,6 +211,7 @@ public final class DomainTransferApproveFlow implements TransactionalFlow {
             .build();
     Registry registry = Registry.get(existingDomain.getTld());
     DomainHistory domainHistory = buildDomainHistory(newDomain, registry, now, gainingClientId);
+    IcannReportingCounterDao.recordTransactions(domainHistory);
     // Create a poll message for the gaining client.
     PollMessage gainingClientPollMessage =
         createGainingTransferPollMessage(
@@ -49,6 +49,7 @@ import google.registry.model.eppoutput.EppResponse;
 import google.registry.model.registry.Registry;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.IcannReportingCounterDao;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.model.transfer.TransferStatus;
 import java.util.Optional;
@@ -107,6 +108,7 @@ public final class DomainTransferRejectFlow implements TransactionalFlow {
     DomainBase newDomain =
         denyPendingTransfer(existingDomain, TransferStatus.CLIENT_REJECTED, now, clientId);
     DomainHistory domainHistory = buildDomainHistory(newDomain, registry, now);
+    IcannReportingCounterDao.recordTransactions(domainHistory);
     tm().putAll(
             newDomain,
             domainHistory,
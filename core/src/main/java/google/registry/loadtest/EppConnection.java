@@ -0,0 +1,25 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** A single EPP session with a registry, used to send commands during a load test. */
+public interface EppConnection extends Closeable {
+
+  /** Sends an EPP command and blocks until its response has been received. */
+  String send(String xml) throws IOException;
+}
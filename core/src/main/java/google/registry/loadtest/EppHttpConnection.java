@@ -0,0 +1,109 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.loadtest;
+
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.google.common.net.HttpHeaders.COOKIE;
+import static com.google.common.net.HttpHeaders.SET_COOKIE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.common.io.ByteStreams;
+import google.registry.util.ProxyHttpHeaders;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link EppConnection} that POSTs EPP commands directly to the EPP endpoint of a Nomulus
+ * server, the way the proxy does.
+ *
+ * <p>This lets a load test bypass the proxy, e.g. to drive {@code EppTlsAction} on a local test
+ * server. Since there is no TLS handshake, the client certificate hash and IP address are passed in
+ * the headers the proxy would normally set. Session cookies are kept per connection, just like the
+ * proxy keeps them per registrar channel.
+ */
+final class EppHttpConnection implements EppConnection {
+
+  private static final String EPP_CONTENT_TYPE = "application/epp+xml";
+
+  private final URL url;
+  private final String certificateHash;
+  private final String clientIpAddress;
+  private final int timeoutMillis;
+  private final Map<String, String> cookies = new LinkedHashMap<>();
+
+  EppHttpConnection(URL url, String certificateHash, String clientIpAddress, int timeoutMillis) {
+    this.url = url;
+    this.certificateHash = certificateHash;
+    this.clientIpAddress = clientIpAddress;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  @Override
+  public String send(String xml) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try {
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      connection.setConnectTimeout(timeoutMillis);
+      connection.setReadTimeout(timeoutMillis);
+      connection.setRequestProperty(CONTENT_TYPE, EPP_CONTENT_TYPE);
+      connection.setRequestProperty(ProxyHttpHeaders.CERTIFICATE_HASH, certificateHash);
+      connection.setRequestProperty(ProxyHttpHeaders.IP_ADDRESS, clientIpAddress);
+      if (!cookies.isEmpty()) {
+        connection.setRequestProperty(COOKIE, Joiner.on("; ").join(cookies.values()));
+      }
+      try (OutputStream output = connection.getOutputStream()) {
+        output.write(xml.getBytes(UTF_8));
+      }
+      int responseCode = connection.getResponseCode();
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        throw new IOException(
+            String.format("EPP endpoint %s returned HTTP status %d", url, responseCode));
+      }
+      saveCookies(connection.getHeaderFields().get(SET_COOKIE));
+      try (InputStream input = connection.getInputStream()) {
+        return new String(ByteStreams.toByteArray(input), UTF_8);
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private void saveCookies(List<String> setCookieHeaders) {
+    if (setCookieHeaders == null) {
+      return;
+    }
+    for (String header : setCookieHeaders) {
+      // Only the name=value pair is sent back; attributes such as Path and Expires are ignored.
+      String nameValue = header.split(";", 2)[0].trim();
+      int separator = nameValue.indexOf('=');
+      if (separator > 0) {
+        cookies.put(nameValue.substring(0, separator), nameValue);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    cookies.clear();
+  }
+}
@@ -0,0 +1,484 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.loadtest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static google.registry.util.ResourceUtils.readResourceUtf8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.net.SocketFactory;
+import org.joda.time.Duration;
+
+/**
+ * Open-loop EPP load generator that runs outside of App Engine.
+ *
+ * <p>Unlike {@link LoadTestAction}, which enqueues push-queue tasks against the epptool endpoint,
+ * this sends EPP commands over a set of logged-in sessions to any EPP endpoint: the proxy (EPP over
+ * TLS, RFC 5734), or the EPP endpoint of a server directly (e.g. a local test server).
+ *
+ * <p>Commands of each type are scheduled at a fixed rate regardless of how quickly the server
+ * responds (i.e. the load is "open-loop"). Latencies are measured from the time a command was
+ * <i>scheduled</i> to be sent rather than when it actually was, so that any time spent waiting for
+ * a free session when the server falls behind is included. This avoids coordinated omission, where
+ * a slow server throttles its own load and hides its tail latency. The time spent on the wire
+ * (service time) is tracked separately.
+ */
+public final class EppLoadGenerator {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int CONTACT_LENGTH = 13;
+  private static final int HOST_LENGTH = 40;
+  private static final int DOMAIN_LABEL_LENGTH = 20;
+
+  private static final Pattern RESULT_CODE_PATTERN = Pattern.compile("<result code=\"(\\d{4})\"");
+  private static final Pattern EXPIRATION_DATE_PATTERN =
+      Pattern.compile("<domain:exDate>(\\d{4}-\\d{2}-\\d{2})");
+
+  private static final Random random = new Random();
+
+  private static final ImmutableMap<String, String> TEMPLATES =
+      ImmutableMap.<String, String>builder()
+          .put("contact_create", loadTemplate("contact_create"))
+          .put("domain_check", loadTemplate("domain_check"))
+          .put("domain_create", loadTemplate("domain_create"))
+          .put("domain_info", loadTemplate("domain_info"))
+          .put("domain_renew", loadTemplate("domain_renew"))
+          .put("domain_transfer_query", loadTemplate("domain_transfer_query"))
+          .put("host_create", loadTemplate("host_create"))
+          .put("login", loadTemplate("login"))
+          .put("logout", loadTemplate("logout"))
+          .put("poll", loadTemplate("poll"))
+          .build();
+
+  /** The kinds of EPP commands that can be included in the traffic mix. */
+  public enum CommandType {
+    /** Checks a random domain and the existing domain. */
+    CHECK,
+    /** Creates a new domain with a random name. */
+    CREATE,
+    /** Runs an info command on the existing domain. */
+    INFO,
+    /** Renews a domain created earlier in the test, or else the existing domain. */
+    RENEW,
+    /** Queries the transfer status of the existing domain. */
+    TRANSFER,
+    /** Requests the next poll message. */
+    POLL
+  }
+
+  /** Opens new, not yet logged-in, EPP sessions. */
+  public interface ConnectionFactory {
+    EppConnection connect() throws IOException;
+  }
+
+  /** Returns a factory for EPP over TCP (or TLS, depending on the socket factory) connections. */
+  public static ConnectionFactory tcpConnectionFactory(
+      SocketFactory socketFactory, String host, int port, int timeoutMillis) {
+    return () -> EppTcpConnection.open(socketFactory, host, port, timeoutMillis);
+  }
+
+  /** Returns a factory for connections that POST directly to a server's EPP endpoint. */
+  public static ConnectionFactory httpConnectionFactory(
+      URL url, String certificateHash, String clientIpAddress, int timeoutMillis) {
+    return () -> new EppHttpConnection(url, certificateHash, clientIpAddress, timeoutMillis);
+  }
+
+  private final ConnectionFactory connectionFactory;
+  private final String clientId;
+  private final String password;
+  private final String tld;
+  private final String existingDomain;
+  private final ImmutableMap<CommandType, Double> ratesPerSecond;
+  private final int numSessions;
+  private final Duration runDuration;
+
+  private final ImmutableMap<CommandType, CommandStats> stats;
+  private final BlockingQueue<EppConnection> sessions = new LinkedBlockingQueue<>();
+  private final AtomicInteger liveSessions = new AtomicInteger();
+  private final ConcurrentLinkedQueue<RenewableDomain> renewableDomains =
+      new ConcurrentLinkedQueue<>();
+
+  private String contact;
+  private String host;
+  private Optional<String> existingDomainExpirationDate = Optional.empty();
+
+  /**
+   * Creates a new load generator.
+   *
+   * @param existingDomain the label (without the TLD) of a domain sponsored by {@code clientId},
+   *     used as the target of info, transfer query and (as a fallback) renew commands
+   * @param ratesPerSecond how many commands of each type to send per second
+   * @param numSessions how many concurrent EPP sessions to open; this bounds the number of commands
+   *     in flight at any time
+   */
+  public EppLoadGenerator(
+      ConnectionFactory connectionFactory,
+      String clientId,
+      String password,
+      String tld,
+      String existingDomain,
+      ImmutableMap<CommandType, Double> ratesPerSecond,
+      int numSessions,
+      Duration runDuration) {
+    checkArgument(numSessions > 0, "There must be at least one session");
+    checkArgument(
+        ratesPerSecond.values().stream().anyMatch(rate -> rate > 0),
+        "At least one command type must have a positive rate");
+    checkArgument(
+        ratesPerSecond.values().stream().allMatch(rate -> rate >= 0), "Rates must not be negative");
+    this.connectionFactory = connectionFactory;
+    this.clientId = clientId;
+    this.password = password;
+    this.tld = tld;
+    this.existingDomain = existingDomain;
+    this.ratesPerSecond = ratesPerSecond;
+    this.numSessions = numSessions;
+    this.runDuration = runDuration;
+    ImmutableMap.Builder<CommandType, CommandStats> statsBuilder = new ImmutableMap.Builder<>();
+    ratesPerSecond.keySet().forEach(type -> statsBuilder.put(type, new CommandStats()));
+    this.stats = statsBuilder.build();
+  }
+
+  /** Runs the load test to completion and returns a report of the results. */
+  public String run() throws IOException, InterruptedException {
+    try {
+      for (int i = 0; i < numSessions; i++) {
+        sessions.add(login(connectionFactory.connect()));
+        liveSessions.incrementAndGet();
+      }
+      setUp();
+      ExecutorService executor = Executors.newFixedThreadPool(numSessions);
+      try {
+        dispatch(executor);
+      } finally {
+        executor.shutdown();
+        // Wait for all the commands that were already scheduled, however long it takes.
+        while (!executor.awaitTermination(1, MINUTES)) {
+          logger.atInfo().log("Waiting for outstanding EPP commands to complete.");
+        }
+      }
+    } finally {
+      for (EppConnection session : sessions) {
+        try {
+          session.send(TEMPLATES.get("logout"));
+        } catch (IOException e) {
+          logger.atWarning().withCause(e).log("Failed to log out of EPP session.");
+        } finally {
+          session.close();
+        }
+      }
+    }
+    return getReport();
+  }
+
+  /** Returns the statistics gathered for the given command type. */
+  CommandStats getStats(CommandType type) {
+    return stats.get(type);
+  }
+
+  private EppConnection login(EppConnection connection) throws IOException {
+    String response =
+        connection.send(
+            TEMPLATES.get("login")
+                .replace("%clientid%", clientId)
+                .replace("%password%", password));
+    if (!isSuccess(response)) {
+      connection.close();
+      throw new IOException(String.format("Failed to log in as %s: %s", clientId, response));
+    }
+    return connection;
+  }
+
+  /** Creates the contact and host used by domain creates, and looks up the existing domain. */
+  private void setUp() throws IOException {
+    EppConnection session = sessions.peek();
+    if (ratesPerSecond.getOrDefault(CommandType.CREATE, 0.0) > 0) {
+      contact = getRandomLabel(CONTACT_LENGTH);
+      host = getRandomLabel(HOST_LENGTH);
+      checkState(
+          isSuccess(session.send(TEMPLATES.get("contact_create").replace("%contact%", contact))),
+          "Failed to create contact %s",
+          contact);
+      checkState(
+          isSuccess(session.send(TEMPLATES.get("host_create").replace("%host%", host))),
+          "Failed to create host %s",
+          host);
+    }
+    if (ratesPerSecond.getOrDefault(CommandType.RENEW, 0.0) > 0) {
+      existingDomainExpirationDate =
+          getExpirationDate(session.send(fillDomain(TEMPLATES.get("domain_info"), existingDomain)));
+    }
+  }
+
+  /** Sends commands at their scheduled times until the run duration has elapsed. */
+  private void dispatch(ExecutorService executor) {
+    long startNanos = System.nanoTime();
+    long endNanos = startNanos + MILLISECONDS.toNanos(runDuration.getMillis());
+    // Each entry is the next scheduled send time of a command type, in nanos.
+    PriorityQueue<ScheduledCommand> schedule = new PriorityQueue<>();
+    ratesPerSecond.forEach(
+        (type, rate) -> {
+          if (rate > 0) {
+            schedule.add(new ScheduledCommand(type, startNanos, (long) (1e9 / rate)));
+          }
+        });
+    while (!schedule.isEmpty()) {
+      ScheduledCommand next = schedule.poll();
+      if (next.intendedStartNanos >= endNanos) {
+        continue;
+      }
+      long delay = next.intendedStartNanos - System.nanoTime();
+      while (delay > 0) {
+        LockSupport.parkNanos(delay);
+        delay = next.intendedStartNanos - System.nanoTime();
+      }
+      long intendedStartNanos = next.intendedStartNanos;
+      CommandType type = next.type;
+      executor.execute(() -> execute(type, intendedStartNanos));
+      schedule.add(next.advance());
+    }
+  }
+
+  private void execute(CommandType type, long intendedStartNanos) {
+    CommandStats commandStats = stats.get(type);
+    EppConnection session = null;
+    try {
+      while (session == null) {
+        if (liveSessions.get() == 0) {
+          commandStats.errors.incrementAndGet();
+          return;
+        }
+        session = sessions.poll(1, SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    try {
+      String xml = createCommand(type);
+      long sendNanos = System.nanoTime();
+      String response = session.send(xml);
+      long doneNanos = System.nanoTime();
+      commandStats.serviceTime.recordNanos(doneNanos - sendNanos);
+      commandStats.responseTime.recordNanos(doneNanos - intendedStartNanos);
+      if (isSuccess(response)) {
+        commandStats.successes.incrementAndGet();
+        if (type == CommandType.CREATE) {
+          String name = getDomainName(xml);
+          getExpirationDate(response)
+              .ifPresent(date -> renewableDomains.add(new RenewableDomain(name, date)));
+        }
+      } else {
+        commandStats.failures.incrementAndGet();
+      }
+    } catch (IOException | RuntimeException e) {
+      commandStats.errors.incrementAndGet();
+      logger.atWarning().withCause(e).log("Error sending %s command; reconnecting.", type);
+      session = reconnect(session);
+    } finally {
+      if (session != null) {
+        sessions.add(session);
+      }
+    }
+  }
+
+  /** Replaces a broken session with a new one, or returns null if that isn't possible. */
+  private EppConnection reconnect(EppConnection session) {
+    try {
+      session.close();
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed to close broken EPP session.");
+    }
+    try {
+      return login(connectionFactory.connect());
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Failed to reconnect; continuing with fewer sessions.");
+      liveSessions.decrementAndGet();
+      return null;
+    }
+  }
+
+  private String createCommand(CommandType type) {
+    switch (type) {
+      case CHECK:
+        return fillDomain(TEMPLATES.get("domain_check"), getRandomLabel(DOMAIN_LABEL_LENGTH));
+      case CREATE:
+        return fillDomain(TEMPLATES.get("domain_create"), getRandomLabel(DOMAIN_LABEL_LENGTH))
+            .replace("%contact%", contact)
+            .replace("%host%", host);
+      case INFO:
+        return fillDomain(TEMPLATES.get("domain_info"), existingDomain);
+      case RENEW:
+        RenewableDomain domain = renewableDomains.poll();
+        if (domain == null) {
+          // There is no way of knowing whether the expiration date is still current, since the
+          // existing domain may have been renewed already; a failure is still a valid data point.
+          domain =
+              new RenewableDomain(
+                  existingDomain, existingDomainExpirationDate.orElse("2000-01-01"));
+        }
+        return fillDomain(TEMPLATES.get("domain_renew"), domain.label)
+            .replace("%expdate%", domain.expirationDate);
+      case TRANSFER:
+        return fillDomain(TEMPLATES.get("domain_transfer_query"), existingDomain);
+      case POLL:
+        return TEMPLATES.get("poll");
+    }
+    throw new AssertionError("Unknown command type: " + type);
+  }
+
+  private String fillDomain(String template, String label) {
+    return template.replace("%domain%", label).replace("%tld%", tld);
+  }
+
+  private String getDomainName(String createXml) {
+    Matcher matcher = Pattern.compile("<domain:name>([^.<]*)\\.").matcher(createXml);
+    checkState(matcher.find(), "No domain name in command");
+    return matcher.group(1);
+  }
+
+  /** Returns a table of the per-command results, with latencies in milliseconds. */
+  String getReport() {
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            "%-9s %8s %8s %8s %8s %9s %9s %9s %9s %9s %12s%n",
+            "command",
+            "sent",
+            "ok",
+            "failed",
+            "errors",
+            "p50",
+            "p90",
+            "p99",
+            "p99.9",
+            "max",
+            "service p99"));
+    stats.forEach(
+        (type, commandStats) -> {
+          LatencyHistogram histogram = commandStats.responseTime;
+          report.append(
+              String.format(
+                  "%-9s %8d %8d %8d %8d %9.1f %9.1f %9.1f %9.1f %9.1f %12.1f%n",
+                  type.name().toLowerCase(),
+                  commandStats.successes.get()
+                      + commandStats.failures.get()
+                      + commandStats.errors.get(),
+                  commandStats.successes.get(),
+                  commandStats.failures.get(),
+                  commandStats.errors.get(),
+                  toMillis(histogram.getValueAtPercentile(50)),
+                  toMillis(histogram.getValueAtPercentile(90)),
+                  toMillis(histogram.getValueAtPercentile(99)),
+                  toMillis(histogram.getValueAtPercentile(99.9)),
+                  toMillis(histogram.getMaxMicros()),
+                  toMillis(commandStats.serviceTime.getValueAtPercentile(99))));
+        });
+    return report.toString();
+  }
+
+  private static double toMillis(long micros) {
+    return micros / 1000.0;
+  }
+
+  private static boolean isSuccess(String response) {
+    Matcher matcher = RESULT_CODE_PATTERN.matcher(response);
+    return matcher.find() && matcher.group(1).startsWith("1");
+  }
+
+  private static Optional<String> getExpirationDate(String response) {
+    Matcher matcher = EXPIRATION_DATE_PATTERN.matcher(response);
+    return matcher.find() ? Optional.of(matcher.group(1)) : Optional.empty();
+  }
+
+  private static String loadTemplate(String name) {
+    return readResourceUtf8(EppLoadGenerator.class, String.format("templates/%s.xml", name));
+  }
+
+  private static String getRandomLabel(int numChars) {
+    StringBuilder name = new StringBuilder();
+    for (int j = 0; j < numChars; j++) {
+      name.append(Character.forDigit(random.nextInt(Character.MAX_RADIX), Character.MAX_RADIX));
+    }
+    return name.toString();
+  }
+
+  /** Results for a single command type. */
+  static final class CommandStats {
+    /** Time from when the command was scheduled to be sent until its response was received. */
+    final LatencyHistogram responseTime = new LatencyHistogram();
+
+    /** Time from when the command was actually sent until its response was received. */
+    final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    final AtomicLong successes = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+  }
+
+  /** A domain that can be renewed, along with its current expiration date (yyyy-MM-dd). */
+  private static final class RenewableDomain {
+    final String label;
+    final String expirationDate;
+
+    RenewableDomain(String label, String expirationDate) {
+      this.label = label;
+      this.expirationDate = expirationDate;
+    }
+  }
+
+  /** The next scheduled send time for a command type. */
+  private static final class ScheduledCommand implements Comparable<ScheduledCommand> {
+    final CommandType type;
+    final long intendedStartNanos;
+    final long intervalNanos;
+
+    ScheduledCommand(CommandType type, long intendedStartNanos, long intervalNanos) {
+      this.type = type;
+      this.intendedStartNanos = intendedStartNanos;
+      this.intervalNanos = intervalNanos;
+    }
+
+    ScheduledCommand advance() {
+      return new ScheduledCommand(type, intendedStartNanos + intervalNanos, intervalNanos);
+    }
+
+    @Override
+    public int compareTo(ScheduledCommand other) {
+      return Long.compare(intendedStartNanos, other.intendedStartNanos);
+    }
+  }
+}
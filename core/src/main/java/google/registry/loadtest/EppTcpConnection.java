@@ -0,0 +1,96 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.loadtest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import javax.net.SocketFactory;
+
+/**
+ * An {@link EppConnection} speaking EPP over TCP, as described in RFC 5734.
+ *
+ * <p>This is what the proxy accepts from registrars. Every message is preceded by a four byte,
+ * big-endian header containing the total length of the message, including the header itself.
+ */
+final class EppTcpConnection implements EppConnection {
+
+  private static final int HEADER_LENGTH = 4;
+
+  /** Upper bound on the size of a response we are willing to read, as a sanity check. */
+  private static final int MAX_MESSAGE_LENGTH = 64 * 1024 * 1024;
+
+  private final Socket socket;
+  private final DataInputStream input;
+  private final DataOutputStream output;
+
+  private EppTcpConnection(Socket socket) throws IOException {
+    this.socket = socket;
+    this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+  }
+
+  /**
+   * Opens a connection and consumes the greeting that the server sends upon connection.
+   *
+   * @param socketFactory the factory to create the socket with; for TLS connections this should be
+   *     an {@link javax.net.ssl.SSLSocketFactory} configured with the registrar's certificate
+   */
+  static EppTcpConnection open(
+      SocketFactory socketFactory, String host, int port, int timeoutMillis) throws IOException {
+    Socket socket = socketFactory.createSocket();
+    try {
+      socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+      socket.setSoTimeout(timeoutMillis);
+      socket.setTcpNoDelay(true);
+      EppTcpConnection connection = new EppTcpConnection(socket);
+      connection.readMessage();
+      return connection;
+    } catch (IOException | RuntimeException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public String send(String xml) throws IOException {
+    byte[] bytes = xml.getBytes(UTF_8);
+    output.writeInt(bytes.length + HEADER_LENGTH);
+    output.write(bytes);
+    output.flush();
+    return readMessage();
+  }
+
+  private String readMessage() throws IOException {
+    int length = input.readInt() - HEADER_LENGTH;
+    if (length < 0 || length > MAX_MESSAGE_LENGTH) {
+      throw new IOException(String.format("Invalid EPP message length: %d", length));
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
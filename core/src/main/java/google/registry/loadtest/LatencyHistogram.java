@@ -0,0 +1,130 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.loadtest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe, fixed-size latency histogram with bounded relative error.
+ *
+ * <p>Values are recorded in microseconds into log-linear buckets, in the style of HdrHistogram:
+ * every power-of-two range is split into {@link #SUB_BUCKETS} linear sub-buckets, so any reported
+ * percentile is within {@code 1 / SUB_BUCKETS} (about 1.6%) of the true value. Values above {@link
+ * #MAX_TRACKABLE_MICROS} are clamped to it.
+ */
+public final class LatencyHistogram {
+
+  /** Number of linear sub-buckets per power of two; must be a power of two. */
+  static final int SUB_BUCKETS = 64;
+
+  private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+  /** The largest value we can record, about 18 minutes. Larger values are clamped. */
+  static final long MAX_TRACKABLE_MICROS = (1L << 30) - 1;
+
+  private static final int NUM_BUCKETS =
+      (64 - Long.numberOfLeadingZeros(MAX_TRACKABLE_MICROS) - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /** Records a single latency value, in microseconds. */
+  public void recordMicros(long micros) {
+    checkArgument(micros >= 0, "Latency must not be negative: %s", micros);
+    long value = Math.min(micros, MAX_TRACKABLE_MICROS);
+    counts.incrementAndGet(bucketIndex(value));
+    totalCount.incrementAndGet();
+    totalMicros.addAndGet(value);
+    maxMicros.accumulateAndGet(value, Math::max);
+  }
+
+  /** Records a single latency value, in nanoseconds. */
+  public void recordNanos(long nanos) {
+    recordMicros(nanos / 1000);
+  }
+
+  /** Returns the number of values recorded so far. */
+  public long getTotalCount() {
+    return totalCount.get();
+  }
+
+  /** Returns the largest value recorded so far, in microseconds. */
+  public long getMaxMicros() {
+    return maxMicros.get();
+  }
+
+  /** Returns the mean of all recorded values in microseconds, or zero if there are none. */
+  public double getMeanMicros() {
+    long count = totalCount.get();
+    return count == 0 ? 0 : (double) totalMicros.get() / count;
+  }
+
+  /**
+   * Returns the value at the given percentile (between 0 and 100), in microseconds.
+   *
+   * <p>The returned value is the upper bound of the bucket containing the percentile, capped at
+   * the maximum recorded value, so it never underestimates the true latency.
+   */
+  public long getValueAtPercentile(double percentile) {
+    checkArgument(
+        percentile >= 0 && percentile <= 100, "Percentile must be in [0, 100]: %s", percentile);
+    long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(bucketUpperBound(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  /** Adds all values recorded in {@code other} to this histogram. */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts.addAndGet(i, other.counts.get(i));
+    }
+    totalCount.addAndGet(other.totalCount.get());
+    totalMicros.addAndGet(other.totalMicros.get());
+    maxMicros.accumulateAndGet(other.maxMicros.get(), Math::max);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    // The number of bits to shift away so that the value fits in [SUB_BUCKETS, 2 * SUB_BUCKETS).
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lowerBound = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -348,6 +348,28 @@ public abstract class EppResource extends BackupGroupRoot implements Buildable {
       return thisCastToDerived();
     }
 
+    /**
+     * Copies the fields declared in {@link EppResource} from the given resource.
+     *
+     * <p>The builders of the concrete resources use this to recreate a resource from the copy
+     * embedded in one of its history entries, e.g. a {@code DomainBase} from the {@code
+     * DomainContent} of a {@code DomainHistory}.
+     */
+    protected B copyFrom(EppResource resource) {
+      T instance = getInstance();
+      instance.updateTimestamp = resource.updateTimestamp;
+      instance.repoId = resource.repoId;
+      instance.currentSponsorClientId = resource.currentSponsorClientId;
+      instance.creationClientId = resource.creationClientId;
+      instance.lastEppUpdateClientId = resource.lastEppUpdateClientId;
+      instance.creationTime = resource.creationTime;
+      instance.deletionTime = resource.deletionTime;
+      instance.lastEppUpdateTime = resource.lastEppUpdateTime;
+      instance.status = resource.status;
+      instance.revisions = resource.revisions;
+      return thisCastToDerived();
+    }
+
     /** Build the resource, nullifying empty strings and sets and setting defaults. */
     @Override
     public T build() {
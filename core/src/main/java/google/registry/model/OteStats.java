@@ -16,8 +16,11 @@ package google.registry.model;
 
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static google.registry.model.eppcommon.EppXmlTransformer.unmarshal;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.util.CollectionUtils.isNullOrEmpty;
+import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static google.registry.util.DomainNameUtils.ACE_PREFIX;
 
 import com.google.common.base.Ascii;
@@ -25,6 +28,7 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multiset;
 import com.googlecode.objectify.Key;
 import google.registry.model.domain.DomainCommand;
@@ -41,22 +45,48 @@ import google.registry.model.reporting.HistoryEntryDao;
 import google.registry.xml.XmlException;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /** Represents stats derived from HistoryEntry objects on actions taken by registrars. */
 public class OteStats {
 
+  /**
+   * How old history entries must be before they are counted in the {@link OteStatsCheckpoint}.
+   *
+   * <p>A history entry's modification time is the time of its transaction, which may commit after
+   * transactions with later times, so the most recent entries are counted on every call instead.
+   */
+  private static final Duration CHECKPOINT_LAG = Duration.standardMinutes(10);
+
   /**
    * Returns the statistics about the OT&amp;E actions that have been taken by a particular
    * registrar.
+   *
+   * <p>Only the history entries modified since the registrar's {@link OteStatsCheckpoint} are
+   * parsed, and none at all once the checkpoint shows that all tests were passed.
    */
   public static OteStats getFromRegistrar(String registrarName) {
-    return new OteStats().recordRegistrarHistory(registrarName);
+    Optional<OteStatsCheckpoint> checkpoint = OteStatsCheckpoint.load(registrarName);
+    OteStats stats =
+        new OteStats(checkpoint.map(OteStatsCheckpoint::getStatCounts).orElse(ImmutableMap.of()));
+    if (stats.wereAllTestsPassed()) {
+      return stats;
+    }
+    DateTime cutoff = jpaTm().transact(() -> jpaTm().getTransactionTime()).minus(CHECKPOINT_LAG);
+    return stats.recordRegistrarHistory(
+        registrarName,
+        checkpoint.map(OteStatsCheckpoint::getCheckpointTime).orElse(START_OF_TIME),
+        cutoff);
   }
 
-  private OteStats() {}
+  private OteStats(Map<StatType, Integer> statCounts) {
+    statCounts.forEach(this.statCounts::add);
+  }
 
   private static final Predicate<EppInput> HAS_SEC_DNS =
       eppInput ->
@@ -190,28 +220,56 @@ public class OteStats {
 
   /**
    * Records data on what actions have been performed by the four numbered OT&amp;E variants of the
-   * registrar name.
+   * registrar name after the checkpoint time.
    *
-   * <p>Stops when it notices that all tests have passed.
+   * <p>Stops when it notices that all tests have passed. Saves a new checkpoint once all entries up
+   * to the cutoff time have been recorded.
    */
-  private OteStats recordRegistrarHistory(String registrarName) {
+  private OteStats recordRegistrarHistory(
+      String registrarName, DateTime checkpointTime, DateTime cutoff) {
     ImmutableCollection<String> registrarIds =
         OteAccountBuilder.createClientIdToTldMap(registrarName).keySet();
 
-    for (HistoryEntry historyEntry : HistoryEntryDao.loadHistoryObjectsByRegistrars(registrarIds)) {
+    // Whether entries up to the cutoff have been recorded but not saved in a checkpoint yet.
+    boolean hasUnsavedEntries = false;
+    for (HistoryEntry historyEntry :
+        HistoryEntryDao.loadHistoryObjectsByRegistrars(
+            registrarIds, checkpointTime.plusMillis(1))) {
+      // Break out early if all tests were passed.
+      if (wereAllTestsPassed()) {
+        break;
+      }
+      // Entries are in order of modification time, so all entries up to the cutoff are recorded by
+      // the time the first later one is reached.
+      if (historyEntry.getModificationTime().isAfter(cutoff)) {
+        if (hasUnsavedEntries) {
+          saveCheckpoint(registrarName, cutoff);
+          hasUnsavedEntries = false;
+        }
+      } else {
+        hasUnsavedEntries = true;
+      }
       try {
         record(historyEntry);
       } catch (XmlException e) {
         throw new RuntimeException("Couldn't parse history entry " + Key.create(historyEntry), e);
       }
-      // Break out early if all tests were passed.
-      if (wereAllTestsPassed()) {
-        break;
-      }
+    }
+    if (hasUnsavedEntries) {
+      saveCheckpoint(registrarName, cutoff);
     }
     return this;
   }
 
+  private void saveCheckpoint(String registrarName, DateTime checkpointTime) {
+    OteStatsCheckpoint.save(
+        OteStatsCheckpoint.create(
+            registrarName,
+            checkpointTime,
+            statCounts.entrySet().stream()
+                .collect(toImmutableMap(Multiset.Entry::getElement, Multiset.Entry::getCount))));
+  }
+
   /** Interprets the data in the provided HistoryEntry and increments counters. */
   private void record(final HistoryEntry historyEntry) throws XmlException {
     byte[] xmlBytes = historyEntry.getXmlBytes();
@@ -0,0 +1,83 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+
+import com.google.common.collect.ImmutableMap;
+import google.registry.model.OteStats.StatType;
+import google.registry.persistence.VKey;
+import google.registry.schema.replay.SqlOnlyEntity;
+import java.util.Map;
+import java.util.Optional;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import org.joda.time.DateTime;
+
+/**
+ * The OT&amp;E statistics of a registrar, as counted from its history up to a point in time.
+ *
+ * <p>{@link OteStats} only parses the history entries modified after the checkpoint, and moves the
+ * checkpoint forward as entries become old enough to be counted for good.
+ */
+@Entity
+public class OteStatsCheckpoint extends ImmutableObject implements SqlOnlyEntity {
+
+  /** The base name of the OT&amp;E registrars, without the numbered suffix. */
+  @Id String registrarName;
+
+  /** The modification time of the last history entry that is counted. */
+  @Column(nullable = false)
+  DateTime checkpointTime;
+
+  @Column(nullable = false)
+  Map<StatType, Integer> statCounts;
+
+  public String getRegistrarName() {
+    return registrarName;
+  }
+
+  public DateTime getCheckpointTime() {
+    return checkpointTime;
+  }
+
+  public ImmutableMap<StatType, Integer> getStatCounts() {
+    return ImmutableMap.copyOf(statCounts);
+  }
+
+  public static OteStatsCheckpoint create(
+      String registrarName, DateTime checkpointTime, Map<StatType, Integer> statCounts) {
+    OteStatsCheckpoint instance = new OteStatsCheckpoint();
+    instance.registrarName = registrarName;
+    instance.checkpointTime = checkpointTime;
+    instance.statCounts = ImmutableMap.copyOf(statCounts);
+    return instance;
+  }
+
+  /** Loads the checkpoint of the given OT&amp;E registrar base name, if there is one. */
+  public static Optional<OteStatsCheckpoint> load(String registrarName) {
+    return jpaTm()
+        .transact(
+            () ->
+                jpaTm()
+                    .loadByKeyIfPresent(VKey.createSql(OteStatsCheckpoint.class, registrarName)));
+  }
+
+  /** Saves the checkpoint, replacing any previous one for the registrar. */
+  public static void save(OteStatsCheckpoint checkpoint) {
+    jpaTm().transact(() -> jpaTm().put(checkpoint));
+  }
+}
@@ -96,6 +96,15 @@ public class ContactHistory extends HistoryEntry implements SqlEntity {
     return Optional.ofNullable(contactBase);
   }
 
+  /**
+   * Returns the {@link ContactResource} as it was after the action represented by this history
+   * object was executed, if it was recorded.
+   */
+  public Optional<ContactResource> getResourceAtPointInTime() {
+    return getContactBase()
+        .map(contactBase -> new ContactResource.Builder().copyFrom(contactBase).build());
+  }
+
   /** The key to the {@link ContactResource} this is based off of. */
   public VKey<ContactResource> getParentVKey() {
     return VKey.create(ContactResource.class, getContactRepoId());
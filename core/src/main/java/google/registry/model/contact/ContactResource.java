@@ -79,5 +79,23 @@ public class ContactResource extends ContactBase
     private Builder(ContactResource instance) {
       super(instance);
     }
+
+    /** Copies all fields of the given contact, e.g. one embedded in a {@link ContactHistory}. */
+    public Builder copyFrom(ContactBase contactBase) {
+      super.copyFrom(contactBase);
+      ContactResource instance = getInstance();
+      instance.contactId = contactBase.contactId;
+      instance.localizedPostalInfo = contactBase.localizedPostalInfo;
+      instance.internationalizedPostalInfo = contactBase.internationalizedPostalInfo;
+      instance.searchName = contactBase.searchName;
+      instance.voice = contactBase.voice;
+      instance.fax = contactBase.fax;
+      instance.email = contactBase.email;
+      instance.authInfo = contactBase.authInfo;
+      instance.transferData = contactBase.transferData;
+      instance.lastTransferTime = contactBase.lastTransferTime;
+      instance.disclose = contactBase.disclose;
+      return this;
+    }
   }
 }
@@ -181,5 +181,37 @@ public class DomainBase extends DomainContent
     Builder(DomainBase instance) {
       super(instance);
     }
+
+    /** Copies all fields of the given domain, e.g. one embedded in a {@link DomainHistory}. */
+    public Builder copyFrom(DomainContent domainContent) {
+      super.copyFrom(domainContent);
+      DomainBase instance = getInstance();
+      instance.fullyQualifiedDomainName = domainContent.fullyQualifiedDomainName;
+      instance.tld = domainContent.tld;
+      instance.nsHosts = domainContent.nsHosts;
+      instance.allContacts = domainContent.allContacts;
+      instance.adminContact = domainContent.adminContact;
+      instance.billingContact = domainContent.billingContact;
+      instance.techContact = domainContent.techContact;
+      instance.registrantContact = domainContent.registrantContact;
+      instance.authInfo = domainContent.authInfo;
+      instance.dsData = domainContent.dsData;
+      instance.launchNotice = domainContent.launchNotice;
+      instance.idnTableName = domainContent.idnTableName;
+      instance.subordinateHosts = domainContent.subordinateHosts;
+      instance.registrationExpirationTime = domainContent.registrationExpirationTime;
+      instance.deletePollMessage = domainContent.deletePollMessage;
+      instance.deletePollMessageHistoryId = domainContent.deletePollMessageHistoryId;
+      instance.autorenewBillingEvent = domainContent.autorenewBillingEvent;
+      instance.autorenewBillingEventHistoryId = domainContent.autorenewBillingEventHistoryId;
+      instance.autorenewPollMessage = domainContent.autorenewPollMessage;
+      instance.autorenewPollMessageHistoryId = domainContent.autorenewPollMessageHistoryId;
+      instance.gracePeriods = domainContent.gracePeriods;
+      instance.smdId = domainContent.smdId;
+      instance.transferData = domainContent.transferData;
+      instance.lastTransferTime = domainContent.lastTransferTime;
+      instance.autorenewEndTime = domainContent.autorenewEndTime;
+      return this;
+    }
   }
 }
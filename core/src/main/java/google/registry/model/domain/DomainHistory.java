@@ -24,6 +24,7 @@ import com.googlecode.objectify.annotation.EntitySubclass;
 import google.registry.model.ImmutableObject;
 import google.registry.model.domain.DomainHistory.DomainHistoryId;
 import google.registry.model.domain.GracePeriod.GracePeriodHistory;
+import google.registry.model.domain.secdns.DelegationSignerData;
 import google.registry.model.domain.secdns.DomainDsDataHistory;
 import google.registry.model.host.HostResource;
 import google.registry.model.reporting.DomainTransactionRecord;
@@ -233,6 +234,34 @@ public class DomainHistory extends HistoryEntry implements SqlEntity {
     return Optional.ofNullable(domainContent);
   }
 
+  /**
+   * Returns the {@link DomainBase} as it was after the action represented by this history object
+   * was executed, if it was recorded.
+   */
+  public Optional<DomainBase> getResourceAtPointInTime() {
+    return getDomainContent()
+        .map(
+            domainContent ->
+                new DomainBase.Builder()
+                    .copyFrom(domainContent)
+                    .setDsData(
+                        nullToEmptyImmutableCopy(dsDataHistories).stream()
+                            .map(
+                                dsData ->
+                                    DelegationSignerData.create(
+                                        dsData.getKeyTag(),
+                                        dsData.getAlgorithm(),
+                                        dsData.getDigestType(),
+                                        dsData.getDigest(),
+                                        getDomainRepoId()))
+                            .collect(toImmutableSet()))
+                    .setGracePeriods(
+                        nullToEmptyImmutableCopy(gracePeriodHistories).stream()
+                            .map(GracePeriodHistory::toGracePeriod)
+                            .collect(toImmutableSet()))
+                    .build());
+  }
+
   /** The key to the {@link DomainBase} this is based off of. */
   public VKey<DomainBase> getParentVKey() {
     return VKey.create(DomainBase.class, getDomainRepoId());
@@ -210,5 +210,18 @@ public class GracePeriod extends GracePeriodBase implements DatastoreAndSqlEntit
       instance.billingEventRecurring = gracePeriod.billingEventRecurring;
       return instance;
     }
+
+    /** Returns the {@link GracePeriod} that this entity is the history of. */
+    GracePeriod toGracePeriod() {
+      GracePeriod instance = new GracePeriod();
+      instance.gracePeriodId = gracePeriodId;
+      instance.type = type;
+      instance.domainRepoId = domainRepoId;
+      instance.expirationTime = expirationTime;
+      instance.clientId = clientId;
+      instance.billingEventOneTime = billingEventOneTime;
+      instance.billingEventRecurring = billingEventRecurring;
+      return instance;
+    }
   }
 }
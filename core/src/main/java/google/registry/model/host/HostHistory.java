@@ -97,6 +97,14 @@ public class HostHistory extends HistoryEntry implements SqlEntity {
     return Optional.ofNullable(hostBase);
   }
 
+  /**
+   * Returns the {@link HostResource} as it was after the action represented by this history object
+   * was executed, if it was recorded.
+   */
+  public Optional<HostResource> getResourceAtPointInTime() {
+    return getHostBase().map(hostBase -> new HostResource.Builder().copyFrom(hostBase).build());
+  }
+
   /** The key to the {@link google.registry.model.host.HostResource} this is based off of. */
   public VKey<HostResource> getParentVKey() {
     return VKey.create(HostResource.class, getHostRepoId());
@@ -63,5 +63,17 @@ public class HostResource extends HostBase
     private Builder(HostResource instance) {
       super(instance);
     }
+
+    /** Copies all fields of the given host, e.g. one embedded in a {@link HostHistory}. */
+    public Builder copyFrom(HostBase hostBase) {
+      super.copyFrom(hostBase);
+      HostResource instance = getInstance();
+      instance.fullyQualifiedHostName = hostBase.fullyQualifiedHostName;
+      instance.inetAddresses = hostBase.inetAddresses;
+      instance.superordinateDomain = hostBase.superordinateDomain;
+      instance.lastTransferTime = hostBase.lastTransferTime;
+      instance.lastSuperordinateChange = hostBase.lastSuperordinateChange;
+      return this;
+    }
   }
 }
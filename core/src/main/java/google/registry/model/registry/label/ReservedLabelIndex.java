@@ -0,0 +1,82 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.registry.label;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * A compact, immutable index of the labels in one revision of a {@link ReservedList}.
+ *
+ * <p>Labels are kept in a sorted array with their {@link ReservationType} ordinals in a parallel
+ * byte array, which takes a fraction of the memory of a map of {@link
+ * ReservedList.ReservedListEntry} objects and is searched without any allocation. Comments are not
+ * kept, since they are not needed to check a label.
+ */
+final class ReservedLabelIndex {
+
+  private static final ReservationType[] TYPES = ReservationType.values();
+
+  private final String listName;
+  private final long revisionId;
+  private final String[] labels;
+  private final byte[] types;
+
+  private ReservedLabelIndex(String listName, long revisionId, String[] labels, byte[] types) {
+    this.listName = listName;
+    this.revisionId = revisionId;
+    this.labels = labels;
+    this.types = types;
+  }
+
+  /** Creates an index of the given labels and their reservation types. */
+  static ReservedLabelIndex create(
+      String listName, long revisionId, Map<String, ReservationType> reservations) {
+    // A TreeMap sorts the labels in the same order that Arrays.binarySearch() expects.
+    TreeMap<String, ReservationType> sorted = new TreeMap<>(reservations);
+    String[] labels = new String[sorted.size()];
+    byte[] types = new byte[sorted.size()];
+    int i = 0;
+    for (Map.Entry<String, ReservationType> entry : sorted.entrySet()) {
+      checkArgument(entry.getValue() != null, "No reservation type for label %s", entry.getKey());
+      labels[i] = entry.getKey();
+      types[i] = (byte) entry.getValue().ordinal();
+      i++;
+    }
+    return new ReservedLabelIndex(listName, revisionId, labels, types);
+  }
+
+  String getListName() {
+    return listName;
+  }
+
+  long getRevisionId() {
+    return revisionId;
+  }
+
+  int size() {
+    return labels.length;
+  }
+
+  /** Returns the reservation type of the label in this list, if it is in the list. */
+  Optional<ReservationType> get(String label) {
+    int index = Arrays.binarySearch(labels, label);
+    return index < 0 ? Optional.empty() : Optional.of(TYPES[types[index]]);
+  }
+}
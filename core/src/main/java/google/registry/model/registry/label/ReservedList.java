@@ -17,8 +17,8 @@ package google.registry.model.registry.label;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.config.RegistryConfig.getDomainLabelListCacheDuration;
 import static google.registry.model.ImmutableObject.Insignificant;
 import static google.registry.model.registry.label.ReservationType.FULLY_BLOCKED;
@@ -27,12 +27,16 @@ import static google.registry.persistence.transaction.TransactionManagerFactory.
 import static google.registry.util.CollectionUtils.nullToEmpty;
 import static org.joda.time.DateTimeZone.UTC;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.Embed;
@@ -44,6 +48,7 @@ import google.registry.model.annotations.ReportedOn;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.label.DomainLabelMetrics.MetricsReservedListMatch;
 import google.registry.schema.replay.NonReplicatedEntity;
+import google.registry.util.NonFinalForTesting;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +63,7 @@ import javax.persistence.PreRemove;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /**
  * A list of reserved domain labels that are blocked from being registered for various reasons.
@@ -252,46 +258,44 @@ public final class ReservedList
     if (label.length() == 0) {
       return ImmutableSet.of(FULLY_BLOCKED);
     }
-    return getReservedListEntries(label, tld)
-        .stream()
-        .map(ReservedListEntry::getValue)
-        .collect(toImmutableSet());
+    return getReservationTypesInLists(label, tld);
   }
 
   /**
-   * Helper function to retrieve the entries associated with this label and TLD, or an empty set if
-   * no such entry exists.
+   * Helper function to retrieve the reservation types associated with this label and TLD, or an
+   * empty set if no such reservation exists.
    */
-  private static ImmutableSet<ReservedListEntry> getReservedListEntries(String label, String tld) {
+  private static ImmutableSet<ReservationType> getReservationTypesInLists(
+      String label, String tld) {
     DateTime startTime = DateTime.now(UTC);
     Registry registry = Registry.get(checkNotNull(tld, "tld must not be null"));
-    ImmutableSet.Builder<ReservedListEntry> entriesBuilder = new ImmutableSet.Builder<>();
+    ImmutableSet.Builder<ReservationType> typesBuilder = new ImmutableSet.Builder<>();
     ImmutableSet.Builder<MetricsReservedListMatch> metricMatchesBuilder =
         new ImmutableSet.Builder<>();
 
     // Loop through all reservation lists and add each of them.
-    for (ReservedList rl : loadReservedLists(registry.getReservedLists())) {
-      if (rl.getReservedListEntries().containsKey(label)) {
-        ReservedListEntry entry = rl.getReservedListEntries().get(label);
-        entriesBuilder.add(entry);
-        metricMatchesBuilder.add(
-            MetricsReservedListMatch.create(rl.getName(), entry.reservationType));
-      }
+    for (ReservedLabelIndex index : loadIndexes(registry.getReservedLists())) {
+      index
+          .get(label)
+          .ifPresent(
+              type -> {
+                typesBuilder.add(type);
+                metricMatchesBuilder.add(
+                    MetricsReservedListMatch.create(index.getListName(), type));
+              });
     }
-    ImmutableSet<ReservedListEntry> entries = entriesBuilder.build();
     DomainLabelMetrics.recordReservedListCheckOutcome(
         tld, metricMatchesBuilder.build(), DateTime.now(UTC).getMillis() - startTime.getMillis());
-    return entries;
+    return typesBuilder.build();
   }
 
-  private static ImmutableSet<ReservedList> loadReservedLists(
+  private static ImmutableList<ReservedLabelIndex> loadIndexes(
       ImmutableSet<Key<ReservedList>> reservedListKeys) {
-    return reservedListKeys
-        .stream()
+    return reservedListKeys.stream()
         .map(
             (listKey) -> {
               try {
-                return cache.get(listKey.getName());
+                return indexCache.get(listKey.getName());
               } catch (ExecutionException e) {
                 throw new UncheckedExecutionException(
                     String.format(
@@ -299,7 +303,7 @@ public final class ReservedList
                     e);
               }
             })
-        .collect(toImmutableSet());
+        .collect(toImmutableList());
   }
 
   private static LoadingCache<String, ReservedList> cache =
@@ -314,6 +318,55 @@ public final class ReservedList
                 }
               });
 
+  /**
+   * In-memory cache of the label indexes of reserved lists, keyed by list name, which is used to
+   * check labels.
+   *
+   * <p>TLDs that use the same list share its index. Rather than expiring, an index is refreshed
+   * once the cache duration has passed: the refresh only checks the latest revision id of the list,
+   * and reloads the labels only if a newer revision has been saved. While an index is being
+   * refreshed, all other requests keep using the current one.
+   */
+  @NonFinalForTesting
+  private static LoadingCache<String, ReservedLabelIndex> indexCache =
+      createIndexCache(getDomainLabelListCacheDuration());
+
+  @VisibleForTesting
+  static LoadingCache<String, ReservedLabelIndex> createIndexCache(Duration cacheDuration) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+    java.time.Duration duration = java.time.Duration.ofMillis(cacheDuration.getMillis());
+    // Guava doesn't allow refreshing after a zero duration, which is used to disable caching.
+    if (duration.isZero()) {
+      builder.expireAfterWrite(duration);
+    } else {
+      builder.refreshAfterWrite(duration);
+    }
+    return builder.build(
+        new CacheLoader<String, ReservedLabelIndex>() {
+          @Override
+          public ReservedLabelIndex load(String listName) {
+            return ReservedListDao.getLatestRevisionId(listName)
+                .map(revisionId -> loadIndex(listName, revisionId))
+                .orElse(null);
+          }
+
+          @Override
+          public ListenableFuture<ReservedLabelIndex> reload(
+              String listName, ReservedLabelIndex oldIndex) {
+            Optional<Long> revisionId = ReservedListDao.getLatestRevisionId(listName);
+            return Futures.immediateFuture(
+                revisionId.isPresent() && revisionId.get() != oldIndex.getRevisionId()
+                    ? loadIndex(listName, revisionId.get())
+                    : oldIndex);
+          }
+        });
+  }
+
+  private static ReservedLabelIndex loadIndex(String listName, long revisionId) {
+    return ReservedLabelIndex.create(
+        listName, revisionId, ReservedListDao.getReservationTypes(revisionId));
+  }
+
   /**
    * Gets the {@link ReservationType} of a label in a single ReservedList, or returns an absent
    * Optional if none exists in the list.
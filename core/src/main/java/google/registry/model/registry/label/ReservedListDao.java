@@ -17,6 +17,7 @@ package google.registry.model.registry.label;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.util.PreconditionsUtils.checkArgumentNotNull;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.flogger.FluentLogger;
 import java.util.Optional;
 
@@ -60,6 +61,48 @@ public class ReservedListDao {
                     .findFirst());
   }
 
+  /**
+   * Returns the revision id of the most recent revision of the {@link ReservedList} with the
+   * specified name, if it exists.
+   *
+   * <p>This is much cheaper than {@link #getLatestRevision}, and is used to check whether a cached
+   * list is still current.
+   */
+  public static Optional<Long> getLatestRevisionId(String reservedListName) {
+    return jpaTm()
+        .transact(
+            () ->
+                Optional.ofNullable(
+                    jpaTm()
+                        .query(
+                            "SELECT MAX(revisionId) FROM ReservedList WHERE name = :name",
+                            Long.class)
+                        .setParameter("name", reservedListName)
+                        .getSingleResult()));
+  }
+
+  /**
+   * Returns the reservation types of all labels in the given revision of a {@link ReservedList},
+   * without loading the full entries.
+   */
+  public static ImmutableMap<String, ReservationType> getReservationTypes(long revisionId) {
+    return jpaTm()
+        .transact(
+            () -> {
+              ImmutableMap.Builder<String, ReservationType> reservations =
+                  new ImmutableMap.Builder<>();
+              jpaTm()
+                  .query(
+                      "SELECT label, reservationType FROM ReservedEntry"
+                          + " WHERE revisionId = :revisionId",
+                      Object[].class)
+                  .setParameter("revisionId", revisionId)
+                  .getResultStream()
+                  .forEach(row -> reservations.put((String) row[0], (ReservationType) row[1]));
+              return reservations.build();
+            });
+  }
+
   /**
    * Returns whether the reserved list of the given name exists.
    *
@@ -142,31 +142,46 @@ public class HistoryEntryDao {
   /** Loads all history objects from all time from the given registrars. */
   public static Iterable<HistoryEntry> loadHistoryObjectsByRegistrars(
       ImmutableCollection<String> registrarIds) {
+    return loadHistoryObjectsByRegistrars(registrarIds, START_OF_TIME);
+  }
+
+  /**
+   * Loads the history objects from the given registrars modified at or after the given time, in
+   * order of modification time.
+   */
+  public static Iterable<HistoryEntry> loadHistoryObjectsByRegistrars(
+      ImmutableCollection<String> registrarIds, DateTime afterTime) {
     if (tm().isOfy()) {
       return auditedOfy()
           .load()
           .type(HistoryEntry.class)
           .filter("clientId in", registrarIds)
+          .filter("modificationTime >=", afterTime)
           .order("modificationTime");
     } else {
       return jpaTm()
           .transact(
               () ->
                   Streams.concat(
-                          loadHistoryObjectFromSqlByRegistrars(ContactHistory.class, registrarIds),
-                          loadHistoryObjectFromSqlByRegistrars(DomainHistory.class, registrarIds),
-                          loadHistoryObjectFromSqlByRegistrars(HostHistory.class, registrarIds))
+                          loadHistoryObjectFromSqlByRegistrars(
+                              ContactHistory.class, registrarIds, afterTime),
+                          loadHistoryObjectFromSqlByRegistrars(
+                              DomainHistory.class, registrarIds, afterTime),
+                          loadHistoryObjectFromSqlByRegistrars(
+                              HostHistory.class, registrarIds, afterTime))
                       .sorted(Comparator.comparing(HistoryEntry::getModificationTime))
                       .collect(toImmutableList()));
     }
   }
 
   private static <T extends HistoryEntry> Stream<T> loadHistoryObjectFromSqlByRegistrars(
-      Class<T> historyClass, ImmutableCollection<String> registrarIds) {
+      Class<T> historyClass, ImmutableCollection<String> registrarIds, DateTime afterTime) {
+    CriteriaBuilder criteriaBuilder = jpaTm().getEntityManager().getCriteriaBuilder();
     return jpaTm()
         .query(
             CriteriaQueryBuilder.create(historyClass)
                 .whereFieldIsIn("clientId", registrarIds)
+                .where("modificationTime", criteriaBuilder::greaterThanOrEqualTo, afterTime)
                 .build())
         .getResultStream();
   }
@@ -0,0 +1,112 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.reporting;
+
+import google.registry.model.ImmutableObject;
+import google.registry.schema.replay.SqlOnlyEntity;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * A running count of one field of an ICANN monthly report, for a TLD, registrar and month.
+ *
+ * <p>Counters are incremented by {@link IcannReportingCounterDao} as flows execute, so that the
+ * month's report values are known without querying the full history and request logs in BigQuery.
+ * There is at most one row per key.
+ */
+@Entity
+@Table(
+    indexes = {
+      @Index(
+          name = "icannreportingcounter_key_idx",
+          columnList = "reportMonth, type, tld, registrarId, field",
+          unique = true)
+    })
+public class IcannReportingCounter extends ImmutableObject implements SqlOnlyEntity {
+
+  /** The report whose values are counted. */
+  public enum CounterType {
+    ACTIVITY,
+    TRANSACTIONS
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  Long id;
+
+  @Column(nullable = false)
+  @Enumerated(EnumType.STRING)
+  CounterType type;
+
+  /**
+   * The TLD of the counted operations.
+   *
+   * <p>This is empty for activity on contacts and hosts, which counts towards every TLD.
+   */
+  @Column(nullable = false)
+  String tld;
+
+  @Column(nullable = false)
+  String registrarId;
+
+  /** The month of the report, formatted as {@code yyyy-MM}. */
+  @Column(nullable = false)
+  String reportMonth;
+
+  /**
+   * The report field, as named in the BigQuery report tables, e.g. {@code srs-dom-create} or
+   * {@code net_adds_1_yr}.
+   */
+  @Column(nullable = false)
+  String field;
+
+  @Column(nullable = false)
+  long count;
+
+  public long getId() {
+    return id;
+  }
+
+  public CounterType getType() {
+    return type;
+  }
+
+  public String getTld() {
+    return tld;
+  }
+
+  public String getRegistrarId() {
+    return registrarId;
+  }
+
+  public String getReportMonth() {
+    return reportMonth;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public long getCount() {
+    return count;
+  }
+}
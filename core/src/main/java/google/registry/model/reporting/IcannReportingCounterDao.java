@@ -0,0 +1,274 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.reporting;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static org.joda.time.DateTimeZone.UTC;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Ascii;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
+import google.registry.config.RegistryConfig;
+import google.registry.model.reporting.DomainTransactionRecord.TransactionReportField;
+import google.registry.model.reporting.IcannReportingCounter.CounterType;
+import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import org.joda.time.DateTime;
+import org.joda.time.YearMonth;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * Data access object for {@link IcannReportingCounter}.
+ *
+ * <p>The counters follow the same rules as the BigQuery queries in {@code
+ * google.registry.reporting.icann.sql}, so that the two can be reconciled: transactions are
+ * counted in the month of their reporting time, and activity in the month the command was
+ * received, whether or not it succeeded.
+ *
+ * <p>Counters are only written if {@link RegistryConfig#getCloudSqlIcannReportingCountersEnabled}
+ * is set. Transaction increments join the enclosing transaction, if any, so they are rolled back
+ * and retried along with the flow that made them. Activity is counted whether or not the command
+ * succeeds, so the EPP server batches its increments off the request path instead (see {@code
+ * google.registry.flows.AsyncActivityCounter}).
+ */
+public class IcannReportingCounterDao {
+
+  /** The transactions report field for attempted domain creates. */
+  public static final String ATTEMPTED_ADDS_FIELD = "attempted_adds";
+
+  private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormat.forPattern("yyyy-MM");
+
+  /** Matches prober registrars, whose domain creates aren't counted as attempted adds. */
+  private static final Pattern PROBER_REGISTRAR_PATTERN =
+      Pattern.compile("^prober-[a-z]{2}-((any)|(canary))$");
+
+  private static final String INCREMENT_QUERY =
+      "INSERT INTO \"IcannReportingCounter\" (type, tld, registrar_id, report_month, field, count)"
+          + " VALUES (:type, :tld, :registrarId, :reportMonth, :field, :amount)"
+          + " ON CONFLICT (report_month, type, tld, registrar_id, field) DO UPDATE SET"
+          + " count = \"IcannReportingCounter\".count + EXCLUDED.count";
+
+  private IcannReportingCounterDao() {}
+
+  /** Returns whether counters are maintained at all. */
+  public static boolean isEnabled() {
+    return RegistryConfig.getCloudSqlIcannReportingCountersEnabled();
+  }
+
+  /**
+   * Counts the activity of an EPP command received at the given time.
+   *
+   * @see #getActivityKeys
+   */
+  public static void recordActivity(
+      String registrarId,
+      ActivityReportField field,
+      boolean isDomainCommand,
+      Iterable<String> tlds,
+      DateTime time) {
+    incrementAll(
+        ImmutableMultiset.copyOf(
+            getActivityKeys(registrarId, field, isDomainCommand, tlds, time)));
+  }
+
+  /**
+   * Returns the counters incremented by an EPP command received at the given time.
+   *
+   * <p>A command on domains counts once towards each of their TLDs. Commands on contacts and hosts
+   * count towards the empty TLD, which stands for all TLDs. A domain create also counts as an
+   * attempted add for the registrar, unless it is a prober.
+   */
+  public static ImmutableList<CounterKey> getActivityKeys(
+      String registrarId,
+      ActivityReportField field,
+      boolean isDomainCommand,
+      Iterable<String> tlds,
+      DateTime time) {
+    String reportMonth = formatMonth(time);
+    if (!isDomainCommand) {
+      return ImmutableList.of(
+          CounterKey.create(
+              CounterType.ACTIVITY, "", registrarId, reportMonth, field.getFieldName()));
+    }
+    ImmutableList.Builder<CounterKey> keys = new ImmutableList.Builder<>();
+    for (String tld : tlds) {
+      keys.add(
+          CounterKey.create(
+              CounterType.ACTIVITY, tld, registrarId, reportMonth, field.getFieldName()));
+      if (field == ActivityReportField.DOMAIN_CREATE
+          && !PROBER_REGISTRAR_PATTERN.matcher(registrarId).matches()) {
+        keys.add(
+            CounterKey.create(
+                CounterType.TRANSACTIONS, tld, registrarId, reportMonth, ATTEMPTED_ADDS_FIELD));
+      }
+    }
+    return keys.build();
+  }
+
+  /**
+   * Increments each of the given counters by its count in the multiset, in a single transaction.
+   *
+   * <p>Counters are incremented in a fixed order, so that concurrent batches lock their rows in
+   * the same order and can't deadlock.
+   */
+  public static void incrementAll(Multiset<CounterKey> keys) {
+    if (!isEnabled() || keys.isEmpty()) {
+      return;
+    }
+    ImmutableList<Multiset.Entry<CounterKey>> entries =
+        keys.entrySet().stream()
+            .sorted(Comparator.comparing(entry -> entry.getElement().toString()))
+            .collect(toImmutableList());
+    jpaTm()
+        .transact(
+            () -> {
+              for (Multiset.Entry<CounterKey> entry : entries) {
+                CounterKey key = entry.getElement();
+                increment(
+                    key.type(),
+                    key.tld(),
+                    key.registrarId(),
+                    key.reportMonth(),
+                    key.field(),
+                    entry.getCount());
+              }
+            });
+  }
+
+  /**
+   * Counts the {@link DomainTransactionRecord}s of a history entry that is being saved.
+   *
+   * <p>The records are attributed to the registrar that made the change, except for transfer
+   * approvals and rejections, which are made by the losing registrar on behalf of the gaining one.
+   * Successful and nacked transfers are counted for both the gaining and the losing registrar.
+   */
+  public static void recordTransactions(HistoryEntry historyEntry) {
+    if (!isEnabled() || historyEntry.getDomainTransactionRecords().isEmpty()) {
+      return;
+    }
+    boolean isTransferResponse =
+        historyEntry.getType() == HistoryEntry.Type.DOMAIN_TRANSFER_APPROVE
+            || historyEntry.getType() == HistoryEntry.Type.DOMAIN_TRANSFER_REJECT;
+    String gainingRegistrarId =
+        isTransferResponse ? historyEntry.getOtherClientId() : historyEntry.getClientId();
+    String losingRegistrarId =
+        isTransferResponse ? historyEntry.getClientId() : historyEntry.getOtherClientId();
+    jpaTm()
+        .transact(
+            () -> {
+              for (DomainTransactionRecord record : historyEntry.getDomainTransactionRecords()) {
+                String reportMonth = formatMonth(record.getReportingTime());
+                TransactionReportField field = record.getReportField();
+                if (field == TransactionReportField.TRANSFER_SUCCESSFUL
+                    || field == TransactionReportField.TRANSFER_NACKED) {
+                  String outcome =
+                      field == TransactionReportField.TRANSFER_SUCCESSFUL ? "successful" : "nacked";
+                  incrementTransactions(
+                      record, gainingRegistrarId, reportMonth, "transfer_gaining_" + outcome);
+                  incrementTransactions(
+                      record, losingRegistrarId, reportMonth, "transfer_losing_" + outcome);
+                } else {
+                  incrementTransactions(
+                      record, gainingRegistrarId, reportMonth, Ascii.toLowerCase(field.name()));
+                }
+              }
+            });
+  }
+
+  /** Loads all counters of the given type and month. */
+  public static ImmutableList<IcannReportingCounter> loadByMonth(
+      CounterType type, YearMonth yearMonth) {
+    return jpaTm()
+        .transact(
+            () ->
+                ImmutableList.copyOf(
+                    jpaTm()
+                        .query(
+                            "FROM IcannReportingCounter WHERE type = :type"
+                                + " AND reportMonth = :reportMonth",
+                            IcannReportingCounter.class)
+                        .setParameter("type", type)
+                        .setParameter("reportMonth", MONTH_FORMATTER.print(yearMonth))
+                        .getResultList()));
+  }
+
+  private static void incrementTransactions(
+      DomainTransactionRecord record,
+      @Nullable String registrarId,
+      String reportMonth,
+      String field) {
+    // Records without a registrar to attribute them to are dropped by the BigQuery path as well.
+    if (registrarId == null) {
+      return;
+    }
+    increment(
+        CounterType.TRANSACTIONS,
+        record.getTld(),
+        registrarId,
+        reportMonth,
+        field,
+        record.getReportAmount());
+  }
+
+  private static void increment(
+      CounterType type,
+      String tld,
+      String registrarId,
+      String reportMonth,
+      String field,
+      long amount) {
+    jpaTm()
+        .getEntityManager()
+        .createNativeQuery(INCREMENT_QUERY)
+        .setParameter("type", type.name())
+        .setParameter("tld", tld)
+        .setParameter("registrarId", registrarId)
+        .setParameter("reportMonth", reportMonth)
+        .setParameter("field", field)
+        .setParameter("amount", amount)
+        .executeUpdate();
+  }
+
+  private static String formatMonth(DateTime time) {
+    return MONTH_FORMATTER.print(time.withZone(UTC));
+  }
+
+  /** The key of a single counter, i.e. of a row of the {@link IcannReportingCounter} table. */
+  @AutoValue
+  public abstract static class CounterKey {
+
+    public abstract CounterType type();
+
+    public abstract String tld();
+
+    public abstract String registrarId();
+
+    public abstract String reportMonth();
+
+    public abstract String field();
+
+    static CounterKey create(
+        CounterType type, String tld, String registrarId, String reportMonth, String field) {
+      return new AutoValue_IcannReportingCounterDao_CounterKey(
+          type, tld, registrarId, reportMonth, field);
+    }
+  }
+}
@@ -61,6 +61,7 @@ import google.registry.mapreduce.MapreduceModule;
 import google.registry.monitoring.whitebox.WhiteboxModule;
 import google.registry.rdap.UpdateRegistrarRdapBaseUrlsAction;
 import google.registry.rde.BrdaCopyAction;
+import google.registry.rde.PublishRdeDepositsAction;
 import google.registry.rde.RdeModule;
 import google.registry.rde.RdeReportAction;
 import google.registry.rde.RdeReporter;
@@ -73,6 +74,7 @@ import google.registry.reporting.billing.GenerateInvoicesAction;
 import google.registry.reporting.billing.PublishInvoicesAction;
 import google.registry.reporting.icann.DnsCountQueryCoordinatorModule;
 import google.registry.reporting.icann.IcannReportingModule;
+import google.registry.reporting.icann.IcannReportingReconciliationAction;
 import google.registry.reporting.icann.IcannReportingStagingAction;
 import google.registry.reporting.icann.IcannReportingUploadAction;
 import google.registry.reporting.spec11.GenerateSpec11ReportAction;
@@ -159,6 +161,8 @@ interface BackendRequestComponent {
 
   GenerateSpec11ReportAction generateSpec11ReportAction();
 
+  IcannReportingReconciliationAction icannReportingReconciliationAction();
+
   IcannReportingStagingAction icannReportingStagingAction();
 
   IcannReportingUploadAction icannReportingUploadAction();
@@ -169,6 +173,8 @@ interface BackendRequestComponent {
 
   PublishDnsUpdatesAction publishDnsUpdatesAction();
 
+  PublishRdeDepositsAction publishRdeDepositsAction();
+
   PublishSpec11ReportAction publishSpec11ReportAction();
 
   ReadDnsQueueAction readDnsQueueAction();
@@ -0,0 +1,192 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.monitoring.whitebox;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A lightweight, request-scoped breakdown of where the time in a request was spent.
+ *
+ * <p>A trace is started for the current thread with {@link #start} and ends when it is closed.
+ * While a trace is active, code anywhere on the request path can open a {@link Span} for one of
+ * the fixed {@link Stage}s, and report transaction attempts and SQL statements, without having the
+ * trace injected. When no trace is active (e.g. in Beam pipelines and most tests) these calls are
+ * no-ops, so they are safe to leave on shared code paths such as the transaction manager.
+ *
+ * <p>Spans for different stages may nest (database loads happen inside flow execution, for
+ * instance), so the stage times of a request do not add up to its total time. Nested spans for the
+ * <em>same</em> stage are only counted once, by the outermost span.
+ *
+ * <p>Traces are not thread-safe and are only visible on the thread that started them.
+ */
+public final class RequestTrace implements AutoCloseable {
+
+  /** The stages of a request that are timed separately. */
+  public enum Stage {
+    /** Parsing and validating the request XML. */
+    UNMARSHAL,
+    /** Constructing the flow, including injecting everything it depends on. */
+    FLOW_SETUP,
+    /** Validating the extensions supplied with an EPP command. */
+    EXTENSION_VALIDATION,
+    /** Running the flow's business logic, including all of the stages that happen within it. */
+    FLOW_EXECUTION,
+    /** Loading entities by key from the database. */
+    DATABASE_LOAD,
+    /** Computing prices through the premium pricing engines. */
+    PRICING,
+    /** Committing database transactions. */
+    COMMIT,
+    /** Executing SQL statements over JDBC, wherever they are issued from. */
+    SQL_EXECUTION,
+    /** Marshalling the response XML. */
+    MARSHAL
+  }
+
+  /** A timed section of a request; closing it adds the elapsed time to its stage. */
+  public interface Span extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final ThreadLocal<RequestTrace> currentTrace = new ThreadLocal<>();
+
+  private static final Span NO_OP_SPAN = () -> {};
+
+  private final Ticker ticker;
+  private final Map<Stage, Long> stageNanos = new EnumMap<>(Stage.class);
+  private final Map<Stage, Integer> openSpans = new EnumMap<>(Stage.class);
+  private int transactionAttempts;
+  private int statements;
+  private Optional<String> commandName = Optional.empty();
+
+  private RequestTrace(Ticker ticker) {
+    this.ticker = ticker;
+  }
+
+  /**
+   * Starts a new trace on the current thread.
+   *
+   * <p>A trace still active on the thread can only have been leaked by an earlier request that
+   * never closed it. It is replaced (and its data discarded), so that one leak cannot fail every
+   * later request served by the same thread.
+   */
+  public static RequestTrace start() {
+    return start(Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  static RequestTrace start(Ticker ticker) {
+    if (currentTrace.get() != null) {
+      logger.atWarning().log("Replacing a request trace that was never closed on this thread.");
+    }
+    RequestTrace trace = new RequestTrace(ticker);
+    currentTrace.set(trace);
+    return trace;
+  }
+
+  /** Returns the trace active on the current thread, if any. */
+  public static Optional<RequestTrace> current() {
+    return Optional.ofNullable(currentTrace.get());
+  }
+
+  /**
+   * Opens a span for the given stage of the current trace.
+   *
+   * <p>Use with try-with-resources. Returns a no-op span if there is no active trace.
+   */
+  public static Span span(Stage stage) {
+    RequestTrace trace = currentTrace.get();
+    return trace == null ? NO_OP_SPAN : trace.openSpan(stage);
+  }
+
+  /** Records that a database transaction was attempted; attempts after the first are retries. */
+  public static void recordTransactionAttempt() {
+    RequestTrace trace = currentTrace.get();
+    if (trace != null) {
+      trace.transactionAttempts++;
+    }
+  }
+
+  /** Records that a SQL statement (or batch of statements) was executed, and how long it took. */
+  public static void recordStatement(long nanos) {
+    RequestTrace trace = currentTrace.get();
+    if (trace != null) {
+      trace.statements++;
+      trace.stageNanos.merge(Stage.SQL_EXECUTION, nanos, Long::sum);
+    }
+  }
+
+  /**
+   * Sets the name of the command being traced, which is used to label the exported metrics.
+   *
+   * <p>Requests whose command name is never set (e.g. dry runs) are not exported.
+   */
+  public static void setCommandName(String commandName) {
+    RequestTrace trace = currentTrace.get();
+    if (trace != null) {
+      trace.commandName = Optional.of(commandName);
+    }
+  }
+
+  private Span openSpan(Stage stage) {
+    int depth = openSpans.getOrDefault(stage, 0);
+    openSpans.put(stage, depth + 1);
+    if (depth > 0) {
+      return () -> openSpans.merge(stage, -1, Integer::sum);
+    }
+    long startNanos = ticker.read();
+    return () -> {
+      openSpans.merge(stage, -1, Integer::sum);
+      stageNanos.merge(stage, ticker.read() - startNanos, Long::sum);
+    };
+  }
+
+  /** Returns the name of the command being traced, if it has been set. */
+  public Optional<String> getCommandName() {
+    return commandName;
+  }
+
+  /** Returns the time spent in each stage that was entered at least once, in nanoseconds. */
+  public ImmutableMap<Stage, Long> getStageNanos() {
+    return ImmutableMap.copyOf(stageNanos);
+  }
+
+  /** Returns the number of database transactions attempted, including retries. */
+  public int getTransactionAttempts() {
+    return transactionAttempts;
+  }
+
+  /** Returns the number of SQL statements (or batches of statements) executed. */
+  public int getStatements() {
+    return statements;
+  }
+
+  /** Ends this trace, detaching it from the current thread. */
+  @Override
+  public void close() {
+    if (currentTrace.get() == this) {
+      currentTrace.remove();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.ExponentialFitter;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.Metric;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exports the state of the HikariCP connection pools through the monitoring stack.
+ *
+ * <p>HikariCP instantiates this class by name (see {@link PersistenceModule}) and calls {@link
+ * #create} once for each pool. Pool sizes are exported as gauges, sampled whenever metrics are
+ * written, and connection acquisitions, usage and timeouts are recorded as they happen.
+ */
+public class HikariMetricsTrackerFactory implements MetricsTrackerFactory {
+
+  private static final ImmutableSet<LabelDescriptor> POOL_LABEL_DESCRIPTORS =
+      ImmutableSet.of(LabelDescriptor.create("pool", "The name of the connection pool."));
+
+  private static final ImmutableSet<LabelDescriptor> POOL_STATE_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("pool", "The name of the connection pool."),
+          LabelDescriptor.create(
+              "state", "One of ACTIVE or IDLE for connections, or WAITING for threads."));
+
+  // Connection acquisitions are usually sub-millisecond, so the buckets start at 0.01 ms.
+  private static final ExponentialFitter ACQUIRE_TIME_FITTER =
+      ExponentialFitter.create(24, 2.0, 0.01);
+
+  private static final ExponentialFitter USAGE_TIME_FITTER = ExponentialFitter.create(20, 2.0, 1.0);
+
+  /** The stats of every live pool, by name. */
+  private static final Map<String, PoolStats> pools = new ConcurrentHashMap<>();
+
+  static final Metric<Long> poolSizeGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/sql/pool/size",
+              "Number of connections in each state, and of threads waiting for a connection",
+              "count",
+              POOL_STATE_LABEL_DESCRIPTORS,
+              HikariMetricsTrackerFactory::getPoolSizes,
+              Long.class);
+
+  static final EventMetric acquireTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/sql/pool/acquire_time",
+              "Time taken to acquire a connection from the pool",
+              "milliseconds",
+              POOL_LABEL_DESCRIPTORS,
+              ACQUIRE_TIME_FITTER);
+
+  static final EventMetric usageTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/sql/pool/usage_time",
+              "Time a connection was held before being returned to the pool",
+              "milliseconds",
+              POOL_LABEL_DESCRIPTORS,
+              USAGE_TIME_FITTER);
+
+  static final IncrementableMetric timeouts =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/sql/pool/timeouts",
+              "Count of connection requests that timed out waiting for a connection",
+              "count",
+              POOL_LABEL_DESCRIPTORS);
+
+  @Override
+  public IMetricsTracker create(String poolName, PoolStats poolStats) {
+    pools.put(poolName, poolStats);
+    return new IMetricsTracker() {
+      @Override
+      public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquireTime.record(elapsedAcquiredNanos / 1_000_000.0, poolName);
+      }
+
+      @Override
+      public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        usageTime.record(elapsedBorrowedMillis, poolName);
+      }
+
+      @Override
+      public void recordConnectionTimeout() {
+        timeouts.increment(poolName);
+      }
+
+      @Override
+      public void close() {
+        pools.remove(poolName);
+      }
+    };
+  }
+
+  private static ImmutableMap<ImmutableList<String>, Long> getPoolSizes() {
+    ImmutableMap.Builder<ImmutableList<String>, Long> sizes = new ImmutableMap.Builder<>();
+    pools.forEach(
+        (poolName, stats) -> {
+          sizes.put(ImmutableList.of(poolName, "ACTIVE"), (long) stats.getActiveConnections());
+          sizes.put(ImmutableList.of(poolName, "IDLE"), (long) stats.getIdleConnections());
+          sizes.put(ImmutableList.of(poolName, "WAITING"), (long) stats.getPendingThreads());
+        });
+    return sizes.build();
+  }
+}
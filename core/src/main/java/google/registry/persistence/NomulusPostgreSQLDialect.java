@@ -19,7 +19,9 @@ import google.registry.persistence.converter.StringMapDescriptor;
 import java.sql.Types;
 import org.hibernate.boot.model.TypeContributions;
 import org.hibernate.dialect.PostgreSQL95Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
 import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.StandardBasicTypes;
 
 /** Nomulus mapping rules for column types in Postgresql. */
 public class NomulusPostgreSQLDialect extends PostgreSQL95Dialect {
@@ -32,6 +34,11 @@ public class NomulusPostgreSQLDialect extends PostgreSQL95Dialect {
     registerColumnType(
         StringCollectionDescriptor.COLUMN_TYPE, StringCollectionDescriptor.COLUMN_DDL_NAME);
     registerColumnType(IntervalDescriptor.COLUMN_TYPE, IntervalDescriptor.COLUMN_NAME);
+    // hash_partition(key, n) assigns a text key to one of n partitions, numbered from 0. Parallel
+    // reads in Beam pipelines use it to split up a query.
+    registerFunction(
+        "hash_partition",
+        new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "mod(hashtext(?1) & 2147483647, ?2)"));
   }
 
   @Override
@@ -69,6 +69,10 @@ public abstract class PersistenceModule {
   public static final String HIKARI_MINIMUM_IDLE = "hibernate.hikari.minimumIdle";
   public static final String HIKARI_MAXIMUM_POOL_SIZE = "hibernate.hikari.maximumPoolSize";
   public static final String HIKARI_IDLE_TIMEOUT = "hibernate.hikari.idleTimeout";
+  public static final String HIKARI_METRICS_TRACKER_FACTORY =
+      "hibernate.hikari.metricsTrackerFactory";
+  public static final String HIKARI_POOL_NAME = "hibernate.hikari.poolName";
+  public static final String HIKARI_READ_ONLY = "hibernate.hikari.readOnly";
 
   public static final String HIKARI_DS_SOCKET_FACTORY = "hibernate.hikari.dataSource.socketFactory";
   public static final String HIKARI_DS_CLOUD_SQL_INSTANCE =
@@ -99,6 +103,12 @@ public abstract class PersistenceModule {
     properties.put(HIKARI_MINIMUM_IDLE, getHibernateHikariMinimumIdle());
     properties.put(HIKARI_MAXIMUM_POOL_SIZE, getHibernateHikariMaximumPoolSize());
     properties.put(HIKARI_IDLE_TIMEOUT, getHibernateHikariIdleTimeout());
+    // HikariCP instantiates the factory from its class name.
+    properties.put(HIKARI_METRICS_TRACKER_FACTORY, HikariMetricsTrackerFactory.class.getName());
+    // Time every SQL statement, attributing it to the current request and logging slow ones.
+    properties.put(Environment.AUTO_SESSION_EVENTS_LISTENER, SqlStatementListener.class.getName());
+    properties.put(
+        Environment.STATEMENT_INSPECTOR, SqlStatementListener.Inspector.class.getName());
     properties.put(Environment.DIALECT, NomulusPostgreSQLDialect.class.getName());
     return properties.build();
   }
@@ -202,10 +212,32 @@ public abstract class PersistenceModule {
   static JpaTransactionManager provideAppEngineJpaTm(
       SqlCredentialStore credentialStore,
       @PartialCloudSqlConfigs ImmutableMap<String, String> cloudSqlConfigs,
+      @Config("cloudSqlReplicaInstanceConnectionName")
+          Optional<String> replicaInstanceConnectionName,
       Clock clock) {
     HashMap<String, String> overrides = Maps.newHashMap(cloudSqlConfigs);
     setSqlCredential(credentialStore, new RobotUser(RobotId.NOMULUS), overrides);
-    return new JpaTransactionManagerImpl(create(overrides), clock);
+    return new JpaTransactionManagerImpl(
+        create(overrides),
+        replicaInstanceConnectionName.map(
+            instanceConnectionName -> createReplica(overrides, instanceConnectionName)),
+        clock);
+  }
+
+  /**
+   * Constructs the {@link EntityManagerFactory} for a read replica of the database configured by
+   * {@code primaryConfigs}.
+   *
+   * <p>The replica gets its own, separately named, connection pool, so that its connections are
+   * neither shared with nor counted against those of the primary database.
+   */
+  private static EntityManagerFactory createReplica(
+      Map<String, String> primaryConfigs, String instanceConnectionName) {
+    HashMap<String, String> overrides = Maps.newHashMap(primaryConfigs);
+    overrides.put(HIKARI_DS_CLOUD_SQL_INSTANCE, instanceConnectionName);
+    overrides.put(HIKARI_POOL_NAME, "replica");
+    overrides.put(HIKARI_READ_ONLY, "true");
+    return create(overrides);
   }
 
   @Provides
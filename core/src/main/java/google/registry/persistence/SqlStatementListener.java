@@ -0,0 +1,122 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence;
+
+import static google.registry.config.RegistryConfig.getHibernateSlowQueryThreshold;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
+import com.google.common.flogger.FluentLogger;
+import google.registry.monitoring.whitebox.RequestTrace;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate session listener that times every JDBC statement execution.
+ *
+ * <p>Each execution is added to the current {@link RequestTrace}, so that actions and EPP flows can
+ * report how many statements they ran and how long those took. Statements that take longer than
+ * the configured threshold are logged, with their literals stripped so that similar queries can be
+ * grouped together and no registrant data ends up in the logs.
+ *
+ * <p>Hibernate creates a new instance of this class for every session (see {@link
+ * PersistenceModule}), and a session is only ever used by one thread at a time. The SQL text is
+ * not available to session listeners, so it is captured by the companion {@link Inspector} when
+ * the statement is prepared.
+ */
+public class SqlStatementListener extends BaseSessionEventListener {
+
+  private static final long serialVersionUID = 6172914863409162533L;
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int MAX_LOGGED_SQL_LENGTH = 2000;
+
+  private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+  private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+  private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  /** The SQL of the most recently prepared statement on each thread. */
+  private static final ThreadLocal<String> lastPreparedSql = new ThreadLocal<>();
+
+  // Memoized so that the config is not read for every statement.
+  private static final Supplier<Long> slowQueryThresholdNanos =
+      Suppliers.memoize(() -> getHibernateSlowQueryThreshold().getMillis() * 1_000_000);
+
+  private long statementStartNanos;
+  private long batchStartNanos;
+
+  @Override
+  public void jdbcExecuteStatementStart() {
+    statementStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void jdbcExecuteStatementEnd() {
+    recordExecution(System.nanoTime() - statementStartNanos);
+  }
+
+  @Override
+  public void jdbcExecuteBatchStart() {
+    batchStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void jdbcExecuteBatchEnd() {
+    recordExecution(System.nanoTime() - batchStartNanos);
+  }
+
+  private static void recordExecution(long nanos) {
+    RequestTrace.recordStatement(nanos);
+    if (nanos >= slowQueryThresholdNanos.get()) {
+      logger.atWarning().log(
+          "Slow SQL statement took %dms: %s",
+          nanos / 1_000_000, normalizeSql(lastPreparedSql.get()));
+    }
+  }
+
+  /**
+   * Replaces all literals in a SQL statement with {@code ?}, collapses lists of parameters and
+   * whitespace, and truncates the result to a reasonable length.
+   */
+  @VisibleForTesting
+  static String normalizeSql(String sql) {
+    if (sql == null) {
+      return "<unknown>";
+    }
+    String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+    normalized = NUMERIC_LITERAL.matcher(normalized).replaceAll("?");
+    normalized = PARAMETER_LIST.matcher(normalized).replaceAll("?, ...");
+    normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    return normalized.length() <= MAX_LOGGED_SQL_LENGTH
+        ? normalized
+        : normalized.substring(0, MAX_LOGGED_SQL_LENGTH) + "...";
+  }
+
+  /** Statement inspector that remembers the SQL being prepared, without changing it. */
+  public static class Inspector implements StatementInspector {
+
+    private static final long serialVersionUID = -2837125530361390263L;
+
+    @Override
+    public String inspect(String sql) {
+      lastPreparedSql.set(sql);
+      return sql;
+    }
+  }
+}
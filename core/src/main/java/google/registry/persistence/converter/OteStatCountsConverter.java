@@ -0,0 +1,36 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence.converter;
+
+import com.google.common.collect.Maps;
+import google.registry.model.OteStats.StatType;
+import java.util.Map;
+import javax.persistence.Converter;
+
+/** JPA converter for storing/retrieving {@code Map<StatType, Integer>} objects. */
+@Converter(autoApply = true)
+public class OteStatCountsConverter extends StringMapConverterBase<StatType, Integer> {
+
+  @Override
+  Map.Entry<String, String> convertToDatabaseMapEntry(Map.Entry<StatType, Integer> entry) {
+    return Maps.immutableEntry(entry.getKey().name(), entry.getValue().toString());
+  }
+
+  @Override
+  Map.Entry<StatType, Integer> convertToEntityMapEntry(Map.Entry<String, String> entry) {
+    return Maps.immutableEntry(
+        StatType.valueOf(entry.getKey()), Integer.valueOf(entry.getValue()));
+  }
+}
@@ -20,6 +20,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
+import org.joda.time.Duration;
 
 /** Sub-interface of {@link TransactionManager} which defines JPA related methods. */
 public interface JpaTransactionManager extends TransactionManager {
@@ -56,6 +57,15 @@ public interface JpaTransactionManager extends TransactionManager {
   /** Executes the work in a transaction with no retries. */
   void transactNoRetry(Runnable work);
 
+  /**
+   * Executes the work in a new read-only transaction and returns the result.
+   *
+   * <p>The transaction is served by the read replica if one is configured and its replication lag
+   * is at most {@code maxStaleness}, and by the primary database otherwise. If already in a
+   * transaction, the work is executed in it instead.
+   */
+  <T> T transactNewReadOnly(Supplier<T> work, Duration maxStaleness);
+
   /** Deletes the entity by its id, throws exception if the entity is not deleted. */
   <T> void assertDelete(VKey<T> key);
 
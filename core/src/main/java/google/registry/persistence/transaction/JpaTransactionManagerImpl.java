@@ -20,10 +20,10 @@ import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.model.ofy.DatastoreTransactionManager.toSqlEntity;
 import static google.registry.util.PreconditionsUtils.checkArgumentNotNull;
-import static java.util.AbstractMap.SimpleEntry;
 import static java.util.stream.Collectors.joining;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -39,22 +39,30 @@ import google.registry.model.index.ForeignKeyIndex.ForeignKeyHostIndex;
 import google.registry.model.ofy.DatastoreTransactionManager;
 import google.registry.model.server.KmsSecret;
 import google.registry.model.tmch.ClaimsList.ClaimsListSingleton;
+import google.registry.monitoring.whitebox.RequestTrace;
+import google.registry.monitoring.whitebox.RequestTrace.Span;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
 import google.registry.persistence.JpaRetries;
 import google.registry.persistence.VKey;
 import google.registry.util.Clock;
 import google.registry.util.Retrier;
 import google.registry.util.SystemSleeper;
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -72,7 +80,9 @@ import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.SingularAttribute;
+import org.hibernate.Session;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /** Implementation of {@link JpaTransactionManager} for JPA compatible database. */
 public class JpaTransactionManagerImpl implements JpaTransactionManager {
@@ -80,6 +90,14 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
   private static final Retrier retrier = new Retrier(new SystemSleeper(), 3);
 
+  /**
+   * The maximum number of keys loaded by a single query.
+   *
+   * <p>This keeps the number of bind parameters (which is multiplied by the number of columns in
+   * composite keys) well under the Postgres limit of 32767.
+   */
+  @VisibleForTesting static final int MULTI_LOAD_BATCH_SIZE = 500;
+
   // The entity of classes in this set will be simply ignored when passed to modification
   // operations, i.e. insert, put, update and delete. This is to help maintain a single code path
   // when we switch from ofy to tm() for the database migration as we don't need have a condition
@@ -96,7 +114,13 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
 
   // EntityManagerFactory is thread safe.
   private final EntityManagerFactory emf;
+  // The read replica, if any. Only read-only transactions are ever sent to it.
+  private final Optional<EntityManagerFactory> replicaEmf;
   private final Clock clock;
+  // Measuring the replication lag takes a round trip to the replica, so we only do it once a second
+  // rather than once per transaction.
+  private final Supplier<Optional<Duration>> replicaLag =
+      Suppliers.memoizeWithExpiration(this::queryReplicaLag, 1, TimeUnit.SECONDS);
   // TODO(b/177588434): Investigate alternatives for managing transaction information. ThreadLocal
   // adds an unnecessary restriction that each request has to be processed by one thread
   // synchronously.
@@ -104,13 +128,20 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
       ThreadLocal.withInitial(TransactionInfo::new);
 
   public JpaTransactionManagerImpl(EntityManagerFactory emf, Clock clock) {
+    this(emf, Optional.empty(), clock);
+  }
+
+  public JpaTransactionManagerImpl(
+      EntityManagerFactory emf, Optional<EntityManagerFactory> replicaEmf, Clock clock) {
     this.emf = emf;
+    this.replicaEmf = replicaEmf;
     this.clock = clock;
   }
 
   @Override
   public void teardown() {
     emf.close();
+    replicaEmf.ifPresent(EntityManagerFactory::close);
   }
 
   @Override
@@ -157,29 +188,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
           if (inTransaction()) {
             return work.get();
           }
-          TransactionInfo txnInfo = transactionInfo.get();
-          txnInfo.entityManager = emf.createEntityManager();
-          EntityTransaction txn = txnInfo.entityManager.getTransaction();
-          try {
-            txn.begin();
-            txnInfo.start(clock);
-            T result = work.get();
-            txnInfo.recordTransaction();
-            txn.commit();
-            return result;
-          } catch (RuntimeException | Error e) {
-            // Error is unchecked!
-            try {
-              txn.rollback();
-              logger.atWarning().log("Error during transaction; transaction rolled back");
-            } catch (Throwable rollbackException) {
-              logger.atSevere().withCause(rollbackException).log(
-                  "Rollback failed; suppressing error");
-            }
-            throw e;
-          } finally {
-            txnInfo.clear();
-          }
+          return transactInNewEntityManager(emf, false, work);
         },
         JpaRetries::isFailedTxnRetriable);
   }
@@ -189,15 +198,32 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
     if (inTransaction()) {
       return work.get();
     }
+    return transactInNewEntityManager(emf, false, work);
+  }
+
+  /**
+   * Executes the work in a new transaction on the given database, without retries.
+   *
+   * <p>If {@code readOnly} is true, the database rejects any writes made by the work.
+   */
+  private <T> T transactInNewEntityManager(
+      EntityManagerFactory factory, boolean readOnly, Supplier<T> work) {
+    RequestTrace.recordTransactionAttempt();
     TransactionInfo txnInfo = transactionInfo.get();
-    txnInfo.entityManager = emf.createEntityManager();
+    txnInfo.entityManager = factory.createEntityManager();
     EntityTransaction txn = txnInfo.entityManager.getTransaction();
     try {
       txn.begin();
+      if (readOnly) {
+        // This must be the first statement in the transaction.
+        txnInfo.entityManager.createNativeQuery("SET TRANSACTION READ ONLY").executeUpdate();
+      }
       txnInfo.start(clock);
       T result = work.get();
       txnInfo.recordTransaction();
-      txn.commit();
+      try (Span span = RequestTrace.span(Stage.COMMIT)) {
+        txn.commit();
+      }
       return result;
     } catch (RuntimeException | Error e) {
       // Error is unchecked!
@@ -243,15 +269,27 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
     transact(work);
   }
 
-  // For now, read-only transactions and "transactNew" methods only create (or use existing)
-  // standard transactions. Attempting to use a read-only transaction can break larger transactions
-  // (if we were already in one) so we don't set read-only mode.
+  // Read-only transactions are only read-only (and only eligible for the replica) when we are not
+  // already in a transaction. Otherwise they reuse the enclosing transaction, as switching it to
+  // read-only mode would break it.
   //
   // TODO(gbrodman): If necessary, implement transactNew and readOnly transactions using Postgres
   // savepoints, see https://www.postgresql.org/docs/8.1/sql-savepoint.html
   @Override
   public <T> T transactNewReadOnly(Supplier<T> work) {
-    return retrier.callWithRetry(() -> transact(work), JpaRetries::isFailedQueryRetriable);
+    return transactNewReadOnly(work, RegistryConfig.getCloudSqlReplicaMaxStaleness());
+  }
+
+  @Override
+  public <T> T transactNewReadOnly(Supplier<T> work, Duration maxStaleness) {
+    return retrier.callWithRetry(
+        () -> {
+          if (inTransaction()) {
+            return work.get();
+          }
+          return transactInNewEntityManager(getReadOnlyEmf(maxStaleness), true, work);
+        },
+        JpaRetries::isFailedQueryRetriable);
   }
 
   @Override
@@ -265,9 +303,68 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
 
   @Override
   public <T> T doTransactionless(Supplier<T> work) {
+    // Transactionless work (e.g. cache loaders) always runs on the primary database; only callers
+    // that explicitly use transactNewReadOnly() accept reads from the replica.
     return retrier.callWithRetry(() -> transact(work), JpaRetries::isFailedQueryRetriable);
   }
 
+  /**
+   * Returns the database that read-only transactions tolerating the given staleness should use.
+   *
+   * <p>This is the replica, if there is one and its replication lag is known to be within bounds,
+   * and the primary database otherwise.
+   */
+  private EntityManagerFactory getReadOnlyEmf(Duration maxStaleness) {
+    if (!replicaEmf.isPresent()) {
+      return emf;
+    }
+    Optional<Duration> lag = getReplicaLag();
+    if (lag.isPresent() && !lag.get().isLongerThan(maxStaleness)) {
+      return replicaEmf.get();
+    }
+    logger.atWarning().atMostEvery(1, TimeUnit.MINUTES).log(
+        "Replica lag of %s exceeds %s; reading from the primary database.",
+        lag.map(Duration::toString).orElse("<unknown>"), maxStaleness);
+    return emf;
+  }
+
+  /**
+   * Returns the replication lag of the read replica, or empty if there is no replica or its lag
+   * could not be determined.
+   */
+  @VisibleForTesting
+  Optional<Duration> getReplicaLag() {
+    return replicaLag.get();
+  }
+
+  private Optional<Duration> queryReplicaLag() {
+    if (!replicaEmf.isPresent()) {
+      return Optional.empty();
+    }
+    EntityManager entityManager = replicaEmf.get().createEntityManager();
+    try {
+      // A replica that has replayed everything it has received is up to date, no matter how long
+      // ago the last transaction was. A database that is not in recovery is not a replica at all,
+      // which is only expected in tests.
+      Number lagMillis =
+          (Number)
+              entityManager
+                  .createNativeQuery(
+                      "SELECT CASE"
+                          + " WHEN NOT pg_is_in_recovery() THEN 0"
+                          + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+                          + " ELSE CAST(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp())"
+                          + " * 1000 AS BIGINT) END")
+                  .getSingleResult();
+      return Optional.ofNullable(lagMillis).map(millis -> Duration.millis(millis.longValue()));
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log("Failed to query the replication lag of the replica.");
+      return Optional.empty();
+    } finally {
+      entityManager.close();
+    }
+  }
+
   @Override
   public DateTime getTransactionTime() {
     assertInTransaction();
@@ -412,8 +509,10 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
   public <T> Optional<T> loadByKeyIfPresent(VKey<T> key) {
     checkArgumentNotNull(key, "key must be specified");
     assertInTransaction();
-    return Optional.ofNullable(getEntityManager().find(key.getKind(), key.getSqlKey()))
-        .map(this::detach);
+    try (Span span = RequestTrace.span(Stage.DATABASE_LOAD)) {
+      return Optional.ofNullable(getEntityManager().find(key.getKind(), key.getSqlKey()))
+          .map(this::detach);
+    }
   }
 
   @Override
@@ -421,31 +520,82 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
       Iterable<? extends VKey<? extends T>> keys) {
     checkArgumentNotNull(keys, "keys must be specified");
     assertInTransaction();
-    return StreamSupport.stream(keys.spliterator(), false)
-        // Accept duplicate keys.
-        .distinct()
-        .map(
-            key ->
-                new SimpleEntry<VKey<? extends T>, T>(
-                    key, detach(getEntityManager().find(key.getKind(), key.getSqlKey()))))
-        .filter(entry -> entry.getValue() != null)
-        .collect(toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+    try (Span span = RequestTrace.span(Stage.DATABASE_LOAD)) {
+      ImmutableList<VKey<? extends T>> distinctKeys =
+          StreamSupport.stream(keys.spliterator(), false)
+              // Accept duplicate keys.
+              .distinct()
+              .collect(toImmutableList());
+      // Load each kind of entity with as few queries as possible, rather than one per key.
+      Map<Class<? extends T>, List<VKey<? extends T>>> keysByKind = new LinkedHashMap<>();
+      for (VKey<? extends T> key : distinctKeys) {
+        keysByKind.computeIfAbsent(key.getKind(), kind -> new ArrayList<>()).add(key);
+      }
+      Map<VKey<? extends T>, T> loaded = new HashMap<>();
+      keysByKind.forEach(
+          (kind, keysOfKind) -> loaded.putAll(multiLoad(kind, ImmutableList.copyOf(keysOfKind))));
+      return distinctKeys.stream()
+          .filter(loaded::containsKey)
+          .collect(toImmutableMap(key -> key, loaded::get));
+    }
+  }
+
+  /**
+   * Loads all entities of one kind with the given keys, in batches of at most {@link
+   * #MULTI_LOAD_BATCH_SIZE} keys per query.
+   *
+   * <p>Entities that are already managed in this transaction are returned without being queried
+   * for, and entities that were deleted in it are treated as missing, just as with {@link
+   * EntityManager#find}.
+   */
+  private <T> ImmutableMap<VKey<? extends T>, T> multiLoad(
+      Class<? extends T> kind, ImmutableList<VKey<? extends T>> keys) {
+    List<? extends T> entities =
+        getEntityManager()
+            .unwrap(Session.class)
+            .byMultipleIds(kind)
+            .withBatchSize(MULTI_LOAD_BATCH_SIZE)
+            .enableSessionCheck(true)
+            .enableOrderedReturn(true)
+            .multiLoad(
+                keys.stream()
+                    .map(key -> (Serializable) key.getSqlKey())
+                    .collect(toImmutableList()));
+    // With ordered return, the results line up with the keys, with nulls for missing entities.
+    ImmutableMap.Builder<VKey<? extends T>, T> results = new ImmutableMap.Builder<>();
+    for (int i = 0; i < keys.size(); i++) {
+      T entity = entities.get(i);
+      if (entity != null) {
+        results.put(keys.get(i), detach(entity));
+      }
+    }
+    return results.build();
   }
 
   @Override
   public <T> ImmutableList<T> loadByEntitiesIfPresent(Iterable<T> entities) {
-    return Streams.stream(entities)
-        .map(DatastoreTransactionManager::toSqlEntity)
-        .filter(this::exists)
-        .map(this::loadByEntity)
-        .collect(toImmutableList());
+    try (Span span = RequestTrace.span(Stage.DATABASE_LOAD)) {
+      ImmutableList<VKey<? extends T>> keys =
+          Streams.stream(entities)
+              .map(DatastoreTransactionManager::toSqlEntity)
+              .map(this::getSqlKey)
+              .collect(toImmutableList());
+      ImmutableMap<VKey<? extends T>, T> loaded = loadByKeysIfPresent(keys);
+      return keys.stream()
+          .filter(loaded::containsKey)
+          .map(loaded::get)
+          .collect(toImmutableList());
+    }
   }
 
   @Override
   public <T> T loadByKey(VKey<T> key) {
     checkArgumentNotNull(key, "key must be specified");
     assertInTransaction();
-    T result = getEntityManager().find(key.getKind(), key.getSqlKey());
+    T result;
+    try (Span span = RequestTrace.span(Stage.DATABASE_LOAD)) {
+      result = getEntityManager().find(key.getKind(), key.getSqlKey());
+    }
     if (result == null) {
       throw new NoSuchElementException(key.toString());
     }
@@ -597,6 +747,12 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private <T> VKey<T> getSqlKey(T entity) {
+    return VKey.createSql(
+        (Class<T>) entity.getClass(), emf.getPersistenceUnitUtil().getIdentifier(entity));
+  }
+
   private <T> EntityType<T> getEntityType(Class<T> clazz) {
     return emf.getMetamodel().entity(clazz);
   }
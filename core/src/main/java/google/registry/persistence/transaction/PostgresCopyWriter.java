@@ -0,0 +1,386 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence.transaction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static google.registry.util.DateTimeUtils.START_OF_TIME;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.io.BaseEncoding;
+import google.registry.model.UpdateAutoTimestamp;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+import javax.persistence.PersistenceException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.CompositeType;
+import org.hibernate.type.Type;
+import org.postgresql.PGConnection;
+import org.postgresql.util.HStoreConverter;
+
+/**
+ * Writes entities to PostgreSQL with {@code COPY}, instead of merging them one at a time through
+ * Hibernate.
+ *
+ * <p>The rows are streamed into a temporary staging table and then upserted into the entity's
+ * table, which has the same effect as {@link JpaTransactionManager#putAll}, or inserted only
+ * where no row with the same id exists yet. Columns and their values come from Hibernate's mapping
+ * of the entity, so attribute converters and custom types are applied exactly as they would be by
+ * Hibernate.
+ *
+ * <p>Only entities that map to a single table, without collections or associations, are supported
+ * (see {@link #isSupported}). JPA lifecycle callbacks are not invoked, and the writes are not
+ * recorded for replay to Datastore. {@link UpdateAutoTimestamp}s are still set to the transaction
+ * time, as their callback would have done.
+ *
+ * <p>Rows are formatted as {@code COPY} reads them, so a batch is never held in memory as text.
+ */
+public final class PostgresCopyWriter {
+
+  private PostgresCopyWriter() {}
+
+  /**
+   * Returns whether entities of the given class can be written with {@code COPY}.
+   *
+   * <p>This must be called in a transaction.
+   */
+  public static boolean isSupported(Class<?> entityClass) {
+    EntityPersister persister = getPersister(entityClass);
+    if (!(persister instanceof AbstractEntityPersister)
+        || persister.getEntityMetamodel().hasSubclasses()
+        || ((AbstractEntityPersister) persister).isInherited()
+        || ((AbstractEntityPersister) persister).getConstraintOrderedTableNameClosure().length != 1
+        || !isCopyable(persister.getIdentifierType())) {
+      return false;
+    }
+    return Arrays.stream(persister.getPropertyTypes()).allMatch(PostgresCopyWriter::isCopyable);
+  }
+
+  private static boolean isCopyable(Type type) {
+    if (type.isAssociationType()) {
+      // Collections are stored in their own tables, and associations need the session.
+      return false;
+    }
+    if (type.isComponentType()) {
+      return Arrays.stream(((CompositeType) type).getSubtypes())
+          .allMatch(PostgresCopyWriter::isCopyable);
+    }
+    return true;
+  }
+
+  /**
+   * Writes the entities, all of which must be of the given supported class, in the current
+   * transaction.
+   */
+  public static void write(Class<?> entityClass, Collection<?> entities) {
+    copy(entityClass, entities, true);
+  }
+
+  /**
+   * Inserts those of the entities, all of which must be of the given supported class, whose ids
+   * are not in the database yet, in the current transaction.
+   *
+   * <p>The entity class must have a single id column.
+   *
+   * @return the ids of the inserted entities
+   */
+  public static ImmutableSet<Object> insertIfAbsent(Class<?> entityClass, Collection<?> entities) {
+    return copy(entityClass, entities, false);
+  }
+
+  private static ImmutableSet<Object> copy(
+      Class<?> entityClass, Collection<?> entities, boolean updateExisting) {
+    jpaTm().assertInTransaction();
+    checkArgument(isSupported(entityClass), "%s cannot be written with COPY", entityClass);
+    AbstractEntityPersister persister = (AbstractEntityPersister) getPersister(entityClass);
+    SessionImplementor session = jpaTm().getEntityManager().unwrap(SessionImplementor.class);
+    ImmutableList<String> idColumns = ImmutableList.copyOf(persister.getIdentifierColumnNames());
+    boolean[] insertable = persister.getPropertyInsertability();
+    ImmutableList<Integer> properties =
+        IntStream.range(0, insertable.length)
+            .filter(i -> insertable[i])
+            .boxed()
+            .collect(toImmutableList());
+    ImmutableList<String> columns =
+        new ImmutableList.Builder<String>()
+            .addAll(idColumns)
+            .addAll(
+                properties.stream()
+                    .flatMap(i -> Arrays.stream(persister.getPropertyColumnNames(i)))
+                    .iterator())
+            .build();
+    checkArgument(
+        updateExisting || idColumns.size() == 1, "%s has a composite id", entityClass);
+    UpdateAutoTimestamp updateTimestamp = UpdateAutoTimestamp.create(jpaTm().getTransactionTime());
+    return session.doReturningWork(
+        connection -> {
+          Iterator<String> rows =
+              Iterators.transform(
+                  entities.iterator(),
+                  entity -> {
+                    checkArgument(
+                        entityClass.isInstance(entity), "Not a %s: %s", entityClass, entity);
+                    Object[] values;
+                    try {
+                      values =
+                          getColumnValues(
+                              connection,
+                              session,
+                              persister,
+                              properties,
+                              entity,
+                              columns.size(),
+                              updateTimestamp);
+                    } catch (SQLException e) {
+                      throw new PersistenceException(e);
+                    }
+                    return Arrays.stream(values)
+                            .map(PostgresCopyWriter::formatValue)
+                            .collect(joining("\t"))
+                        + "\n";
+                  });
+          return copyAndMerge(
+              connection,
+              persister.getTableName(),
+              idColumns,
+              columns,
+              new RowReader(rows),
+              updateExisting);
+        });
+  }
+
+  /**
+   * Returns the values of the entity's columns, as Hibernate would bind them in an insert.
+   *
+   * <p>{@link UpdateAutoTimestamp} properties are replaced with {@code updateTimestamp}, unless
+   * auto-updates are disabled and the property is already set, which is what the {@code
+   * PrePersist} callback on {@link UpdateAutoTimestamp} does when Hibernate writes the entity.
+   */
+  private static Object[] getColumnValues(
+      Connection connection,
+      SessionImplementor session,
+      AbstractEntityPersister persister,
+      ImmutableList<Integer> properties,
+      Object entity,
+      int columnCount,
+      UpdateAutoTimestamp updateTimestamp)
+      throws SQLException {
+    Object[] values = new Object[columnCount];
+    PreparedStatement statement = newCapturingStatement(connection, values);
+    SessionFactoryImplementor sessionFactory = session.getFactory();
+    Object id = persister.getIdentifier(entity, session);
+    checkArgument(id != null, "Entity has no id: %s", entity);
+    Type idType = persister.getIdentifierType();
+    idType.nullSafeSet(statement, id, 1, session);
+    int index = 1 + idType.getColumnSpan(sessionFactory);
+    Object[] propertyValues = persister.getPropertyValues(entity);
+    Type[] propertyTypes = persister.getPropertyTypes();
+    for (int i : properties) {
+      Object value = propertyValues[i];
+      if (value instanceof UpdateAutoTimestamp
+          && (UpdateAutoTimestamp.autoUpdateEnabled()
+              || ((UpdateAutoTimestamp) value).getTimestamp().equals(START_OF_TIME))) {
+        value = updateTimestamp;
+      }
+      propertyTypes[i].nullSafeSet(statement, value, index, session);
+      index += propertyTypes[i].getColumnSpan(sessionFactory);
+    }
+    return values;
+  }
+
+  /**
+   * Returns a {@link PreparedStatement} that stores the parameters bound to it in {@code values}
+   * instead of executing anything.
+   */
+  private static PreparedStatement newCapturingStatement(Connection connection, Object[] values) {
+    return (PreparedStatement)
+        Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(),
+            new Class<?>[] {PreparedStatement.class},
+            (proxy, method, args) -> {
+              String name = method.getName();
+              if (name.equals("getConnection")) {
+                // Some types need the connection to create arrays.
+                return connection;
+              }
+              if (name.startsWith("set") && args != null && args[0] instanceof Integer) {
+                values[(Integer) args[0] - 1] = name.equals("setNull") ? null : args[1];
+                return null;
+              }
+              throw new UnsupportedOperationException("Unexpected call to " + method);
+            });
+  }
+
+  /**
+   * Copies the rows into a staging table and merges them into the given table, returning the ids
+   * of the inserted rows if existing rows are not updated.
+   */
+  private static ImmutableSet<Object> copyAndMerge(
+      Connection connection,
+      String table,
+      ImmutableList<String> idColumns,
+      ImmutableList<String> columns,
+      Reader rows,
+      boolean updateExisting)
+      throws SQLException {
+    String columnList = Joiner.on(", ").join(columns);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+          String.format(
+              "CREATE TEMP TABLE copy_staging (LIKE %s INCLUDING DEFAULTS) ON COMMIT DROP", table));
+      connection
+          .unwrap(PGConnection.class)
+          .getCopyAPI()
+          .copyIn(
+              String.format("COPY copy_staging (%s) FROM STDIN", columnList), rows);
+      ImmutableList<String> updates =
+          columns.stream()
+              .filter(column -> !idColumns.contains(column))
+              .map(column -> String.format("%s = EXCLUDED.%s", column, column))
+              .collect(toImmutableList());
+      String insert =
+          String.format(
+              "INSERT INTO %s (%s) SELECT %s FROM copy_staging ON CONFLICT (%s) DO ",
+              table, columnList, columnList, Joiner.on(", ").join(idColumns));
+      ImmutableSet.Builder<Object> insertedIds = new ImmutableSet.Builder<>();
+      if (updateExisting) {
+        statement.execute(
+            insert
+                + (updates.isEmpty() ? "NOTHING" : "UPDATE SET " + Joiner.on(", ").join(updates)));
+      } else {
+        try (ResultSet resultSet =
+            statement.executeQuery(insert + "NOTHING RETURNING " + idColumns.get(0))) {
+          while (resultSet.next()) {
+            insertedIds.add(resultSet.getObject(1));
+          }
+        }
+      }
+      statement.execute("DROP TABLE copy_staging");
+      return insertedIds.build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Formats a value bound by Hibernate for the text format of {@code COPY}. */
+  @VisibleForTesting
+  static String formatValue(@Nullable Object value) {
+    if (value == null) {
+      return "\\N";
+    }
+    if (value instanceof Boolean) {
+      return (Boolean) value ? "t" : "f";
+    }
+    if (value instanceof Timestamp) {
+      // The instant, rather than the local time in some unspecified zone.
+      return ((Timestamp) value).toInstant().toString();
+    }
+    if (value instanceof byte[]) {
+      return escape("\\x" + BaseEncoding.base16().lowerCase().encode((byte[]) value));
+    }
+    if (value instanceof Map) {
+      return escape(HStoreConverter.toString((Map<?, ?>) value));
+    }
+    return escape(value.toString());
+  }
+
+  private static String escape(String value) {
+    StringBuilder escaped = new StringBuilder(value.length());
+    for (char c : value.toCharArray()) {
+      switch (c) {
+        case '\\':
+          escaped.append("\\\\");
+          break;
+        case '\n':
+          escaped.append("\\n");
+          break;
+        case '\r':
+          escaped.append("\\r");
+          break;
+        case '\t':
+          escaped.append("\\t");
+          break;
+        default:
+          escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  /** A {@link Reader} over rows of text that are only produced as they are read. */
+  private static class RowReader extends Reader {
+
+    private final Iterator<String> rows;
+    private String row = "";
+    private int position;
+
+    RowReader(Iterator<String> rows) {
+      this.rows = rows;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      while (position == row.length()) {
+        if (!rows.hasNext()) {
+          return -1;
+        }
+        row = rows.next();
+        position = 0;
+      }
+      int count = Math.min(length, row.length() - position);
+      row.getChars(position, position + count, buffer, offset);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static EntityPersister getPersister(Class<?> entityClass) {
+    return jpaTm()
+        .getEntityManager()
+        .getEntityManagerFactory()
+        .unwrap(SessionFactoryImplementor.class)
+        .getMetamodel()
+        .entityPersister(entityClass);
+  }
+}
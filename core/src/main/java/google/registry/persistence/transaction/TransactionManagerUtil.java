@@ -50,6 +50,21 @@ public class TransactionManagerUtil {
         });
   }
 
+  /**
+   * Returns the result of the given {@link Supplier}.
+   *
+   * <p>If {@link TransactionManagerFactory#tm()} returns a {@link JpaTransactionManager} instance,
+   * the {@link Supplier} is executed in a read-only transaction, which may be served by the read
+   * replica.
+   */
+  public static <T> T transactNewReadOnlyIfJpaTm(Supplier<T> supplier) {
+    if (tm() instanceof JpaTransactionManager) {
+      return tm().transactNewReadOnly(supplier);
+    } else {
+      return supplier.get();
+    }
+  }
+
   /**
    * Executes the given {@link Runnable} if {@link TransactionManagerFactory#tm()} returns a {@link
    * DatastoreTransactionManager} instance, otherwise does nothing.
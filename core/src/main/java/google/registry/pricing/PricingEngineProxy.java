@@ -21,6 +21,9 @@ import static google.registry.util.DomainNameUtils.getTldFromDomainName;
 import google.registry.model.pricing.PremiumPricingEngine;
 import google.registry.model.pricing.PremiumPricingEngine.DomainPrices;
 import google.registry.model.registry.Registry;
+import google.registry.monitoring.whitebox.RequestTrace;
+import google.registry.monitoring.whitebox.RequestTrace.Span;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
 import java.util.Map;
 import org.joda.money.Money;
 import org.joda.time.DateTime;
@@ -57,11 +60,13 @@ public final class PricingEngineProxy {
    * domain is under.
    */
   public static DomainPrices getPricesForDomainName(String domainName, DateTime priceTime) {
-    String tld = getTldFromDomainName(domainName);
-    String clazz = Registry.get(tld).getPremiumPricingEngineClassName();
-    PremiumPricingEngine engine = premiumPricingEngines.get(clazz);
-    checkState(engine != null, "Could not load pricing engine %s for TLD %s", clazz, tld);
-    return engine.getDomainPrices(domainName, priceTime);
+    try (Span span = RequestTrace.span(Stage.PRICING)) {
+      String tld = getTldFromDomainName(domainName);
+      String clazz = Registry.get(tld).getPremiumPricingEngineClassName();
+      PremiumPricingEngine engine = premiumPricingEngines.get(clazz);
+      checkState(engine != null, "Could not load pricing engine %s for TLD %s", clazz, tld);
+      return engine.getDomainPrices(domainName, priceTime);
+    }
   }
 
   private PricingEngineProxy() {}
@@ -194,18 +194,18 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
   /** Searches for domains by domain name with an initial string, wildcard and possible suffix. */
   private DomainSearchResponse searchByDomainNameWithInitialString(
       final RdapSearchPattern partialStringQuery) {
-    // We can't query for undeleted domains as part of the query itself; that would require an
-    // inequality query on deletion time, and we are already using inequality queries on
-    // fullyQualifiedDomainName. So we instead pick an arbitrary limit of
-    // RESULT_SET_SIZE_SCALING_FACTOR times the result set size limit, fetch up to that many, and
-    // weed out all deleted domains. If there still isn't a full result set's worth of domains, we
-    // give up and return just the ones we found. Don't use queryItems, because it checks that the
-    // initial string is at least a certain length, which we don't need in this case. Query the
-    // domains directly, rather than the foreign keys, because then we have an index on TLD if we
-    // need it.
-    int querySizeLimit = RESULT_SET_SIZE_SCALING_FACTOR * rdapResultSetMaxSize;
     RdapResultSet<DomainBase> resultSet;
     if (tm().isOfy()) {
+      // We can't query for undeleted domains as part of the query itself; that would require an
+      // inequality query on deletion time, and we are already using inequality queries on
+      // fullyQualifiedDomainName. So we instead pick an arbitrary limit of
+      // RESULT_SET_SIZE_SCALING_FACTOR times the result set size limit, fetch up to that many, and
+      // weed out all deleted domains. If there still isn't a full result set's worth of domains, we
+      // give up and return just the ones we found. Don't use queryItems, because it checks that
+      // the initial string is at least a certain length, which we don't need in this case. Query
+      // the domains directly, rather than the foreign keys, because then we have an index on TLD
+      // if we need it.
+      int querySizeLimit = RESULT_SET_SIZE_SCALING_FACTOR * rdapResultSetMaxSize;
       Query<DomainBase> query =
           auditedOfy()
               .load()
@@ -222,9 +222,15 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
       // Always check for visibility, because we couldn't look at the deletionTime in the query.
       resultSet = getMatchingResources(query, true, querySizeLimit);
     } else {
+      // In SQL, the deletion time can be checked in the query itself, alongside the prefix match
+      // (which is served by the text_pattern_ops index on domain_name) and the keyset cursor. So we
+      // only need to fetch a single page, plus one to know whether there are more results. We
+      // still need to check visibility when deleted domains are requested, because the requester
+      // might not be authorized to see all of them.
+      int querySizeLimit = getStandardQuerySizeLimit();
       resultSet =
           jpaTm()
-              .transact(
+              .transactNewReadOnly(
                   () -> {
                     CriteriaBuilder criteriaBuilder =
                         jpaTm().getEntityManager().getCriteriaBuilder();
@@ -247,7 +253,9 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
                           queryBuilder.where(
                               "tld", criteriaBuilder::equal, partialStringQuery.getSuffix());
                     }
-                    return getMatchingResourcesSql(queryBuilder, true, querySizeLimit);
+                    queryBuilder = setDeletionTimeFilterSql(queryBuilder);
+                    return getMatchingResourcesSql(
+                        queryBuilder, shouldIncludeDeleted(), querySizeLimit);
                   });
     }
     return makeSearchResults(resultSet);
@@ -255,13 +263,13 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
 
   /** Searches for domains by domain name with a TLD suffix. */
   private DomainSearchResponse searchByDomainNameByTld(String tld) {
-    // Even though we are not searching on fullyQualifiedDomainName, we want the results to come
-    // back ordered by name, so we are still in the same boat as
-    // searchByDomainNameWithInitialString, unable to perform an inequality query on deletion time.
-    // Don't use queryItems, because it doesn't handle pending deletes.
-    int querySizeLimit = RESULT_SET_SIZE_SCALING_FACTOR * rdapResultSetMaxSize;
     RdapResultSet<DomainBase> resultSet;
     if (tm().isOfy()) {
+      // Even though we are not searching on fullyQualifiedDomainName, we want the results to come
+      // back ordered by name, so we are still in the same boat as
+      // searchByDomainNameWithInitialString, unable to perform an inequality query on deletion
+      // time. Don't use queryItems, because it doesn't handle pending deletes.
+      int querySizeLimit = RESULT_SET_SIZE_SCALING_FACTOR * rdapResultSetMaxSize;
       Query<DomainBase> query = auditedOfy().load().type(DomainBase.class).filter("tld", tld);
       if (cursorString.isPresent()) {
         query = query.filter("fullyQualifiedDomainName >", cursorString.get());
@@ -269,9 +277,11 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
       query = query.order("fullyQualifiedDomainName").limit(querySizeLimit);
       resultSet = getMatchingResources(query, true, querySizeLimit);
     } else {
+      // As above, SQL lets us filter on deletion time (including pending deletes) in the query.
+      int querySizeLimit = getStandardQuerySizeLimit();
       resultSet =
           jpaTm()
-              .transact(
+              .transactNewReadOnly(
                   () -> {
                     CriteriaQueryBuilder<DomainBase> builder =
                         queryItemsSql(
@@ -282,7 +292,8 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
                                 cursorString,
                                 DeletedItemHandling.INCLUDE)
                             .orderByAsc("fullyQualifiedDomainName");
-                    return getMatchingResourcesSql(builder, true, querySizeLimit);
+                    builder = setDeletionTimeFilterSql(builder);
+                    return getMatchingResourcesSql(builder, shouldIncludeDeleted(), querySizeLimit);
                   });
     }
     return makeSearchResults(resultSet);
@@ -355,7 +366,7 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
           .collect(toImmutableSet());
     } else {
       return jpaTm()
-          .transact(
+          .transactNewReadOnly(
               () -> {
                 CriteriaQueryBuilder<HostResource> builder =
                     queryItemsSql(
@@ -493,10 +504,12 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
     } else {
       // Hibernate does not allow us to query @Converted array fields directly, either
       // in the CriteriaQuery or the raw text format. However, Postgres does -- so we
-      // use native queries to find hosts where any of the inetAddresses match.
+      // use native queries to find hosts where any of the inetAddresses match. Array containment
+      // (rather than ANY()) lets Postgres use the GIN index on inet_addresses.
       StringBuilder queryBuilder =
           new StringBuilder(
-              "SELECT h.repo_id FROM \"Host\" h WHERE :address = ANY(h.inet_addresses) AND "
+              "SELECT h.repo_id FROM \"Host\" h WHERE "
+                  + "h.inet_addresses @> ARRAY[CAST(:address AS text)] AND "
                   + "h.deletion_time = CAST(:endOfTime AS timestamptz)");
       ImmutableMap.Builder<String, String> parameters =
           new ImmutableMap.Builder<String, String>()
@@ -508,7 +521,7 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
       }
       hostKeys =
           jpaTm()
-              .transact(
+              .transactNewReadOnly(
                   () -> {
                     javax.persistence.Query query =
                         jpaTm()
@@ -567,9 +580,9 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
         stream.forEach(domainSetBuilder::add);
       } else {
         jpaTm()
-            .transact(
+            .transactNewReadOnly(
                 () -> {
-                  for (VKey<HostResource> hostKey : hostKeys) {
+                  for (VKey<HostResource> hostKey : chunk) {
                     CriteriaQueryBuilder<DomainBase> queryBuilder =
                         CriteriaQueryBuilder.create(DomainBase.class)
                             .whereFieldContains("nsHosts", hostKey)
@@ -17,7 +17,7 @@ package google.registry.rdap;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
-import static google.registry.persistence.transaction.TransactionManagerUtil.transactIfJpaTm;
+import static google.registry.persistence.transaction.TransactionManagerUtil.transactNewReadOnlyIfJpaTm;
 import static google.registry.rdap.RdapUtils.getRegistrarByIanaIdentifier;
 import static google.registry.request.Action.Method.GET;
 import static google.registry.request.Action.Method.HEAD;
@@ -278,7 +278,7 @@ public class RdapEntitySearchAction extends RdapSearchActionBase {
         } else {
           resultSet =
               jpaTm()
-                  .transact(
+                  .transactNewReadOnly(
                       () -> {
                         CriteriaQueryBuilder<ContactResource> builder =
                             queryItemsSql(
@@ -325,7 +325,7 @@ public class RdapEntitySearchAction extends RdapSearchActionBase {
         contactResourceList = ImmutableList.of();
       } else {
         Optional<ContactResource> contactResource =
-            transactIfJpaTm(
+            transactNewReadOnlyIfJpaTm(
                 () ->
                     tm().loadByKeyIfPresent(
                             VKey.create(
@@ -400,7 +400,7 @@ public class RdapEntitySearchAction extends RdapSearchActionBase {
         } else {
           contactResultSet =
               jpaTm()
-                  .transact(
+                  .transactNewReadOnly(
                       () ->
                           getMatchingResourcesSql(
                               queryItemsByKeySql(
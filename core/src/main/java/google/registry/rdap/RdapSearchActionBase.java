@@ -548,6 +548,26 @@ public abstract class RdapSearchActionBase extends RdapActionBase {
     return queryItemsSql(clazz, "repoId", partialStringQuery, cursorString, deletedItemHandling);
   }
 
+  /**
+   * In Cloud SQL, restricts the query to resources which have not been deleted as of the request
+   * time, unless the request asked for (and may see) deleted items.
+   *
+   * <p>Unlike Datastore, Cloud SQL lets us combine this inequality with the inequalities used for
+   * prefix matching and cursors, so the query can be limited to a single page of results instead
+   * of over-fetching and weeding out the deleted resources afterwards. Pending deletes (resources
+   * whose deletion time is in the future) are still returned.
+   */
+  <T extends EppResource> CriteriaQueryBuilder<T> setDeletionTimeFilterSql(
+      CriteriaQueryBuilder<T> builder) {
+    if (shouldIncludeDeleted()) {
+      return builder;
+    }
+    return builder.where(
+        "deletionTime",
+        jpaTm().getEntityManager().getCriteriaBuilder()::greaterThan,
+        getRequestTime());
+  }
+
   static <T extends EppResource> CriteriaQueryBuilder<T> setDeletedItemHandlingSql(
       CriteriaQueryBuilder<T> builder, DeletedItemHandling deletedItemHandling) {
     if (!Objects.equals(deletedItemHandling, DeletedItemHandling.INCLUDE)) {
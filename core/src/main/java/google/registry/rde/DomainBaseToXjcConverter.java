@@ -15,12 +15,13 @@
 package google.registry.rde;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
-import static google.registry.persistence.transaction.TransactionManagerUtil.transactIfJpaTm;
 
 import com.google.common.base.Ascii;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
 import com.google.common.flogger.FluentLogger;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DesignatedContact;
@@ -28,10 +29,13 @@ import google.registry.model.domain.DomainBase;
 import google.registry.model.domain.rgp.GracePeriodStatus;
 import google.registry.model.domain.secdns.DelegationSignerData;
 import google.registry.model.eppcommon.StatusValue;
+import google.registry.model.host.HostResource;
 import google.registry.model.rde.RdeMode;
 import google.registry.model.transfer.DomainTransferData;
 import google.registry.model.transfer.TransferData;
 import google.registry.persistence.VKey;
+import google.registry.persistence.transaction.JpaTransactionManager;
+import google.registry.persistence.transaction.TransactionManager;
 import google.registry.util.Idn;
 import google.registry.xjc.domain.XjcDomainContactAttrType;
 import google.registry.xjc.domain.XjcDomainContactType;
@@ -46,6 +50,7 @@ import google.registry.xjc.rgp.XjcRgpStatusType;
 import google.registry.xjc.rgp.XjcRgpStatusValueType;
 import google.registry.xjc.secdns.XjcSecdnsDsDataType;
 import google.registry.xjc.secdns.XjcSecdnsDsOrKeyType;
+import java.util.function.Supplier;
 
 /** Utility class that turns {@link DomainBase} as {@link XjcRdeDomainElement}. */
 final class DomainBaseToXjcConverter {
@@ -54,11 +59,24 @@ final class DomainBaseToXjcConverter {
 
   /** Converts {@link DomainBase} to {@link XjcRdeDomainElement}. */
   static XjcRdeDomainElement convert(DomainBase domain, RdeMode mode) {
-    return new XjcRdeDomainElement(convertDomain(domain, mode));
+    return convert(domain, mode, tm());
+  }
+
+  /**
+   * Converts {@link DomainBase} to {@link XjcRdeDomainElement}, loading its contacts and
+   * nameservers through the given transaction manager.
+   */
+  static XjcRdeDomainElement convert(DomainBase domain, RdeMode mode, TransactionManager tm) {
+    return new XjcRdeDomainElement(convertDomain(domain, mode, tm));
   }
 
   /** Converts {@link DomainBase} to {@link XjcRdeDomain}. */
   static XjcRdeDomain convertDomain(DomainBase model, RdeMode mode) {
+    return convertDomain(model, mode, tm());
+  }
+
+  private static XjcRdeDomain convertDomain(
+      DomainBase model, RdeMode mode, TransactionManager tm) {
     XjcRdeDomain bean = new XjcRdeDomain();
 
     // o  A <name> element that contains the fully qualified name of the
@@ -144,7 +162,13 @@ final class DomainBaseToXjcConverter {
     //    it is that with host attributes, you inline the nameserver data
     //    on each domain; with host objects, you normalize the nameserver
     //    data to a separate EPP object.
-    ImmutableSet<String> linkedNameserverHostNames = model.loadNameserverHostNames();
+    ImmutableSet<String> linkedNameserverHostNames =
+        transactIfJpaTm(
+            tm,
+            () ->
+                tm.loadByKeys(model.getNameservers()).values().stream()
+                    .map(HostResource::getHostName)
+                    .collect(toImmutableSortedSet(Ordering.natural())));
     if (!linkedNameserverHostNames.isEmpty()) {
       XjcDomainNsType nameservers = new XjcDomainNsType();
       for (String hostName : linkedNameserverHostNames) {
@@ -173,7 +197,8 @@ final class DomainBaseToXjcConverter {
         if (registrant == null) {
           logger.atWarning().log("Domain %s has no registrant contact.", domainName);
         } else {
-          ContactResource registrantContact = transactIfJpaTm(() -> tm().loadByKey(registrant));
+          ContactResource registrantContact =
+              transactIfJpaTm(tm, () -> tm.loadByKey(registrant));
           checkState(
               registrantContact != null,
               "Registrant contact %s on domain %s does not exist",
@@ -186,7 +211,7 @@ final class DomainBaseToXjcConverter {
         //    for the human or organizational social information objects
         //    associated with the domain name object.
         for (DesignatedContact contact : model.getContacts()) {
-          bean.getContacts().add(convertDesignatedContact(contact, domainName));
+          bean.getContacts().add(convertDesignatedContact(contact, domainName, tm));
         }
 
         // o  An OPTIONAL <secDNS> element that contains the public key
@@ -299,14 +324,14 @@ final class DomainBaseToXjcConverter {
 
   /** Converts {@link DesignatedContact} to {@link XjcDomainContactType}. */
   private static XjcDomainContactType convertDesignatedContact(
-      DesignatedContact model, String domainName) {
+      DesignatedContact model, String domainName, TransactionManager tm) {
     XjcDomainContactType bean = new XjcDomainContactType();
     checkState(
         model.getContactKey() != null,
         "Contact key for type %s is null on domain %s",
         model.getType(),
         domainName);
-    ContactResource contact = transactIfJpaTm(() -> tm().loadByKey(model.getContactKey()));
+    ContactResource contact = transactIfJpaTm(tm, () -> tm.loadByKey(model.getContactKey()));
     checkState(
         contact != null,
         "Contact %s on domain %s does not exist",
@@ -317,5 +342,10 @@ final class DomainBaseToXjcConverter {
     return bean;
   }
 
+  /** Runs the given work in a transaction of the given transaction manager, if it is for SQL. */
+  private static <T> T transactIfJpaTm(TransactionManager tm, Supplier<T> work) {
+    return tm instanceof JpaTransactionManager ? tm.transact(work) : work.get();
+  }
+
   private DomainBaseToXjcConverter() {}
 }
@@ -0,0 +1,204 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Output stream that compresses data into a raw DEFLATE stream, compressing blocks of it in
+ * parallel.
+ *
+ * <p>The input is cut into fixed-size blocks, each of which is compressed by its own {@link
+ * Deflater} on the given executor. Every block but the last ends with a sync flush, which pads the
+ * compressed block to a byte boundary without marking the end of the stream, so that the compressed
+ * blocks concatenate into a single valid DEFLATE stream. Each block is primed with the end of the
+ * previous block as a preset dictionary, so that matches across block boundaries aren't lost and
+ * the compression ratio stays close to that of a single {@link Deflater}. This is the scheme pigz
+ * uses.
+ *
+ * <p>Compressed blocks are written to the underlying stream in order, by the thread writing to this
+ * stream. At most {@code parallelism} blocks are compressed at once; once that many are pending,
+ * writes wait for the oldest one. Input blocks are recycled once compressed.
+ *
+ * <p>Like {@link java.util.zip.DeflaterOutputStream}, {@link #flush} doesn't flush the compressor.
+ * Closing this stream finishes the DEFLATE stream, but doesn't close the underlying stream.
+ */
+@NotThreadSafe
+final class ParallelDeflaterOutputStream extends OutputStream {
+
+  /** The size of the DEFLATE window, i.e. the farthest back a match can reach. */
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+  private final OutputStream out;
+  private final int level;
+  private final int blockSize;
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final Deque<Future<CompressedBlock>> pendingBlocks = new ArrayDeque<>();
+  private final Deque<byte[]> freeBlocks = new ArrayDeque<>();
+
+  private byte[] block;
+  private int blockLength = 0;
+  @Nullable private byte[] dictionary = null;
+  private boolean closed = false;
+
+  ParallelDeflaterOutputStream(
+      @WillNotClose OutputStream out,
+      int level,
+      int blockSize,
+      ExecutorService executor,
+      int parallelism) {
+    checkArgument(blockSize >= DICTIONARY_SIZE, "Block size must be at least %s", DICTIONARY_SIZE);
+    checkArgument(parallelism > 0, "Parallelism must be positive");
+    this.out = out;
+    this.level = level;
+    this.blockSize = blockSize;
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.block = new byte[blockSize];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    checkState(!closed, "Stream is closed");
+    while (len > 0) {
+      int count = Math.min(len, blockSize - blockLength);
+      System.arraycopy(b, off, block, blockLength, count);
+      blockLength += count;
+      off += count;
+      len -= count;
+      if (blockLength == blockSize) {
+        submitBlock(false);
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /** Compresses the remaining data, ends the DEFLATE stream and waits for all blocks. */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      submitBlock(true);
+      while (!pendingBlocks.isEmpty()) {
+        writeOldestBlock();
+      }
+      out.flush();
+    } finally {
+      pendingBlocks.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private void submitBlock(boolean isLast) throws IOException {
+    if (pendingBlocks.size() >= parallelism) {
+      writeOldestBlock();
+    }
+    byte[] input = block;
+    int length = blockLength;
+    byte[] blockDictionary = dictionary;
+    // The dictionary is copied, since the previous block is recycled as soon as it's compressed.
+    dictionary =
+        length >= DICTIONARY_SIZE
+            ? Arrays.copyOfRange(input, length - DICTIONARY_SIZE, length)
+            : null;
+    pendingBlocks.add(executor.submit(() -> compress(input, length, blockDictionary, isLast)));
+    block = freeBlocks.isEmpty() ? new byte[blockSize] : freeBlocks.pop();
+    blockLength = 0;
+  }
+
+  private void writeOldestBlock() throws IOException {
+    CompressedBlock compressed;
+    try {
+      compressed = pendingBlocks.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to compress block", e.getCause());
+    }
+    compressed.output.writeTo(out);
+    freeBlocks.push(compressed.input);
+  }
+
+  private CompressedBlock compress(
+      byte[] input, int length, @Nullable byte[] blockDictionary, boolean isLast) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (blockDictionary != null) {
+        deflater.setDictionary(blockDictionary);
+      }
+      deflater.setInput(input, 0, length);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(length / 2 + OUTPUT_BUFFER_SIZE);
+      byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+      if (isLast) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          output.write(buffer, 0, deflater.deflate(buffer));
+        }
+      } else {
+        // A sync flush is complete once it returns with room to spare in the buffer.
+        int count;
+        do {
+          count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          output.write(buffer, 0, count);
+        } while (count == buffer.length);
+      }
+      return new CompressedBlock(input, output);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /** A compressed block, and the input buffer it was compressed from. */
+  private static class CompressedBlock {
+    final byte[] input;
+    final ByteArrayOutputStream output;
+
+    CompressedBlock(byte[] input, ByteArrayOutputStream output) {
+      this.input = input;
+      this.output = output;
+    }
+  }
+}
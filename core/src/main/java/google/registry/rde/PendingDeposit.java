@@ -69,7 +69,7 @@ public abstract class PendingDeposit implements Serializable {
   @Nullable
   public abstract Integer revision();
 
-  static PendingDeposit create(
+  public static PendingDeposit create(
       String tld, DateTime watermark, RdeMode mode, CursorType cursor, Duration interval) {
     return new AutoValue_PendingDeposit(
         false,
@@ -82,7 +82,7 @@ public abstract class PendingDeposit implements Serializable {
         null);
   }
 
-  static PendingDeposit createInManualOperation(
+  public static PendingDeposit createInManualOperation(
       String tld,
       DateTime watermark,
       RdeMode mode,
@@ -99,5 +99,18 @@ public abstract class PendingDeposit implements Serializable {
         revision);
   }
 
+  /** Returns a copy of this pending deposit, with the given revision. */
+  public PendingDeposit withRevision(int revision) {
+    return new AutoValue_PendingDeposit(
+        manual(),
+        tld(),
+        watermark(),
+        mode(),
+        cursor(),
+        interval(),
+        directoryWithTrailingSlash(),
+        revision);
+  }
+
   PendingDeposit() {}
 }
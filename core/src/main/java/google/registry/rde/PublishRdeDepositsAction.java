@@ -0,0 +1,129 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static google.registry.request.Action.Method.POST;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+import com.google.api.services.dataflow.Dataflow;
+import com.google.api.services.dataflow.model.Job;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.net.MediaType;
+import google.registry.config.RegistryConfig.Config;
+import google.registry.reporting.ReportingModule;
+import google.registry.request.Action;
+import google.registry.request.Parameter;
+import google.registry.request.Response;
+import google.registry.request.auth.Auth;
+import google.registry.util.TaskQueueUtils;
+import java.io.IOException;
+import javax.inject.Inject;
+
+/**
+ * Publishes the deposits staged by the {@link google.registry.beam.rde.RdePipeline}.
+ *
+ * <p>Once the pipeline job is done, this rolls the cursor of each deposit forward, saves its
+ * revision and enqueues the {@link RdeUploadAction} (RDE) or {@link BrdaCopyAction} (BRDA) task,
+ * just like {@link RdeStagingReducer} does. This happens here rather than on the pipeline workers,
+ * because only the server can reach the primary database and the task queues.
+ *
+ * <p>This relies on the retry semantics of the task queue to wait for the job to finish.
+ *
+ * @see <a
+ *     href=https://cloud.google.com/dataflow/docs/reference/rest/v1b3/projects.jobs#Job.JobState>
+ *     Job States</a>
+ */
+@Action(
+    service = Action.Service.BACKEND,
+    path = PublishRdeDepositsAction.PATH,
+    method = POST,
+    auth = Auth.AUTH_INTERNAL_OR_ADMIN)
+public class PublishRdeDepositsAction implements Runnable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final String JOB_DONE = "JOB_STATE_DONE";
+  private static final String JOB_FAILED = "JOB_STATE_FAILED";
+  private static final String JOB_CANCELLED = "JOB_STATE_CANCELLED";
+
+  static final String PATH = "/_dr/task/publishRdeDeposits";
+
+  private final String projectId;
+  private final String jobRegion;
+  private final String jobId;
+  private final ImmutableSetMultimap<String, PendingDeposit> pendings;
+  private final Dataflow dataflow;
+  private final TaskQueueUtils taskQueueUtils;
+  private final Response response;
+
+  @Inject
+  PublishRdeDepositsAction(
+      @Config("projectId") String projectId,
+      @Config("defaultJobRegion") String jobRegion,
+      @Parameter(ReportingModule.PARAM_JOB_ID) String jobId,
+      @Parameter(RdeModule.PARAM_PENDINGS) ImmutableSetMultimap<String, PendingDeposit> pendings,
+      Dataflow dataflow,
+      TaskQueueUtils taskQueueUtils,
+      Response response) {
+    this.projectId = projectId;
+    this.jobRegion = jobRegion;
+    this.jobId = jobId;
+    this.pendings = pendings;
+    this.dataflow = dataflow;
+    this.taskQueueUtils = taskQueueUtils;
+    this.response = response;
+  }
+
+  @Override
+  public void run() {
+    Job job;
+    try {
+      job = dataflow.projects().locations().jobs().get(projectId, jobRegion, jobId).execute();
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed to get the state of Dataflow job %s.", jobId);
+      response.setStatus(SC_INTERNAL_SERVER_ERROR);
+      response.setContentType(MediaType.PLAIN_TEXT_UTF_8);
+      response.setPayload(String.format("Failed to get job state: %s", e.getMessage()));
+      return;
+    }
+    String state = job.getCurrentState();
+    switch (state) {
+      case JOB_DONE:
+        logger.atInfo().log("Dataflow job %s finished successfully, publishing deposits.", jobId);
+        for (PendingDeposit pending : pendings.values()) {
+          if (pending.manual()) {
+            logger.atInfo().log("Manual operation; not advancing cursor of %s", pending);
+            continue;
+          }
+          RdeStagingReducer.rollForwardCursorAndEnqueueTask(
+              taskQueueUtils, pending, pending.revision());
+        }
+        response.setStatus(SC_OK);
+        break;
+      case JOB_FAILED:
+      case JOB_CANCELLED:
+        logger.atSevere().log("Dataflow job %s ended in state %s.", jobId, state);
+        response.setStatus(SC_NO_CONTENT);
+        break;
+      default:
+        logger.atInfo().log("Job in non-terminal state %s, retrying.", state);
+        response.setStatus(SC_NOT_MODIFIED);
+        break;
+    }
+  }
+}
@@ -14,7 +14,9 @@
 
 package google.registry.rde;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verify;
+import static google.registry.xml.ValidationMode.STRICT;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.flogger.FluentLogger;
@@ -25,6 +27,7 @@ import google.registry.model.domain.DomainBase;
 import google.registry.model.host.HostResource;
 import google.registry.model.rde.RdeMode;
 import google.registry.model.registrar.Registrar;
+import google.registry.persistence.transaction.TransactionManager;
 import google.registry.tldconfig.idn.IdnTable;
 import google.registry.xjc.XjcXmlTransformer;
 import google.registry.xjc.rde.XjcRdeContentsType;
@@ -40,13 +43,21 @@ import google.registry.xml.XmlException;
 import google.registry.xml.XmlFragmentMarshaller;
 import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.MarshalException;
 import org.joda.time.DateTime;
 
-/** XML document <i>fragment</i> marshaller for RDE. */
+/**
+ * XML document <i>fragment</i> marshaller for RDE.
+ *
+ * <p>Fragments are streamed out through StAX without schema validation. In strict mode, a separate
+ * validation pass checks each fragment against the schema before it is marshaled; since that pass
+ * dominates the cost of marshaling, it may be limited to a random sample of the fragments.
+ */
 @NotThreadSafe
 public final class RdeMarshaller implements Serializable {
 
@@ -54,10 +65,25 @@ public final class RdeMarshaller implements Serializable {
   private static final long serialVersionUID = 202890386611768455L;
 
   private final ValidationMode validationMode;
+  private final double validationSampleRate;
   private transient XmlFragmentMarshaller memoizedMarshaller;
 
+  /** Creates a marshaller that, in strict mode, validates every fragment. */
   public RdeMarshaller(ValidationMode validationMode) {
+    this(validationMode, 1.0);
+  }
+
+  /**
+   * Creates a marshaller that, in strict mode, validates the given fraction of fragments, chosen at
+   * random.
+   */
+  public RdeMarshaller(ValidationMode validationMode, double validationSampleRate) {
+    checkArgument(
+        validationSampleRate >= 0 && validationSampleRate <= 1,
+        "Validation sample rate must be between 0 and 1: %s",
+        validationSampleRate);
     this.validationMode = validationMode;
+    this.validationSampleRate = validationSampleRate;
   }
 
   /** Returns top-portion of XML document. */
@@ -100,9 +126,17 @@ public final class RdeMarshaller implements Serializable {
     return "\n</rde:contents>\n</rde:deposit>\n";
   }
 
-  /** Turns XJC element into XML fragment, with schema validation unless in lenient mode. */
+  /**
+   * Turns XJC element into XML fragment, with schema validation of the sampled fragments unless in
+   * lenient mode.
+   */
   public String marshal(JAXBElement<?> element) throws MarshalException {
-    return getMarshaller().marshal(element, validationMode);
+    if (shouldValidate()) {
+      getMarshaller().validate(element);
+    }
+    StringWriter writer = new StringWriter();
+    getMarshaller().marshal(element, writer);
+    return writer.toString();
   }
 
   /**
@@ -129,6 +163,15 @@ public final class RdeMarshaller implements Serializable {
         DomainBaseToXjcConverter.convert(domain, mode));
   }
 
+  /**
+   * Turns {@link DomainBase} object into an XML fragment, loading its contacts and nameservers
+   * through the given transaction manager.
+   */
+  public DepositFragment marshalDomain(DomainBase domain, RdeMode mode, TransactionManager tm) {
+    return marshalResource(RdeResourceType.DOMAIN, domain,
+        DomainBaseToXjcConverter.convert(domain, mode, tm));
+  }
+
   /** Turns {@link HostResource} object into an XML fragment. */
   public DepositFragment marshalSubordinateHost(
       HostResource host, DomainBase superordinateDomain) {
@@ -173,6 +216,12 @@ public final class RdeMarshaller implements Serializable {
     return DepositFragment.create(type, xml, error);
   }
 
+  private boolean shouldValidate() {
+    return validationMode == STRICT
+        && (validationSampleRate >= 1
+            || ThreadLocalRandom.current().nextDouble() < validationSampleRate);
+  }
+
   private XmlFragmentMarshaller getMarshaller() {
     return memoizedMarshaller != null
         ?  memoizedMarshaller
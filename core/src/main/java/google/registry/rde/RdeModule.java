@@ -19,15 +19,18 @@ import static google.registry.request.RequestParameters.extractBooleanParameter;
 import static google.registry.request.RequestParameters.extractOptionalIntParameter;
 import static google.registry.request.RequestParameters.extractOptionalParameter;
 import static google.registry.request.RequestParameters.extractRequiredDatetimeParameter;
+import static google.registry.request.RequestParameters.extractRequiredParameter;
 import static google.registry.request.RequestParameters.extractSetOfDatetimeParameters;
 import static google.registry.request.RequestParameters.extractSetOfParameters;
 
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.jcraft.jsch.SftpProgressMonitor;
 import dagger.Binds;
 import dagger.Module;
 import dagger.Provides;
+import google.registry.beam.rde.RdePipeline;
 import google.registry.request.Parameter;
 import java.util.Optional;
 import javax.inject.Named;
@@ -49,6 +52,7 @@ public abstract class RdeModule {
   public static final String PARAM_MODE = "mode";
   public static final String PARAM_REVISION = "revision";
   public static final String PARAM_LENIENT = "lenient";
+  public static final String PARAM_PENDINGS = "pendings";
 
   @Provides
   @Parameter(PARAM_WATERMARK)
@@ -92,6 +96,12 @@ public abstract class RdeModule {
     return extractBooleanParameter(req, PARAM_LENIENT);
   }
 
+  @Provides
+  @Parameter(PARAM_PENDINGS)
+  static ImmutableSetMultimap<String, PendingDeposit> providePendings(HttpServletRequest req) {
+    return RdePipeline.decodePendings(extractRequiredParameter(req, PARAM_PENDINGS));
+  }
+
   @Provides
   @Named("brda")
   static Queue provideQueueBrda() {
@@ -0,0 +1,144 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Measures the bytes passing through one stage of a streaming pipeline, and the time spent in it.
+ *
+ * <p>A stage is metered by wrapping the stream it is read from or written to. Stages are nested:
+ * reading from a decoder also reads from the stream the decoder wraps. The time of a stage is
+ * therefore the time spent in its stream, minus the time of the {@code inner} stage whose stream
+ * it wraps, so that each stage is only charged for its own work.
+ */
+@NotThreadSafe
+final class RdeStageMeter {
+
+  private final String name;
+  @Nullable private final RdeStageMeter inner;
+  private long bytes = 0;
+  private long nanos = 0;
+
+  private RdeStageMeter(String name, @Nullable RdeStageMeter inner) {
+    this.name = name;
+    this.inner = inner;
+  }
+
+  /** Creates a meter for a stage that doesn't wrap a metered stream. */
+  static RdeStageMeter create(String name) {
+    return new RdeStageMeter(name, null);
+  }
+
+  /** Creates a meter for a stage whose stream wraps the stream of the {@code inner} stage. */
+  static RdeStageMeter wrapping(String name, RdeStageMeter inner) {
+    return new RdeStageMeter(name, inner);
+  }
+
+  /** Returns the number of bytes read from or written to the stage. */
+  long getBytes() {
+    return bytes;
+  }
+
+  /** Returns the time spent in the stage itself, excluding its inner stage. */
+  long getNanos() {
+    return nanos - (inner == null ? 0 : inner.nanos);
+  }
+
+  /** Returns the throughput of the stage, in megabytes of its own bytes per second. */
+  double getMegabytesPerSecond() {
+    long ownNanos = getNanos();
+    return ownNanos == 0 ? 0 : (bytes / 1e6) / (ownNanos / 1e9);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: %,d bytes in %,d ms (%.1f MB/s)",
+        name, bytes, TimeUnit.NANOSECONDS.toMillis(getNanos()), getMegabytesPerSecond());
+  }
+
+  /** Returns a stream that reads from {@code input}, charging its reads to this stage. */
+  InputStream meter(InputStream input) {
+    return new FilterInputStream(input) {
+      @Override
+      public int read() throws IOException {
+        long start = System.nanoTime();
+        int result = in.read();
+        nanos += System.nanoTime() - start;
+        if (result != -1) {
+          bytes++;
+        }
+        return result;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int count = in.read(b, off, len);
+        nanos += System.nanoTime() - start;
+        if (count > 0) {
+          bytes += count;
+        }
+        return count;
+      }
+    };
+  }
+
+  /**
+   * Returns a stream that writes to {@code output}, charging its writes, flushes and closing to
+   * this stage.
+   */
+  OutputStream meter(OutputStream output) {
+    return new FilterOutputStream(output) {
+      @Override
+      public void write(int b) throws IOException {
+        long start = System.nanoTime();
+        out.write(b);
+        nanos += System.nanoTime() - start;
+        bytes++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        out.write(b, off, len);
+        nanos += System.nanoTime() - start;
+        bytes += len;
+      }
+
+      @Override
+      public void flush() throws IOException {
+        long start = System.nanoTime();
+        out.flush();
+        nanos += System.nanoTime() - start;
+      }
+
+      @Override
+      public void close() throws IOException {
+        long start = System.nanoTime();
+        out.close();
+        nanos += System.nanoTime() - start;
+      }
+    };
+  }
+}
@@ -93,6 +93,10 @@ import org.joda.time.Duration;
  * cause the whole deposit to fail. You need to check the logs, find out which entities are broken,
  * and perform Datastore surgery.
  *
+ * <p>By default every object is validated. Schema validation dominates the cost of staging, so
+ * {@code rde.validationSampleRate} can be lowered to validate only a random sample of the objects.
+ * Invalid objects outside the sample are then caught by the escrow provider instead (see below).
+ *
  * <p>If a deposit fails, an error is emitted to the logs for each broken entity. It tells you the
  * key and shows you its representation in lenient XML.
  *
@@ -208,6 +212,7 @@ public final class RdeStagingAction implements Runnable {
   @Inject Response response;
   @Inject MapreduceRunner mrRunner;
   @Inject @Config("transactionCooldown") Duration transactionCooldown;
+  @Inject @Config("rdeValidationSampleRate") double validationSampleRate;
   @Inject @Parameter(RdeModule.PARAM_MANUAL) boolean manual;
   @Inject @Parameter(RdeModule.PARAM_DIRECTORY) Optional<String> directory;
   @Inject @Parameter(RdeModule.PARAM_MODE) ImmutableSet<String> modeStrings;
@@ -233,7 +238,8 @@ public final class RdeStagingAction implements Runnable {
       logger.atInfo().log("Pending deposit: %s", pending);
     }
     ValidationMode validationMode = lenient ? LENIENT : STRICT;
-    RdeStagingMapper mapper = new RdeStagingMapper(validationMode, pendings);
+    RdeStagingMapper mapper =
+        new RdeStagingMapper(validationMode, validationSampleRate, pendings);
     RdeStagingReducer reducer = reducerFactory.create(validationMode);
 
     mrRunner
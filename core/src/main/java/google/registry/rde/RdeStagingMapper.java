@@ -46,15 +46,17 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
 
   // Registrars to be excluded from data escrow. Not including the sandbox-only OTE type so that
   // if sneaks into production we would get an extra signal.
-  private static final ImmutableSet<Registrar.Type> IGNORED_REGISTRAR_TYPES =
+  public static final ImmutableSet<Registrar.Type> IGNORED_REGISTRAR_TYPES =
       Sets.immutableEnumSet(Registrar.Type.MONITORING, Registrar.Type.TEST);
 
   private final RdeMarshaller marshaller;
   private final ImmutableSetMultimap<String, PendingDeposit> pendings;
 
   RdeStagingMapper(
-      ValidationMode validationMode, ImmutableSetMultimap<String, PendingDeposit> pendings) {
-    this.marshaller = new RdeMarshaller(validationMode);
+      ValidationMode validationMode,
+      double validationSampleRate,
+      ImmutableSetMultimap<String, PendingDeposit> pendings) {
+    this.marshaller = new RdeMarshaller(validationMode, validationSampleRate);
     this.pendings = pendings;
   }
 
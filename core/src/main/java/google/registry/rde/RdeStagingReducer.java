@@ -207,6 +207,21 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
       logger.atInfo().log("Manual operation; not advancing cursor or enqueuing upload task");
       return;
     }
+    rollForwardCursorAndEnqueueTask(taskQueueUtils, key, revision);
+  }
+
+  /**
+   * Rolls the cursor of a staged deposit forward, saves its revision, and enqueues the task that
+   * uploads it (RDE) or copies it to the BRDA bucket (BRDA).
+   *
+   * <p>This runs against the primary database, so it must run on the server and not on pipeline
+   * workers.
+   */
+  static void rollForwardCursorAndEnqueueTask(
+      TaskQueueUtils taskQueueUtils, PendingDeposit key, int revision) {
+    String tld = key.tld();
+    DateTime watermark = key.watermark();
+    RdeMode mode = key.mode();
     tm().transact(
             () -> {
               Registry registry = Registry.get(tld);
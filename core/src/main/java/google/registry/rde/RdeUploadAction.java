@@ -14,9 +14,11 @@
 
 package google.registry.rde;
 
+import static com.google.appengine.api.ThreadManager.currentRequestThreadFactory;
 import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
 import static com.google.common.base.Verify.verify;
 import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static com.jcraft.jsch.ChannelSftp.APPEND;
 import static com.jcraft.jsch.ChannelSftp.OVERWRITE;
 import static google.registry.model.common.Cursor.CursorType.RDE_STAGING;
 import static google.registry.model.common.Cursor.CursorType.RDE_UPLOAD_SFTP;
@@ -27,15 +29,21 @@ import static google.registry.persistence.transaction.TransactionManagerUtil.tra
 import static google.registry.request.Action.Method.POST;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static google.registry.util.DateTimeUtils.isBeforeOrAt;
-import static java.util.Arrays.asList;
+import static java.lang.Math.min;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.tools.cloudstorage.GcsFilename;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
+import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
 import com.jcraft.jsch.SftpProgressMonitor;
 import dagger.Lazy;
 import google.registry.config.RegistryConfig.Config;
@@ -48,6 +56,7 @@ import google.registry.model.rde.RdeRevision;
 import google.registry.model.registry.Registry;
 import google.registry.rde.EscrowTaskRunner.EscrowTask;
 import google.registry.rde.JSchSshSession.JSchSshSessionFactory;
+import google.registry.rde.RdeUploadMetrics.UploadStatus;
 import google.registry.request.Action;
 import google.registry.request.HttpException.NoContentException;
 import google.registry.request.Parameter;
@@ -57,7 +66,6 @@ import google.registry.request.auth.Auth;
 import google.registry.util.Clock;
 import google.registry.util.Retrier;
 import google.registry.util.TaskQueueUtils;
-import google.registry.util.TeeOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -65,6 +73,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Named;
 import org.bouncycastle.openpgp.PGPKeyPair;
@@ -94,6 +105,12 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  /** Size of the buffer through which the deposit is copied from staging to the RyDE encoder. */
+  private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
+  /** The maximum number of threads that compress the RyDE file. */
+  private static final int MAX_COMPRESSION_THREADS = 4;
+
   @Inject Clock clock;
   @Inject GcsUtils gcsUtils;
   @Inject EscrowTaskRunner runner;
@@ -111,6 +128,7 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
   @Inject SftpProgressMonitor sftpProgressMonitor;
   @Inject TaskQueueUtils taskQueueUtils;
   @Inject Retrier retrier;
+  @Inject RdeUploadMetrics metrics;
   @Inject @Parameter(RequestParameters.PARAM_TLD) String tld;
   @Inject @Config("rdeBucket") String bucket;
   @Inject @Config("rdeInterval") Duration interval;
@@ -173,8 +191,21 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
     verifyFileExists(reportFilename);
     logger.atInfo().log("Commencing RDE upload for TLD '%s' to '%s'.", tld, uploadUrl);
     final long xmlLength = readXmlLength(xmlLengthFilename);
+    final GcsFilename rydeFilename = new GcsFilename(bucket, name + ".ryde");
+    final GcsFilename sigFilename = new GcsFilename(bucket, name + ".sig");
+    if (gcsUtils.existsAndNotEmpty(rydeFilename) && gcsUtils.existsAndNotEmpty(sigFilename)) {
+      logger.atInfo().log("Reusing RyDE file '%s' encoded by a previous attempt.", rydeFilename);
+    } else {
+      encode(xmlFilename, xmlLength, watermark, name);
+    }
     retrier.callWithRetry(
-        () -> upload(xmlFilename, xmlLength, watermark, name), JSchException.class);
+        () -> upload(rydeFilename, sigFilename),
+        (thrown, failures, maxAttempts) ->
+            logger.atWarning().withCause(thrown).log(
+                "SFTP upload of '%s' failed on attempt %d of %d; resuming.",
+                rydeFilename, failures, maxAttempts),
+        JSchException.class,
+        SftpException.class);
     logger.atInfo().log(
         "Updating RDE cursor '%s' for TLD '%s' following successful upload.", RDE_UPLOAD_SFTP, tld);
     tm().transact(
@@ -187,14 +218,22 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
   }
 
   /**
-   * Performs a blocking upload of a cloud storage XML file to escrow provider, converting
-   * it to the RyDE format along the way by applying tar+compress+encrypt+sign, and saving the
-   * created RyDE file on GCS for future reference.
+   * Converts a cloud storage XML file to the RyDE format, by applying tar+compress+encrypt+sign,
+   * and saves the RyDE file and its signature on GCS, from where {@link #upload} sends them to the
+   * escrow provider.
    *
    * <p>This is done by layering a bunch of {@link java.io.FilterOutputStream FilterOutputStreams}
-   * on top of each other in reverse order that turn XML bytes into a RyDE file while
-   * simultaneously uploading it to the SFTP endpoint, and then using {@link ByteStreams#copy} to
-   * blocking-copy bytes from the cloud storage {@code InputStream} to the RyDE/SFTP pipeline.
+   * on top of each other in reverse order that turn XML bytes into a RyDE file, and then
+   * blocking-copying bytes from the cloud storage {@code InputStream} to the RyDE pipeline through
+   * a single large buffer. The deposit is decrypted and re-encrypted in this one pass, and is never
+   * held in memory.
+   *
+   * <p>The RyDE file on GCS is a checkpoint: if the upload fails, later attempts resume sending it
+   * rather than encrypting the deposit again. GCS files only appear once completely written, and
+   * the signature is written last, so both files existing means that the encoding finished.
+   *
+   * <p>The compression of the RyDE file, which dominates its CPU cost, is spread across request
+   * threads where available. The bytes and time of each stage are logged once the encoding is done.
    *
    * <p>In pseudo-shell, the whole process looks like the following:
    *
@@ -202,43 +241,197 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
    *   gcs read $xmlFile \                                   # Get GhostRyDE from cloud storage.
    *     | decrypt | decompress \                            # Convert it to XML.
    *     | tar | file | compress | encrypt | sign /tmp/sig \ # Convert it to a RyDE file.
-   *     | tee gs://bucket/$rydeFilename.ryde \              # Save a copy of the RyDE file to GCS.
-   *     | sftp put $dstUrl/$rydeFilename.ryde \             # Upload to SFTP server.
-   *    && sftp put $dstUrl/$rydeFilename.sig </tmp/sig \    # Upload detached signature.
-   *    && cat /tmp/sig > gs://bucket/$rydeFilename.sig      # Save a copy of signature to GCS.
+   *     > gs://bucket/$rydeFilename.ryde \                  # Save the RyDE file to GCS.
+   *    && cat /tmp/sig > gs://bucket/$rydeFilename.sig      # Save the signature to GCS.
    *   }</pre>
    */
+  private void encode(GcsFilename xmlFile, long xmlLength, DateTime watermark, String name)
+      throws IOException {
+    GcsFilename rydeFile = new GcsFilename(bucket, name + ".ryde");
+    logger.atInfo().log("Encoding XML file '%s' to '%s'.", xmlFile, rydeFile);
+    RdeStageMeter readMeter = RdeStageMeter.create("Staging read");
+    RdeStageMeter decodeMeter = RdeStageMeter.wrapping("Ghostryde decoding", readMeter);
+    RdeStageMeter writeMeter = RdeStageMeter.create("RyDE write");
+    RdeStageMeter encodeMeter = RdeStageMeter.wrapping("RyDE encoding", writeMeter);
+    Optional<ExecutorService> compressionExecutor = createCompressionExecutor();
+    ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+    try (InputStream gcsInput = readMeter.meter(gcsUtils.openInputStream(xmlFile));
+        InputStream ghostrydeDecoder =
+            decodeMeter.meter(Ghostryde.decoder(gcsInput, stagingDecryptionKey));
+        OutputStream gcsOutput = writeMeter.meter(gcsUtils.openOutputStream(rydeFile));
+        OutputStream rydeEncoder =
+            encodeMeter.meter(
+                buildRydeEncoder(
+                    gcsOutput, sigOut, name, xmlLength, watermark, compressionExecutor))) {
+      long bytesCopied = copy(ghostrydeDecoder, rydeEncoder);
+      logger.atInfo().log("encoded %,d bytes: %s", bytesCopied, rydeFile);
+    } finally {
+      compressionExecutor.ifPresent(ExecutorService::shutdownNow);
+    }
+    logger.atInfo().log(
+        "RDE encoding stages of %s:\n%s\n%s\n%s\n%s",
+        rydeFile, readMeter, decodeMeter, encodeMeter, writeMeter);
+    gcsUtils.createFromBytes(new GcsFilename(bucket, name + ".sig"), sigOut.toByteArray());
+  }
+
+  /**
+   * Performs a blocking upload of a RyDE file and its signature from cloud storage to the escrow
+   * provider.
+   *
+   * <p>If a previous attempt left part of the RyDE file on the SFTP server, only the rest of it is
+   * sent, appended to the remote file. The remote size alone doesn't say which RyDE file those
+   * bytes came from, so before any byte is sent, a checkpoint recording the version of the RyDE
+   * file is saved next to it on GCS. A remote file is only resumed, or considered completely
+   * uploaded, if the checkpoint matches the current RyDE file; otherwise it is sent again from
+   * scratch. The signature is small, and always sent whole, after which the sizes of both remote
+   * files are verified.
+   */
+  @VisibleForTesting
+  protected void upload(GcsFilename rydeFile, GcsFilename sigFile) throws Exception {
+    String rydeFilename = rydeFile.getObjectName();
+    long rydeLength = gcsUtils.getLength(rydeFile);
+    byte[] sig = readBytes(sigFile);
+    String version = getUploadVersion(sig);
+    GcsFilename checkpointFile = getCheckpointFilename(rydeFile);
+    try (JSchSshSession session = jschSshSessionFactory.create(lazyJsch.get(), uploadUrl);
+        JSchSftpChannel ftpChan = session.openSftpChannel()) {
+      long offset = getRemoteSize(ftpChan.get(), rydeFilename);
+      if (offset > 0 && !version.equals(readCheckpoint(checkpointFile))) {
+        logger.atWarning().log(
+            "Remote file '%s' wasn't uploaded from the current RyDE file; overwriting it.",
+            rydeFilename);
+        offset = 0;
+      }
+      if (offset > rydeLength) {
+        logger.atWarning().log(
+            "Remote file '%s' is larger than the RyDE file (%,d > %,d bytes); overwriting it.",
+            rydeFilename, offset, rydeLength);
+        offset = 0;
+      }
+      if (offset == rydeLength) {
+        logger.atInfo().log("Remote file '%s' was already completely uploaded.", rydeFilename);
+      } else {
+        if (offset > 0) {
+          logger.atInfo().log("Resuming upload of '%s' at byte %,d.", rydeFilename, offset);
+          metrics.incrementResumedUploads(tld);
+        } else {
+          gcsUtils.createFromBytes(checkpointFile, version.getBytes(UTF_8));
+        }
+        RdeStageMeter sftpMeter = RdeStageMeter.create("SFTP upload");
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        UploadStatus status = UploadStatus.FAILURE;
+        try (InputStream gcsInput = sftpMeter.meter(gcsUtils.openInputStream(rydeFile, offset))) {
+          ftpChan
+              .get()
+              .put(gcsInput, rydeFilename, sftpProgressMonitor, offset == 0 ? OVERWRITE : APPEND);
+          status = UploadStatus.SUCCESS;
+        } finally {
+          metrics.recordUploadAttempt(
+              tld, status, sftpMeter.getBytes(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        }
+        logger.atInfo().log(
+            "uploaded %,d bytes in %s: %s", sftpMeter.getBytes(), stopwatch, rydeFilename);
+      }
+      ftpChan.get().put(new ByteArrayInputStream(sig), sigFile.getObjectName());
+      logger.atInfo().log("uploaded signature: %s", sigFile.getObjectName());
+      verifyRemoteSize(ftpChan.get(), rydeFilename, rydeLength);
+      verifyRemoteSize(ftpChan.get(), sigFile.getObjectName(), sig.length);
+    }
+  }
+
+  /** Returns the GCS file recording which version of a RyDE file is being uploaded. */
+  @VisibleForTesting
+  static GcsFilename getCheckpointFilename(GcsFilename rydeFile) {
+    return new GcsFilename(rydeFile.getBucketName(), rydeFile.getObjectName() + ".checkpoint");
+  }
+
+  /**
+   * Returns the version of a RyDE file, as the hash of its signature.
+   *
+   * <p>The signature covers every byte of the RyDE file, and each encoding signs a different file,
+   * since the session key is random, so this changes whenever the RyDE file is re-encoded.
+   */
   @VisibleForTesting
-  protected void upload(GcsFilename xmlFile, long xmlLength, DateTime watermark, String name)
-      throws Exception {
-    logger.atInfo().log("Uploading XML file '%s' to remote path '%s'.", xmlFile, uploadUrl);
-    try (InputStream gcsInput = gcsUtils.openInputStream(xmlFile);
-        InputStream ghostrydeDecoder = Ghostryde.decoder(gcsInput, stagingDecryptionKey)) {
-      try (JSchSshSession session = jschSshSessionFactory.create(lazyJsch.get(), uploadUrl);
-          JSchSftpChannel ftpChan = session.openSftpChannel()) {
-        ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
-        String rydeFilename = name + ".ryde";
-        GcsFilename rydeGcsFilename = new GcsFilename(bucket, rydeFilename);
-        try (OutputStream ftpOutput =
-                ftpChan.get().put(rydeFilename, sftpProgressMonitor, OVERWRITE);
-            OutputStream gcsOutput = gcsUtils.openOutputStream(rydeGcsFilename);
-            TeeOutputStream teeOutput = new TeeOutputStream(asList(ftpOutput, gcsOutput));
-            RydeEncoder rydeEncoder =
-                new RydeEncoder.Builder()
-                    .setRydeOutput(teeOutput, receiverKey)
-                    .setSignatureOutput(sigOut, signingKey)
-                    .setFileMetadata(name, xmlLength, watermark)
-                    .build()) {
-            long bytesCopied = ByteStreams.copy(ghostrydeDecoder, rydeEncoder);
-            logger.atInfo().log("uploaded %,d bytes: %s", bytesCopied, rydeFilename);
-          }
-        String sigFilename = name + ".sig";
-        byte[] signature = sigOut.toByteArray();
-        gcsUtils.createFromBytes(new GcsFilename(bucket, sigFilename), signature);
-        ftpChan.get().put(new ByteArrayInputStream(signature), sigFilename);
-        logger.atInfo().log("uploaded %,d bytes: %s", signature.length, sigFilename);
+  static String getUploadVersion(byte[] sig) {
+    return Hashing.sha256().hashBytes(sig).toString();
+  }
+
+  /** Returns the version saved in a checkpoint, or empty if there is no checkpoint. */
+  private String readCheckpoint(GcsFilename checkpointFile) throws IOException {
+    if (!gcsUtils.existsAndNotEmpty(checkpointFile)) {
+      return "";
+    }
+    return new String(readBytes(checkpointFile), UTF_8);
+  }
+
+  private byte[] readBytes(GcsFilename filename) throws IOException {
+    try (InputStream input = gcsUtils.openInputStream(filename)) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  private static void verifyRemoteSize(ChannelSftp channel, String filename, long expected)
+      throws SftpException {
+    long size = getRemoteSize(channel, filename);
+    verify(
+        size == expected,
+        "Remote file '%s' has %s bytes after the upload, expected %s",
+        filename,
+        size,
+        expected);
+  }
+
+  /** Returns the size of a file on the SFTP server, or zero if it doesn't exist. */
+  private static long getRemoteSize(ChannelSftp channel, String filename) throws SftpException {
+    try {
+      return channel.stat(filename).getSize();
+    } catch (SftpException e) {
+      if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+        return 0;
       }
+      throw e;
+    }
+  }
+
+  private RydeEncoder buildRydeEncoder(
+      OutputStream rydeOutput,
+      OutputStream sigOutput,
+      String name,
+      long xmlLength,
+      DateTime watermark,
+      Optional<ExecutorService> compressionExecutor) {
+    RydeEncoder.Builder builder =
+        new RydeEncoder.Builder()
+            .setRydeOutput(rydeOutput, receiverKey)
+            .setSignatureOutput(sigOutput, signingKey)
+            .setFileMetadata(name, xmlLength, watermark);
+    compressionExecutor.ifPresent(
+        executor -> builder.setCompressionExecutor(executor, MAX_COMPRESSION_THREADS));
+    return builder.build();
+  }
+
+  /**
+   * Creates the executor on which the RyDE file is compressed, or returns empty if the file should
+   * be compressed on the uploading thread.
+   */
+  private static Optional<ExecutorService> createCompressionExecutor() {
+    int threadCount = min(MAX_COMPRESSION_THREADS, Runtime.getRuntime().availableProcessors());
+    // Request threads are only available on App Engine, e.g. not in command-line tools.
+    ThreadFactory threadFactory = threadCount > 1 ? currentRequestThreadFactory() : null;
+    return Optional.ofNullable(threadFactory)
+        .map(factory -> newFixedThreadPool(threadCount, factory));
+  }
+
+  /** Copies all bytes from the input to the output, through a single large buffer. */
+  private static long copy(InputStream input, OutputStream output) throws IOException {
+    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    long total = 0;
+    int count;
+    while ((count = input.read(buffer)) != -1) {
+      output.write(buffer, 0, count);
+      total += count;
     }
+    return total;
   }
 
   /** Reads the contents of a file from Cloud Storage that contains nothing but an integer. */
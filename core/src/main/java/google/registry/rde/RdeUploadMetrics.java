@@ -0,0 +1,101 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.DistributionFitter;
+import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.ExponentialFitter;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import javax.inject.Inject;
+
+/** Instrumentation for SFTP uploads of RDE deposits to the escrow provider. */
+public class RdeUploadMetrics {
+
+  /** Disposition of an upload attempt. */
+  enum UploadStatus {
+    SUCCESS,
+    FAILURE
+  }
+
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_FOR_ATTEMPTS =
+      ImmutableSet.of(
+          LabelDescriptor.create("tld", "TLD"),
+          LabelDescriptor.create("status", "Whether the upload attempt succeeded or failed."));
+
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_FOR_RESUMES =
+      ImmutableSet.of(LabelDescriptor.create("tld", "TLD"));
+
+  // Allows values between 1 KB/s and about 500 MB/s.
+  private static final DistributionFitter THROUGHPUT_FITTER =
+      ExponentialFitter.create(20, 2.0, 1.0);
+
+  private static final IncrementableMetric uploadAttempts =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/rde/upload/attempts",
+              "Count of attempts to upload a RyDE file over SFTP",
+              "count",
+              LABEL_DESCRIPTORS_FOR_ATTEMPTS);
+
+  private static final IncrementableMetric uploadedBytes =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/rde/upload/bytes",
+              "Count of RyDE file bytes sent over SFTP",
+              "bytes",
+              LABEL_DESCRIPTORS_FOR_ATTEMPTS);
+
+  private static final EventMetric uploadThroughput =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/rde/upload/throughput",
+              "Throughput of attempts to upload a RyDE file over SFTP",
+              "kilobytes per second",
+              LABEL_DESCRIPTORS_FOR_ATTEMPTS,
+              THROUGHPUT_FITTER);
+
+  private static final IncrementableMetric resumedUploads =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/rde/upload/resumed",
+              "Count of uploads resumed from a partially uploaded RyDE file",
+              "count",
+              LABEL_DESCRIPTORS_FOR_RESUMES);
+
+  @Inject
+  RdeUploadMetrics() {}
+
+  /**
+   * Records an attempt to upload a RyDE file, and the bytes it sent before it finished or failed.
+   *
+   * <p>Failed attempts that are followed by another attempt are retries.
+   */
+  void recordUploadAttempt(String tld, UploadStatus status, long bytes, long millis) {
+    uploadAttempts.increment(tld, status.name());
+    uploadedBytes.incrementBy(bytes, tld, status.name());
+    if (millis > 0) {
+      // Bytes per millisecond are kilobytes per second.
+      uploadThroughput.record((double) bytes / millis, tld, status.name());
+    }
+  }
+
+  /** Increments the count of uploads resumed from a partially uploaded file. */
+  void incrementResumedUploads(String tld) {
+    resumedUploads.increment(tld);
+  }
+}
@@ -21,8 +21,12 @@ import google.registry.util.ImprovedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.WillNotClose;
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.bcpg.PacketTags;
 import org.bouncycastle.openpgp.PGPCompressedData;
 import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
 import org.bouncycastle.openpgp.PGPException;
@@ -36,6 +40,9 @@ final class RydeCompression {
 
   private static final int BUFFER_SIZE = 64 * 1024;
 
+  /** Size of the blocks that {@link #openParallelCompressor} compresses independently. */
+  private static final int PARALLEL_BLOCK_SIZE = 1024 * 1024;
+
   /**
    * Compression algorithm to use when creating RyDE files.
    *
@@ -62,6 +69,39 @@ final class RydeCompression {
     }
   }
 
+  /**
+   * Creates an OutputStream that compresses the data in parallel blocks on the given executor.
+   *
+   * <p>The output is an OpenPGP compressed data packet, like that of {@link #openCompressor}, which
+   * {@link #openDecompressor} and other OpenPGP implementations read as usual. Only the way the
+   * DEFLATE stream inside the packet is produced differs; see {@link ParallelDeflaterOutputStream}.
+   *
+   * @param parallelism the maximum number of blocks compressed at once
+   */
+  @CheckReturnValue
+  static ImprovedOutputStream openParallelCompressor(
+      @WillNotClose OutputStream os, ExecutorService executor, int parallelism) {
+    try {
+      // This writes the same packet as PGPCompressedDataGenerator does for ZIP compression.
+      BCPGOutputStream packet =
+          new BCPGOutputStream(os, PacketTags.COMPRESSED_DATA, new byte[BUFFER_SIZE]);
+      packet.write(COMPRESSION_ALGORITHM);
+      ParallelDeflaterOutputStream deflater =
+          new ParallelDeflaterOutputStream(
+              packet, Deflater.DEFAULT_COMPRESSION, PARALLEL_BLOCK_SIZE, executor, parallelism);
+      return new ImprovedOutputStream("RydeParallelCompressor", deflater) {
+        @Override
+        public void onClose() throws IOException {
+          deflater.close();
+          packet.finish();
+          packet.flush();
+        }
+      };
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   /**
    * Creates an InputStream that decompresses the data.
    *
@@ -16,6 +16,7 @@ package google.registry.rde;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static google.registry.rde.RydeCompression.openCompressor;
+import static google.registry.rde.RydeCompression.openParallelCompressor;
 import static google.registry.rde.RydeEncryption.RYDE_USE_INTEGRITY_PACKET;
 import static google.registry.rde.RydeEncryption.openEncryptor;
 import static google.registry.rde.RydeFileEncoding.openPgpFileWriter;
@@ -27,6 +28,8 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyPair;
@@ -65,13 +68,20 @@ public final class RydeEncoder extends FilterOutputStream {
       String filenamePrefix,
       DateTime modified,
       PGPKeyPair signingKey,
-      Collection<PGPPublicKey> receiverKeys) {
+      Collection<PGPPublicKey> receiverKeys,
+      @Nullable ExecutorService compressionExecutor,
+      int compressionParallelism) {
     super(null);
     this.sigOutput = sigOutput;
     signer = closer.register(new RydePgpSigningOutputStream(checkNotNull(rydeOutput), signingKey));
     OutputStream encryptLayer =
         closer.register(openEncryptor(signer, RYDE_USE_INTEGRITY_PACKET, receiverKeys));
-    OutputStream kompressor = closer.register(openCompressor(encryptLayer));
+    OutputStream kompressor =
+        closer.register(
+            compressionExecutor == null
+                ? openCompressor(encryptLayer)
+                : openParallelCompressor(
+                    encryptLayer, compressionExecutor, compressionParallelism));
     OutputStream fileLayer =
         closer.register(openPgpFileWriter(kompressor, filenamePrefix + ".tar", modified));
     this.out =
@@ -113,6 +123,8 @@ public final class RydeEncoder extends FilterOutputStream {
     DateTime modified;
     PGPKeyPair signingKey;
     ImmutableList<PGPPublicKey> receiverKeys;
+    ExecutorService compressionExecutor;
+    int compressionParallelism;
 
     /** Sets the OutputStream for the Ryde-encoded data, and the keys used for the encryption. */
     public Builder setRydeOutput(
@@ -138,6 +150,20 @@ public final class RydeEncoder extends FilterOutputStream {
       return this;
     }
 
+    /**
+     * Compresses the data in parallel blocks on the given executor, rather than on the writing
+     * thread.
+     *
+     * <p>The executor is not shut down by the encoder.
+     *
+     * @param parallelism the maximum number of blocks compressed at once
+     */
+    public Builder setCompressionExecutor(ExecutorService executor, int parallelism) {
+      this.compressionExecutor = executor;
+      this.compressionParallelism = parallelism;
+      return this;
+    }
+
     /** Returns the built {@link RydeEncoder}. */
     public RydeEncoder build() {
       return new RydeEncoder(
@@ -147,7 +173,9 @@ public final class RydeEncoder extends FilterOutputStream {
           checkNotNull(filenamePrefix, "Must call 'setFileMetadata'"),
           checkNotNull(modified, "Must call 'setFileMetadata'"),
           checkNotNull(signingKey, "Must call 'setSignatureOutput'"),
-          checkNotNull(receiverKeys, "Must call 'setRydeOutput'"));
+          checkNotNull(receiverKeys, "Must call 'setRydeOutput'"),
+          compressionExecutor,
+          compressionParallelism);
     }
   }
 }
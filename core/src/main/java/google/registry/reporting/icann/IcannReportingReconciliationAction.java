@@ -0,0 +1,278 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.reporting.icann;
+
+import static com.google.common.base.Throwables.getRootCause;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static google.registry.reporting.ReportingModule.PARAM_DATE;
+import static google.registry.reporting.ReportingModule.PARAM_YEAR_MONTH;
+import static google.registry.request.Action.Method.POST;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Streams;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.net.MediaType;
+import google.registry.bigquery.BigqueryJobFailureException;
+import google.registry.config.RegistryConfig.Config;
+import google.registry.model.registrar.Registrar;
+import google.registry.model.registry.Registries;
+import google.registry.model.registry.Registry.TldType;
+import google.registry.model.reporting.IcannReportingCounter;
+import google.registry.model.reporting.IcannReportingCounter.CounterType;
+import google.registry.model.reporting.IcannReportingCounterDao;
+import google.registry.reporting.icann.IcannReportingModule.ReportType;
+import google.registry.request.Action;
+import google.registry.request.Parameter;
+import google.registry.request.Response;
+import google.registry.request.auth.Auth;
+import google.registry.util.EmailMessage;
+import google.registry.util.Retrier;
+import google.registry.util.SendEmailService;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import javax.inject.Inject;
+import javax.mail.internet.InternetAddress;
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+
+/**
+ * Action that compares the ICANN report counters in Cloud SQL with the BigQuery reports.
+ *
+ * <p>The counters in {@link IcannReportingCounter} are maintained as flows execute, whereas {@link
+ * IcannReportingStager} computes the reports from the history and request log exports. This action
+ * runs the BigQuery queries for a month and reports every counted value that differs. Only the
+ * values that are counted are compared: the domain and nameserver totals, DNS and WHOIS queries
+ * and registrar counts still come from BigQuery alone.
+ *
+ * <p>Parameters:
+ *
+ * <p>yearMonth: the reporting month in yyyy-MM format. Defaults to the month of the day before the
+ * run, so that a daily run checks the month so far, and the complete month on its first day.
+ *
+ * <p>Differences are logged and returned in the response. They are only emailed for past months,
+ * since the exports that the BigQuery reports are based on lag behind the counters in the current
+ * month.
+ *
+ * <p>Nothing is queried or compared unless the counters are enabled, since all of them would read
+ * zero.
+ */
+@Action(
+    service = Action.Service.BACKEND,
+    path = IcannReportingReconciliationAction.PATH,
+    method = POST,
+    auth = Auth.AUTH_INTERNAL_OR_ADMIN)
+public final class IcannReportingReconciliationAction implements Runnable {
+
+  static final String PATH = "/_dr/task/icannReportingReconciliation";
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Transactions report columns that aren't counted in Cloud SQL. */
+  private static final ImmutableSet<String> UNCOUNTED_TRANSACTIONS_COLUMNS =
+      ImmutableSet.of("tld", "registrar_name", "iana_id", "total_domains", "total_nameservers");
+
+  @Inject @Parameter(PARAM_YEAR_MONTH) Optional<YearMonth> yearMonthOptional;
+  @Inject @Parameter(PARAM_DATE) LocalDate date;
+  @Inject IcannReportingStager stager;
+  @Inject Retrier retrier;
+  @Inject Response response;
+  @Inject @Config("gSuiteOutgoingEmailAddress") InternetAddress sender;
+  @Inject @Config("alertRecipientEmailAddress") InternetAddress recipient;
+  @Inject SendEmailService emailService;
+
+  @Inject
+  IcannReportingReconciliationAction() {}
+
+  @Override
+  public void run() {
+    if (!IcannReportingCounterDao.isEnabled()) {
+      logger.atInfo().log("ICANN report counters are disabled, skipping reconciliation.");
+      response.setStatus(SC_OK);
+      response.setContentType(MediaType.PLAIN_TEXT_UTF_8);
+      response.setPayload("ICANN report counters are disabled.");
+      return;
+    }
+    YearMonth yearMonth = yearMonthOptional.orElseGet(() -> new YearMonth(date.minusDays(1)));
+    try {
+      ImmutableList<String> differences =
+          retrier.callWithRetry(
+              () ->
+                  new ImmutableList.Builder<String>()
+                      .addAll(reconcile(yearMonth, ReportType.ACTIVITY))
+                      .addAll(reconcile(yearMonth, ReportType.TRANSACTIONS))
+                      .build(),
+              BigqueryJobFailureException.class);
+      String summary =
+          differences.isEmpty()
+              ? String.format("ICANN report counters for %s match BigQuery.", yearMonth)
+              : String.format(
+                  "Found %d differences between ICANN report counters and BigQuery for %s:\n%s",
+                  differences.size(), yearMonth, Joiner.on('\n').join(differences));
+      if (differences.isEmpty()) {
+        logger.atInfo().log("%s", summary);
+      } else {
+        logger.atWarning().log("%s", summary);
+        if (yearMonth.isBefore(new YearMonth(date))) {
+          emailService.sendEmail(
+              EmailMessage.create(
+                  "ICANN report counter reconciliation [MISMATCH]", summary, recipient, sender));
+        }
+      }
+      response.setStatus(SC_OK);
+      response.setContentType(MediaType.PLAIN_TEXT_UTF_8);
+      response.setPayload(summary);
+    } catch (Throwable e) {
+      response.setStatus(SC_INTERNAL_SERVER_ERROR);
+      response.setContentType(MediaType.PLAIN_TEXT_UTF_8);
+      response.setPayload(String.format("Reconciliation failed due to %s", getRootCause(e)));
+      throw new RuntimeException("Reconciliation action failed.", e);
+    }
+  }
+
+  private ImmutableList<String> reconcile(YearMonth yearMonth, ReportType reportType)
+      throws Exception {
+    ImmutableTable<Integer, TableFieldSchema, Object> reportTable =
+        stager.queryReport(yearMonth, reportType);
+    ImmutableList<IcannReportingCounter> counters =
+        IcannReportingCounterDao.loadByMonth(
+            reportType == ReportType.ACTIVITY ? CounterType.ACTIVITY : CounterType.TRANSACTIONS,
+            yearMonth);
+    return reportType == ReportType.ACTIVITY
+        ? compare(getReportedActivity(reportTable), getCountedActivity(counters))
+        : compare(getReportedTransactions(reportTable), getCountedTransactions(counters));
+  }
+
+  /** Returns a description of each value that differs, where a missing value is zero. */
+  private static ImmutableList<String> compare(
+      Map<String, Long> reported, Map<String, Long> counted) {
+    return Sets.union(reported.keySet(), counted.keySet()).stream()
+        .sorted()
+        .filter(key -> !reported.getOrDefault(key, 0L).equals(counted.getOrDefault(key, 0L)))
+        .map(
+            key ->
+                String.format(
+                    "%s: BigQuery %d, counters %d",
+                    key, reported.getOrDefault(key, 0L), counted.getOrDefault(key, 0L)))
+        .collect(toImmutableList());
+  }
+
+  /** Returns the SRS activity values of the report, keyed by TLD and field. */
+  private static Map<String, Long> getReportedActivity(
+      ImmutableTable<Integer, TableFieldSchema, Object> reportTable) {
+    Map<String, Long> values = new TreeMap<>();
+    for (Map<TableFieldSchema, Object> row : reportTable.rowMap().values()) {
+      String tld = getColumn(row, "tld");
+      row.forEach(
+          (schema, value) -> {
+            if (schema.getName().startsWith("srs_")) {
+              values.put(
+                  activityKey(tld, schema.getName().replace('_', '-')),
+                  Long.parseLong(value.toString()));
+            }
+          });
+    }
+    return values;
+  }
+
+  /**
+   * Returns the counted activity, keyed by TLD and field.
+   *
+   * <p>Activity counted towards the empty TLD counts towards every real TLD.
+   */
+  private static Map<String, Long> getCountedActivity(
+      ImmutableList<IcannReportingCounter> counters) {
+    ImmutableSet<String> realTlds = Registries.getTldsOfType(TldType.REAL);
+    Map<String, Long> values = new TreeMap<>();
+    for (IcannReportingCounter counter : counters) {
+      if (counter.getTld().isEmpty()) {
+        for (String tld : realTlds) {
+          values.merge(activityKey(tld, counter.getField()), counter.getCount(), Long::sum);
+        }
+      } else if (realTlds.contains(counter.getTld())) {
+        values.merge(
+            activityKey(counter.getTld(), counter.getField()), counter.getCount(), Long::sum);
+      }
+    }
+    return values;
+  }
+
+  /** Returns the counted values of the report, keyed by TLD, registrar name and field. */
+  private static Map<String, Long> getReportedTransactions(
+      ImmutableTable<Integer, TableFieldSchema, Object> reportTable) {
+    Map<String, Long> values = new TreeMap<>();
+    for (Map<TableFieldSchema, Object> row : reportTable.rowMap().values()) {
+      String tld = getColumn(row, "tld");
+      // Registrar names are quoted in the report, in case they contain commas.
+      String registrarName = getColumn(row, "registrar_name").replaceAll("^\"|\"$", "");
+      row.forEach(
+          (schema, value) -> {
+            if (!UNCOUNTED_TRANSACTIONS_COLUMNS.contains(schema.getName())) {
+              values.put(
+                  transactionsKey(tld, registrarName, schema.getName()),
+                  Long.parseLong(value.toString()));
+            }
+          });
+    }
+    return values;
+  }
+
+  /** Returns the counted transactions of real TLDs, keyed by TLD, registrar name and field. */
+  private static Map<String, Long> getCountedTransactions(
+      ImmutableList<IcannReportingCounter> counters) {
+    ImmutableSet<String> realTlds = Registries.getTldsOfType(TldType.REAL);
+    ImmutableMap<String, String> registrarNames =
+        Streams.stream(Registrar.loadAllCached())
+            .collect(toImmutableMap(Registrar::getClientId, Registrar::getRegistrarName));
+    Map<String, Long> values = new TreeMap<>();
+    for (IcannReportingCounter counter : counters) {
+      if (realTlds.contains(counter.getTld())) {
+        values.merge(
+            transactionsKey(
+                counter.getTld(),
+                registrarNames.getOrDefault(counter.getRegistrarId(), counter.getRegistrarId()),
+                counter.getField()),
+            counter.getCount(),
+            Long::sum);
+      }
+    }
+    return values;
+  }
+
+  private static String getColumn(Map<TableFieldSchema, Object> row, String name) {
+    return row.entrySet().stream()
+        .filter(entry -> entry.getKey().getName().equals(name))
+        .map(entry -> entry.getValue().toString())
+        .findFirst()
+        .orElseThrow(() -> new IllegalStateException("Report has no column " + name));
+  }
+
+  private static String activityKey(String tld, String field) {
+    return String.format("activity %s %s", tld, field);
+  }
+
+  private static String transactionsKey(String tld, String registrarName, String field) {
+    return String.format("transactions %s \"%s\" %s", tld, registrarName, field);
+  }
+}
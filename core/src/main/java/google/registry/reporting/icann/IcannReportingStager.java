@@ -76,6 +76,23 @@ public class IcannReportingStager {
    */
   ImmutableList<String> stageReports(YearMonth yearMonth, String subdir, ReportType reportType)
       throws Exception {
+    ImmutableTable<Integer, TableFieldSchema, Object> reportTable =
+        queryReport(yearMonth, reportType);
+
+    // Get report headers from the table schema and convert into CSV format
+    String headerRow = constructRow(getHeaders(reportTable.columnKeySet()));
+
+    return (reportType == ReportType.ACTIVITY)
+        ? stageActivityReports(yearMonth, subdir, headerRow, reportTable.rowMap().values())
+        : stageTransactionsReports(yearMonth, subdir, headerRow, reportTable.rowMap().values());
+  }
+
+  /**
+   * Runs the BigQuery queries for a given type of report, and returns an in-memory table of the
+   * result, with one row per line of the report.
+   */
+  ImmutableTable<Integer, TableFieldSchema, Object> queryReport(
+      YearMonth yearMonth, ReportType reportType) throws Exception {
     QueryBuilder queryBuilder =
         (reportType == ReportType.ACTIVITY) ? activityQueryBuilder : transactionsQueryBuilder;
 
@@ -91,15 +108,7 @@ public class IcannReportingStager {
     }
 
     // Get an in-memory table of the aggregate query's result
-    ImmutableTable<Integer, TableFieldSchema, Object> reportTable =
-        bigquery.queryToLocalTableSync(queryBuilder.getReportQuery(yearMonth));
-
-    // Get report headers from the table schema and convert into CSV format
-    String headerRow = constructRow(getHeaders(reportTable.columnKeySet()));
-
-    return (reportType == ReportType.ACTIVITY)
-        ? stageActivityReports(yearMonth, subdir, headerRow, reportTable.rowMap().values())
-        : stageTransactionsReports(yearMonth, subdir, headerRow, reportTable.rowMap().values());
+    return bigquery.queryToLocalTableSync(queryBuilder.getReportQuery(yearMonth));
   }
 
   private void createIntermediaryTableView(String queryName, String query, ReportType reportType)
@@ -21,6 +21,7 @@ import static javax.servlet.http.HttpServletResponse.SC_METHOD_NOT_ALLOWED;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 
 import com.google.common.flogger.FluentLogger;
+import google.registry.monitoring.whitebox.RequestTrace;
 import google.registry.request.auth.AuthResult;
 import google.registry.request.auth.RequestAuthenticator;
 import google.registry.util.NonFinalForTesting;
@@ -153,6 +154,7 @@ public class RequestHandler<C> {
     // Apply the selected Route to the component to produce an Action instance, and run it.
     boolean success = true;
     DateTime startTime = clock.nowUtc();
+    RequestTrace trace = RequestTrace.start();
     try {
       route.get().instantiator().apply(component).run();
       if (route.get().action().automaticallyPrintOk()) {
@@ -163,12 +165,14 @@ public class RequestHandler<C> {
       e.send(rsp);
       success = false;
     } finally {
+      trace.close();
       requestMetrics.record(
           new Duration(startTime, clock.nowUtc()),
           path,
           method,
           authResult.get().authLevel(),
           success);
+      requestMetrics.recordDatabaseUsage(path, trace);
     }
   }
 }
@@ -22,8 +22,11 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
 import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.ExponentialFitter;
 import com.google.monitoring.metrics.LabelDescriptor;
 import com.google.monitoring.metrics.MetricRegistryImpl;
+import google.registry.monitoring.whitebox.RequestTrace;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
 import google.registry.request.auth.AuthLevel;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -49,6 +52,38 @@ class RequestMetrics {
               REQUEST_LABEL_DESCRIPTORS,
               DEFAULT_FITTER);
 
+  private static final ImmutableSet<LabelDescriptor> PATH_LABEL_DESCRIPTORS =
+      ImmutableSet.of(LabelDescriptor.create("path", "target path"));
+
+  private static final ExponentialFitter COUNT_FITTER = ExponentialFitter.create(16, 2.0, 1.0);
+
+  static final EventMetric sqlStatementsMetric =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/request/sql_statements",
+              "SQL statements executed per action",
+              "count",
+              PATH_LABEL_DESCRIPTORS,
+              COUNT_FITTER);
+
+  static final EventMetric sqlTimeMetric =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/request/sql_time",
+              "Time spent executing SQL statements per action",
+              "milliseconds",
+              PATH_LABEL_DESCRIPTORS,
+              DEFAULT_FITTER);
+
+  static final EventMetric transactionAttemptsMetric =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/request/transaction_attempts",
+              "Database transaction attempts per action, including retries",
+              "count",
+              PATH_LABEL_DESCRIPTORS,
+              COUNT_FITTER);
+
   public RequestMetrics() {}
 
   public void record(
@@ -64,6 +99,20 @@ class RequestMetrics {
         path, method, authLevel, success, duration.getMillis() / 1000d);
   }
 
+  /** Records the database cost of an action, as gathered by its request trace. */
+  public void recordDatabaseUsage(String path, RequestTrace trace) {
+    String truncatedPath = truncatePath(path);
+    long sqlNanos = trace.getStageNanos().getOrDefault(Stage.SQL_EXECUTION, 0L);
+    sqlStatementsMetric.record(trace.getStatements(), truncatedPath);
+    sqlTimeMetric.record(sqlNanos / 1_000_000.0, truncatedPath);
+    transactionAttemptsMetric.record(trace.getTransactionAttempts(), truncatedPath);
+    if (trace.getStatements() > 0) {
+      logger.atFine().log(
+          "Action for path=%s executed %d SQL statements in %.3fs over %d transaction attempts.",
+          path, trace.getStatements(), sqlNanos / 1e9, trace.getTransactionAttempts());
+    }
+  }
+
   private static String truncatePath(String path) {
     // We want to bucket RDAP requests by type to use less metric space,
     // e.g. "/rdap/domains" rather than "/rdap/domains/foo.tld"
@@ -0,0 +1,128 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tldconfig.idn;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.errorprone.annotations.Immutable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable set of Unicode codepoints, stored as a two-level bitmap.
+ *
+ * <p>The codepoint space is split into pages of {@value #PAGE_SIZE} codepoints. The first level
+ * maps each page to an index into the second level, which holds one bitmap per distinct page. Most
+ * pages of an IDN table are either empty or identical, so they all share a single bitmap, and a
+ * lookup is two array reads and a bit test.
+ */
+@Immutable
+final class CodepointSet {
+
+  private static final int PAGE_BITS = 8;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int WORDS_PER_PAGE = PAGE_SIZE / Long.SIZE;
+  private static final int NUM_PAGES = (Character.MAX_CODE_POINT + 1) / PAGE_SIZE;
+
+  /** The index of each page's bitmap in {@link #bitmaps}, divided by {@link #WORDS_PER_PAGE}. */
+  @SuppressWarnings("Immutable") // Never modified after construction.
+  private final char[] pageIndexes;
+
+  /** The concatenated bitmaps of all distinct pages, the first of which is the empty page. */
+  @SuppressWarnings("Immutable") // Never modified after construction.
+  private final long[] bitmaps;
+
+  private final int size;
+
+  private CodepointSet(char[] pageIndexes, long[] bitmaps, int size) {
+    this.pageIndexes = pageIndexes;
+    this.bitmaps = bitmaps;
+    this.size = size;
+  }
+
+  /** Returns whether the given codepoint is in this set. */
+  boolean contains(int codepoint) {
+    if (codepoint < 0 || codepoint > Character.MAX_CODE_POINT) {
+      return false;
+    }
+    int word =
+        pageIndexes[codepoint >>> PAGE_BITS] * WORDS_PER_PAGE
+            + ((codepoint & (PAGE_SIZE - 1)) >>> 6);
+    return (bitmaps[word] & (1L << codepoint)) != 0;
+  }
+
+  /** Returns the number of codepoints in this set. */
+  int size() {
+    return size;
+  }
+
+  /** Creates a set of the given codepoints. */
+  static CodepointSet copyOf(Iterable<Integer> codepoints) {
+    long[][] pages = new long[NUM_PAGES][];
+    int size = 0;
+    for (int codepoint : codepoints) {
+      checkArgument(
+          codepoint >= 0 && codepoint <= Character.MAX_CODE_POINT,
+          "Invalid codepoint: %s",
+          codepoint);
+      int page = codepoint >>> PAGE_BITS;
+      if (pages[page] == null) {
+        pages[page] = new long[WORDS_PER_PAGE];
+      }
+      long[] words = pages[page];
+      int word = (codepoint & (PAGE_SIZE - 1)) >>> 6;
+      if ((words[word] & (1L << codepoint)) == 0) {
+        words[word] |= 1L << codepoint;
+        size++;
+      }
+    }
+    // Deduplicate the pages, starting with the empty one so that it gets index zero.
+    Map<PageKey, Character> distinctPages = new HashMap<>();
+    distinctPages.put(new PageKey(new long[WORDS_PER_PAGE]), (char) 0);
+    char[] pageIndexes = new char[NUM_PAGES];
+    for (int page = 0; page < NUM_PAGES; page++) {
+      if (pages[page] != null) {
+        pageIndexes[page] =
+            distinctPages.computeIfAbsent(
+                new PageKey(pages[page]), key -> (char) distinctPages.size());
+      }
+    }
+    long[] bitmaps = new long[distinctPages.size() * WORDS_PER_PAGE];
+    distinctPages.forEach(
+        (key, index) ->
+            System.arraycopy(key.words, 0, bitmaps, index * WORDS_PER_PAGE, WORDS_PER_PAGE));
+    return new CodepointSet(pageIndexes, bitmaps, size);
+  }
+
+  /** A page bitmap with value semantics, for deduplication. */
+  private static final class PageKey {
+    private final long[] words;
+
+    PageKey(long[] words) {
+      this.words = words;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof PageKey && Arrays.equals(words, ((PageKey) other).words);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(words);
+    }
+  }
+}
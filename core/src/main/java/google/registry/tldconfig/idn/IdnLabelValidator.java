@@ -14,12 +14,16 @@
 
 package google.registry.tldconfig.idn;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static google.registry.tldconfig.idn.IdnTableEnum.EXTENDED_LATIN;
 import static google.registry.tldconfig.idn.IdnTableEnum.JA;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import google.registry.util.Idn;
+import java.util.Map;
 import java.util.Optional;
 
 /** Validates whether a given IDN label can be provisioned for a particular TLD. */
@@ -33,11 +37,25 @@ public final class IdnLabelValidator {
       DEFAULT_IDN_TABLE_LISTS_PER_TLD =
           ImmutableMap.of("xn--q9jyb4c", ImmutableList.of(EXTENDED_LATIN, JA));
 
+  /** The maximum number of IDN tables for a TLD, so that they can be tracked in an int bitmask. */
+  private static final int MAX_TABLES_PER_TLD = Integer.SIZE - 1;
+
   /** Some TLDs have their own IDN tables, configured here. */
-  private ImmutableMap<String, ImmutableList<IdnTableEnum>> idnTableListsPerTld;
+  private final ImmutableMap<String, ImmutableList<IdnTable>> idnTableListsPerTld;
+
+  private final ImmutableList<IdnTable> defaultIdnTables;
 
   IdnLabelValidator(ImmutableMap<String, ImmutableList<IdnTableEnum>> indTableListsPerTld) {
-    this.idnTableListsPerTld = indTableListsPerTld;
+    this.idnTableListsPerTld =
+        indTableListsPerTld.entrySet().stream()
+            .collect(toImmutableMap(Map.Entry::getKey, entry -> toTables(entry.getValue())));
+    this.defaultIdnTables = toTables(DEFAULT_IDN_TABLES);
+  }
+
+  private static ImmutableList<IdnTable> toTables(ImmutableList<IdnTableEnum> idnTables) {
+    checkArgument(
+        idnTables.size() <= MAX_TABLES_PER_TLD, "Too many IDN tables: %s", idnTables.size());
+    return idnTables.stream().map(IdnTableEnum::getTable).collect(toImmutableList());
   }
 
   public static IdnLabelValidator createDefaultIdnLabelValidator() {
@@ -52,10 +70,25 @@ public final class IdnLabelValidator {
    */
   public Optional<String> findValidIdnTableForTld(String label, String tld) {
     String unicodeString = Idn.toUnicode(label);
-    for (IdnTableEnum idnTable :
-        Optional.ofNullable(idnTableListsPerTld.get(tld)).orElse(DEFAULT_IDN_TABLES)) {
-      if (idnTable.getTable().isValidLabel(unicodeString)) {
-        return Optional.of(idnTable.getTable().getName());
+    ImmutableList<IdnTable> idnTables = idnTableListsPerTld.getOrDefault(tld, defaultIdnTables);
+    // Check each codepoint against all tables in a single pass over the label, keeping the tables
+    // that contain every codepoint so far as bits in a mask.
+    int candidates = (1 << idnTables.size()) - 1;
+    final int length = unicodeString.length();
+    for (int i = 0; i < length && candidates != 0; ) {
+      int codepoint = unicodeString.codePointAt(i);
+      for (int table = 0; table < idnTables.size(); table++) {
+        if ((candidates & (1 << table)) != 0
+            && !idnTables.get(table).containsCodepoint(codepoint)) {
+          candidates &= ~(1 << table);
+        }
+      }
+      i += Character.charCount(codepoint);
+    }
+    for (int table = 0; table < idnTables.size(); table++) {
+      if ((candidates & (1 << table)) != 0
+          && idnTables.get(table).isValidForLanguage(unicodeString)) {
+        return Optional.of(idnTables.get(table).getName());
       }
     }
     return Optional.empty();
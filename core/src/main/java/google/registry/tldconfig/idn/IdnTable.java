@@ -17,8 +17,7 @@ package google.registry.tldconfig.idn;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import com.google.common.collect.ImmutableRangeSet;
-import com.google.common.collect.Range;
+import com.google.common.collect.ImmutableList;
 import com.google.errorprone.annotations.Immutable;
 import com.google.re2j.Matcher;
 import com.google.re2j.Pattern;
@@ -49,8 +48,8 @@ public final class IdnTable {
   /** Public URL of policy for this IDN table, which is needed by RDE. */
   private final URI policy;
 
-  /** {@link ImmutableRangeSet} containing the valid codepoints in this table. */
-  private final ImmutableRangeSet<Integer> validCodepoints;
+  /** {@link CodepointSet} containing the valid codepoints in this table. */
+  private final CodepointSet validCodepoints;
 
   /** Validates the language rules associated with this IDN table. */
   private final Optional<LanguageValidator> languageValidator;
@@ -59,7 +58,7 @@ public final class IdnTable {
       String name,
       URI url,
       URI policy,
-      ImmutableRangeSet<Integer> validCodepoints,
+      CodepointSet validCodepoints,
       Optional<LanguageValidator> languageValidator) {
     this.name = name;
     this.url = checkNotNull(url, "%s missing '# URL: http://foo.example/page' line", name);
@@ -88,7 +87,7 @@ public final class IdnTable {
     final int length = label.length();
     for (int i = 0; i < length; ) {
       int codepoint = label.codePointAt(i);
-      if (!validCodepoints.contains(codepoint)) {
+      if (!containsCodepoint(codepoint)) {
         return false;
       }
 
@@ -96,6 +95,19 @@ public final class IdnTable {
       // surrogates).
       i += Character.charCount(codepoint);
     }
+    return isValidForLanguage(label);
+  }
+
+  /** Returns true if the given codepoint is in this IDN table. */
+  boolean containsCodepoint(int codepoint) {
+    return validCodepoints.contains(codepoint);
+  }
+
+  /**
+   * Returns true if the given label, all of whose codepoints are in this table, also satisfies the
+   * language rules associated with this table, if any.
+   */
+  boolean isValidForLanguage(String label) {
     return !(languageValidator.isPresent()
         && !languageValidator.get().isValidLabelForLanguage(label));
   }
@@ -103,7 +115,7 @@ public final class IdnTable {
   /** Creates an IDN table given the lines from text file. */
   static IdnTable createFrom(
       String language, Iterable<String> data, Optional<LanguageValidator> languageValidator) {
-    ImmutableRangeSet.Builder<Integer> rangeSet = new ImmutableRangeSet.Builder<>();
+    ImmutableList.Builder<Integer> codepoints = new ImmutableList.Builder<>();
     URI url = null;
     URI policy = null;
     for (String line : data) {
@@ -123,9 +135,10 @@ public final class IdnTable {
       }
 
       int codepoint = readCodepoint(line);
-      rangeSet.add(Range.singleton(codepoint));
+      codepoints.add(codepoint);
     }
-    return new IdnTable(language, url, policy, rangeSet.build(), languageValidator);
+    return new IdnTable(
+        language, url, policy, CodepointSet.copyOf(codepoints.build()), languageValidator);
   }
 
   /**
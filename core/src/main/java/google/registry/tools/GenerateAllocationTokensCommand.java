@@ -15,11 +15,13 @@
 package google.registry.tools;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Queues.newArrayDeque;
 import static com.google.common.collect.Sets.difference;
 import static google.registry.model.domain.token.AllocationToken.TokenType.SINGLE_USE;
 import static google.registry.model.domain.token.AllocationToken.TokenType.UNLIMITED_USE;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 import static google.registry.persistence.transaction.TransactionManagerUtil.transactIfJpaTm;
 import static google.registry.util.CollectionUtils.nullToEmpty;
@@ -32,16 +34,19 @@ import com.google.appengine.tools.remoteapi.RemoteApiException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Streams;
+import com.google.common.io.FileWriteMode;
 import com.google.common.io.Files;
 import google.registry.model.domain.token.AllocationToken;
 import google.registry.model.domain.token.AllocationToken.TokenStatus;
 import google.registry.model.domain.token.AllocationToken.TokenType;
 import google.registry.persistence.VKey;
+import google.registry.persistence.transaction.PostgresCopyWriter;
 import google.registry.tools.params.TransitionListParameter.TokenStatusTransitions;
 import google.registry.util.CollectionUtils;
 import google.registry.util.NonFinalForTesting;
@@ -49,11 +54,14 @@ import google.registry.util.Retrier;
 import google.registry.util.StringGenerator;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import org.joda.time.DateTime;
@@ -89,6 +97,12 @@ class GenerateAllocationTokensCommand implements CommandWithRemoteApi {
       description = "A file with a list of newline-delimited domain names to create tokens for")
   private String domainNamesFile;
 
+  @Parameter(
+      names = {"--tokens_file"},
+      description =
+          "A file with a list of newline-delimited, externally generated tokens to import")
+  private String tokensFile;
+
   @Parameter(
       names = {"-l", "--length"},
       description =
@@ -144,6 +158,28 @@ class GenerateAllocationTokensCommand implements CommandWithRemoteApi {
       description = "Do not actually persist the tokens; defaults to false")
   boolean dryRun;
 
+  @Parameter(
+      names = {"--bulk"},
+      description =
+          "Write the tokens directly to Cloud SQL in large batches, detecting collisions in the"
+              + " database instead of looking tokens up beforehand. Requires Cloud SQL to be the"
+              + " primary database and --output_file. Tokens written this way are not replicated"
+              + " to Datastore.")
+  boolean bulk;
+
+  @Parameter(
+      names = {"--bulk_batch_size"},
+      description = "The number of tokens written per batch with --bulk; defaults to 10000")
+  private int bulkBatchSize = 10000;
+
+  @Parameter(
+      names = {"-o", "--output_file"},
+      description =
+          "With --bulk, the file that saved tokens are appended to instead of being printed to"
+              + " stdout. Tokens already in the file are treated as saved, so an interrupted run"
+              + " can be resumed by rerunning the command with the same arguments.")
+  private String outputFile;
+
   @Inject
   @Named("base58StringGenerator")
   StringGenerator stringGenerator;
@@ -152,6 +188,7 @@ class GenerateAllocationTokensCommand implements CommandWithRemoteApi {
 
   private static final int BATCH_SIZE = 20;
   private static final Joiner SKIP_NULLS = Joiner.on(',').skipNulls();
+  private static final Splitter COMMA = Splitter.on(',');
 
   @Override
   public void run() throws IOException {
@@ -163,44 +200,132 @@ class GenerateAllocationTokensCommand implements CommandWithRemoteApi {
     if (domainNamesFile == null) {
       domainNames = null;
     } else {
-      domainNames =
-          newArrayDeque(
-              Splitter.on('\n')
-                  .omitEmptyStrings()
-                  .trimResults()
-                  .split(Files.asCharSource(new File(domainNamesFile), UTF_8).read()));
+      domainNames = newArrayDeque(readLines(domainNamesFile));
       numTokens = domainNames.size();
     }
+    if (bulk) {
+      runBulk(domainNames);
+      return;
+    }
 
     int tokensSaved = 0;
     do {
       ImmutableSet<AllocationToken> tokens =
           getNextTokenBatch(tokensSaved)
-              .map(
-                  t -> {
-                    AllocationToken.Builder token =
-                        new AllocationToken.Builder()
-                            .setToken(t)
-                            .setTokenType(tokenType == null ? SINGLE_USE : tokenType)
-                            .setAllowedRegistrarIds(
-                                ImmutableSet.copyOf(nullToEmpty(allowedClientIds)))
-                            .setAllowedTlds(ImmutableSet.copyOf(nullToEmpty(allowedTlds)));
-                    Optional.ofNullable(discountFraction).ifPresent(token::setDiscountFraction);
-                    Optional.ofNullable(discountPremiums).ifPresent(token::setDiscountPremiums);
-                    Optional.ofNullable(discountYears).ifPresent(token::setDiscountYears);
-                    Optional.ofNullable(tokenStatusTransitions)
-                        .ifPresent(token::setTokenStatusTransitions);
-                    Optional.ofNullable(domainNames)
-                        .ifPresent(d -> token.setDomainName(d.removeFirst()));
-                    return token.build();
-                  })
+              .map(t -> createToken(t, domainNames == null ? null : domainNames.removeFirst()))
               .collect(toImmutableSet());
       // Wrap in a retrier to deal with transient 404 errors (thrown as RemoteApiExceptions).
       tokensSaved += retrier.callWithRetry(() -> saveTokens(tokens), RemoteApiException.class);
     } while (tokensSaved < numTokens);
   }
 
-  private void verifyInput() {
+  /**
+   * Saves the tokens with {@link PostgresCopyWriter#insertIfAbsent} in large batches, appending
+   * those saved to the output file.
+   *
+   * <p>Tokens and domain names that are already in the output file are skipped. Generated tokens
+   * that collide with existing ones are simply not inserted, and replaced in the next batch.
+   * Explicitly specified tokens that already exist are skipped and reported at the end.
+   */
+  private void runBulk(@Nullable Deque<String> domainNames) throws IOException {
+    File output = new File(outputFile);
+    ImmutableList<String> savedLines =
+        output.exists() ? readLines(outputFile) : ImmutableList.of();
+    Deque<String> pendingTokens = null;
+    long remaining;
+    if (domainNames != null) {
+      // Each line of the output file is a domain name followed by its token.
+      ImmutableSet<String> savedDomainNames =
+          savedLines.stream().map(line -> COMMA.split(line).get(0)).collect(toImmutableSet());
+      domainNames.removeIf(savedDomainNames::contains);
+      remaining = domainNames.size();
+    } else if (tokenStrings != null) {
+      ImmutableSet<String> savedTokens = ImmutableSet.copyOf(savedLines);
+      pendingTokens = newArrayDeque(difference(ImmutableSet.copyOf(tokenStrings), savedTokens));
+      remaining = pendingTokens.size();
+    } else {
+      remaining = numTokens - savedLines.size();
+    }
+    if (!savedLines.isEmpty()) {
+      System.err.printf("Resuming: %d tokens were already saved.%n", savedLines.size());
+    }
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    long tokensSaved = 0;
+    long tokensSkipped = 0;
+    try (Writer writer =
+        Files.asCharSink(output, UTF_8, FileWriteMode.APPEND).openBufferedStream()) {
+      while (tokensSaved + tokensSkipped < remaining) {
+        ImmutableList<AllocationToken> batch =
+            getNextBulkBatch(domainNames, pendingTokens, remaining - tokensSaved - tokensSkipped);
+        ImmutableSet<Object> inserted =
+            jpaTm().transact(() -> PostgresCopyWriter.insertIfAbsent(AllocationToken.class, batch));
+        for (AllocationToken token : batch) {
+          if (inserted.contains(token.getToken())) {
+            writer.write(SKIP_NULLS.join(token.getDomainName().orElse(null), token.getToken()));
+            writer.write('\n');
+            tokensSaved++;
+          } else if (domainNames != null) {
+            // Try again with another token in a later batch.
+            domainNames.addLast(token.getDomainName().get());
+          } else if (pendingTokens != null) {
+            tokensSkipped++;
+          }
+        }
+        // Only tokens that have been flushed to the file are skipped when resuming.
+        writer.flush();
+        System.err.printf(
+            "Saved %d of %d tokens (%.0f tokens/sec)%n",
+            tokensSaved,
+            remaining,
+            tokensSaved / Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS) / 1000.0, 0.001));
+      }
+    }
+    if (tokensSkipped > 0) {
+      System.err.printf("Skipped %d tokens that already exist.%n", tokensSkipped);
+    }
+  }
+
+  private ImmutableList<AllocationToken> getNextBulkBatch(
+      @Nullable Deque<String> domainNames, @Nullable Deque<String> pendingTokens, long remaining) {
+    int size = (int) Math.min(bulkBatchSize, remaining);
+    if (pendingTokens != null) {
+      ImmutableList.Builder<AllocationToken> batch = new ImmutableList.Builder<>();
+      for (int i = 0; i < size; i++) {
+        batch.add(createToken(pendingTokens.removeFirst(), null));
+      }
+      return batch.build();
+    }
+    // Generated tokens are unlikely to collide, and any that do are not inserted by the database.
+    return stringGenerator.createStrings(tokenLength, size).stream()
+        .map(s -> createToken(prefix + s, domainNames == null ? null : domainNames.removeFirst()))
+        .collect(toImmutableList());
+  }
+
+  private AllocationToken createToken(String tokenString, @Nullable String domainName) {
+    AllocationToken.Builder token =
+        new AllocationToken.Builder()
+            .setToken(tokenString)
+            .setTokenType(tokenType == null ? SINGLE_USE : tokenType)
+            .setAllowedRegistrarIds(ImmutableSet.copyOf(nullToEmpty(allowedClientIds)))
+            .setAllowedTlds(ImmutableSet.copyOf(nullToEmpty(allowedTlds)));
+    Optional.ofNullable(discountFraction).ifPresent(token::setDiscountFraction);
+    Optional.ofNullable(discountPremiums).ifPresent(token::setDiscountPremiums);
+    Optional.ofNullable(discountYears).ifPresent(token::setDiscountYears);
+    Optional.ofNullable(tokenStatusTransitions).ifPresent(token::setTokenStatusTransitions);
+    Optional.ofNullable(domainName).ifPresent(token::setDomainName);
+    return token.build();
+  }
+
+  private static ImmutableList<String> readLines(String fileName) throws IOException {
+    return ImmutableList.copyOf(
+        Splitter.on('\n')
+            .omitEmptyStrings()
+            .trimResults()
+            .split(Files.asCharSource(new File(fileName), UTF_8).read()));
+  }
+
+  private void verifyInput() throws IOException {
     int inputMethods = 0;
     if (numTokens > 0) {
       inputMethods++;
@@ -211,9 +336,13 @@ class GenerateAllocationTokensCommand implements CommandWithRemoteApi {
     if (tokenStrings != null && !tokenStrings.isEmpty()) {
       inputMethods++;
     }
+    if (tokensFile != null) {
+      inputMethods++;
+    }
     checkArgument(
         inputMethods == 1,
-        "Must specify exactly one of '--number', '--domain_names_file', and '--tokens'");
+        "Must specify exactly one of '--number', '--domain_names_file', '--tokens', and"
+            + " '--tokens_file'");
 
     checkArgument(
         tokenLength > 0,
@@ -233,7 +362,18 @@ class GenerateAllocationTokensCommand implements CommandWithRemoteApi {
         !ImmutableList.of("").equals(allowedTlds),
         "Either omit --allowed_tlds if all TLDs are allowed, or include a comma-separated list");
 
-    if (tokenStrings != null) {
+    if (bulk) {
+      checkArgument(!tm().isOfy(), "--bulk requires Cloud SQL to be the primary database");
+      checkArgument(outputFile != null, "--bulk requires --output_file");
+      checkArgument(!dryRun, "--dry_run is not supported with --bulk");
+      checkArgument(bulkBatchSize > 0, "--bulk_batch_size must be positive");
+    }
+
+    if (tokensFile != null) {
+      tokenStrings = readLines(tokensFile);
+    }
+    // In bulk mode, existing tokens are detected by the database as they are inserted.
+    if (tokenStrings != null && !bulk) {
       verifyTokenStringsDoNotExist();
     }
   }
@@ -0,0 +1,161 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tools;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.google.common.base.Ascii;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HostAndPort;
+import google.registry.loadtest.EppLoadGenerator;
+import google.registry.loadtest.EppLoadGenerator.CommandType;
+import google.registry.loadtest.EppLoadGenerator.ConnectionFactory;
+import google.registry.tools.params.KeyValueMapParameter;
+import java.net.URL;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLSocketFactory;
+import org.joda.time.Duration;
+
+/**
+ * Command to run an open-loop EPP load test from the local machine.
+ *
+ * <p>Unlike {@link LoadTestCommand}, this does not depend on App Engine task queues, and reports
+ * latency percentiles per command type rather than just success counts. It can target either the
+ * proxy, using EPP over TLS, or the EPP endpoint of a Nomulus server directly.
+ *
+ * <p>When connecting over TLS, the client certificate is read from the standard JSSE key store
+ * system properties ({@code javax.net.ssl.keyStore} and {@code javax.net.ssl.keyStorePassword}).
+ */
+@Parameters(separators = " =", commandDescription = "Run an open-loop EPP load test.")
+final class RunEppLoadTestCommand implements Command {
+
+  @Parameter(
+      names = "--endpoint",
+      description =
+          "Either the host:port of an EPP over TLS endpoint (e.g. the proxy), or the http(s) URL "
+              + "of a server's EPP endpoint (e.g. http://localhost:8080/_dr/epp).",
+      required = true)
+  private String endpoint;
+
+  @Parameter(
+      names = {"-c", "--client_id"},
+      description = "Client ID of the registrar to log in as.",
+      required = true)
+  private String clientId;
+
+  @Parameter(names = "--password", description = "EPP password of the registrar.", required = true)
+  private String password;
+
+  @Parameter(names = "--tld", description = "TLD that all domains will be created under.")
+  private String tld = "example";
+
+  @Parameter(
+      names = "--existing_domain",
+      description =
+          "Label of an existing domain sponsored by the registrar, used as the target of info, "
+              + "transfer query and renew commands.")
+  private String existingDomain = "testdomain";
+
+  @Parameter(
+      names = "--rates",
+      description =
+          "Commands to send per second, by command type (formatted as type=rate[,type=rate...]), "
+              + "where type is one of check, create, info, renew, transfer or poll.",
+      converter = CommandTypeToDoubleMap.class,
+      validateWith = CommandTypeToDoubleMap.class,
+      required = true)
+  private ImmutableMap<CommandType, Double> rates;
+
+  @Parameter(
+      names = "--sessions",
+      description = "Number of concurrent EPP sessions, i.e. the maximum commands in flight.")
+  private int numSessions = 10;
+
+  @Parameter(names = "--run_seconds", description = "Time to run the load test in seconds.")
+  private int runSeconds = 60;
+
+  @Parameter(
+      names = "--timeout_millis",
+      description = "Connect and read timeout for each EPP command, in milliseconds.")
+  private int timeoutMillis = 30000;
+
+  @Nullable
+  @Parameter(
+      names = "--certificate_hash",
+      description =
+          "Hash of the registrar's client certificate. Only used when sending directly to a "
+              + "server's EPP endpoint, in which case it is required.")
+  private String certificateHash;
+
+  @Parameter(
+      names = "--client_ip",
+      description =
+          "IP address to report to the server. Only used when sending directly to a server's EPP "
+              + "endpoint, and must be on the registrar's IP allow list.")
+  private String clientIp = "127.0.0.1";
+
+  @Override
+  public void run() throws Exception {
+    checkState(
+        RegistryToolEnvironment.get() != RegistryToolEnvironment.PRODUCTION,
+        "You may not run a load test against production.");
+    checkArgument(runSeconds > 0, "--run_seconds must be positive");
+    EppLoadGenerator generator =
+        new EppLoadGenerator(
+            createConnectionFactory(),
+            clientId,
+            password,
+            tld,
+            existingDomain,
+            rates,
+            numSessions,
+            Duration.standardSeconds(runSeconds));
+    System.err.printf(
+        "Running EPP load test against %s for %d seconds with %d sessions...\n",
+        endpoint, runSeconds, numSessions);
+    System.out.print(generator.run());
+  }
+
+  private ConnectionFactory createConnectionFactory() throws Exception {
+    String lowerCaseEndpoint = Ascii.toLowerCase(endpoint);
+    if (lowerCaseEndpoint.startsWith("http://") || lowerCaseEndpoint.startsWith("https://")) {
+      checkArgument(
+          certificateHash != null,
+          "--certificate_hash is required when sending directly to an EPP endpoint");
+      return EppLoadGenerator.httpConnectionFactory(
+          new URL(endpoint), certificateHash, clientIp, timeoutMillis);
+    }
+    HostAndPort hostAndPort = HostAndPort.fromString(endpoint).requireBracketsForIPv6();
+    checkArgument(hostAndPort.hasPort(), "--endpoint must specify a port: %s", endpoint);
+    return EppLoadGenerator.tcpConnectionFactory(
+        SSLSocketFactory.getDefault(), hostAndPort.getHost(), hostAndPort.getPort(), timeoutMillis);
+  }
+
+  /** Combined converter and validator class for command type-to-rate map argument strings. */
+  public static class CommandTypeToDoubleMap extends KeyValueMapParameter<CommandType, Double> {
+    @Override
+    protected CommandType parseKey(String rawKey) {
+      return CommandType.valueOf(Ascii.toUpperCase(rawKey));
+    }
+
+    @Override
+    protected Double parseValue(String value) {
+      return Double.parseDouble(value);
+    }
+  }
+}
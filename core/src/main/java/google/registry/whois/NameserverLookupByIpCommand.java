@@ -62,13 +62,16 @@ final class NameserverLookupByIpCommand implements WhoisCommand {
     } else {
       hostsFromDb =
           jpaTm()
-              .transact(
+              .transactNewReadOnly(
                   () ->
-                      // We cannot query @Convert-ed fields in HQL so we must use native Postgres
+                      // We cannot query @Convert-ed fields in HQL so we must use native Postgres.
+                      // Use array containment rather than ANY() so that the GIN index on
+                      // inet_addresses can be used.
                       jpaTm()
                           .getEntityManager()
                           .createNativeQuery(
-                              "SELECT * From \"Host\" WHERE :address = ANY(inet_addresses) AND "
+                              "SELECT * From \"Host\" WHERE "
+                                  + "inet_addresses @> ARRAY[CAST(:address AS text)] AND "
                                   + "deletion_time > CAST(:now AS timestamptz)",
                               HostResource.class)
                           .setParameter("address", InetAddresses.toAddrString(ipAddress))
@@ -0,0 +1,302 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.xml;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * StAX writer that writes a single XML element as a fragment of an enclosing document.
+ *
+ * <p>The output is formatted the way JAXB formats its own output: each element starts on a new line
+ * and is indented by four spaces per level, except within text, and the fragment ends with a
+ * newline. Namespace declarations on the root element are dropped, since the enclosing document
+ * declares them. No XML declaration is written.
+ *
+ * <p>This only supports the subset of {@link XMLStreamWriter} that JAXB uses when marshaling with
+ * explicit prefixes. The underlying writer isn't flushed or closed.
+ */
+@NotThreadSafe
+final class FragmentStreamWriter implements XMLStreamWriter {
+
+  private static final String INDENT = "    ";
+
+  private final Writer out;
+  private final Deque<String> openElements = new ArrayDeque<>();
+  private boolean startTagOpen = false;
+  private boolean seenText = false;
+
+  FragmentStreamWriter(@WillNotClose Writer out) {
+    this.out = out;
+  }
+
+  @Override
+  public void writeStartElement(String localName) throws XMLStreamException {
+    writeStartElement("", localName, "");
+  }
+
+  @Override
+  public void writeStartElement(String namespaceUri, String localName) {
+    throw new UnsupportedOperationException("Element prefix must be given explicitly");
+  }
+
+  @Override
+  public void writeStartElement(String prefix, String localName, String namespaceUri)
+      throws XMLStreamException {
+    closeStartTag();
+    if (!seenText) {
+      writeIndent();
+    }
+    seenText = false;
+    String name = qualify(prefix, localName);
+    openElements.push(name);
+    write("<");
+    write(name);
+    startTagOpen = true;
+  }
+
+  @Override
+  public void writeEmptyElement(String localName) {
+    throw new UnsupportedOperationException("Empty elements aren't supported");
+  }
+
+  @Override
+  public void writeEmptyElement(String namespaceUri, String localName) {
+    throw new UnsupportedOperationException("Empty elements aren't supported");
+  }
+
+  @Override
+  public void writeEmptyElement(String prefix, String localName, String namespaceUri) {
+    throw new UnsupportedOperationException("Empty elements aren't supported");
+  }
+
+  @Override
+  public void writeEndElement() throws XMLStreamException {
+    checkState(!openElements.isEmpty(), "No element to end");
+    String name = openElements.pop();
+    if (startTagOpen) {
+      write("/>");
+      startTagOpen = false;
+    } else {
+      if (!seenText) {
+        writeIndent();
+      }
+      write("</");
+      write(name);
+      write(">");
+    }
+    seenText = false;
+    if (openElements.isEmpty()) {
+      write("\n");
+    }
+  }
+
+  @Override
+  public void writeEndDocument() throws XMLStreamException {
+    while (!openElements.isEmpty()) {
+      writeEndElement();
+    }
+  }
+
+  @Override
+  public void close() {}
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public void writeAttribute(String localName, String value) throws XMLStreamException {
+    writeAttribute("", "", localName, value);
+  }
+
+  @Override
+  public void writeAttribute(String prefix, String namespaceUri, String localName, String value)
+      throws XMLStreamException {
+    checkState(startTagOpen, "Attributes must follow a start tag");
+    write(" ");
+    write(qualify(prefix, localName));
+    write("=\"");
+    writeEscaped(value, true);
+    write("\"");
+  }
+
+  @Override
+  public void writeAttribute(String namespaceUri, String localName, String value) {
+    throw new UnsupportedOperationException("Attribute prefix must be given explicitly");
+  }
+
+  @Override
+  public void writeNamespace(String prefix, String namespaceUri) throws XMLStreamException {
+    if (prefix == null || prefix.isEmpty() || prefix.equals("xmlns")) {
+      writeDefaultNamespace(namespaceUri);
+    } else if (openElements.size() > 1) {
+      writeAttribute("xmlns", "", prefix, namespaceUri);
+    }
+  }
+
+  @Override
+  public void writeDefaultNamespace(String namespaceUri) throws XMLStreamException {
+    writeAttribute("xmlns", namespaceUri);
+  }
+
+  @Override
+  public void writeComment(String data) {
+    throw new UnsupportedOperationException("Comments aren't supported");
+  }
+
+  @Override
+  public void writeProcessingInstruction(String target) {
+    throw new UnsupportedOperationException("Processing instructions aren't supported");
+  }
+
+  @Override
+  public void writeProcessingInstruction(String target, String data) {
+    throw new UnsupportedOperationException("Processing instructions aren't supported");
+  }
+
+  @Override
+  public void writeCData(String data) {
+    throw new UnsupportedOperationException("CDATA isn't supported");
+  }
+
+  @Override
+  public void writeDTD(String dtd) {
+    throw new UnsupportedOperationException("DTDs aren't supported");
+  }
+
+  @Override
+  public void writeEntityRef(String name) throws XMLStreamException {
+    closeStartTag();
+    seenText = true;
+    write("&");
+    write(name);
+    write(";");
+  }
+
+  @Override
+  public void writeStartDocument() {}
+
+  @Override
+  public void writeStartDocument(String version) {}
+
+  @Override
+  public void writeStartDocument(String encoding, String version) {}
+
+  @Override
+  public void writeCharacters(String text) throws XMLStreamException {
+    closeStartTag();
+    seenText = true;
+    writeEscaped(text, false);
+  }
+
+  @Override
+  public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+    writeCharacters(new String(text, start, len));
+  }
+
+  @Override
+  @Nullable
+  public String getPrefix(String uri) {
+    return null;
+  }
+
+  @Override
+  public void setPrefix(String prefix, String uri) {}
+
+  @Override
+  public void setDefaultNamespace(String uri) {}
+
+  @Override
+  public void setNamespaceContext(NamespaceContext context) {
+    throw new UnsupportedOperationException("Namespace contexts aren't supported");
+  }
+
+  /** Returns null, so that JAXB doesn't assume any namespace bindings to be in scope. */
+  @Override
+  @Nullable
+  public NamespaceContext getNamespaceContext() {
+    return null;
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    throw new IllegalArgumentException("Unsupported property: " + name);
+  }
+
+  private void closeStartTag() throws XMLStreamException {
+    if (startTagOpen) {
+      write(">");
+      startTagOpen = false;
+    }
+  }
+
+  private void writeIndent() throws XMLStreamException {
+    write("\n");
+    for (int i = 0; i < openElements.size(); i++) {
+      write(INDENT);
+    }
+  }
+
+  private void writeEscaped(String text, boolean isAttribute) throws XMLStreamException {
+    int start = 0;
+    for (int i = 0; i < text.length(); i++) {
+      String escaped;
+      switch (text.charAt(i)) {
+        case '&':
+          escaped = "&amp;";
+          break;
+        case '<':
+          escaped = "&lt;";
+          break;
+        case '>':
+          escaped = "&gt;";
+          break;
+        case '"':
+          escaped = isAttribute ? "&quot;" : null;
+          break;
+        default:
+          escaped = null;
+      }
+      if (escaped != null) {
+        write(text.substring(start, i));
+        write(escaped);
+        start = i + 1;
+      }
+    }
+    write(text.substring(start));
+  }
+
+  private void write(String string) throws XMLStreamException {
+    try {
+      out.write(string);
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
+  private static String qualify(@Nullable String prefix, String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+}
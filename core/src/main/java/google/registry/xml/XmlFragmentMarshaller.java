@@ -22,13 +22,19 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.re2j.Pattern;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import javax.annotation.WillNotClose;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.MarshalException;
 import javax.xml.bind.Marshaller;
+import javax.xml.bind.util.JAXBSource;
 import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import org.xml.sax.SAXException;
 
 /** JAXB marshaller for building pieces of XML documents in a single thread. */
 @NotThreadSafe
@@ -39,6 +45,9 @@ public final class XmlFragmentMarshaller {
   private final ByteArrayOutputStream os = new ByteArrayOutputStream();
   private final Marshaller marshaller;
   private final Schema schema;
+  private final JAXBContext jaxbContext;
+  private Marshaller validationMarshaller;
+  private Validator validator;
 
   XmlFragmentMarshaller(JAXBContext jaxbContext, Schema schema) {
     try {
@@ -50,6 +59,7 @@ public final class XmlFragmentMarshaller {
       throw new RuntimeException(e);
     }
     this.schema = schema;
+    this.jaxbContext = jaxbContext;
   }
 
   /**
@@ -92,4 +102,40 @@ public final class XmlFragmentMarshaller {
     String rest = fragment.substring(firstLine.length());
     return XMLNS_PATTERN.matcher(firstLine).replaceAll("") + rest;
   }
+
+  /**
+   * Streams an individual JAXB element to {@code writer} as an XML fragment, without validation.
+   *
+   * <p>The output is the same as that of {@link #marshalLenient}, but the element is marshaled
+   * through a StAX writer straight to {@code writer}, rather than to bytes that are then decoded
+   * and rewritten to drop namespace declarations.
+   */
+  public void marshal(JAXBElement<?> element, @WillNotClose Writer writer) {
+    marshaller.setSchema(null);
+    try {
+      marshaller.marshal(element, new FragmentStreamWriter(writer));
+    } catch (JAXBException e) {
+      throw new RuntimeException("Mysterious XML exception", e);
+    }
+  }
+
+  /**
+   * Validates an individual JAXB element against the schema, without writing it out.
+   *
+   * @throws MarshalException if schema validation failed
+   */
+  public void validate(JAXBElement<?> element) throws MarshalException {
+    try {
+      if (validator == null) {
+        // Unlike fragments, the validator's input must be a whole document.
+        validationMarshaller = jaxbContext.createMarshaller();
+        validator = schema.newValidator();
+      }
+      validator.validate(new JAXBSource(validationMarshaller, element));
+    } catch (SAXException e) {
+      throw new MarshalException(e);
+    } catch (JAXBException | IOException e) {
+      throw new RuntimeException("Mysterious XML exception", e);
+    }
+  }
 }
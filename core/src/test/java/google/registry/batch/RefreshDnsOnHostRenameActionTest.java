@@ -38,6 +38,7 @@ import static org.joda.time.Duration.standardDays;
 import static org.joda.time.Duration.standardHours;
 import static org.joda.time.Duration.standardSeconds;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -139,8 +140,9 @@ public class RefreshDnsOnHostRenameActionTest
     enqueuer.enqueueAsyncDnsRefresh(host, timeEnqueued);
     DnsQueue mockedQueue = mock(DnsQueue.class);
     action.dnsQueue = mockedQueue;
-    when(mockedQueue.addDomainRefreshTask(anyString()))
-        .thenThrow(new RuntimeException("Cannot enqueue task."));
+    doThrow(new RuntimeException("Cannot enqueue task."))
+        .when(mockedQueue)
+        .addDomainRefreshTask(anyString());
     runAction();
     assertNoDnsTasksEnqueued();
     assertTasksEnqueued(
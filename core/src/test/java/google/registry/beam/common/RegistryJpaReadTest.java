@@ -45,6 +45,10 @@ import google.registry.testing.DatabaseHelper;
 import google.registry.testing.DatastoreEntityExtension;
 import google.registry.testing.FakeClock;
 import google.registry.testing.SystemPropertyExtension;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.values.PCollection;
 import org.joda.time.DateTime;
@@ -52,6 +56,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.testcontainers.containers.JdbcDatabaseContainer;
 
 /** Unit tests for {@link RegistryJpaIO.Read}. */
 public class RegistryJpaReadTest {
@@ -124,6 +129,49 @@ public class RegistryJpaReadTest {
     testPipeline.run();
   }
 
+  @Test
+  void readWithPartitions() {
+    Read<ContactResource, String> read =
+        RegistryJpaIO.read(
+            "select c from Contact c where hash_partition(c.repoId, :numPartitions) = :partition",
+            4,
+            ContactBase::getContactId);
+    PCollection<String> repoIds = testPipeline.apply(read);
+
+    PAssert.that(repoIds).containsInAnyOrder("contact_0", "contact_1", "contact_2");
+    testPipeline.run();
+  }
+
+  @Test
+  void readWithPartitions_fromSnapshot() throws Exception {
+    JdbcDatabaseContainer container = database.getDatabase();
+    try (Connection conn =
+            DriverManager.getConnection(
+                container.getJdbcUrl(), container.getUsername(), container.getPassword());
+        Statement statement = conn.createStatement()) {
+      conn.setAutoCommit(false);
+      conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+      ResultSet resultSet = statement.executeQuery("SELECT pg_export_snapshot()");
+      resultSet.next();
+      String snapshotId = resultSet.getString(1);
+      // Not visible in the snapshot.
+      jpaTm().transact(() -> jpaTm().put(DatabaseHelper.newContactResource("contact_3")));
+
+      Read<ContactResource, String> read =
+          RegistryJpaIO.<ContactResource, String>read(
+                  "select c from Contact c"
+                      + " where hash_partition(c.repoId, :numPartitions) = :partition",
+                  4,
+                  ContactBase::getContactId)
+              .withSnapshotId(snapshotId)
+              .withFetchSize(1);
+      PCollection<String> repoIds = testPipeline.apply(read);
+
+      PAssert.that(repoIds).containsInAnyOrder("contact_0", "contact_1", "contact_2");
+      testPipeline.run();
+    }
+  }
+
   private static String parseRow(Object[] row) {
     DomainBase domainBase = (DomainBase) row[0];
     String emailAddress = (String) row[1];
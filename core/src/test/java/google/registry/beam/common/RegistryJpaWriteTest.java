@@ -115,4 +115,32 @@ class RegistryJpaWriteTest implements Serializable {
                 .map(ImmutableObject.class::cast)
                 .collect(ImmutableList.toImmutableList()));
   }
+
+  @Test
+  void writeToSql_withCopy() {
+    testPipeline
+        .apply(
+            Create.of(
+                contacts.stream()
+                    .map(InitSqlTestUtils::entityToBytes)
+                    .map(bytes -> VersionedEntity.from(0L, bytes))
+                    .collect(Collectors.toList())))
+        .apply(
+            RegistryJpaIO.<VersionedEntity>write()
+                .withName("ContactResource")
+                .withBatchSize(4)
+                .withShards(2)
+                .withCopy(true)
+                .withJpaConverter(Transforms::convertVersionedEntityToSqlEntity));
+    testPipeline.run().waitUntilFinish();
+
+    ImmutableList<?> sqlContacts = jpaTm().transact(() -> jpaTm().loadAllOf(ContactResource.class));
+    assertThat(sqlContacts)
+        .comparingElementsUsing(immutableObjectCorrespondence("revisions", "updateTimestamp"))
+        .containsExactlyElementsIn(
+            contacts.stream()
+                .map(InitSqlTestUtils::datastoreToOfyEntity)
+                .map(ImmutableObject.class::cast)
+                .collect(ImmutableList.toImmutableList()));
+  }
 }
@@ -14,11 +14,37 @@
 
 package google.registry.beam.invoicing;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static google.registry.persistence.transaction.TransactionManagerFactory.ofyTm;
+import static google.registry.testing.DatabaseHelper.newContactResourceWithRoid;
+import static google.registry.testing.DatabaseHelper.newDomainBase;
+import static google.registry.testing.DatabaseHelper.newRegistry;
+import static org.joda.money.CurrencyUnit.JPY;
+import static org.joda.money.CurrencyUnit.USD;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import google.registry.beam.TestPipelineExtension;
+import google.registry.model.billing.BillingEvent.Cancellation;
+import google.registry.model.billing.BillingEvent.Flag;
+import google.registry.model.billing.BillingEvent.OneTime;
+import google.registry.model.billing.BillingEvent.Reason;
+import google.registry.model.billing.BillingEvent.Recurring;
+import google.registry.model.common.DatabaseMigrationStateSchedule.PrimaryDatabase;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.domain.DomainHistory;
+import google.registry.model.reporting.HistoryEntry;
+import google.registry.persistence.transaction.JpaTestRules;
+import google.registry.persistence.transaction.JpaTestRules.JpaIntegrationTestExtension;
+import google.registry.persistence.transaction.TransactionManagerFactory;
+import google.registry.testing.AppEngineExtension;
+import google.registry.testing.DatastoreEntityExtension;
+import google.registry.testing.FakeClock;
+import google.registry.testing.SystemPropertyExtension;
 import google.registry.testing.TestDataHelper;
 import google.registry.util.ResourceUtils;
 import java.io.File;
@@ -27,11 +53,16 @@ import java.nio.file.Path;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Map.Entry;
+import java.util.Optional;
 import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.values.PCollection;
+import org.joda.money.Money;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
@@ -187,6 +218,22 @@ class InvoicingPipelineTest {
           "2017-10-01,2018-09-30,456,20.50,USD,10125,1,PURCHASE,bestdomains - test,1,"
               + "RENEW | TLD: test | TERM: 1-year,20.50,USD,116688");
 
+  private static final DateTime BILLING_TIME = DateTime.parse("2017-10-04T00:00:00Z");
+  private static final Money RENEW_PRICE = Money.of(USD, 20.5);
+
+  @RegisterExtension
+  @Order(Order.DEFAULT - 1)
+  final transient DatastoreEntityExtension datastore = new DatastoreEntityExtension();
+
+  // See the comment in RegistryJpaReadTest.
+  @RegisterExtension
+  final transient SystemPropertyExtension systemPropertyExtension =
+      new SystemPropertyExtension().setProperty("com.google.appengine.runtime.environment", null);
+
+  @RegisterExtension
+  final transient JpaIntegrationTestExtension database =
+      new JpaTestRules.Builder().withClock(new FakeClock(BILLING_TIME)).buildIntegrationTestRule();
+
   @RegisterExtension
   final TestPipelineExtension pipeline =
       TestPipelineExtension.create().enableAbandonedNodeEnforcement(true);
@@ -198,6 +245,7 @@ class InvoicingPipelineTest {
 
   private File billingBucketUrl;
   private PCollection<BillingEvent> billingEvents;
+  private DomainHistory domainHistory;
 
   @BeforeEach
   void beforeEach() throws Exception {
@@ -247,6 +295,155 @@ class InvoicingPipelineTest {
     }
   }
 
+  @AfterEach
+  void afterEach() {
+    TransactionManagerFactory.setTm(ofyTm());
+  }
+
+  @Test
+  void testSuccess_readFromCloudSql() throws Exception {
+    // The pipeline reads shared code's state through tm(), which is Cloud SQL on the workers.
+    TransactionManagerFactory.setTm(jpaTm());
+    ContactResource contact = newContactResourceWithRoid("contact1234", "1-ROID");
+    DomainBase domain = newDomainBase("mydomain.test", "2-TEST", contact);
+    domainHistory =
+        new DomainHistory.Builder()
+            .setDomain(domain)
+            .setType(HistoryEntry.Type.DOMAIN_CREATE)
+            .setModificationTime(BILLING_TIME.minusYears(1))
+            .setClientId("TheRegistrar")
+            .build();
+    jpaTm()
+        .transact(
+            () -> {
+              jpaTm()
+                  .putAll(
+                      newRegistry("test", "TEST").asBuilder().setInvoicingEnabled(true).build(),
+                      newRegistry("free", "FREE"),
+                      AppEngineExtension.makeRegistrar1()
+                          .asBuilder()
+                          .setBillingAccountMap(ImmutableMap.of(USD, "456"))
+                          .setPoNumber(Optional.of("116688"))
+                          .build(),
+                      AppEngineExtension.makeRegistrar2()
+                          .asBuilder()
+                          .setBillingAccountMap(ImmutableMap.of(USD, "234"))
+                          .build());
+              jpaTm().putAll(contact, domain, domainHistory);
+            });
+    Recurring recurring =
+        new Recurring.Builder()
+            .setParent(domainHistory)
+            .setReason(Reason.RENEW)
+            .setFlags(ImmutableSet.of(Flag.AUTO_RENEW))
+            .setClientId("TheRegistrar")
+            .setTargetId("autorenewed.test")
+            .setEventTime(BILLING_TIME.minusYears(1))
+            .build();
+    OneTime cancelledRenew =
+        makeOneTime("TheRegistrar", "cancelled.test", Money.of(USD, 8), BILLING_TIME);
+    OneTime cancelledAutorenew =
+        makeOneTime("TheRegistrar", "autorenewed.test", Money.of(USD, 8), BILLING_TIME)
+            .asBuilder()
+            .setFlags(ImmutableSet.of(Flag.AUTO_RENEW, Flag.SYNTHETIC))
+            .setSyntheticCreationTime(BILLING_TIME)
+            .setCancellationMatchingBillingEvent(recurring.createVKey())
+            .build();
+    jpaTm()
+        .transact(
+            () ->
+                jpaTm()
+                    .putAll(
+                        recurring,
+                        cancelledRenew,
+                        cancelledAutorenew,
+                        new Cancellation.Builder()
+                            .setParent(domainHistory)
+                            .setReason(Reason.RENEW)
+                            .setClientId("TheRegistrar")
+                            .setTargetId("cancelled.test")
+                            .setEventTime(BILLING_TIME.minusDays(1))
+                            .setBillingTime(BILLING_TIME)
+                            .setOneTimeEventKey(cancelledRenew.createVKey())
+                            .build(),
+                        new Cancellation.Builder()
+                            .setParent(domainHistory)
+                            .setReason(Reason.RENEW)
+                            .setClientId("TheRegistrar")
+                            .setTargetId("autorenewed.test")
+                            .setEventTime(BILLING_TIME.minusDays(1))
+                            .setBillingTime(BILLING_TIME)
+                            .setRecurringEventKey(recurring.createVKey())
+                            .build(),
+                        makeOneTime("TheRegistrar", "mydomain.test", RENEW_PRICE, BILLING_TIME),
+                        makeOneTime("TheRegistrar", "mydomain2.test", RENEW_PRICE, BILLING_TIME),
+                        makeOneTime("NewRegistrar", "mydomain4.test", RENEW_PRICE, BILLING_TIME),
+                        // Billed in the previous month.
+                        makeOneTime(
+                            "TheRegistrar",
+                            "lastmonth.test",
+                            RENEW_PRICE,
+                            BILLING_TIME.minusDays(4)),
+                        // The TLD isn't invoiced.
+                        makeOneTime("TheRegistrar", "mydomain.free", RENEW_PRICE, BILLING_TIME),
+                        // The registrar has no billing account in the currency.
+                        makeOneTime("TheRegistrar", "yen.test", Money.of(JPY, 70), BILLING_TIME)));
+    options.setDatabase(PrimaryDatabase.CLOUD_SQL);
+    options.setSqlReadPartitions(3);
+
+    new InvoicingPipeline(options).setupPipeline(pipeline);
+    pipeline.run().waitUntilFinish();
+
+    ImmutableList<String> overallInvoice = resultFileContents("REG-INV-2017-10.csv");
+    assertThat(overallInvoice.subList(1, overallInvoice.size()))
+        .containsExactly(
+            "2017-10-01,2018-09-30,234,41.00,USD,10125,1,PURCHASE,TheRegistrar - test,2,"
+                + "RENEW | TLD: test | TERM: 1-year,20.50,USD,",
+            "2017-10-01,2018-09-30,456,20.50,USD,10125,1,PURCHASE,NewRegistrar - test,1,"
+                + "RENEW | TLD: test | TERM: 1-year,20.50,USD,116688");
+    // The IDs of the billing events are allocated, so they are left out of the comparison.
+    assertThat(detailedReportRowsWithoutIds("invoice_details_2017-10_TheRegistrar_test.csv"))
+        .containsExactly(
+            "2017-10-04 00:00:00 UTC,2017-10-03 00:00:00 UTC,TheRegistrar,234,,"
+                + "test,RENEW,mydomain.test,2-TEST,1,USD,20.50,",
+            "2017-10-04 00:00:00 UTC,2017-10-03 00:00:00 UTC,TheRegistrar,234,,"
+                + "test,RENEW,mydomain2.test,2-TEST,1,USD,20.50,");
+    assertThat(detailedReportRowsWithoutIds("invoice_details_2017-10_NewRegistrar_test.csv"))
+        .containsExactly(
+            "2017-10-04 00:00:00 UTC,2017-10-03 00:00:00 UTC,NewRegistrar,456,116688,"
+                + "test,RENEW,mydomain4.test,2-TEST,1,USD,20.50,");
+    assertThat(
+            Files.list(tmpDir.resolve(BILLING_BUCKET_URL).resolve("invoices/2017-10"))
+                .map(path -> path.getFileName().toString())
+                .filter(filename -> filename.startsWith("invoice_details_"))
+                .collect(toImmutableList()))
+        .containsExactly(
+            "invoice_details_2017-10_TheRegistrar_test.csv",
+            "invoice_details_2017-10_NewRegistrar_test.csv");
+  }
+
+  private OneTime makeOneTime(
+      String registrarId, String domainName, Money cost, DateTime billingTime) {
+    return new OneTime.Builder()
+        .setParent(domainHistory)
+        .setReason(Reason.RENEW)
+        .setPeriodYears(1)
+        .setClientId(registrarId)
+        .setTargetId(domainName)
+        .setCost(cost)
+        .setEventTime(billingTime.minusDays(1))
+        .setBillingTime(billingTime)
+        .build();
+  }
+
+  /** Returns the rows of a detailed report, without its header and the IDs of the events. */
+  private ImmutableList<String> detailedReportRowsWithoutIds(String filename) throws Exception {
+    ImmutableList<String> detailReport = resultFileContents(filename);
+    return detailReport.subList(1, detailReport.size()).stream()
+        .map(row -> row.substring(row.indexOf(',') + 1))
+        .collect(toImmutableList());
+  }
+
   /** Returns the text contents of a file under the beamBucket/results directory. */
   private ImmutableList<String> resultFileContents(String filename) throws Exception {
     File resultFile =
@@ -0,0 +1,310 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.rde.RdeMode.FULL;
+import static google.registry.model.rde.RdeMode.THIN;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static google.registry.persistence.transaction.TransactionManagerFactory.ofyTm;
+import static google.registry.testing.DatabaseHelper.newContactResourceWithRoid;
+import static google.registry.testing.DatabaseHelper.newDomainBase;
+import static google.registry.testing.DatabaseHelper.newHostResourceWithRoid;
+import static google.registry.testing.DatabaseHelper.newRegistry;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.io.BaseEncoding;
+import google.registry.beam.TestPipelineExtension;
+import google.registry.keyring.api.PgpHelper;
+import google.registry.model.common.Cursor;
+import google.registry.model.common.Cursor.CursorType;
+import google.registry.model.contact.ContactHistory;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.domain.DomainHistory;
+import google.registry.model.host.HostHistory;
+import google.registry.model.host.HostResource;
+import google.registry.model.rde.RdeRevision;
+import google.registry.model.registry.Registry;
+import google.registry.model.reporting.HistoryEntry;
+import google.registry.persistence.transaction.JpaTestRules;
+import google.registry.persistence.transaction.JpaTestRules.JpaIntegrationTestExtension;
+import google.registry.persistence.transaction.TransactionManagerFactory;
+import google.registry.rde.Ghostryde;
+import google.registry.rde.PendingDeposit;
+import google.registry.testing.AppEngineExtension;
+import google.registry.testing.DatastoreEntityExtension;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeKeyringModule;
+import google.registry.testing.SystemPropertyExtension;
+import google.registry.util.SerializeUtils;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.beam.sdk.Pipeline.PipelineExecutionException;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit tests for {@link RdePipeline}. */
+class RdePipelineTest {
+
+  private static final DateTime WATERMARK = DateTime.parse("2000-01-01TZ");
+
+  private static final PGPPrivateKey decryptionKey =
+      new FakeKeyringModule().get().getRdeStagingDecryptionKey();
+  private static final PGPPublicKey encryptionKey =
+      new FakeKeyringModule().get().getRdeStagingEncryptionKey();
+
+  private final FakeClock fakeClock = new FakeClock(WATERMARK.plusDays(2));
+
+  @RegisterExtension
+  @Order(Order.DEFAULT - 1)
+  final transient DatastoreEntityExtension datastore = new DatastoreEntityExtension();
+
+  // See the comment in RegistryJpaReadTest.
+  @RegisterExtension
+  final transient SystemPropertyExtension systemPropertyExtension =
+      new SystemPropertyExtension().setProperty("com.google.appengine.runtime.environment", null);
+
+  @RegisterExtension
+  final transient JpaIntegrationTestExtension database =
+      new JpaTestRules.Builder().withClock(fakeClock).buildIntegrationTestRule();
+
+  @RegisterExtension
+  final transient TestPipelineExtension pipeline =
+      TestPipelineExtension.create().enableAbandonedNodeEnforcement(true);
+
+  @TempDir Path tmpDir;
+
+  private final RdePipelineOptions options =
+      PipelineOptionsFactory.create().as(RdePipelineOptions.class);
+
+  @BeforeEach
+  void beforeEach() {
+    // Revisions are resolved through tm() when the pending deposits are encoded, which runs on the
+    // server. Cloud SQL stands in for the primary database there.
+    TransactionManagerFactory.setTm(jpaTm());
+    Registry registry = newRegistry("soy", "SOY");
+    jpaTm()
+        .transact(
+            () -> {
+              jpaTm().put(registry);
+              jpaTm().put(AppEngineExtension.makeRegistrar1());
+              jpaTm().put(AppEngineExtension.makeRegistrar2());
+              jpaTm().put(Cursor.create(CursorType.RDE_STAGING, WATERMARK, registry));
+              jpaTm().put(Cursor.create(CursorType.BRDA, WATERMARK, registry));
+            });
+
+    ContactResource contact = newContactResourceWithRoid("contact1234", "1-ROID");
+    HostResource host = newHostResourceWithRoid("ns1.external.tld", "2-ROID");
+    // Deleted after the watermark, so it should still be in the deposits.
+    DomainBase hello = newDomainBase("hello.soy", "3-SOY", contact);
+    DomainBase deletedHello = hello.asBuilder().setDeletionTime(WATERMARK.plusDays(1)).build();
+    // Deleted before the watermark.
+    DomainBase gone = newDomainBase("gone.soy", "4-SOY", contact);
+    DomainBase deletedGone = gone.asBuilder().setDeletionTime(WATERMARK.minusDays(1)).build();
+    // Created after the watermark.
+    DomainBase future = newDomainBase("future.soy", "5-SOY", contact);
+
+    jpaTm()
+        .transact(
+            () -> {
+              jpaTm().putAll(contact, host, deletedHello, deletedGone, future);
+              jpaTm()
+                  .putAll(
+                      new ContactHistory.Builder()
+                          .setContact(contact)
+                          .setType(HistoryEntry.Type.CONTACT_CREATE)
+                          .setModificationTime(WATERMARK.minusDays(30))
+                          .setClientId("TheRegistrar")
+                          .build(),
+                      new HostHistory.Builder()
+                          .setHost(host)
+                          .setType(HistoryEntry.Type.HOST_CREATE)
+                          .setModificationTime(WATERMARK.minusDays(30))
+                          .setClientId("TheRegistrar")
+                          .build(),
+                      makeDomainHistory(hello, HistoryEntry.Type.DOMAIN_CREATE, -20),
+                      makeDomainHistory(deletedHello, HistoryEntry.Type.DOMAIN_DELETE, 1),
+                      makeDomainHistory(gone, HistoryEntry.Type.DOMAIN_CREATE, -20),
+                      makeDomainHistory(deletedGone, HistoryEntry.Type.DOMAIN_DELETE, -1),
+                      makeDomainHistory(future, HistoryEntry.Type.DOMAIN_CREATE, 1));
+            });
+
+    options.setRdeStagingBucketUrl(tmpDir.toAbsolutePath().toString());
+    options.setStagingKey(
+        BaseEncoding.base64Url()
+            .omitPadding()
+            .encode(PgpHelper.convertPublicKeyToBytes(encryptionKey)));
+    options.setValidationMode("STRICT");
+    options.setValidationSampleRate(1.0);
+    options.setSqlReadPartitions(3);
+  }
+
+  @AfterEach
+  void afterEach() {
+    TransactionManagerFactory.setTm(ofyTm());
+  }
+
+  private static DomainHistory makeDomainHistory(
+      DomainBase domain, HistoryEntry.Type type, int daysAfterWatermark) {
+    return new DomainHistory.Builder()
+        .setDomain(domain)
+        .setType(type)
+        .setModificationTime(WATERMARK.plusDays(daysAfterWatermark))
+        .setClientId("TheRegistrar")
+        .build();
+  }
+
+  @Test
+  void testSuccess_writesDepositsAsOfWatermark() throws Exception {
+    options.setPendings(
+        RdePipeline.encodePendings(
+            ImmutableSetMultimap.of(
+                "soy",
+                PendingDeposit.create(
+                    "soy", WATERMARK, FULL, CursorType.RDE_STAGING, Duration.standardDays(1)),
+                "soy",
+                PendingDeposit.create(
+                    "soy", WATERMARK, THIN, CursorType.BRDA, Duration.standardDays(1)))));
+    new RdePipeline(options).setupPipeline(pipeline);
+    pipeline.run().waitUntilFinish();
+
+    String fullDeposit = decryptGhostrydeFile("soy_2000-01-01_full_S1_R0.xml.ghostryde");
+    assertThat(fullDeposit).contains("<rdeDomain:name>hello.soy</rdeDomain:name>");
+    assertThat(fullDeposit).contains("<rdeContact:id>contact1234</rdeContact:id>");
+    assertThat(fullDeposit).contains("<rdeHost:name>ns1.external.tld</rdeHost:name>");
+    assertThat(fullDeposit).contains("<rdeRegistrar:id>TheRegistrar</rdeRegistrar:id>");
+    assertThat(fullDeposit).doesNotContain("gone.soy");
+    assertThat(fullDeposit).doesNotContain("future.soy");
+    assertThat(Files.exists(tmpDir.resolve("soy_2000-01-01_full_S1_R0-report.xml.ghostryde")))
+        .isTrue();
+
+    String thinDeposit = decryptGhostrydeFile("soy_2000-01-01_thin_S1_R0.xml.ghostryde");
+    assertThat(thinDeposit).contains("<rdeDomain:name>hello.soy</rdeDomain:name>");
+    assertThat(thinDeposit).contains("<rdeRegistrar:id>TheRegistrar</rdeRegistrar:id>");
+    assertThat(thinDeposit).doesNotContain("contact1234");
+    assertThat(thinDeposit).doesNotContain("ns1.external.tld");
+    assertThat(Files.exists(tmpDir.resolve("soy_2000-01-01_thin_S1_R0-report.xml.ghostryde")))
+        .isFalse();
+
+    // Cursors and revisions are only updated on the server, by PublishRdeDepositsAction.
+    assertThat(loadCursorTime(CursorType.RDE_STAGING)).isEqualTo(WATERMARK);
+    assertThat(loadCursorTime(CursorType.BRDA)).isEqualTo(WATERMARK);
+    jpaTm()
+        .transact(
+            () -> {
+              assertThat(RdeRevision.getCurrentRevision("soy", WATERMARK, FULL)).isEmpty();
+              assertThat(RdeRevision.getCurrentRevision("soy", WATERMARK, THIN)).isEmpty();
+            });
+  }
+
+  @Test
+  void testFailure_historyWithoutResource() {
+    jpaTm()
+        .transact(
+            () ->
+                jpaTm()
+                    .put(
+                        new ContactHistory.Builder()
+                            .setContactRepoId("1-ROID")
+                            .setType(HistoryEntry.Type.CONTACT_UPDATE)
+                            .setModificationTime(WATERMARK.minusDays(1))
+                            .setClientId("TheRegistrar")
+                            .build()));
+    options.setPendings(
+        RdePipeline.encodePendings(
+            ImmutableSetMultimap.of(
+                "soy",
+                PendingDeposit.create(
+                    "soy", WATERMARK, FULL, CursorType.RDE_STAGING, Duration.standardDays(1)))));
+    new RdePipeline(options).setupPipeline(pipeline);
+    PipelineExecutionException thrown =
+        assertThrows(PipelineExecutionException.class, () -> pipeline.run().waitUntilFinish());
+    assertThat(thrown).hasCauseThat().hasMessageThat().contains("doesn't record the resource");
+  }
+
+  @Test
+  void testFailure_unresolvedRevision() {
+    options.setPendings(
+        BaseEncoding.base64Url()
+            .omitPadding()
+            .encode(
+                SerializeUtils.serialize(
+                    ImmutableSetMultimap.of(
+                        "soy",
+                        PendingDeposit.create(
+                            "soy",
+                            WATERMARK,
+                            FULL,
+                            CursorType.RDE_STAGING,
+                            Duration.standardDays(1))))));
+    assertThrows(IllegalArgumentException.class, () -> new RdePipeline(options));
+    // This is necessary because the TestPipelineExtension verifies that the pipeline is run.
+    pipeline.run();
+  }
+
+  @Test
+  void testSuccess_manualDeposit_doesNotAdvanceCursor() throws Exception {
+    options.setPendings(
+        RdePipeline.encodePendings(
+            ImmutableSetMultimap.of(
+                "soy",
+                PendingDeposit.createInManualOperation("soy", WATERMARK, FULL, "test/", 5))));
+    new RdePipeline(options).setupPipeline(pipeline);
+    pipeline.run().waitUntilFinish();
+
+    assertThat(decryptGhostrydeFile("manual/test/soy_2000-01-01_full_S1_R5.xml.ghostryde"))
+        .contains("<rdeDomain:name>hello.soy</rdeDomain:name>");
+    assertThat(loadCursorTime(CursorType.RDE_STAGING)).isEqualTo(WATERMARK);
+  }
+
+  @Test
+  void testEncodePendings_resolvesRevisions() {
+    ImmutableSetMultimap<String, PendingDeposit> pendings =
+        ImmutableSetMultimap.of(
+            "soy",
+            PendingDeposit.create(
+                "soy", WATERMARK, FULL, CursorType.RDE_STAGING, Duration.standardDays(1)));
+    assertThat(RdePipeline.decodePendings(RdePipeline.encodePendings(pendings)))
+        .containsExactly(
+            "soy",
+            PendingDeposit.create(
+                    "soy", WATERMARK, FULL, CursorType.RDE_STAGING, Duration.standardDays(1))
+                .withRevision(0));
+    // This is necessary because the TestPipelineExtension verifies that the pipeline is run.
+    pipeline.run();
+  }
+
+  private DateTime loadCursorTime(CursorType type) {
+    return jpaTm()
+        .transact(() -> jpaTm().loadByKey(Cursor.createVKey(type, "soy")).getCursorTime());
+  }
+
+  private String decryptGhostrydeFile(String filename) throws Exception {
+    return new String(
+        Ghostryde.decode(Files.readAllBytes(tmpDir.resolve(filename)), decryptionKey), UTF_8);
+  }
+}
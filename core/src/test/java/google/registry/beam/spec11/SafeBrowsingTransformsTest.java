@@ -14,16 +14,24 @@
 
 package google.registry.beam.spec11;
 
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.withSettings;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import google.registry.beam.TestPipelineExtension;
 import google.registry.beam.spec11.SafeBrowsingTransforms.EvaluateSafeBrowsingFn;
 import google.registry.testing.FakeClock;
@@ -35,6 +43,11 @@ import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.transforms.Create;
@@ -63,6 +76,8 @@ import org.mockito.stubbing.Answer;
 @MockitoSettings(strictness = Strictness.STRICT_STUBS)
 class SafeBrowsingTransformsTest {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   private static final ImmutableMap<String, String> THREAT_MAP =
       ImmutableMap.of(
           "111.com",
@@ -160,6 +175,134 @@ class SafeBrowsingTransformsTest {
     pipeline.run().waitUntilFinish();
   }
 
+  @Test
+  void testSuccess_fakeServer_evaluatesBatchesConcurrently() throws Exception {
+    ImmutableList.Builder<Subdomain> subdomains = new ImmutableList.Builder<>();
+    for (int i = 0; i < 5000; i++) {
+      subdomains.add(createSubdomain(String.format("domain%d.com", i)));
+    }
+    THREAT_MAP.keySet().forEach(url -> subdomains.add(createSubdomain(url)));
+    try (FakeSafeBrowsingServer server = new FakeSafeBrowsingServer(0)) {
+      PCollection<KV<Subdomain, ThreatMatch>> threats =
+          pipeline
+              .apply(
+                  Create.of(subdomains.build()).withCoder(SerializableCoder.of(Subdomain.class)))
+              .apply(
+                  ParDo.of(
+                      new EvaluateSafeBrowsingFn(
+                          "API_KEY",
+                          server.getUrl(),
+                          new Retrier(new FakeSleeper(new FakeClock()), 1),
+                          4,
+                          1000)));
+
+      PAssert.that(threats)
+          .containsInAnyOrder(
+              getKv("111.com"),
+              getKv("party-night.net"),
+              getKv("bitcoin.bank"),
+              getKv("no-email.com"),
+              getKv("anti-anti-anti-virus.dev"));
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      pipeline.run().waitUntilFinish();
+      logger.atInfo().log(
+          "Evaluated %d domains at %.0f domains/s",
+          server.evaluatedUrls.get(),
+          server.evaluatedUrls.get() * 1000.0 / stopwatch.elapsed(MILLISECONDS));
+      assertThat(server.evaluatedUrls.get()).isEqualTo(5005);
+      assertThat(server.maxInFlightRequests.get()).isGreaterThan(1);
+    }
+  }
+
+  @Test
+  void testSuccess_fakeServer_retriesWhenQuotaExceeded() throws Exception {
+    try (FakeSafeBrowsingServer server = new FakeSafeBrowsingServer(2)) {
+      PCollection<KV<Subdomain, ThreatMatch>> threats =
+          pipeline
+              .apply(
+                  Create.of(createSubdomain("111.com"), createSubdomain("hooli.com"))
+                      .withCoder(SerializableCoder.of(Subdomain.class)))
+              .apply(
+                  ParDo.of(
+                      new EvaluateSafeBrowsingFn(
+                          "API_KEY",
+                          server.getUrl(),
+                          new Retrier(new FakeSleeper(new FakeClock()), 3),
+                          4,
+                          1000)));
+
+      PAssert.that(threats).containsInAnyOrder(getKv("111.com"));
+      pipeline.run().waitUntilFinish();
+      assertThat(server.quotaErrors.get()).isEqualTo(2);
+    }
+  }
+
+  /**
+   * A local fake of the SafeBrowsing Lookup API, which answers with {@link #getAPIResponse} after
+   * a short delay.
+   *
+   * <p>It keeps track of the number of evaluated URLs and of concurrent requests, and can reject
+   * the first requests as exceeding the quota.
+   */
+  private static class FakeSafeBrowsingServer implements AutoCloseable {
+
+    private static final String PATH = "/v4/threatMatches:find";
+
+    private static final int LATENCY_MILLIS = 50;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger remainingQuotaErrors;
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    final AtomicInteger maxInFlightRequests = new AtomicInteger();
+    final AtomicInteger evaluatedUrls = new AtomicInteger();
+    final AtomicInteger quotaErrors = new AtomicInteger();
+
+    FakeSafeBrowsingServer(int quotaErrorsToSend) throws IOException {
+      remainingQuotaErrors = new AtomicInteger(quotaErrorsToSend);
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      server.createContext(PATH, this::handle);
+      server.setExecutor(executor);
+      server.start();
+    }
+
+    String getUrl() {
+      return String.format("http://localhost:%d%s", server.getAddress().getPort(), PATH);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+      maxInFlightRequests.accumulateAndGet(inFlightRequests.incrementAndGet(), Math::max);
+      try {
+        String request = new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF_8);
+        if (remainingQuotaErrors.getAndDecrement() > 0) {
+          quotaErrors.incrementAndGet();
+          exchange.sendResponseHeaders(429, -1);
+          return;
+        }
+        sleepUninterruptibly(LATENCY_MILLIS, MILLISECONDS);
+        evaluatedUrls.addAndGet(
+            new JSONObject(request)
+                .getJSONObject("threatInfo")
+                .getJSONArray("threatEntries")
+                .length());
+        byte[] response = getAPIResponse(getBadUrls(request)).getBytes(UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        exchange.getResponseBody().write(response);
+      } catch (JSONException e) {
+        throw new IOException(e);
+      } finally {
+        inFlightRequests.decrementAndGet();
+        exchange.close();
+      }
+    }
+
+    @Override
+    public void close() {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * A serializable {@link Answer} that returns a mock HTTP response based on the HTTP request's
    * content.
@@ -179,12 +322,7 @@ class SafeBrowsingTransformsTest {
    * (no threat) API examples based on the request data.
    */
   private static CloseableHttpResponse getMockResponse(String request) throws JSONException {
-    // Determine which bad URLs are in the request (if any)
-    ImmutableList<String> badUrls =
-        THREAT_MAP.keySet().stream()
-            .filter(request::contains)
-            .collect(ImmutableList.toImmutableList());
-
+    ImmutableList<String> badUrls = getBadUrls(request);
     CloseableHttpResponse httpResponse =
         mock(CloseableHttpResponse.class, withSettings().serializable());
     when(httpResponse.getStatusLine())
@@ -193,6 +331,13 @@ class SafeBrowsingTransformsTest {
     return httpResponse;
   }
 
+  /** Determines which bad URLs are in the request (if any). */
+  private static ImmutableList<String> getBadUrls(String request) {
+    return THREAT_MAP.keySet().stream()
+        .filter(request::contains)
+        .collect(ImmutableList.toImmutableList());
+  }
+
   /**
    * Returns the expected API response for a list of bad URLs.
    *
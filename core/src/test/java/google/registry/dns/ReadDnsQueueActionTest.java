@@ -42,6 +42,7 @@ import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.Hashing;
 import com.google.common.net.InternetDomainName;
+import google.registry.config.RegistryConfig;
 import google.registry.dns.DnsConstants.TargetType;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.Registry.TldType;
@@ -56,6 +57,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junitpioneer.jupiter.RetryingTest;
@@ -115,12 +117,19 @@ public class ReadDnsQueueActionTest {
     dnsQueue = DnsQueue.createForTesting(clock);
   }
 
+  @AfterEach
+  void afterEach() {
+    RegistryConfig.overrideCloudSqlDnsRefreshQueueEnabled(false);
+  }
+
   private void run() {
     ReadDnsQueueAction action = new ReadDnsQueueAction();
     action.tldUpdateBatchSize = TEST_TLD_UPDATE_BATCH_SIZE;
     action.requestedMaximumDuration = Duration.standardSeconds(10);
     action.clock = clock;
     action.dnsQueue = dnsQueue;
+    action.sqlDnsQueue = new SqlDnsQueue(clock);
+    action.dnsMetrics = new DnsMetrics();
     action.dnsPublishPushQueue = QueueFactory.getQueue(DNS_PUBLISH_PUSH_QUEUE_NAME);
     action.hashFunction = Hashing.murmur3_32();
     action.taskQueueUtils = new TaskQueueUtils(new Retrier(null, 1));
@@ -520,4 +529,65 @@ public class ReadDnsQueueActionTest {
             .param("hosts", "ns3.def.another.multilock.uk,ns4.another.multilock.uk")
             .header("content-type", "application/x-www-form-urlencoded"));
   }
+
+  @RetryingTest(4)
+  void testSuccess_sqlDnsQueue() {
+    RegistryConfig.overrideCloudSqlDnsRefreshQueueEnabled(true);
+    dnsQueue.addDomainRefreshTask("domain.com");
+    dnsQueue.addDomainRefreshTask("domain.com");
+    dnsQueue.addHostRefreshTask("ns1.domain.com");
+    dnsQueue.addDomainRefreshTask("domain.net");
+
+    run();
+
+    assertNoTasksEnqueued(DNS_PULL_QUEUE_NAME);
+    assertTasksEnqueued(
+        DNS_PUBLISH_PUSH_QUEUE_NAME,
+        new TaskMatcher()
+            .url(PublishDnsUpdatesAction.PATH)
+            .param("tld", "com")
+            .param("dnsWriter", "comWriter")
+            .param("itemsCreated", "3000-01-01T00:00:00.000Z")
+            .param("enqueued", "3000-01-01T01:00:00.000Z")
+            .param("domains", "domain.com")
+            .param("hosts", "ns1.domain.com"),
+        new TaskMatcher()
+            .url(PublishDnsUpdatesAction.PATH)
+            .param("tld", "net")
+            .param("dnsWriter", "netWriter")
+            .param("domains", "domain.net"));
+    assertThat(new SqlDnsQueue(clock).getQueueStats()).isEmpty();
+  }
+
+  @RetryingTest(4)
+  void testSuccess_sqlDnsQueue_moreUpdatesThanLeaseBatchSize() {
+    RegistryConfig.overrideCloudSqlDnsRefreshQueueEnabled(true);
+    dnsQueue.leaseTasksBatchSize = 2;
+    dnsQueue.addDomainRefreshTask("a.com");
+    dnsQueue.addDomainRefreshTask("b.com");
+    dnsQueue.addDomainRefreshTask("c.com");
+    dnsQueue.addDomainRefreshTask("a.net");
+
+    run();
+
+    assertTasksEnqueued(
+        DNS_PUBLISH_PUSH_QUEUE_NAME,
+        new TaskMatcher().param("tld", "com").param("domains", "a.com,b.com"),
+        new TaskMatcher().param("tld", "com").param("domains", "c.com"),
+        new TaskMatcher().param("tld", "net").param("domains", "a.net"));
+    assertThat(new SqlDnsQueue(clock).getQueueStats()).isEmpty();
+  }
+
+  @RetryingTest(4)
+  void testSuccess_sqlDnsQueue_pausedTldIsNotLeased() {
+    RegistryConfig.overrideCloudSqlDnsRefreshQueueEnabled(true);
+    persistResource(Registry.get("net").asBuilder().setDnsPaused(true).build());
+    dnsQueue.addDomainRefreshTask("domain.com");
+    dnsQueue.addDomainRefreshTask("domain.net");
+
+    run();
+
+    assertTldsEnqueuedInPushQueue(ImmutableMultimap.of("com", "comWriter"));
+    assertThat(new SqlDnsQueue(clock).getQueueStats().keySet()).containsExactly("net");
+  }
 }
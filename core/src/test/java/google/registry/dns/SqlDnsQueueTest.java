@@ -0,0 +1,165 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.dns.DnsConstants.TargetType;
+import google.registry.dns.SqlDnsQueue.TldQueueStats;
+import google.registry.persistence.transaction.JpaTestRules;
+import google.registry.persistence.transaction.JpaTestRules.JpaIntegrationWithCoverageExtension;
+import google.registry.testing.FakeClock;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link SqlDnsQueue}. */
+public class SqlDnsQueueTest {
+
+  private static final Duration LEASE_DURATION = Duration.standardMinutes(2);
+
+  private final FakeClock clock = new FakeClock(DateTime.parse("2021-06-01T00:00:00Z"));
+
+  @RegisterExtension
+  final JpaIntegrationWithCoverageExtension jpa =
+      new JpaTestRules.Builder().withClock(clock).buildIntegrationWithCoverageExtension();
+
+  private SqlDnsQueue queue;
+
+  @BeforeEach
+  void beforeEach() {
+    queue = new SqlDnsQueue(clock);
+  }
+
+  private ImmutableList<DnsRefreshRequest> lease(String tld, int batchSize) {
+    return queue.leaseRequests(tld, clock.nowUtc(), LEASE_DURATION, batchSize);
+  }
+
+  private static ImmutableList<String> names(ImmutableList<DnsRefreshRequest> requests) {
+    return requests.stream().map(DnsRefreshRequest::getName).collect(toImmutableList());
+  }
+
+  @Test
+  void testEnqueue_coalescesRequestsForTheSameName() {
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.ZERO);
+    clock.advanceOneMilli();
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.ZERO);
+    queue.enqueue(TargetType.HOST, "example.tld", "tld", Duration.ZERO);
+
+    ImmutableList<DnsRefreshRequest> requests = lease("tld", 10);
+    assertThat(requests).hasSize(2);
+    DnsRefreshRequest domainRequest =
+        requests.stream().filter(r -> r.getType() == TargetType.DOMAIN).findFirst().get();
+    assertThat(domainRequest.getRequestTime()).isEqualTo(clock.nowUtc().minusMillis(1));
+    assertThat(domainRequest.getLastRequestTime()).isEqualTo(clock.nowUtc());
+  }
+
+  @Test
+  void testLease_oldestRequestsOfTldFirst() {
+    queue.enqueue(TargetType.DOMAIN, "c.tld", "tld", Duration.ZERO);
+    clock.advanceOneMilli();
+    queue.enqueue(TargetType.DOMAIN, "a.tld", "tld", Duration.ZERO);
+    clock.advanceOneMilli();
+    queue.enqueue(TargetType.DOMAIN, "b.tld", "tld", Duration.ZERO);
+    queue.enqueue(TargetType.DOMAIN, "a.other", "other", Duration.ZERO);
+
+    assertThat(names(lease("tld", 2))).containsExactly("c.tld", "a.tld").inOrder();
+    assertThat(names(lease("tld", 2))).containsExactly("b.tld");
+    assertThat(names(lease("other", 2))).containsExactly("a.other");
+  }
+
+  @Test
+  void testLease_leasedRequestsAreSkippedUntilLeaseExpires() {
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.ZERO);
+    assertThat(lease("tld", 10)).hasSize(1);
+    assertThat(lease("tld", 10)).isEmpty();
+    clock.advanceBy(LEASE_DURATION);
+    assertThat(lease("tld", 10)).hasSize(1);
+  }
+
+  @Test
+  void testLease_waitsForCountdown() {
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.standardMinutes(5));
+    assertThat(lease("tld", 10)).isEmpty();
+    clock.advanceBy(Duration.standardMinutes(5));
+    assertThat(lease("tld", 10)).hasSize(1);
+  }
+
+  @Test
+  void testLease_badBatchSize() {
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> lease("tld", 0));
+    assertThat(thrown).hasMessageThat().isEqualTo("Batch size must be positive, got 0");
+  }
+
+  @Test
+  void testComplete_removesRequests() {
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.ZERO);
+    DateTime leaseTime = clock.nowUtc();
+    ImmutableList<DnsRefreshRequest> requests = lease("tld", 10);
+    queue.completeRequests(requests, leaseTime);
+    assertThat(queue.getQueueStats()).isEmpty();
+    clock.advanceBy(LEASE_DURATION);
+    assertThat(lease("tld", 10)).isEmpty();
+  }
+
+  @Test
+  void testComplete_keepsRequestRefreshedDuringLease() {
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.ZERO);
+    DateTime leaseTime = clock.nowUtc();
+    ImmutableList<DnsRefreshRequest> requests = lease("tld", 10);
+    clock.advanceOneMilli();
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.ZERO);
+    queue.completeRequests(requests, leaseTime);
+
+    // The newer refresh is available right away, without waiting for the lease to expire.
+    ImmutableList<DnsRefreshRequest> requeued = lease("tld", 10);
+    assertThat(names(requeued)).containsExactly("example.tld");
+    assertThat(requeued.get(0).getRequestTime()).isEqualTo(clock.nowUtc());
+  }
+
+  @Test
+  void testComplete_keepsRequestScheduledForLater() {
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.ZERO);
+    queue.enqueue(TargetType.DOMAIN, "example.tld", "tld", Duration.standardMinutes(5));
+    DateTime leaseTime = clock.nowUtc();
+    queue.completeRequests(lease("tld", 10), leaseTime);
+
+    assertThat(lease("tld", 10)).isEmpty();
+    clock.advanceBy(Duration.standardMinutes(5));
+    assertThat(lease("tld", 10)).hasSize(1);
+  }
+
+  @Test
+  void testGetQueueStats() {
+    queue.enqueue(TargetType.DOMAIN, "a.tld", "tld", Duration.ZERO);
+    DateTime oldestRequestTime = clock.nowUtc();
+    clock.advanceOneMilli();
+    queue.enqueue(TargetType.HOST, "ns1.a.tld", "tld", Duration.ZERO);
+    queue.enqueue(TargetType.DOMAIN, "a.other", "other", Duration.standardMinutes(1));
+
+    assertThat(queue.getQueueStats())
+        .containsExactly(
+            "tld",
+            TldQueueStats.create(2, oldestRequestTime),
+            "other",
+            TldQueueStats.create(1, clock.nowUtc().plusMinutes(1)));
+  }
+}
@@ -0,0 +1,132 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.clouddns;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.common.collect.ImmutableList;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeSleeper;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link AdaptiveConcurrencyLimiter}. */
+class AdaptiveConcurrencyLimiterTest {
+
+  private final FakeClock clock = new FakeClock(DateTime.parse("2021-06-01T00:00:00Z"));
+  private final AdaptiveConcurrencyLimiter limiter =
+      new AdaptiveConcurrencyLimiter(8, new FakeSleeper(clock));
+
+  private static GoogleJsonResponseException createException(int statusCode, String reason) {
+    return new GoogleJsonResponseException(
+        new HttpResponseException.Builder(statusCode, "Error", new HttpHeaders()),
+        new GoogleJsonError()
+            .setErrors(ImmutableList.of(new GoogleJsonError.ErrorInfo().setReason(reason))));
+  }
+
+  @Test
+  void testCall_success() throws Exception {
+    assertThat(limiter.call(() -> "result")).isEqualTo("result");
+    assertThat(limiter.getLimit()).isEqualTo(8);
+  }
+
+  @Test
+  void testCall_quotaExceeded_retriesWithBackoff() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    DateTime start = clock.nowUtc();
+    String result =
+        limiter.call(
+            () -> {
+              if (attempts.incrementAndGet() < 3) {
+                throw createException(429, "rateLimitExceeded");
+              }
+              return "result";
+            });
+    assertThat(result).isEqualTo("result");
+    assertThat(attempts.get()).isEqualTo(3);
+    assertThat(clock.nowUtc()).isEqualTo(start.plus(Duration.millis(1500)));
+    assertThat(limiter.getLimit()).isEqualTo(2);
+  }
+
+  @Test
+  void testCall_forbiddenQuotaExceeded_isRetried() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    limiter.call(
+        () -> {
+          if (attempts.incrementAndGet() == 1) {
+            throw createException(403, "quotaExceeded");
+          }
+          return "result";
+        });
+    assertThat(attempts.get()).isEqualTo(2);
+    assertThat(limiter.getLimit()).isEqualTo(4);
+  }
+
+  @Test
+  void testCall_limitRecoversAfterSuccesses() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    limiter.call(
+        () -> {
+          if (attempts.incrementAndGet() == 1) {
+            throw createException(429, "rateLimitExceeded");
+          }
+          return "result";
+        });
+    assertThat(limiter.getLimit()).isEqualTo(4);
+    for (int i = 0; i < 40; i++) {
+      limiter.call(() -> "result");
+    }
+    assertThat(limiter.getLimit()).isEqualTo(8);
+  }
+
+  @Test
+  void testCall_otherError_isNotRetried() {
+    AtomicInteger attempts = new AtomicInteger();
+    GoogleJsonResponseException thrown =
+        assertThrows(
+            GoogleJsonResponseException.class,
+            () ->
+                limiter.call(
+                    () -> {
+                      attempts.incrementAndGet();
+                      throw createException(412, "preconditionFailed");
+                    }));
+    assertThat(thrown.getStatusCode()).isEqualTo(412);
+    assertThat(attempts.get()).isEqualTo(1);
+    assertThat(limiter.getLimit()).isEqualTo(8);
+  }
+
+  @Test
+  void testCall_quotaExceeded_givesUp() {
+    AtomicInteger attempts = new AtomicInteger();
+    assertThrows(
+        GoogleJsonResponseException.class,
+        () ->
+            limiter.call(
+                () -> {
+                  attempts.incrementAndGet();
+                  throw createException(429, "rateLimitExceeded");
+                }));
+    assertThat(attempts.get()).isEqualTo(AdaptiveConcurrencyLimiter.MAX_ATTEMPTS);
+    assertThat(limiter.getLimit()).isEqualTo(1);
+  }
+}
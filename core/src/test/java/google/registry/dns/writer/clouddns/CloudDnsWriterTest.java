@@ -29,6 +29,10 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.services.dns.Dns;
 import com.google.api.services.dns.model.Change;
 import com.google.api.services.dns.model.ResourceRecordSet;
@@ -50,7 +54,6 @@ import google.registry.testing.TestOfyAndSql;
 import google.registry.util.Retrier;
 import google.registry.util.SystemClock;
 import google.registry.util.SystemSleeper;
-import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
@@ -84,7 +87,6 @@ public class CloudDnsWriterTest {
   @Mock private Dns dnsConnection;
   @Mock private Dns.ResourceRecordSets resourceRecordSets;
   @Mock private Dns.Changes changes;
-  @Mock private Dns.Changes.Create createChangeRequest;
   @Captor ArgumentCaptor<String> zoneNameCaptor;
   @Captor ArgumentCaptor<Change> changeCaptor;
 
@@ -117,21 +119,26 @@ public class CloudDnsWriterTest {
     return listResourceRecordSetsRequest;
   }
 
+  private CloudDnsWriter createWriter(int maxRrsetsPerChange) {
+    return new CloudDnsWriter(
+        dnsConnection,
+        "projectId",
+        "triple.secret.tld", // used by testInvalidZoneNames()
+        DEFAULT_A_TTL,
+        DEFAULT_NS_TTL,
+        DEFAULT_DS_TTL,
+        RateLimiter.create(20),
+        10, // max num threads
+        maxRrsetsPerChange,
+        new AdaptiveConcurrencyLimiter(10, new SystemSleeper()),
+        new SystemClock(),
+        new Retrier(new SystemSleeper(), 5));
+  }
+
   @BeforeEach
   void beforeEach() throws Exception {
     createTld("tld");
-    writer =
-        new CloudDnsWriter(
-            dnsConnection,
-            "projectId",
-            "triple.secret.tld", // used by testInvalidZoneNames()
-            DEFAULT_A_TTL,
-            DEFAULT_NS_TTL,
-            DEFAULT_DS_TTL,
-            RateLimiter.create(20),
-            10, // max num threads
-            new SystemClock(),
-            new Retrier(new SystemSleeper(), 5));
+    writer = createWriter(100);
 
     // Create an empty zone.
     stubZone = ImmutableSet.of();
@@ -141,26 +148,38 @@ public class CloudDnsWriterTest {
     when(resourceRecordSets.list(anyString(), anyString()))
         .thenAnswer(invocationOnMock -> newListResourceRecordSetsRequestMock());
     when(changes.create(anyString(), zoneNameCaptor.capture(), changeCaptor.capture()))
-        .thenReturn(createChangeRequest);
+        .thenAnswer(
+            invocationOnMock -> newCreateChangeRequestMock(invocationOnMock.getArgument(2)));
+  }
+
+  /*
+   * Changes may also be submitted from multiple threads, so every request gets its own instance of
+   * Create, which applies its own change.
+   */
+  private Dns.Changes.Create newCreateChangeRequestMock(Change requestedChange) throws Exception {
+    Dns.Changes.Create createChangeRequest = mock(Dns.Changes.Create.class);
     // Change our stub zone when a request to change the records is executed
     when(createChangeRequest.execute())
-        .thenAnswer(
-            invocationOnMock -> {
-              Change requestedChange = changeCaptor.getValue();
-              ImmutableSet<ResourceRecordSet> toDelete =
-                  ImmutableSet.copyOf(requestedChange.getDeletions());
-              ImmutableSet<ResourceRecordSet> toAdd =
-                  ImmutableSet.copyOf(requestedChange.getAdditions());
-              // Fail if the records to delete has records that aren't in the stub zone.
-              // This matches documented Google Cloud DNS behavior.
-              if (!Sets.difference(toDelete, stubZone).isEmpty()) {
-                throw new IOException();
-              }
-              stubZone =
-                  Sets.union(Sets.difference(stubZone, toDelete).immutableCopy(), toAdd)
-                      .immutableCopy();
-              return requestedChange;
-            });
+        .thenAnswer(invocationOnMock -> applyChange(requestedChange));
+    return createChangeRequest;
+  }
+
+  private synchronized Change applyChange(Change requestedChange) throws Exception {
+    ImmutableSet<ResourceRecordSet> toDelete = ImmutableSet.copyOf(requestedChange.getDeletions());
+    ImmutableSet<ResourceRecordSet> toAdd = ImmutableSet.copyOf(requestedChange.getAdditions());
+    // Fail if the records to delete has records that aren't in the stub zone.
+    // This matches documented Google Cloud DNS behavior.
+    if (!Sets.difference(toDelete, stubZone).isEmpty()) {
+      throw new GoogleJsonResponseException(
+          new HttpResponseException.Builder(412, "Precondition Failed", new HttpHeaders()),
+          new GoogleJsonError()
+              .setErrors(
+                  ImmutableList.of(
+                      new GoogleJsonError.ErrorInfo().setReason("preconditionFailed"))));
+    }
+    stubZone =
+        Sets.union(Sets.difference(stubZone, toDelete).immutableCopy(), toAdd).immutableCopy();
+    return requestedChange;
   }
 
   private void verifyZone(ImmutableSet<ResourceRecordSet> expectedRecords) {
@@ -532,4 +551,65 @@ public class CloudDnsWriterTest {
     writer.commit();
     verify(dnsConnection, times(0)).changes();
   }
+
+  @TestOfyAndSql
+  void testUnchangedNames_areReadButNotChanged() throws Exception {
+    persistResource(
+        fakeDomain(
+                "example.tld",
+                ImmutableSet.of(persistResource(fakeHost("0.ip4.example.tld", IPv4))),
+                0)
+            .asBuilder()
+            .addSubordinateHost("0.ip4.example.tld")
+            .build());
+    writer.publishDomain("example.tld");
+    verifyZone(fakeDomainRecords("example.tld", 1, 0, 0, 0));
+
+    writer = createWriter(100);
+    writer.publishDomain("example.tld");
+    verifyZone(fakeDomainRecords("example.tld", 1, 0, 0, 0));
+
+    verify(resourceRecordSets, times(4)).list(anyString(), anyString());
+    verify(changes, times(1)).create(anyString(), anyString(), ArgumentMatchers.any());
+  }
+
+  @TestOfyAndSql
+  void testNameChangedByAnotherWriter_isPublishedAgain() {
+    HostResource nameserver = persistResource(fakeHost("0.external"));
+    persistResource(fakeDomain("example.tld", ImmutableSet.of(nameserver), 0));
+    writer.publishDomain("example.tld");
+    verifyZone(fakeDomainRecords("example.tld", 0, 0, 1, 0));
+
+    // Another instance changed the name since, and the registry has changed it back.
+    stubZone = fakeDomainRecords("example.tld", 0, 0, 2, 0);
+    writer = createWriter(100);
+    writer.publishDomain("example.tld");
+
+    verifyZone(fakeDomainRecords("example.tld", 0, 0, 1, 0));
+  }
+
+  @TestOfyAndSql
+  void testChanges_areBatched() {
+    // Each domain needs one NS and one DS addition, so two domains fit in a single change.
+    HostResource nameserver = persistResource(fakeHost("0.external"));
+    for (String domainName : ImmutableList.of("a.tld", "b.tld", "c.tld")) {
+      persistResource(fakeDomain(domainName, ImmutableSet.of(nameserver), 1));
+    }
+    writer = createWriter(4);
+    writer.publishDomain("a.tld");
+    writer.publishDomain("b.tld");
+    writer.publishDomain("c.tld");
+
+    verifyZone(
+        ImmutableSet.<ResourceRecordSet>builder()
+            .addAll(fakeDomainRecords("a.tld", 0, 0, 1, 1))
+            .addAll(fakeDomainRecords("b.tld", 0, 0, 1, 1))
+            .addAll(fakeDomainRecords("c.tld", 0, 0, 1, 1))
+            .build());
+    assertThat(
+            changeCaptor.getAllValues().stream()
+                .map(change -> change.getAdditions().size())
+                .collect(toImmutableList()))
+        .containsExactly(4, 2);
+  }
 }
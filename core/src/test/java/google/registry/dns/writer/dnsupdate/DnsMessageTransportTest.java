@@ -22,17 +22,22 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.VerifyException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Bytes;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Optional;
 import javax.net.SocketFactory;
 import org.joda.time.Duration;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.xbill.DNS.ARecord;
@@ -43,6 +48,7 @@ import org.xbill.DNS.Name;
 import org.xbill.DNS.Opcode;
 import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
+import org.xbill.DNS.TSIG;
 import org.xbill.DNS.Type;
 import org.xbill.DNS.Update;
 
@@ -50,6 +56,7 @@ import org.xbill.DNS.Update;
 class DnsMessageTransportTest {
 
   private static final String UPDATE_HOST = "127.0.0.1";
+  private static final String TSIG_SECRET = "c2VjcmV0LWtleS1mb3ItdGVzdGluZw==";
 
   private final SocketFactory mockFactory = mock(SocketFactory.class);
   private final Socket mockSocket = mock(Socket.class);
@@ -68,6 +75,11 @@ class DnsMessageTransportTest {
     resolver = new DnsMessageTransport(mockFactory, UPDATE_HOST, Duration.ZERO);
   }
 
+  @AfterEach
+  void afterEach() {
+    DnsConnectionPool.closeAll();
+  }
+
   @Test
   void testSentMessageHasCorrectLengthAndContent() throws Exception {
     ByteArrayInputStream inputStream =
@@ -169,6 +181,164 @@ class DnsMessageTransportTest {
         .contains("response opcode 'STATUS' does not match query opcode 'QUERY'");
   }
 
+  @Test
+  void testConnectionIsReused() throws Exception {
+    when(mockSocket.getInputStream())
+        .thenReturn(
+            new ByteArrayInputStream(
+                Bytes.concat(
+                    messageToBytesWithLength(expectedResponse),
+                    messageToBytesWithLength(expectedResponse))));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+
+    resolver.send(simpleQuery);
+    resolver.send(simpleQuery);
+
+    verify(mockFactory)
+        .createSocket(InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT);
+  }
+
+  @Test
+  void testFakeServer_connectionIsSharedByTransports() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(1, Optional.empty())) {
+      for (int i = 0; i < 3; i++) {
+        DnsMessageTransport transport = createTransport(server, Optional.empty());
+        assertThat(transport.send(simpleQuery).getHeader().getID())
+            .isEqualTo(simpleQuery.getHeader().getID());
+      }
+      assertThat(server.getConnectionCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void testFakeServer_pipelinedResponsesAreMatchedById() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(2, Optional.empty())) {
+      ImmutableList<Message> queries =
+          createQueries(2 * DnsMessageTransport.MAX_PIPELINED_MESSAGES);
+
+      ImmutableList<Message> responses =
+          createTransport(server, Optional.empty()).sendAll(queries);
+
+      assertThat(responses).hasSize(queries.size());
+      for (int i = 0; i < queries.size(); i++) {
+        assertThat(responses.get(i).getHeader().getID())
+            .isEqualTo(queries.get(i).getHeader().getID());
+      }
+      assertThat(server.getConnectionCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void testFakeServer_queriesWithSameIdAreNotOutstandingTogether() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(1, Optional.empty())) {
+      Message query = new Message(1234);
+      Message sameIdQuery = new Message(1234);
+
+      ImmutableList<Message> responses =
+          createTransport(server, Optional.empty()).sendAll(ImmutableList.of(query, sameIdQuery));
+
+      assertThat(responses).hasSize(2);
+      assertThat(server.getReceivedIds()).containsExactly(1234, 1234);
+    }
+  }
+
+  @Test
+  void testFakeServer_reconnectsAfterServerClosesIdleConnection() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(1, Optional.empty())) {
+      DnsMessageTransport transport = createTransport(server, Optional.empty());
+      transport.send(simpleQuery);
+      server.closeConnections();
+
+      transport.send(simpleQuery);
+
+      assertThat(server.getConnectionCount()).isEqualTo(2);
+      assertThat(server.getReceivedIds())
+          .containsExactly(simpleQuery.getHeader().getID(), simpleQuery.getHeader().getID());
+    }
+  }
+
+  @Test
+  void testFakeServer_doesNotResendNonIdempotentUpdateOnStaleConnection() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(1, Optional.empty())) {
+      DnsMessageTransport transport = createTransport(server, Optional.empty());
+      transport.send(simpleQuery);
+      server.closeConnections();
+      Update update = new Update(Name.fromString("example.com."));
+      update.absent(Name.fromString("foo.example.com."));
+      update.add(Name.fromString("foo.example.com."), Type.A, 300, "192.0.2.1");
+
+      assertThrows(IOException.class, () -> transport.send(update));
+
+      assertThat(server.getConnectionCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void testIsIdempotent() throws Exception {
+    Update update = new Update(Name.fromString("example.com."));
+    update.delete(Name.fromString("foo.example.com."), Type.ANY);
+    update.add(Name.fromString("foo.example.com."), Type.A, 300, "192.0.2.1");
+    assertThat(DnsMessageTransport.isIdempotent(simpleQuery)).isTrue();
+    assertThat(DnsMessageTransport.isIdempotent(update)).isTrue();
+    update.present(Name.fromString("example.com."));
+    assertThat(DnsMessageTransport.isIdempotent(update)).isFalse();
+  }
+
+  @Test
+  void testFakeServer_tsigSignedMessages() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(1, Optional.of(createTsig()))) {
+      Message response =
+          createTransport(server, Optional.of("hmac-sha256:registry-key:" + TSIG_SECRET))
+              .send(simpleQuery);
+
+      assertThat(response.getTSIG()).isNotNull();
+      assertThat(server.getReceivedIds()).containsExactly(simpleQuery.getHeader().getID());
+      // The caller's message is left unsigned.
+      assertThat(simpleQuery.getTSIG()).isNull();
+    }
+  }
+
+  @Test
+  void testFakeServer_wrongTsigKey() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(1, Optional.of(createTsig()))) {
+      DnsMessageTransport transport =
+          createTransport(server, Optional.of("hmac-sha256:registry-key:d3Jvbmcta2V5"));
+      assertThrows(IOException.class, () -> transport.send(simpleQuery));
+      assertThat(server.getReceivedIds()).isEmpty();
+    }
+  }
+
+  @Test
+  void testBadTsigKey() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                new DnsMessageTransport(
+                    mockFactory, UPDATE_HOST, Duration.ZERO, Optional.of("registry-key")));
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("TSIG key must be of the form algorithm:name:base64-secret");
+  }
+
+  private static DnsMessageTransport createTransport(
+      FakeDnsServer server, Optional<String> tsigKey) {
+    return new DnsMessageTransport(
+        SocketFactory.getDefault(), server.getHostAndPort(), Duration.standardSeconds(10), tsigKey);
+  }
+
+  private static TSIG createTsig() {
+    return new TSIG("hmac-sha256", "registry-key", TSIG_SECRET);
+  }
+
+  private static ImmutableList<Message> createQueries(int count) {
+    ImmutableList.Builder<Message> queries = new ImmutableList.Builder<>();
+    for (int i = 0; i < count; i++) {
+      queries.add(new Message(i));
+    }
+    return queries.build();
+  }
+
   private Message responseMessageWithCode(Message query, int responseCode) {
     Message message = new Message(query.getHeader().getID());
     message.getHeader().setOpcode(query.getHeader().getOpcode());
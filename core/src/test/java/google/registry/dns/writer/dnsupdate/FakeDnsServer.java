@@ -0,0 +1,147 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.dnsupdate;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.net.HostAndPort;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.TSIG;
+
+/**
+ * An in-process DNS server that answers every query received over TCP with an empty response.
+ *
+ * <p>The server reads queries in groups of {@code responseBatchSize}, and answers each group in
+ * reverse order, to exercise clients that pipeline queries. If a TSIG key is given, queries that
+ * are not signed with it are dropped along with their connection, and responses are signed.
+ */
+final class FakeDnsServer implements AutoCloseable {
+
+  private final ServerSocket serverSocket;
+  private final int responseBatchSize;
+  private final Optional<TSIG> tsig;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final List<Socket> connections = new CopyOnWriteArrayList<>();
+  private final List<Integer> receivedIds = new CopyOnWriteArrayList<>();
+
+  FakeDnsServer(int responseBatchSize, Optional<TSIG> tsig) throws IOException {
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    this.responseBatchSize = responseBatchSize;
+    this.tsig = tsig;
+    executor.execute(this::acceptConnections);
+  }
+
+  /** Returns the address of the server, in the form expected by {@link DnsMessageTransport}. */
+  String getHostAndPort() {
+    return HostAndPort.fromParts(
+            serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort())
+        .toString();
+  }
+
+  /** Returns the number of connections accepted so far. */
+  int getConnectionCount() {
+    return connections.size();
+  }
+
+  /** Returns the IDs of the queries received so far, in the order they were received. */
+  ImmutableList<Integer> getReceivedIds() {
+    return ImmutableList.copyOf(receivedIds);
+  }
+
+  /** Closes all accepted connections, as a server does with connections that are idle. */
+  void closeConnections() throws IOException {
+    for (Socket connection : connections) {
+      connection.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    closeConnections();
+    executor.shutdownNow();
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket connection = serverSocket.accept();
+        connections.add(connection);
+        executor.execute(() -> serve(connection));
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  private void serve(Socket connection) {
+    try (Socket socket = connection) {
+      DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+      OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream());
+      List<Message> queries = new ArrayList<>();
+      while (true) {
+        byte[] queryData = new byte[inputStream.readUnsignedShort()];
+        inputStream.readFully(queryData);
+        Message query = new Message(queryData);
+        if (tsig.isPresent() && tsig.get().verify(query, queryData, null) != Rcode.NOERROR) {
+          return;
+        }
+        receivedIds.add(query.getHeader().getID());
+        queries.add(query);
+        if (queries.size() == responseBatchSize) {
+          for (Message batchQuery : Lists.reverse(queries)) {
+            writeResponse(outputStream, batchQuery);
+          }
+          outputStream.flush();
+          queries.clear();
+        }
+      }
+    } catch (IOException e) {
+      // The connection was closed by either side.
+    }
+  }
+
+  private void writeResponse(OutputStream outputStream, Message query) throws IOException {
+    Message response = new Message(query.getHeader().getID());
+    response.getHeader().setOpcode(query.getHeader().getOpcode());
+    response.getHeader().setFlag(Flags.QR);
+    response.getHeader().setRcode(Rcode.NOERROR);
+    if (tsig.isPresent()) {
+      tsig.get().apply(response, query.getTSIG());
+    }
+    byte[] responseData = response.toWire();
+    ByteBuffer buffer =
+        ByteBuffer.allocate(responseData.length + DnsMessageTransport.MESSAGE_LENGTH_FIELD_BYTES);
+    buffer.putShort((short) responseData.length);
+    buffer.put(responseData);
+    outputStream.write(buffer.array());
+  }
+}
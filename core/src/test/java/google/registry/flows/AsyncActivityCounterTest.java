@@ -0,0 +1,129 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import google.registry.model.reporting.IcannReportingCounterDao;
+import google.registry.model.reporting.IcannReportingCounterDao.CounterKey;
+import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link AsyncActivityCounter}. */
+class AsyncActivityCounterTest {
+
+  private static final DateTime NOW = DateTime.parse("2021-06-30T12:00:00Z");
+
+  private static final ImmutableList<CounterKey> DOMAIN_CHECK =
+      IcannReportingCounterDao.getActivityKeys(
+          "TheRegistrar", ActivityReportField.DOMAIN_CHECK, true, ImmutableSet.of("tld"), NOW);
+
+  private static final ImmutableList<CounterKey> HOST_CREATE =
+      IcannReportingCounterDao.getActivityKeys(
+          "TheRegistrar", ActivityReportField.HOST_CREATE, false, ImmutableSet.of(), NOW);
+
+  private final List<Runnable> queuedTasks = new ArrayList<>();
+  private final Executor queueingExecutor = queuedTasks::add;
+  private final List<ImmutableMultiset<CounterKey>> batches = new ArrayList<>();
+
+  private AsyncActivityCounter createCounter(Executor executor) {
+    return new AsyncActivityCounter(
+        () -> executor, new LinkedBlockingQueue<>(10), new AtomicBoolean(), batches::add);
+  }
+
+  @Test
+  void testIncrement_batchedOffRequestPath() {
+    AsyncActivityCounter counter = createCounter(queueingExecutor);
+    counter.increment(DOMAIN_CHECK);
+    counter.increment(DOMAIN_CHECK);
+    counter.increment(HOST_CREATE);
+    assertThat(batches).isEmpty();
+    // Only one write is scheduled while one is pending, and it writes everything queued.
+    assertThat(queuedTasks).hasSize(1);
+
+    queuedTasks.forEach(Runnable::run);
+    assertThat(batches)
+        .containsExactly(
+            ImmutableMultiset.builder()
+                .addCopies(DOMAIN_CHECK.get(0), 2)
+                .add(HOST_CREATE.get(0))
+                .build());
+  }
+
+  @Test
+  void testIncrement_schedulesNewWriteAfterFlush() {
+    AsyncActivityCounter counter = createCounter(queueingExecutor);
+    counter.increment(DOMAIN_CHECK);
+    queuedTasks.remove(0).run();
+    counter.increment(HOST_CREATE);
+    assertThat(queuedTasks).hasSize(1);
+    queuedTasks.remove(0).run();
+    assertThat(batches)
+        .containsExactly(
+            ImmutableMultiset.of(DOMAIN_CHECK.get(0)), ImmutableMultiset.of(HOST_CREATE.get(0)))
+        .inOrder();
+  }
+
+  @Test
+  void testIncrement_queueFull_isDropped() {
+    AsyncActivityCounter counter =
+        new AsyncActivityCounter(
+            () -> queueingExecutor,
+            new LinkedBlockingQueue<>(1),
+            new AtomicBoolean(),
+            batches::add);
+    counter.increment(DOMAIN_CHECK);
+    counter.increment(HOST_CREATE);
+    queuedTasks.forEach(Runnable::run);
+    assertThat(batches).containsExactly(ImmutableMultiset.of(DOMAIN_CHECK.get(0)));
+  }
+
+  @Test
+  void testIncrement_writeFails_doesNotThrow() {
+    AsyncActivityCounter counter =
+        new AsyncActivityCounter(
+            MoreExecutors::directExecutor,
+            new LinkedBlockingQueue<>(10),
+            new AtomicBoolean(),
+            keys -> {
+              throw new IllegalStateException("Cloud SQL is down");
+            });
+    counter.increment(DOMAIN_CHECK);
+  }
+
+  @Test
+  void testIncrement_executorUnavailable_writesSynchronously() {
+    AsyncActivityCounter counter =
+        new AsyncActivityCounter(
+            () -> {
+              throw new IllegalStateException("Background threads are not supported");
+            },
+            new LinkedBlockingQueue<>(10),
+            new AtomicBoolean(),
+            batches::add);
+    counter.increment(DOMAIN_CHECK);
+    assertThat(batches).containsExactly(ImmutableMultiset.of(DOMAIN_CHECK.get(0)));
+  }
+}
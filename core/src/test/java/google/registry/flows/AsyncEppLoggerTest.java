@@ -0,0 +1,147 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.LogsSubject.assertAboutLogs;
+import static google.registry.testing.TestLogHandlerUtils.findFirstLogMessageByPrefix;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.logging.Level.INFO;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.TestLogHandler;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link AsyncEppLogger}. */
+class AsyncEppLoggerTest {
+
+  private static final byte[] RESPONSE_XML =
+      ("<epp xmlns=\"urn:ietf:params:xml:ns:epp-1.0\"><response><result code=\"1000\">"
+              + "<msg>Command completed successfully</msg></result></response></epp>")
+          .getBytes(UTF_8);
+
+  private final TestLogHandler logHandler = new TestLogHandler();
+
+  /**
+   * Hold a strong reference to the logger whose output is being intercepted to prevent it being
+   * GCed.
+   */
+  private final Logger loggerToIntercept =
+      Logger.getLogger(AsyncEppLogger.class.getCanonicalName());
+
+  private final List<Runnable> queuedTasks = new ArrayList<>();
+  private final Executor queueingExecutor = queuedTasks::add;
+
+  @BeforeEach
+  void beforeEach() {
+    loggerToIntercept.addHandler(logHandler);
+  }
+
+  @AfterEach
+  void afterEach() {
+    loggerToIntercept.removeHandler(logHandler);
+  }
+
+  @Test
+  void testLogResponse_formattedOffRequestPath() {
+    AsyncEppLogger eppLogger = new AsyncEppLogger(ImmutableMap.of(), 1.0, () -> queueingExecutor);
+    eppLogger.logResponse("DomainInfo", RESPONSE_XML);
+    assertThat(logHandler.getStoredLogRecords()).isEmpty();
+
+    queuedTasks.forEach(Runnable::run);
+    assertAboutLogs().that(logHandler).hasLogAtLevelWithMessage(INFO, "EPP response: ");
+    assertThat(findFirstLogMessageByPrefix(logHandler, "EPP response: "))
+        .contains("Command completed successfully");
+  }
+
+  @Test
+  void testLogResponse_sampledByCommand() {
+    AsyncEppLogger eppLogger =
+        new AsyncEppLogger(
+            ImmutableMap.of("PollRequest", 0.0), 1.0, MoreExecutors::directExecutor);
+    eppLogger.logResponse("PollRequest", RESPONSE_XML);
+    assertThat(logHandler.getStoredLogRecords()).isEmpty();
+    eppLogger.logResponse("DomainInfo", RESPONSE_XML);
+    assertThat(logHandler.getStoredLogRecords()).hasSize(1);
+  }
+
+  @Test
+  void testLogResponse_defaultSampleRate() {
+    AsyncEppLogger eppLogger =
+        new AsyncEppLogger(
+            ImmutableMap.of("DomainCreate", 1.0), 0.0, MoreExecutors::directExecutor);
+    eppLogger.logResponse("DomainInfo", RESPONSE_XML);
+    assertThat(logHandler.getStoredLogRecords()).isEmpty();
+    eppLogger.logResponse("DomainCreate", RESPONSE_XML);
+    assertThat(logHandler.getStoredLogRecords()).hasSize(1);
+  }
+
+  @Test
+  void testLogResponse_noCommandName_usesDefaultSampleRate() {
+    AsyncEppLogger eppLogger =
+        new AsyncEppLogger(ImmutableMap.of("DomainInfo", 1.0), 0.0, MoreExecutors::directExecutor);
+    eppLogger.logResponse("", RESPONSE_XML);
+    assertThat(logHandler.getStoredLogRecords()).isEmpty();
+  }
+
+  @Test
+  void testLogResponse_queueFull_isDropped() {
+    AsyncEppLogger eppLogger =
+        new AsyncEppLogger(
+            ImmutableMap.of(),
+            1.0,
+            () ->
+                task -> {
+                  throw new RejectedExecutionException();
+                });
+    eppLogger.logResponse("DomainInfo", RESPONSE_XML);
+    assertThat(logHandler.getStoredLogRecords()).isEmpty();
+  }
+
+  @Test
+  void testLogResponse_executorFails_logsSynchronously() {
+    AsyncEppLogger eppLogger =
+        new AsyncEppLogger(
+            ImmutableMap.of(),
+            1.0,
+            () ->
+                task -> {
+                  throw new IllegalStateException("Background threads are not supported");
+                });
+    eppLogger.logResponse("DomainInfo", RESPONSE_XML);
+    assertAboutLogs().that(logHandler).hasLogAtLevelWithMessage(INFO, "EPP response: ");
+  }
+
+  @Test
+  void testLogResponse_executorUnavailable_logsSynchronously() {
+    AsyncEppLogger eppLogger =
+        new AsyncEppLogger(
+            ImmutableMap.of(),
+            1.0,
+            () -> {
+              throw new IllegalStateException("Background threads are not supported");
+            });
+    eppLogger.logResponse("DomainInfo", RESPONSE_XML);
+    assertAboutLogs().that(logHandler).hasLogAtLevelWithMessage(INFO, "EPP response: ");
+  }
+}
@@ -0,0 +1,106 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows;
+
+import static google.registry.testing.LogsSubject.assertAboutLogs;
+import static java.util.logging.Level.INFO;
+import static org.joda.time.DateTimeZone.UTC;
+import static org.joda.time.format.ISODateTimeFormat.dateTimeNoMillis;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.TestLogHandler;
+import com.google.common.util.concurrent.MoreExecutors;
+import google.registry.testing.AppEngineExtension;
+import java.util.logging.Logger;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/**
+ * Tests that EPP responses are sampled by the command names that {@link EppController} records.
+ */
+class EppResponseLoggingTest extends EppTestCase {
+
+  @RegisterExtension
+  final AppEngineExtension appEngine =
+      AppEngineExtension.builder().withDatastoreAndCloudSql().build();
+
+  private final TestLogHandler logHandler = new TestLogHandler();
+
+  /**
+   * Hold a strong reference to the logger whose output is being intercepted to prevent it being
+   * GCed.
+   */
+  private final Logger loggerToIntercept =
+      Logger.getLogger(AsyncEppLogger.class.getCanonicalName());
+
+  @BeforeEach
+  void beforeEach() {
+    loggerToIntercept.addHandler(logHandler);
+  }
+
+  @AfterEach
+  void afterEach() {
+    loggerToIntercept.removeHandler(logHandler);
+  }
+
+  private void setSampleRates(ImmutableMap<String, Double> sampleRates, double defaultRate) {
+    setEppLogger(new AsyncEppLogger(sampleRates, defaultRate, MoreExecutors::directExecutor));
+  }
+
+  private void runHello() throws Exception {
+    DateTime now = DateTime.now(UTC);
+    assertThatCommand("hello.xml", null)
+        .atTime(now)
+        .hasResponse("greeting.xml", ImmutableMap.of("DATE", now.toString(dateTimeNoMillis())));
+  }
+
+  private void runSyntaxError() throws Exception {
+    assertThatCommand("syntax_error.xml")
+        .hasResponse(
+            "response_error_no_cltrid.xml",
+            ImmutableMap.of(
+                "CODE", "2001",
+                "MSG", "Syntax error at line 4, column 65: cvc-complex-type.3.2.2: "
+                    + "Attribute 'xsi:schemaLocation' is not allowed to appear in element 'epp'."));
+  }
+
+  @Test
+  void testCommandRate_isApplied() throws Exception {
+    setSampleRates(ImmutableMap.of("Hello", 1.0), 0.0);
+    runHello();
+    assertAboutLogs().that(logHandler).hasLogAtLevelWithMessage(INFO, "EPP response: ");
+  }
+
+  @Test
+  void testCommandRate_overridesDefault() throws Exception {
+    setSampleRates(ImmutableMap.of("Hello", 0.0), 1.0);
+    runHello();
+    assertAboutLogs().that(logHandler).hasNoLogsAtLevel(INFO);
+  }
+
+  @Test
+  void testNoCommandName_usesDefaultRate() throws Exception {
+    setSampleRates(ImmutableMap.of("Hello", 1.0), 0.0);
+    runSyntaxError();
+    assertAboutLogs().that(logHandler).hasNoLogsAtLevel(INFO);
+
+    setSampleRates(ImmutableMap.of("Hello", 0.0), 1.0);
+    runSyntaxError();
+    assertAboutLogs().that(logHandler).hasLogAtLevelWithMessage(INFO, "EPP response: ");
+  }
+}
@@ -28,6 +28,7 @@ import static javax.servlet.http.HttpServletResponse.SC_OK;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.net.MediaType;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.googlecode.objectify.Key;
 import google.registry.flows.EppTestComponent.FakesAndMocksModule;
 import google.registry.model.billing.BillingEvent;
@@ -41,6 +42,7 @@ import google.registry.model.ofy.Ofy;
 import google.registry.model.registry.Registry;
 import google.registry.model.reporting.HistoryEntry.Type;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.monitoring.whitebox.RequestTrace;
 import google.registry.persistence.VKey;
 import google.registry.testing.FakeClock;
 import google.registry.testing.FakeHttpSession;
@@ -69,6 +71,8 @@ public class EppTestCase {
   private TransportCredentials credentials = new PasswordOnlyTransportCredentials();
   private EppMetric.Builder eppMetricBuilder;
   private boolean isSuperuser;
+  private AsyncEppLogger eppLogger =
+      new AsyncEppLogger(ImmutableMap.of(), 1.0, MoreExecutors::directExecutor);
 
   @BeforeEach
   public void beforeEachEppTestCase() {
@@ -91,6 +95,10 @@ public class EppTestCase {
     this.isSuperuser = isSuperuser;
   }
 
+  void setEppLogger(AsyncEppLogger eppLogger) {
+    this.eppLogger = eppLogger;
+  }
+
   public class CommandAsserter {
     private final String inputFilename;
     private @Nullable final Map<String, String> inputSubstitutions;
@@ -224,19 +232,24 @@ public class EppTestCase {
     EppRequestHandler handler = new EppRequestHandler();
     FakeResponse response = new FakeResponse();
     handler.response = response;
+    handler.eppMetrics = new EppMetrics();
+    handler.eppLogger = eppLogger;
     eppMetricBuilder = EppMetric.builderForRequest(clock);
     handler.eppController = DaggerEppTestComponent.builder()
         .fakesAndMocksModule(FakesAndMocksModule.create(clock, eppMetricBuilder))
         .build()
         .startRequest()
         .eppController();
-    handler.executeEpp(
-        sessionMetadata,
-        credentials,
-        EppRequestSource.UNIT_TEST,
-        false,  // Not dryRun.
-        isSuperuser,
-        inputXml.getBytes(UTF_8));
+    // Trace the command like RequestHandler does, which is where the command name is recorded.
+    try (RequestTrace trace = RequestTrace.start()) {
+      handler.executeEpp(
+          sessionMetadata,
+          credentials,
+          EppRequestSource.UNIT_TEST,
+          false, // Not dryRun.
+          isSuperuser,
+          inputXml.getBytes(UTF_8));
+    }
     assertThat(response.getStatus()).isEqualTo(SC_OK);
     assertThat(response.getContentType()).isEqualTo(APPLICATION_EPP_XML_UTF8);
     return response;
@@ -22,8 +22,13 @@ import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import google.registry.testing.AppEngineExtension;
+import google.registry.testing.FakeClock;
 import google.registry.testing.FakeHttpSession;
+import google.registry.testing.FakeResponse;
+import javax.servlet.http.HttpServletRequest;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import org.mockito.ArgumentCaptor;
 
 /** Tests for {@link EppTlsAction}. */
@@ -31,13 +36,18 @@ class EppTlsActionTest {
 
   private static final byte[] INPUT_XML_BYTES = "<xml>".getBytes(UTF_8);
 
+  @RegisterExtension
+  final AppEngineExtension appEngine =
+      AppEngineExtension.builder().withDatastoreAndCloudSql().build();
+
   @Test
   void testPassesArgumentsThrough() {
     EppTlsAction action = new EppTlsAction();
     action.inputXmlBytes = INPUT_XML_BYTES;
     action.tlsCredentials = mock(TlsCredentials.class);
-    action.session = new FakeHttpSession();
-    action.session.setAttribute("CLIENT_ID", "ClientIdentifier");
+    FakeHttpSession session = new FakeHttpSession();
+    session.setAttribute("CLIENT_ID", "ClientIdentifier");
+    action.session = () -> session;
     action.eppRequestHandler = mock(EppRequestHandler.class);
     action.run();
     ArgumentCaptor<SessionMetadata> captor = ArgumentCaptor.forClass(SessionMetadata.class);
@@ -50,4 +60,32 @@ class EppTlsActionTest {
         eq(INPUT_XML_BYTES));
     assertThat(captor.getValue().getClientId()).isEqualTo("ClientIdentifier");
   }
+
+  @Test
+  void testSignedSessionTokens_doesNotCreateHttpSession() {
+    EppTlsAction action = new EppTlsAction();
+    action.inputXmlBytes = INPUT_XML_BYTES;
+    action.tlsCredentials = mock(TlsCredentials.class);
+    action.session =
+        () -> {
+          throw new AssertionError("HttpSession shouldn't be created");
+        };
+    action.req = mock(HttpServletRequest.class);
+    action.response = new FakeResponse();
+    action.clock = new FakeClock();
+    action.signedSessionTokensEnabled = true;
+    action.eppRequestHandler = mock(EppRequestHandler.class);
+    action.run();
+    ArgumentCaptor<SessionMetadata> captor = ArgumentCaptor.forClass(SessionMetadata.class);
+    verify(action.eppRequestHandler)
+        .executeEpp(
+            captor.capture(),
+            same(action.tlsCredentials),
+            eq(EppRequestSource.TLS),
+            eq(false),
+            eq(false),
+            eq(INPUT_XML_BYTES));
+    assertThat(captor.getValue()).isInstanceOf(SignedSessionMetadata.class);
+    assertThat(captor.getValue().getClientId()).isNull();
+  }
 }
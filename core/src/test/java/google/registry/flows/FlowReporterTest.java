@@ -17,20 +17,28 @@ package google.registry.flows;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.testing.TestLogHandlerUtils.findFirstLogMessageByPrefix;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.LoggerConfig;
 import com.google.common.testing.TestLogHandler;
+import google.registry.config.RegistryConfig;
 import google.registry.flows.annotations.ReportingSpec;
 import google.registry.model.eppcommon.Trid;
 import google.registry.model.eppinput.EppInput;
 import google.registry.model.eppoutput.EppOutput.ResponseOrGreeting;
 import google.registry.model.eppoutput.EppResponse;
+import google.registry.model.reporting.IcannReportingCounterDao;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
+import google.registry.testing.FakeClock;
 import java.util.Map;
 import java.util.Optional;
+import org.joda.time.DateTime;
 import org.json.simple.JSONValue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -205,6 +213,45 @@ class FlowReporterTest {
     assertThat(json).containsEntry("tlds", ImmutableList.of());
   }
 
+  @Test
+  void testRecordToCounters_countsActivity() {
+    flowReporter.flowClass = TestReportingSpecCommandFlow.class;
+    flowReporter.clock = new FakeClock(DateTime.parse("2021-06-30T12:00:00Z"));
+    flowReporter.activityCounter = mock(AsyncActivityCounter.class);
+    RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(true);
+    try {
+      flowReporter.recordToCounters();
+    } finally {
+      RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(false);
+    }
+    verify(flowReporter.activityCounter)
+        .increment(
+            IcannReportingCounterDao.getActivityKeys(
+                "TheRegistrar",
+                ActivityReportField.CONTACT_CHECK,
+                false,
+                ImmutableSet.of(),
+                DateTime.parse("2021-06-30T12:00:00Z")));
+  }
+
+  @Test
+  void testRecordToCounters_failure_doesNotThrow() {
+    flowReporter.flowClass = TestReportingSpecCommandFlow.class;
+    flowReporter.clock = new FakeClock(DateTime.parse("2021-06-30T12:00:00Z"));
+    flowReporter.activityCounter = mock(AsyncActivityCounter.class);
+    doThrow(new IllegalStateException("Cloud SQL is down"))
+        .when(flowReporter.activityCounter)
+        .increment(any());
+    RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(true);
+    try {
+      flowReporter.recordToCounters();
+    } finally {
+      RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(false);
+    }
+    assertThat(findFirstLogMessageByPrefix(handler, "Failed to count flow"))
+        .isEqualTo("Failed to count flow towards ICANN activity reports.");
+  }
+
   @SuppressWarnings("unchecked")
   private static Map<String, Object> parseJsonMap(String json) throws Exception {
     return (Map<String, Object>) JSONValue.parseWithException(json);
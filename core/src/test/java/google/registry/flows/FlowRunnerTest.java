@@ -110,6 +110,7 @@ class FlowRunnerTest {
   void testRun_callsFlowReporterOnce() throws Exception {
     flowRunner.run(eppMetricBuilder);
     verify(flowRunner.flowReporter).recordToLogs();
+    verify(flowRunner.flowReporter).recordToCounters();
   }
 
   @Test
@@ -117,6 +118,7 @@ class FlowRunnerTest {
     flowRunner.isDryRun = true;
     flowRunner.run(eppMetricBuilder);
     verify(flowRunner.flowReporter, never()).recordToLogs();
+    verify(flowRunner.flowReporter, never()).recordToCounters();
   }
 
   @Test
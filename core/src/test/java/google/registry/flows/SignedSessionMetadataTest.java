@@ -0,0 +1,206 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.HttpHeaders;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeHttpSession;
+import google.registry.testing.FakeResponse;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link SignedSessionMetadata}. */
+class SignedSessionMetadataTest {
+
+  private static final byte[] SECRET = "secret".getBytes(UTF_8);
+  private static final byte[] OTHER_SECRET = "other secret".getBytes(UTF_8);
+  private static final String CERT_HASH = "certHash";
+
+  private final FakeClock clock = new FakeClock(DateTime.parse("2021-06-01T00:00:00Z"));
+  private final HttpServletRequest req = mock(HttpServletRequest.class);
+  private final FakeResponse response = new FakeResponse();
+  @Nullable private FakeHttpSession httpSession;
+
+  @BeforeEach
+  void beforeEach() {
+    when(req.getSession(anyBoolean()))
+        .thenAnswer(
+            invocation -> {
+              if (httpSession == null && (Boolean) invocation.getArgument(0)) {
+                httpSession = new FakeHttpSession();
+              }
+              return httpSession;
+            });
+  }
+
+  private SignedSessionMetadata newSession(Optional<String> token, FakeResponse response) {
+    return newSession(SECRET, token, CERT_HASH, response);
+  }
+
+  private SignedSessionMetadata newSession(
+      byte[] secret, Optional<String> token, String certificateHash, FakeResponse response) {
+    return new SignedSessionMetadata(
+        secret, token, certificateHash, req, response, clock.nowUtc());
+  }
+
+  /** Returns the session token of the last Set-Cookie header written to the given response. */
+  private static String getIssuedToken(FakeResponse response) {
+    String cookie = (String) response.getHeaders().get(HttpHeaders.SET_COOKIE);
+    assertThat(cookie).startsWith(SignedSessionMetadata.COOKIE_NAME + "=");
+    return cookie.substring(cookie.indexOf('=') + 1, cookie.indexOf(';'));
+  }
+
+  private String getIssuedToken() {
+    return getIssuedToken(response);
+  }
+
+  private SignedSessionMetadata loginSession() {
+    SignedSessionMetadata session = newSession(Optional.empty(), response);
+    session.resetFailedLoginAttempts();
+    session.setClientId("TheRegistrar");
+    session.setServiceExtensionUris(
+        ImmutableSet.of("urn:ietf:params:xml:ns:secDNS-1.1", "urn:ietf:params:xml:ns:rgp-1.0"));
+    return session;
+  }
+
+  @Test
+  void testNoToken_isLoggedOut() {
+    SignedSessionMetadata session = newSession(Optional.empty(), response);
+    assertThat(session.getClientId()).isNull();
+    assertThat(session.getServiceExtensionUris()).isEmpty();
+    assertThat(session.getFailedLoginAttempts()).isEqualTo(0);
+    assertThat(response.getHeaders()).isEmpty();
+  }
+
+  @Test
+  void testIssuedToken_restoresSession() {
+    loginSession();
+    SignedSessionMetadata session = newSession(Optional.of(getIssuedToken()), new FakeResponse());
+    assertThat(session.getClientId()).isEqualTo("TheRegistrar");
+    assertThat(session.getServiceExtensionUris())
+        .containsExactly("urn:ietf:params:xml:ns:secDNS-1.1", "urn:ietf:params:xml:ns:rgp-1.0");
+    assertThat(session.getFailedLoginAttempts()).isEqualTo(0);
+  }
+
+  @Test
+  void testLogin_doesNotCreateHttpSession() {
+    loginSession();
+    assertThat(httpSession).isNull();
+  }
+
+  @Test
+  void testReadOnlyCommand_issuesNoToken() {
+    loginSession();
+    FakeResponse commandResponse = new FakeResponse();
+    SignedSessionMetadata session = newSession(Optional.of(getIssuedToken()), commandResponse);
+    session.getClientId();
+    session.getServiceExtensionUris();
+    assertThat(commandResponse.getHeaders()).isEmpty();
+  }
+
+  @Test
+  void testFailedLoginAttempts_areCountedOnServer() {
+    SignedSessionMetadata session = newSession(Optional.empty(), response);
+    session.incrementFailedLoginAttempts();
+    assertThat(response.getHeaders()).isEmpty();
+    session = newSession(Optional.empty(), response);
+    session.incrementFailedLoginAttempts();
+    session = newSession(Optional.empty(), response);
+    assertThat(session.getFailedLoginAttempts()).isEqualTo(2);
+    assertThat(session.getClientId()).isNull();
+    session.resetFailedLoginAttempts();
+    assertThat(session.getFailedLoginAttempts()).isEqualTo(0);
+  }
+
+  @Test
+  void testOldToken_isReissued() {
+    loginSession();
+    String token = getIssuedToken();
+    clock.advanceBy(Duration.standardMinutes(31));
+    FakeResponse commandResponse = new FakeResponse();
+    SignedSessionMetadata session = newSession(Optional.of(token), commandResponse);
+    assertThat(session.getClientId()).isEqualTo("TheRegistrar");
+    String reissuedToken = getIssuedToken(commandResponse);
+    assertThat(reissuedToken).isNotEqualTo(token);
+    clock.advanceBy(Duration.standardMinutes(100));
+    assertThat(newSession(Optional.of(reissuedToken), new FakeResponse()).getClientId())
+        .isEqualTo("TheRegistrar");
+  }
+
+  @Test
+  void testExpiredToken_isIgnored() {
+    loginSession();
+    clock.advanceBy(Duration.standardHours(2).plus(Duration.millis(1)));
+    FakeResponse commandResponse = new FakeResponse();
+    SignedSessionMetadata session = newSession(Optional.of(getIssuedToken()), commandResponse);
+    assertThat(session.getClientId()).isNull();
+    assertThat(commandResponse.getHeaders()).isEmpty();
+  }
+
+  @Test
+  void testTokenIssuedToOtherCertificate_isIgnored() {
+    loginSession();
+    SignedSessionMetadata session =
+        newSession(SECRET, Optional.of(getIssuedToken()), "otherCertHash", new FakeResponse());
+    assertThat(session.getClientId()).isNull();
+  }
+
+  @Test
+  void testTokenSignedWithOtherSecret_isIgnored() {
+    loginSession();
+    SignedSessionMetadata session =
+        newSession(OTHER_SECRET, Optional.of(getIssuedToken()), CERT_HASH, new FakeResponse());
+    assertThat(session.getClientId()).isNull();
+  }
+
+  @Test
+  void testTamperedToken_isIgnored() {
+    loginSession();
+    String token = getIssuedToken();
+    String tampered =
+        token.substring(0, 5) + (token.charAt(5) == 'A' ? 'B' : 'A') + token.substring(6);
+    SignedSessionMetadata session = newSession(Optional.of(tampered), new FakeResponse());
+    assertThat(session.getClientId()).isNull();
+  }
+
+  @Test
+  void testMalformedToken_isIgnored() {
+    SignedSessionMetadata session = newSession(Optional.of("not a token"), response);
+    assertThat(session.getClientId()).isNull();
+  }
+
+  @Test
+  void testInvalidate_clearsCookie() {
+    SignedSessionMetadata session = loginSession();
+    session.invalidate();
+    assertThat(response.getHeaders())
+        .containsExactly(
+            HttpHeaders.SET_COOKIE, SignedSessionMetadata.COOKIE_NAME + "=; Max-Age=0; Path=/");
+    assertThrows(IllegalStateException.class, session::getClientId);
+  }
+}
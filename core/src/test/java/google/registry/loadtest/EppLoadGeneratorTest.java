@@ -0,0 +1,159 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.loadtest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import google.registry.loadtest.EppLoadGenerator.CommandType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link EppLoadGenerator}. */
+class EppLoadGeneratorTest {
+
+  private static final String SUCCESS = "<epp><response><result code=\"1000\"/></response></epp>";
+  private static final String FAILURE = "<epp><response><result code=\"2303\"/></response></epp>";
+
+  private final List<String> sentCommands = Collections.synchronizedList(new ArrayList<>());
+  private final List<FakeConnection> connections = new ArrayList<>();
+
+  private EppLoadGenerator createGenerator(
+      ImmutableMap<CommandType, Double> rates, String commandResponse) {
+    return new EppLoadGenerator(
+        () -> {
+          FakeConnection connection = new FakeConnection(commandResponse);
+          connections.add(connection);
+          return connection;
+        },
+        "NewRegistrar",
+        "foo-BAR2",
+        "example",
+        "testdomain",
+        rates,
+        2,
+        Duration.millis(200));
+  }
+
+  @Test
+  void testSuccess_sendsCommandsAtConfiguredRates() throws Exception {
+    EppLoadGenerator generator =
+        createGenerator(ImmutableMap.of(CommandType.CHECK, 50.0, CommandType.INFO, 25.0), SUCCESS);
+    String report = generator.run();
+    assertThat(generator.getStats(CommandType.CHECK).successes.get()).isEqualTo(10);
+    assertThat(generator.getStats(CommandType.INFO).successes.get()).isEqualTo(5);
+    assertThat(generator.getStats(CommandType.CHECK).responseTime.getTotalCount()).isEqualTo(10);
+    assertThat(countCommands("<domain:check")).isEqualTo(10);
+    assertThat(countCommands("<domain:info")).isEqualTo(5);
+    assertThat(report).contains("check");
+    assertThat(report).contains("info");
+  }
+
+  @Test
+  void testSuccess_logsInAndOutOfEverySession() throws Exception {
+    createGenerator(ImmutableMap.of(CommandType.POLL, 10.0), SUCCESS).run();
+    assertThat(connections).hasSize(2);
+    assertThat(countCommands("<login>")).isEqualTo(2);
+    assertThat(countCommands("<logout/>")).isEqualTo(2);
+    assertThat(connections.stream().allMatch(connection -> connection.closed)).isTrue();
+  }
+
+  @Test
+  void testSuccess_countsFailedCommands() throws Exception {
+    EppLoadGenerator generator = createGenerator(ImmutableMap.of(CommandType.INFO, 25.0), FAILURE);
+    generator.run();
+    assertThat(generator.getStats(CommandType.INFO).successes.get()).isEqualTo(0);
+    assertThat(generator.getStats(CommandType.INFO).failures.get()).isEqualTo(5);
+  }
+
+  @Test
+  void testFailure_loginFails() {
+    EppLoadGenerator generator =
+        new EppLoadGenerator(
+            () -> new FakeConnection(FAILURE, FAILURE),
+            "NewRegistrar",
+            "wrong",
+            "example",
+            "testdomain",
+            ImmutableMap.of(CommandType.CHECK, 1.0),
+            1,
+            Duration.millis(200));
+    IOException thrown = assertThrows(IOException.class, generator::run);
+    assertThat(thrown).hasMessageThat().contains("Failed to log in as NewRegistrar");
+  }
+
+  @Test
+  void testFailure_noPositiveRates() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> createGenerator(ImmutableMap.of(CommandType.CHECK, 0.0), SUCCESS));
+    assertThat(thrown).hasMessageThat().contains("At least one command type");
+  }
+
+  @Test
+  void testFailure_negativeRate() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                createGenerator(
+                    ImmutableMap.of(CommandType.CHECK, 1.0, CommandType.INFO, -1.0), SUCCESS));
+    assertThat(thrown).hasMessageThat().contains("Rates must not be negative");
+  }
+
+  private long countCommands(String fragment) {
+    synchronized (sentCommands) {
+      return sentCommands.stream().filter(xml -> xml.contains(fragment)).count();
+    }
+  }
+
+  /** A connection that records everything sent on it and returns canned responses. */
+  private class FakeConnection implements EppConnection {
+    private final String loginResponse;
+    private final String commandResponse;
+    private boolean loggedIn;
+    private boolean closed;
+
+    FakeConnection(String commandResponse) {
+      this(SUCCESS, commandResponse);
+    }
+
+    FakeConnection(String loginResponse, String commandResponse) {
+      this.loginResponse = loginResponse;
+      this.commandResponse = commandResponse;
+    }
+
+    @Override
+    public synchronized String send(String xml) {
+      sentCommands.add(xml);
+      if (!loggedIn) {
+        loggedIn = true;
+        return loginResponse;
+      }
+      return commandResponse;
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+    }
+  }
+}
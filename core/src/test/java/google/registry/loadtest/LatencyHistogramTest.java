@@ -0,0 +1,113 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.loadtest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link LatencyHistogram}. */
+class LatencyHistogramTest {
+
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  @Test
+  void testEmpty() {
+    assertThat(histogram.getTotalCount()).isEqualTo(0);
+    assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+    assertThat(histogram.getMeanMicros()).isEqualTo(0);
+  }
+
+  @Test
+  void testSmallValues_areExact() {
+    for (int i = 1; i <= 50; i++) {
+      histogram.recordMicros(i);
+    }
+    assertThat(histogram.getTotalCount()).isEqualTo(50);
+    assertThat(histogram.getValueAtPercentile(50)).isEqualTo(25);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(50);
+    assertThat(histogram.getMaxMicros()).isEqualTo(50);
+    assertThat(histogram.getMeanMicros()).isEqualTo(25.5);
+  }
+
+  @Test
+  void testLargeValues_withinRelativeError() {
+    for (int i = 1; i <= 10000; i++) {
+      histogram.recordMicros(i * 100L);
+    }
+    assertValueWithinError(histogram.getValueAtPercentile(50), 500000);
+    assertValueWithinError(histogram.getValueAtPercentile(99), 990000);
+    assertValueWithinError(histogram.getValueAtPercentile(99.9), 999000);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1000000);
+  }
+
+  @Test
+  void testPercentile_neverUnderestimates() {
+    histogram.recordMicros(1000);
+    histogram.recordMicros(1001);
+    assertThat(histogram.getValueAtPercentile(50)).isAtLeast(1000);
+    assertThat(histogram.getValueAtPercentile(50)).isAtMost(1001);
+  }
+
+  @Test
+  void testHugeValue_isClamped() {
+    histogram.recordMicros(Long.MAX_VALUE);
+    assertThat(histogram.getMaxMicros()).isEqualTo(LatencyHistogram.MAX_TRACKABLE_MICROS);
+  }
+
+  @Test
+  void testRecordNanos() {
+    histogram.recordNanos(42999);
+    assertThat(histogram.getMaxMicros()).isEqualTo(42);
+  }
+
+  @Test
+  void testAdd() {
+    LatencyHistogram other = new LatencyHistogram();
+    histogram.recordMicros(10);
+    other.recordMicros(30);
+    histogram.add(other);
+    assertThat(histogram.getTotalCount()).isEqualTo(2);
+    assertThat(histogram.getMaxMicros()).isEqualTo(30);
+    assertThat(histogram.getMeanMicros()).isEqualTo(20);
+  }
+
+  @Test
+  void testBuckets_areContiguous() {
+    for (int i = 1; i < 64 * 25; i++) {
+      assertThat(LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(i - 1) + 1))
+          .isEqualTo(i);
+    }
+  }
+
+  @Test
+  void testFailure_negativeValue() {
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> histogram.recordMicros(-1));
+    assertThat(thrown).hasMessageThat().contains("must not be negative");
+  }
+
+  @Test
+  void testFailure_invalidPercentile() {
+    assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+  }
+
+  private static void assertValueWithinError(long actual, long expected) {
+    assertThat((double) actual)
+        .isWithin(expected / (double) LatencyHistogram.SUB_BUCKETS)
+        .of(expected);
+  }
+}
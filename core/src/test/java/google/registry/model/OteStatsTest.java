@@ -14,22 +14,28 @@
 
 package google.registry.model;
 
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.testing.DatabaseHelper.createTld;
+import static google.registry.testing.DatabaseHelper.persistDeletedHost;
+import static google.registry.testing.DatabaseHelper.persistResource;
 
+import com.google.common.collect.ImmutableMap;
 import google.registry.model.OteStats.StatType;
-import google.registry.testing.AppEngineExtension;
+import google.registry.model.host.HostHistory;
+import google.registry.model.reporting.HistoryEntry;
 import google.registry.testing.DualDatabaseTest;
 import google.registry.testing.TestOfyAndSql;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.extension.RegisterExtension;
 
 @DualDatabaseTest
-public final class OteStatsTest {
+public final class OteStatsTest extends EntityTestCase {
 
-  @RegisterExtension
-  public final AppEngineExtension appEngine =
-      AppEngineExtension.builder().withDatastoreAndCloudSql().build();
+  public OteStatsTest() {
+    super(JpaEntityCoverageCheck.ENABLED);
+  }
 
   @BeforeEach
   void beforeEach() {
@@ -55,6 +61,62 @@ public final class OteStatsTest {
     assertThat(stats.getSize()).isEqualTo(34);
   }
 
+  @TestOfyAndSql
+  void testSuccess_recentHistory_isNotCheckpointed() throws Exception {
+    OteStatsTestHelper.setupIncompleteOte("blobio");
+    OteStats.getFromRegistrar("blobio");
+    assertThat(OteStatsCheckpoint.load("blobio")).isEmpty();
+  }
+
+  @TestOfyAndSql
+  void testSuccess_savesCheckpoint() throws Exception {
+    OteStatsTestHelper.setupIncompleteOte("blobio");
+    fakeClock.advanceBy(Duration.standardHours(1));
+    OteStats.getFromRegistrar("blobio");
+    OteStatsCheckpoint checkpoint = OteStatsCheckpoint.load("blobio").get();
+    assertThat(checkpoint.getCheckpointTime()).isEqualTo(fakeClock.nowUtc().minusMinutes(10));
+    assertThat(checkpoint.getStatCounts()).containsEntry(StatType.HOST_UPDATES, 10);
+    assertThat(checkpoint.getStatCounts()).doesNotContainKey(StatType.HOST_DELETES);
+    assertThat(checkpoint.getStatCounts().values().stream().mapToInt(Integer::intValue).sum())
+        .isEqualTo(34);
+  }
+
+  @TestOfyAndSql
+  void testSuccess_checkpoint_onlyLaterHistoryIsRecorded() throws Exception {
+    OteStatsTestHelper.setupIncompleteOte("blobio");
+    fakeClock.advanceBy(Duration.standardHours(1));
+    OteStats.getFromRegistrar("blobio");
+    DateTime now = fakeClock.nowUtc();
+    persistResource(
+        new HostHistory.Builder()
+            .setHostRepoId(persistDeletedHost("ns1.example.tld", now).getRepoId())
+            .setClientId("blobio-1")
+            .setType(HistoryEntry.Type.HOST_DELETE)
+            .setModificationTime(now)
+            .build());
+    OteStats stats = OteStats.getFromRegistrar("blobio");
+    assertThat(stats.getFailures())
+        .containsExactly(StatType.DOMAIN_CREATES_IDN, StatType.DOMAIN_RESTORES)
+        .inOrder();
+    assertThat(stats.getSize()).isEqualTo(35);
+    // The new entry is too recent to be checkpointed.
+    assertThat(OteStatsCheckpoint.load("blobio").get().getStatCounts())
+        .doesNotContainKey(StatType.HOST_DELETES);
+  }
+
+  @TestOfyAndSql
+  void testSuccess_passedCheckpoint_isReturnedAsIs() {
+    ImmutableMap<StatType, Integer> passedCounts =
+        StatType.REQUIRED_STAT_TYPES.stream()
+            .collect(toImmutableMap(statType -> statType, StatType::getRequirement));
+    OteStatsCheckpoint.save(
+        OteStatsCheckpoint.create("blobio", fakeClock.nowUtc(), passedCounts));
+    OteStats stats = OteStats.getFromRegistrar("blobio");
+    assertThat(stats.getFailures()).isEmpty();
+    assertThat(stats.getCount(StatType.HOST_DELETES)).isEqualTo(1);
+    assertThat(stats.getSize()).isEqualTo(StatType.REQUIRED_STAT_TYPES.size());
+  }
+
   @TestOfyAndSql
   void testSuccess_toString() throws Exception {
     OteStatsTestHelper.setupCompleteOte("blobio");
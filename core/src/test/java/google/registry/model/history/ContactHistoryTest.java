@@ -121,6 +121,13 @@ public class ContactHistoryTest extends EntityTestCase {
         .build();
   }
 
+  @Test
+  void testGetResourceAtPointInTime_copiesAllFields() {
+    ContactResource contact = newContactResourceWithRoid("contactId", "contact1");
+    ContactHistory contactHistory = createContactHistory(contact, contact.getRepoId());
+    assertThat(contactHistory.getResourceAtPointInTime().get()).isEqualTo(contact);
+  }
+
   static void assertContactHistoriesEqual(ContactHistory one, ContactHistory two) {
     assertAboutImmutableObjects()
         .that(one)
@@ -104,6 +104,13 @@ public class HostHistoryTest extends EntityTestCase {
     assertThat(hostHistoryFromDb).isEqualTo(historyEntryFromDb);
   }
 
+  @Test
+  void testGetResourceAtPointInTime_copiesAllFields() {
+    HostResource host = newHostResourceWithRoid("ns1.example.com", "host1");
+    HostHistory hostHistory = createHostHistory(host, host.getRepoId());
+    assertThat(hostHistory.getResourceAtPointInTime().get()).isEqualTo(host);
+  }
+
   private void assertHostHistoriesEqual(HostHistory one, HostHistory two) {
     assertAboutImmutableObjects().that(one).isEqualExceptFields(two, "hostBase");
     assertAboutImmutableObjects()
@@ -18,6 +18,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
 import static google.registry.model.ImmutableObjectSubject.immutableObjectCorrespondence;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 import static google.registry.testing.DatabaseHelper.cloneAndSetAutoTimestamps;
 import static google.registry.testing.DatabaseHelper.createTld;
@@ -27,6 +28,7 @@ import static google.registry.testing.DatabaseHelper.persistResource;
 import static google.registry.testing.HostResourceSubject.assertAboutHosts;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.net.InetAddresses;
@@ -39,6 +41,8 @@ import google.registry.model.transfer.TransferStatus;
 import google.registry.testing.DualDatabaseTest;
 import google.registry.testing.TestOfyAndSql;
 import google.registry.testing.TestOfyOnly;
+import google.registry.testing.TestSqlOnly;
+import java.util.List;
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.BeforeEach;
 
@@ -273,4 +277,28 @@ class HostResourceTest extends EntityTestCase {
     host = host.asBuilder().setLastTransferTime(day1).setLastSuperordinateChange(day2).build();
     assertThat(host.computeLastTransferTime(domain)).isEqualTo(day3);
   }
+
+  @TestSqlOnly
+  void testInetAddressLookup_usesIndex() {
+    jpaTm()
+        .transact(
+            () -> {
+              // The test table is tiny, so the planner would otherwise always pick a sequential
+              // scan regardless of the available indexes.
+              jpaTm()
+                  .getEntityManager()
+                  .createNativeQuery("SET LOCAL enable_seqscan = off")
+                  .executeUpdate();
+              @SuppressWarnings("unchecked")
+              List<String> plan =
+                  jpaTm()
+                      .getEntityManager()
+                      .createNativeQuery(
+                          "EXPLAIN SELECT * FROM \"Host\" WHERE "
+                              + "inet_addresses @> ARRAY[CAST(:address AS text)]")
+                      .setParameter("address", "127.0.0.1")
+                      .getResultList();
+              assertThat(Joiner.on('\n').join(plan)).contains("host_inet_addresses_idx");
+            });
+  }
 }
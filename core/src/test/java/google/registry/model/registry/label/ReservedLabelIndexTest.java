@@ -0,0 +1,61 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.registry.label;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.model.registry.label.ReservationType.ALLOWED_IN_SUNRISE;
+import static google.registry.model.registry.label.ReservationType.FULLY_BLOCKED;
+import static google.registry.model.registry.label.ReservationType.NAME_COLLISION;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link ReservedLabelIndex}. */
+class ReservedLabelIndexTest {
+
+  private final ReservedLabelIndex index =
+      ReservedLabelIndex.create(
+          "reserved",
+          5L,
+          ImmutableMap.of(
+              "trombone", FULLY_BLOCKED,
+              "anchor", ALLOWED_IN_SUNRISE,
+              "xn--q9jyb4c", NAME_COLLISION));
+
+  @Test
+  void testGet() {
+    assertThat(index.get("trombone")).hasValue(FULLY_BLOCKED);
+    assertThat(index.get("anchor")).hasValue(ALLOWED_IN_SUNRISE);
+    assertThat(index.get("xn--q9jyb4c")).hasValue(NAME_COLLISION);
+    assertThat(index.get("tromb")).isEmpty();
+    assertThat(index.get("zzz")).isEmpty();
+    assertThat(index.get("")).isEmpty();
+  }
+
+  @Test
+  void testMetadata() {
+    assertThat(index.getListName()).isEqualTo("reserved");
+    assertThat(index.getRevisionId()).isEqualTo(5L);
+    assertThat(index.size()).isEqualTo(3);
+  }
+
+  @Test
+  void testEmpty() {
+    ReservedLabelIndex empty = ReservedLabelIndex.create("empty", 1L, ImmutableMap.of());
+    assertThat(empty.size()).isEqualTo(0);
+    assertThat(empty.get("trombone")).isEmpty();
+  }
+}
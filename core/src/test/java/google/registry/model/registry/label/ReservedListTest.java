@@ -16,6 +16,7 @@ package google.registry.model.registry.label;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
+import static com.google.common.truth.Truth8.assertThat;
 import static com.google.monitoring.metrics.contrib.DistributionMetricSubject.assertThat;
 import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
 import static google.registry.model.registry.label.DomainLabelMetrics.reservedListChecks;
@@ -31,6 +32,7 @@ import static google.registry.testing.DatabaseHelper.persistReservedList;
 import static google.registry.testing.DatabaseHelper.persistResource;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import google.registry.model.ofy.Ofy;
@@ -40,6 +42,7 @@ import google.registry.testing.AppEngineExtension;
 import google.registry.testing.FakeClock;
 import google.registry.testing.InjectExtension;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -294,6 +297,39 @@ class ReservedListTest {
     assertThat(reservedList.getReservedListEntries()).hasSize(2);
   }
 
+  @Test
+  void testIndexCache_refreshKeepsIndexOfUnchangedList() throws Exception {
+    persistReservedList("reserved", "trombone,FULLY_BLOCKED");
+    LoadingCache<String, ReservedLabelIndex> cache =
+        ReservedList.createIndexCache(Duration.standardHours(1));
+    ReservedLabelIndex index = cache.get("reserved");
+    assertThat(index.get("trombone")).hasValue(FULLY_BLOCKED);
+    cache.refresh("reserved");
+    assertThat(cache.get("reserved")).isSameInstanceAs(index);
+  }
+
+  @Test
+  void testIndexCache_refreshLoadsNewRevision() throws Exception {
+    ReservedList original = persistReservedList("reserved", "trombone,FULLY_BLOCKED");
+    LoadingCache<String, ReservedLabelIndex> cache =
+        ReservedList.createIndexCache(Duration.standardHours(1));
+    assertThat(cache.get("reserved").get("oysters")).isEmpty();
+    ReservedList updated =
+        persistReservedList(
+            original
+                .asBuilder()
+                .setReservedListMapFromLines(
+                    ImmutableList.of("trombone,FULLY_BLOCKED", "oysters,NAME_COLLISION"))
+                .build());
+    // The old index is used until the cache is refreshed.
+    assertThat(cache.get("reserved").get("oysters")).isEmpty();
+    cache.refresh("reserved");
+    ReservedLabelIndex index = cache.get("reserved");
+    assertThat(index.getRevisionId()).isEqualTo(updated.getRevisionId());
+    assertThat(index.get("oysters")).hasValue(NAME_COLLISION);
+    assertThat(index.get("trombone")).hasValue(FULLY_BLOCKED);
+  }
+
   @Test
   void testAsBuilderReturnsIdenticalReservedList() {
     ReservedList original = persistReservedList("tld-reserved-cloning", "trombone,FULLY_BLOCKED");
@@ -0,0 +1,226 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.reporting;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.reporting.DomainTransactionRecord.TransactionReportField.NET_ADDS_1_YR;
+import static google.registry.model.reporting.DomainTransactionRecord.TransactionReportField.NET_RENEWS_1_YR;
+import static google.registry.model.reporting.DomainTransactionRecord.TransactionReportField.TRANSFER_SUCCESSFUL;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import google.registry.config.RegistryConfig;
+import google.registry.model.domain.DomainHistory;
+import google.registry.model.reporting.IcannReportingCounter.CounterType;
+import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
+import google.registry.persistence.transaction.JpaTestRules;
+import google.registry.persistence.transaction.JpaTestRules.JpaIntegrationWithCoverageExtension;
+import google.registry.testing.FakeClock;
+import org.joda.time.DateTime;
+import org.joda.time.YearMonth;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link IcannReportingCounterDao}. */
+public class IcannReportingCounterDaoTest {
+
+  private static final YearMonth JUNE = new YearMonth(2021, 6);
+  private static final YearMonth JULY = new YearMonth(2021, 7);
+
+  private final FakeClock clock = new FakeClock(DateTime.parse("2021-06-30T12:00:00Z"));
+
+  @RegisterExtension
+  final JpaIntegrationWithCoverageExtension jpa =
+      new JpaTestRules.Builder().withClock(clock).buildIntegrationWithCoverageExtension();
+
+  @BeforeEach
+  void beforeEach() {
+    RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(true);
+  }
+
+  @AfterEach
+  void afterEach() {
+    RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(false);
+  }
+
+  /** Returns the counters of the given type and month, keyed by TLD, registrar and field. */
+  private static ImmutableMap<String, Long> loadCounts(CounterType type, YearMonth yearMonth) {
+    return IcannReportingCounterDao.loadByMonth(type, yearMonth).stream()
+        .collect(
+            toImmutableMap(
+                counter ->
+                    String.format(
+                        "%s/%s/%s",
+                        counter.getTld(), counter.getRegistrarId(), counter.getField()),
+                IcannReportingCounter::getCount));
+  }
+
+  private DomainHistory.Builder historyBuilder(HistoryEntry.Type type, String registrarId) {
+    return new DomainHistory.Builder()
+        .setType(type)
+        .setModificationTime(clock.nowUtc())
+        .setClientId(registrarId);
+  }
+
+  @Test
+  void testRecordActivity_domainCommand_countsEachTld() {
+    IcannReportingCounterDao.recordActivity(
+        "TheRegistrar",
+        ActivityReportField.DOMAIN_CHECK,
+        true,
+        ImmutableSet.of("tld", "example"),
+        clock.nowUtc());
+    IcannReportingCounterDao.recordActivity(
+        "TheRegistrar",
+        ActivityReportField.DOMAIN_CHECK,
+        true,
+        ImmutableSet.of("tld"),
+        clock.nowUtc());
+
+    assertThat(loadCounts(CounterType.ACTIVITY, JUNE))
+        .containsExactly(
+            "tld/TheRegistrar/srs-dom-check", 2L, "example/TheRegistrar/srs-dom-check", 1L);
+    assertThat(loadCounts(CounterType.TRANSACTIONS, JUNE)).isEmpty();
+  }
+
+  @Test
+  void testRecordActivity_nonDomainCommand_countsEmptyTld() {
+    IcannReportingCounterDao.recordActivity(
+        "TheRegistrar", ActivityReportField.HOST_CREATE, false, ImmutableSet.of(), clock.nowUtc());
+
+    assertThat(loadCounts(CounterType.ACTIVITY, JUNE))
+        .containsExactly("/TheRegistrar/srs-host-create", 1L);
+  }
+
+  @Test
+  void testRecordActivity_domainCreate_countsAttemptedAddsExceptForProbers() {
+    IcannReportingCounterDao.recordActivity(
+        "TheRegistrar",
+        ActivityReportField.DOMAIN_CREATE,
+        true,
+        ImmutableSet.of("tld"),
+        clock.nowUtc());
+    IcannReportingCounterDao.recordActivity(
+        "prober-xy-any",
+        ActivityReportField.DOMAIN_CREATE,
+        true,
+        ImmutableSet.of("tld"),
+        clock.nowUtc());
+
+    assertThat(loadCounts(CounterType.ACTIVITY, JUNE))
+        .containsExactly(
+            "tld/TheRegistrar/srs-dom-create", 1L, "tld/prober-xy-any/srs-dom-create", 1L);
+    assertThat(loadCounts(CounterType.TRANSACTIONS, JUNE))
+        .containsExactly("tld/TheRegistrar/attempted_adds", 1L);
+  }
+
+  @Test
+  void testRecordTransactions_countsInMonthOfReportingTime() {
+    IcannReportingCounterDao.recordTransactions(
+        historyBuilder(HistoryEntry.Type.DOMAIN_CREATE, "TheRegistrar")
+            .setDomainTransactionRecords(
+                ImmutableSet.of(
+                    DomainTransactionRecord.create(
+                        "tld", clock.nowUtc().plusDays(5), NET_ADDS_1_YR, 1)))
+            .build());
+    IcannReportingCounterDao.recordTransactions(
+        historyBuilder(HistoryEntry.Type.DOMAIN_RENEW, "TheRegistrar")
+            .setDomainTransactionRecords(
+                ImmutableSet.of(
+                    DomainTransactionRecord.create("tld", clock.nowUtc(), NET_RENEWS_1_YR, 1)))
+            .build());
+
+    assertThat(loadCounts(CounterType.TRANSACTIONS, JUNE))
+        .containsExactly("tld/TheRegistrar/net_renews_1_yr", 1L);
+    assertThat(loadCounts(CounterType.TRANSACTIONS, JULY))
+        .containsExactly("tld/TheRegistrar/net_adds_1_yr", 1L);
+  }
+
+  @Test
+  void testRecordTransactions_cancelingRecordsAreSubtracted() {
+    IcannReportingCounterDao.recordTransactions(
+        historyBuilder(HistoryEntry.Type.DOMAIN_CREATE, "TheRegistrar")
+            .setDomainTransactionRecords(
+                ImmutableSet.of(
+                    DomainTransactionRecord.create("tld", clock.nowUtc(), NET_ADDS_1_YR, 1)))
+            .build());
+    IcannReportingCounterDao.recordTransactions(
+        historyBuilder(HistoryEntry.Type.DOMAIN_DELETE, "TheRegistrar")
+            .setDomainTransactionRecords(
+                ImmutableSet.of(
+                    DomainTransactionRecord.create("tld", clock.nowUtc(), NET_ADDS_1_YR, -1)))
+            .build());
+
+    assertThat(loadCounts(CounterType.TRANSACTIONS, JUNE))
+        .containsExactly("tld/TheRegistrar/net_adds_1_yr", 0L);
+  }
+
+  @Test
+  void testRecordTransactions_transferRequest_countsGainingAndLosingRegistrars() {
+    IcannReportingCounterDao.recordTransactions(
+        historyBuilder(HistoryEntry.Type.DOMAIN_TRANSFER_REQUEST, "NewRegistrar")
+            .setOtherClientId("TheRegistrar")
+            .setDomainTransactionRecords(
+                ImmutableSet.of(
+                    DomainTransactionRecord.create("tld", clock.nowUtc(), TRANSFER_SUCCESSFUL, 1)))
+            .build());
+
+    assertThat(loadCounts(CounterType.TRANSACTIONS, JUNE))
+        .containsExactly(
+            "tld/NewRegistrar/transfer_gaining_successful", 1L,
+            "tld/TheRegistrar/transfer_losing_successful", 1L);
+  }
+
+  @Test
+  void testRecordTransactions_transferApprove_swapsRegistrars() {
+    IcannReportingCounterDao.recordTransactions(
+        historyBuilder(HistoryEntry.Type.DOMAIN_TRANSFER_APPROVE, "TheRegistrar")
+            .setOtherClientId("NewRegistrar")
+            .setDomainTransactionRecords(
+                ImmutableSet.of(
+                    DomainTransactionRecord.create("tld", clock.nowUtc(), TRANSFER_SUCCESSFUL, 1),
+                    DomainTransactionRecord.create("tld", clock.nowUtc(), NET_RENEWS_1_YR, 1)))
+            .build());
+
+    assertThat(loadCounts(CounterType.TRANSACTIONS, JUNE))
+        .containsExactly(
+            "tld/NewRegistrar/transfer_gaining_successful", 1L,
+            "tld/TheRegistrar/transfer_losing_successful", 1L,
+            "tld/NewRegistrar/net_renews_1_yr", 1L);
+  }
+
+  @Test
+  void testRecord_disabled_doesNothing() {
+    RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(false);
+    IcannReportingCounterDao.recordActivity(
+        "TheRegistrar",
+        ActivityReportField.DOMAIN_CREATE,
+        true,
+        ImmutableSet.of("tld"),
+        clock.nowUtc());
+    IcannReportingCounterDao.recordTransactions(
+        historyBuilder(HistoryEntry.Type.DOMAIN_CREATE, "TheRegistrar")
+            .setDomainTransactionRecords(
+                ImmutableSet.of(
+                    DomainTransactionRecord.create("tld", clock.nowUtc(), NET_ADDS_1_YR, 1)))
+            .build());
+
+    assertThat(loadCounts(CounterType.ACTIVITY, JUNE)).isEmpty();
+    assertThat(loadCounts(CounterType.TRANSACTIONS, JUNE)).isEmpty();
+  }
+}
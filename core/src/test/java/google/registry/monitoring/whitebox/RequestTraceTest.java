@@ -0,0 +1,116 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.monitoring.whitebox;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.FakeTicker;
+import google.registry.monitoring.whitebox.RequestTrace.Span;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link RequestTrace}. */
+class RequestTraceTest {
+
+  private final FakeTicker ticker = new FakeTicker();
+  private final RequestTrace trace = RequestTrace.start(ticker);
+
+  @AfterEach
+  void afterEach() {
+    trace.close();
+  }
+
+  @Test
+  void testSpans_recordTimePerStage() {
+    try (Span span = RequestTrace.span(Stage.UNMARSHAL)) {
+      ticker.advance(5);
+    }
+    try (Span span = RequestTrace.span(Stage.FLOW_EXECUTION)) {
+      ticker.advance(10);
+      try (Span innerSpan = RequestTrace.span(Stage.DATABASE_LOAD)) {
+        ticker.advance(3);
+      }
+    }
+    try (Span span = RequestTrace.span(Stage.UNMARSHAL)) {
+      ticker.advance(2);
+    }
+    assertThat(trace.getStageNanos())
+        .containsExactly(Stage.UNMARSHAL, 7L, Stage.FLOW_EXECUTION, 13L, Stage.DATABASE_LOAD, 3L);
+  }
+
+  @Test
+  void testNestedSpansForSameStage_areOnlyCountedOnce() {
+    try (Span span = RequestTrace.span(Stage.DATABASE_LOAD)) {
+      ticker.advance(4);
+      try (Span innerSpan = RequestTrace.span(Stage.DATABASE_LOAD)) {
+        ticker.advance(6);
+      }
+    }
+    assertThat(trace.getStageNanos()).containsExactly(Stage.DATABASE_LOAD, 10L);
+  }
+
+  @Test
+  void testCounters() {
+    RequestTrace.recordTransactionAttempt();
+    RequestTrace.recordTransactionAttempt();
+    RequestTrace.recordStatement(3);
+    RequestTrace.recordStatement(4);
+    assertThat(trace.getTransactionAttempts()).isEqualTo(2);
+    assertThat(trace.getStatements()).isEqualTo(2);
+    assertThat(trace.getStageNanos()).containsExactly(Stage.SQL_EXECUTION, 7L);
+  }
+
+  @Test
+  void testCommandName() {
+    assertThat(trace.getCommandName()).isEmpty();
+    RequestTrace.setCommandName("DomainCreate");
+    assertThat(trace.getCommandName()).hasValue("DomainCreate");
+  }
+
+  @Test
+  void testClosedTrace_ignoresFurtherRecording() {
+    trace.close();
+    try (Span span = RequestTrace.span(Stage.COMMIT)) {
+      ticker.advance(1);
+    }
+    RequestTrace.recordStatement(1);
+    assertThat(trace.getStageNanos()).isEqualTo(ImmutableMap.of());
+    assertThat(trace.getStatements()).isEqualTo(0);
+    assertThat(RequestTrace.current()).isEmpty();
+  }
+
+  @Test
+  void testCurrent() {
+    assertThat(RequestTrace.current()).hasValue(trace);
+  }
+
+  @Test
+  void testStart_replacesLeakedTrace() {
+    RequestTrace.recordTransactionAttempt();
+    try (RequestTrace newTrace = RequestTrace.start(ticker)) {
+      assertThat(RequestTrace.current()).hasValue(newTrace);
+      RequestTrace.recordTransactionAttempt();
+      assertThat(newTrace.getTransactionAttempts()).isEqualTo(1);
+      // Closing the leaked trace must not detach its replacement.
+      trace.close();
+      assertThat(RequestTrace.current()).hasValue(newTrace);
+    }
+    assertThat(RequestTrace.current()).isEmpty();
+    assertThat(trace.getTransactionAttempts()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence;
+
+import static com.google.monitoring.metrics.contrib.DistributionMetricSubject.assertThat;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link HikariMetricsTrackerFactory}. */
+class HikariMetricsTrackerFactoryTest {
+
+  private final PoolStats poolStats =
+      new PoolStats(0) {
+        @Override
+        protected void update() {
+          activeConnections = 3;
+          idleConnections = 2;
+          pendingThreads = 1;
+        }
+      };
+
+  private IMetricsTracker tracker;
+
+  @BeforeEach
+  void beforeEach() {
+    HikariMetricsTrackerFactory.acquireTime.reset();
+    HikariMetricsTrackerFactory.usageTime.reset();
+    HikariMetricsTrackerFactory.timeouts.reset();
+    tracker = new HikariMetricsTrackerFactory().create("test-pool", poolStats);
+  }
+
+  @AfterEach
+  void afterEach() {
+    tracker.close();
+  }
+
+  @Test
+  void testPoolSizes() {
+    assertThat(HikariMetricsTrackerFactory.poolSizeGauge)
+        .hasValueForLabels(3, "test-pool", "ACTIVE")
+        .and()
+        .hasValueForLabels(2, "test-pool", "IDLE")
+        .and()
+        .hasValueForLabels(1, "test-pool", "WAITING");
+  }
+
+  @Test
+  void testPoolSizes_closedPoolIsNotReported() {
+    tracker.close();
+    assertThat(HikariMetricsTrackerFactory.poolSizeGauge)
+        .doesNotHaveAnyValueForLabels("test-pool", "ACTIVE");
+  }
+
+  @Test
+  void testConnectionEvents() {
+    tracker.recordConnectionAcquiredNanos(2_000_000);
+    tracker.recordConnectionUsageMillis(15);
+    tracker.recordConnectionTimeout();
+    assertThat(HikariMetricsTrackerFactory.acquireTime)
+        .hasDataSetForLabels(ImmutableSet.of(2.0), "test-pool")
+        .and()
+        .hasNoOtherValues();
+    assertThat(HikariMetricsTrackerFactory.usageTime)
+        .hasDataSetForLabels(ImmutableSet.of(15), "test-pool")
+        .and()
+        .hasNoOtherValues();
+    assertThat(HikariMetricsTrackerFactory.timeouts)
+        .hasValueForLabels(1, "test-pool")
+        .and()
+        .hasNoOtherValues();
+  }
+}
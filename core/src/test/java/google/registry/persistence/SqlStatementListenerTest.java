@@ -0,0 +1,90 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+
+import com.google.common.base.Strings;
+import google.registry.monitoring.whitebox.RequestTrace;
+import google.registry.monitoring.whitebox.RequestTrace.Stage;
+import google.registry.persistence.transaction.JpaTestRules;
+import google.registry.persistence.transaction.JpaTestRules.JpaUnitTestExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link SqlStatementListener}. */
+class SqlStatementListenerTest {
+
+  @RegisterExtension
+  final JpaUnitTestExtension jpaExtension = new JpaTestRules.Builder().buildUnitTestRule();
+
+  @Test
+  void testStatements_areRecordedToRequestTrace() {
+    try (RequestTrace trace = RequestTrace.start()) {
+      jpaTm()
+          .transact(
+              () -> {
+                jpaTm().getEntityManager().createNativeQuery("select 1").getSingleResult();
+                jpaTm().getEntityManager().createNativeQuery("select 2").getSingleResult();
+              });
+      assertThat(trace.getStatements()).isEqualTo(2);
+      assertThat(trace.getTransactionAttempts()).isEqualTo(1);
+      assertThat(trace.getStageNanos()).containsKey(Stage.SQL_EXECUTION);
+    }
+  }
+
+  @Test
+  void testStatements_withoutRequestTrace_areIgnored() {
+    assertThat(
+            jpaTm()
+                .transact(
+                    () ->
+                        jpaTm().getEntityManager().createNativeQuery("select 1").getSingleResult()))
+        .isEqualTo(1);
+  }
+
+  @Test
+  void testNormalizeSql_replacesLiterals() {
+    assertThat(
+            SqlStatementListener.normalizeSql(
+                "select d.domain_name from \"Domain\" d0_ where d.tld = 'ex''ample' "
+                    + "and d.revision > 12.5 limit 10"))
+        .isEqualTo(
+            "select d.domain_name from \"Domain\" d0_ where d.tld = ? and d.revision > ? limit ?");
+  }
+
+  @Test
+  void testNormalizeSql_collapsesParameterListsAndWhitespace() {
+    assertThat(
+            SqlStatementListener.normalizeSql(
+                "select *\n  from \"Host\"\n where repo_id in (?, ?,?, ?)"))
+        .isEqualTo("select * from \"Host\" where repo_id in (?, ...)");
+  }
+
+  @Test
+  void testNormalizeSql_truncatesLongStatements() {
+    String normalized =
+        SqlStatementListener.normalizeSql(
+            "select " + Strings.repeat("a", 3000) + " from \"Domain\"");
+    assertThat(normalized).hasLength(2003);
+    assertThat(normalized).endsWith("...");
+  }
+
+  @Test
+  void testNormalizeSql_unknown() {
+    assertThat(SqlStatementListener.normalizeSql(null)).isEqualTo("<unknown>");
+  }
+}
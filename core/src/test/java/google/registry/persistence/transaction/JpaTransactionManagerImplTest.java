@@ -16,12 +16,18 @@ package google.registry.persistence.transaction;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.testing.DatabaseHelper.assertDetached;
+import static google.registry.testing.SqlHelper.countSqlStatements;
 import static google.registry.testing.TestDataHelper.fileClassPath;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.AdditionalAnswers.delegatesTo;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -37,14 +43,18 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.sql.SQLException;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.Id;
 import javax.persistence.IdClass;
 import javax.persistence.OptimisticLockException;
 import javax.persistence.RollbackException;
 import org.hibernate.exception.JDBCConnectionException;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
@@ -243,6 +253,75 @@ class JpaTransactionManagerImplTest {
     verify(spyJpaTm, times(6)).loadByKey(theEntityKey);
   }
 
+  @Test
+  void transactNewReadOnly_isReadOnly() {
+    assertThat(
+            jpaTm()
+                .transactNewReadOnly(
+                    () ->
+                        jpaTm()
+                            .getEntityManager()
+                            .createNativeQuery("SHOW transaction_read_only")
+                            .getSingleResult()))
+        .isEqualTo("on");
+  }
+
+  @Test
+  void transactNewReadOnly_inTransaction_usesEnclosingTransaction() {
+    jpaTm().transact(() -> jpaTm().transactNewReadOnly(() -> jpaTm().insert(theEntity)));
+    assertThat(jpaTm().transact(() -> jpaTm().loadByKey(theEntityKey))).isEqualTo(theEntity);
+  }
+
+  @Test
+  void transactNewReadOnly_usesReplica() {
+    EntityManagerFactory primary = getEntityManagerFactory();
+    EntityManagerFactory replica = mock(EntityManagerFactory.class, delegatesTo(primary));
+    JpaTransactionManagerImpl tm =
+        new JpaTransactionManagerImpl(primary, Optional.of(replica), fakeClock);
+    assertThat(tm.getReplicaLag()).hasValue(Duration.ZERO);
+    jpaTm().transact(() -> jpaTm().insert(theEntity));
+    assertThat(tm.transactNewReadOnly(() -> tm.loadByKey(theEntityKey), Duration.ZERO))
+        .isEqualTo(theEntity);
+    // Once to measure the replication lag, once for the transaction.
+    verify(replica, times(2)).createEntityManager();
+    tm.transact(() -> tm.loadByKey(theEntityKey));
+    verify(replica, times(2)).createEntityManager();
+  }
+
+  @Test
+  void transactNewReadOnly_replicaTooStale_usesPrimary() {
+    EntityManagerFactory primary = getEntityManagerFactory();
+    EntityManagerFactory replica = mock(EntityManagerFactory.class, delegatesTo(primary));
+    JpaTransactionManagerImpl tm =
+        spy(new JpaTransactionManagerImpl(primary, Optional.of(replica), fakeClock));
+    doReturn(Optional.of(Duration.standardMinutes(1))).when(tm).getReplicaLag();
+    jpaTm().transact(() -> jpaTm().insert(theEntity));
+    assertThat(
+            tm.transactNewReadOnly(() -> tm.loadByKey(theEntityKey), Duration.standardSeconds(10)))
+        .isEqualTo(theEntity);
+    assertThat(
+            tm.transactNewReadOnly(() -> tm.loadByKey(theEntityKey), Duration.standardMinutes(5)))
+        .isEqualTo(theEntity);
+    verify(replica, times(1)).createEntityManager();
+  }
+
+  @Test
+  void doTransactionless_doesNotUseReplica() {
+    EntityManagerFactory primary = getEntityManagerFactory();
+    EntityManagerFactory replica = mock(EntityManagerFactory.class, delegatesTo(primary));
+    JpaTransactionManagerImpl tm =
+        new JpaTransactionManagerImpl(primary, Optional.of(replica), fakeClock);
+    jpaTm().transact(() -> jpaTm().insert(theEntity));
+    assertThat(tm.doTransactionless(() -> tm.loadByKey(theEntityKey))).isEqualTo(theEntity);
+    verify(replica, never()).createEntityManager();
+  }
+
+  @Test
+  void getReplicaLag_noReplica_isEmpty() {
+    assertThat(new JpaTransactionManagerImpl(getEntityManagerFactory(), fakeClock).getReplicaLag())
+        .isEmpty();
+  }
+
   @Test
   void doTransactionless_retriesJdbcConnectionExceptions() {
     JpaTransactionManager spyJpaTm = spy(jpaTm());
@@ -254,6 +333,10 @@ class JpaTransactionManagerImplTest {
     verify(spyJpaTm, times(3)).loadByKey(theEntityKey);
   }
 
+  private static EntityManagerFactory getEntityManagerFactory() {
+    return jpaTm().transact(() -> jpaTm().getEntityManager().getEntityManagerFactory());
+  }
+
   @Test
   void insert_throwsExceptionIfEntityExists() {
     assertThat(jpaTm().transact(() -> jpaTm().exists(theEntity))).isFalse();
@@ -482,6 +565,73 @@ class JpaTransactionManagerImplTest {
             });
   }
 
+  @Test
+  void loadByKeysIfPresent_usesOneQueryPerKind() {
+    jpaTm().transact(() -> jpaTm().insertAll(moreEntities));
+    jpaTm().transact(() -> jpaTm().insert(compoundIdEntity));
+    ImmutableList<VKey<? extends ImmutableObject>> keys =
+        ImmutableList.of(
+            VKey.createSql(TestEntity.class, "entity1"),
+            compoundIdEntityKey,
+            VKey.createSql(TestEntity.class, "entity2"),
+            VKey.createSql(TestEntity.class, "does-not-exist"),
+            VKey.createSql(TestEntity.class, "entity3"));
+    assertThat(
+            countSqlStatements(
+                () ->
+                    jpaTm()
+                        .transact(
+                            () -> {
+                              ImmutableMap<VKey<? extends ImmutableObject>, ImmutableObject>
+                                  results = jpaTm().loadByKeysIfPresent(keys);
+                              assertThat(results.values())
+                                  .containsExactly(
+                                      moreEntities.get(0),
+                                      compoundIdEntity,
+                                      moreEntities.get(1),
+                                      moreEntities.get(2))
+                                  .inOrder();
+                              results.values().forEach(DatabaseHelper::assertDetached);
+                            })))
+        .isEqualTo(2);
+  }
+
+  @Test
+  void loadByKeysIfPresent_batchesLargeNumbersOfKeys() {
+    ImmutableList<VKey<TestEntity>> keys =
+        IntStream.range(0, 2 * JpaTransactionManagerImpl.MULTI_LOAD_BATCH_SIZE + 1)
+            .mapToObj(i -> VKey.createSql(TestEntity.class, "entity" + i))
+            .collect(toImmutableList());
+    jpaTm().transact(() -> jpaTm().insertAll(moreEntities));
+    assertThat(
+            countSqlStatements(
+                () ->
+                    assertThat(jpaTm().transact(() -> jpaTm().loadByKeysIfPresent(keys)))
+                        .hasSize(3)))
+        .isEqualTo(3);
+  }
+
+  @Test
+  void loadByEntitiesIfPresent_usesOneQuery() {
+    jpaTm().transact(() -> jpaTm().insertAll(moreEntities));
+    assertThat(
+            countSqlStatements(
+                () ->
+                    assertThat(
+                            jpaTm()
+                                .transact(
+                                    () ->
+                                        jpaTm()
+                                            .loadByEntitiesIfPresent(
+                                                ImmutableList.of(
+                                                    moreEntities.get(2),
+                                                    new TestEntity("does-not-exist", "bar"),
+                                                    moreEntities.get(0)))))
+                        .containsExactly(moreEntities.get(2), moreEntities.get(0))
+                        .inOrder()))
+        .isEqualTo(1);
+  }
+
   @Test
   void loadByEntities_succeeds() {
     jpaTm().transact(() -> jpaTm().insert(theEntity));
@@ -0,0 +1,143 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence.transaction;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.ImmutableObjectSubject.immutableObjectCorrespondence;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static google.registry.testing.DatabaseHelper.newContactResource;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.persistence.transaction.JpaTestRules.JpaIntegrationTestExtension;
+import google.registry.testing.AppEngineExtension;
+import google.registry.testing.DatastoreEntityExtension;
+import google.registry.testing.FakeClock;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link PostgresCopyWriter}. */
+class PostgresCopyWriterTest {
+
+  private final FakeClock fakeClock = new FakeClock(DateTime.parse("2000-01-01T00:00:00.0Z"));
+
+  @RegisterExtension
+  @Order(Order.DEFAULT - 1)
+  final DatastoreEntityExtension datastore = new DatastoreEntityExtension();
+
+  @RegisterExtension
+  final JpaIntegrationTestExtension database =
+      new JpaTestRules.Builder().withClock(fakeClock).buildIntegrationTestRule();
+
+  @BeforeEach
+  void beforeEach() {
+    // Required for the contacts created below.
+    jpaTm().transact(() -> jpaTm().put(AppEngineExtension.makeRegistrar2()));
+  }
+
+  @Test
+  void isSupported() {
+    jpaTm()
+        .transact(
+            () -> {
+              assertThat(PostgresCopyWriter.isSupported(ContactResource.class)).isTrue();
+              // Grace periods and DS data are stored in their own tables.
+              assertThat(PostgresCopyWriter.isSupported(DomainBase.class)).isFalse();
+            });
+  }
+
+  @Test
+  void write_insertsAndUpdates() {
+    ContactResource existing = newContactResource("contact_0");
+    jpaTm().transact(() -> jpaTm().put(existing));
+    ContactResource updated =
+        existing.asBuilder().setEmailAddress("tab\tnewline\nback\\slash@example.tld").build();
+    ContactResource added = newContactResource("contact_1");
+
+    jpaTm()
+        .transact(
+            () ->
+                PostgresCopyWriter.write(ContactResource.class, ImmutableList.of(updated, added)));
+
+    assertThat(jpaTm().transact(() -> jpaTm().loadAllOf(ContactResource.class)))
+        .comparingElementsUsing(immutableObjectCorrespondence("updateTimestamp"))
+        .containsExactly(updated, added);
+  }
+
+  @Test
+  void write_setsUpdateTimestamp() {
+    ContactResource contact = newContactResource("contact_0");
+    fakeClock.advanceOneMilli();
+
+    jpaTm()
+        .transact(() -> PostgresCopyWriter.write(ContactResource.class, ImmutableList.of(contact)));
+
+    assertThat(
+            jpaTm()
+                .transact(() -> jpaTm().loadByKey(contact.createVKey()))
+                .getUpdateTimestamp()
+                .getTimestamp())
+        .isEqualTo(fakeClock.nowUtc());
+  }
+
+  @Test
+  void insertIfAbsent_skipsExisting() {
+    ContactResource existing = newContactResource("contact_0");
+    jpaTm().transact(() -> jpaTm().put(existing));
+    ContactResource conflicting =
+        existing.asBuilder().setEmailAddress("conflicting@example.tld").build();
+    ContactResource added = newContactResource("contact_1");
+
+    assertThat(
+            jpaTm()
+                .transact(
+                    () ->
+                        PostgresCopyWriter.insertIfAbsent(
+                            ContactResource.class, ImmutableList.of(conflicting, added))))
+        .containsExactly(added.getRepoId());
+
+    assertThat(jpaTm().transact(() -> jpaTm().loadAllOf(ContactResource.class)))
+        .comparingElementsUsing(immutableObjectCorrespondence("updateTimestamp"))
+        .containsExactly(existing, added);
+  }
+
+  @Test
+  void write_unsupportedClass_throws() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                jpaTm()
+                    .transact(
+                        () -> PostgresCopyWriter.write(DomainBase.class, ImmutableList.of())));
+    assertThat(thrown).hasMessageThat().contains("cannot be written with COPY");
+  }
+
+  @Test
+  void formatValue() {
+    assertThat(PostgresCopyWriter.formatValue(null)).isEqualTo("\\N");
+    assertThat(PostgresCopyWriter.formatValue(true)).isEqualTo("t");
+    assertThat(PostgresCopyWriter.formatValue(false)).isEqualTo("f");
+    assertThat(PostgresCopyWriter.formatValue(42L)).isEqualTo("42");
+    assertThat(PostgresCopyWriter.formatValue("a\tb\nc\rd\\e")).isEqualTo("a\\tb\\nc\\rd\\\\e");
+    assertThat(PostgresCopyWriter.formatValue(new byte[] {0x0a, (byte) 0xff}))
+        .isEqualTo("\\\\x0aff");
+  }
+}
@@ -0,0 +1,186 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.ofy.ObjectifyService.auditedOfy;
+import static google.registry.model.rde.RdeMode.FULL;
+import static google.registry.model.rde.RdeMode.THIN;
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
+import static google.registry.testing.DatabaseHelper.createTld;
+import static google.registry.testing.TaskQueueHelper.assertNoTasksEnqueued;
+import static google.registry.testing.TaskQueueHelper.assertTasksEnqueued;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.api.services.dataflow.Dataflow;
+import com.google.api.services.dataflow.Dataflow.Projects;
+import com.google.api.services.dataflow.Dataflow.Projects.Locations;
+import com.google.api.services.dataflow.Dataflow.Projects.Locations.Jobs;
+import com.google.api.services.dataflow.Dataflow.Projects.Locations.Jobs.Get;
+import com.google.api.services.dataflow.model.Job;
+import com.google.common.collect.ImmutableSetMultimap;
+import google.registry.model.common.Cursor;
+import google.registry.model.common.Cursor.CursorType;
+import google.registry.model.rde.RdeMode;
+import google.registry.model.rde.RdeRevision;
+import google.registry.model.registry.Registry;
+import google.registry.testing.AppEngineExtension;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeResponse;
+import google.registry.testing.FakeSleeper;
+import google.registry.testing.TaskQueueHelper.TaskMatcher;
+import google.registry.util.Retrier;
+import google.registry.util.TaskQueueUtils;
+import java.io.IOException;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link PublishRdeDepositsAction}. */
+class PublishRdeDepositsActionTest {
+
+  private static final DateTime now = DateTime.parse("2000-01-01TZ");
+
+  private final Dataflow dataflow = mock(Dataflow.class);
+  private final Projects projects = mock(Projects.class);
+  private final Locations locations = mock(Locations.class);
+  private final Jobs jobs = mock(Jobs.class);
+  private final Get get = mock(Get.class);
+  private final Job expectedJob = new Job();
+  private final FakeResponse response = new FakeResponse();
+
+  @RegisterExtension
+  final AppEngineExtension appEngine =
+      AppEngineExtension.builder().withDatastoreAndCloudSql().withTaskQueue().build();
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    when(dataflow.projects()).thenReturn(projects);
+    when(projects.locations()).thenReturn(locations);
+    when(locations.jobs()).thenReturn(jobs);
+    when(jobs.get("test-project", "test-region", "12345")).thenReturn(get);
+    when(get.execute()).thenReturn(expectedJob);
+
+    createTld("soy");
+    tm().transact(
+            () -> {
+              tm().put(Cursor.create(CursorType.BRDA, now, Registry.get("soy")));
+              tm().put(Cursor.create(CursorType.RDE_STAGING, now, Registry.get("soy")));
+            });
+  }
+
+  private PublishRdeDepositsAction createAction(PendingDeposit... pendings) {
+    ImmutableSetMultimap.Builder<String, PendingDeposit> builder =
+        new ImmutableSetMultimap.Builder<>();
+    for (PendingDeposit pending : pendings) {
+      builder.put(pending.tld(), pending);
+    }
+    return new PublishRdeDepositsAction(
+        "test-project",
+        "test-region",
+        "12345",
+        builder.build(),
+        dataflow,
+        new TaskQueueUtils(new Retrier(new FakeSleeper(new FakeClock()), 1)),
+        response);
+  }
+
+  @Test
+  void testJobDone_rollsCursorsAndEnqueuesTasks() {
+    expectedJob.setCurrentState("JOB_STATE_DONE");
+    createAction(
+            PendingDeposit.create(
+                    "soy", now, FULL, CursorType.RDE_STAGING, Duration.standardDays(1))
+                .withRevision(0),
+            PendingDeposit.create("soy", now, THIN, CursorType.BRDA, Duration.standardDays(1))
+                .withRevision(0))
+        .run();
+    assertThat(response.getStatus()).isEqualTo(SC_OK);
+    assertThat(loadCursorTime(CursorType.RDE_STAGING))
+        .isEquivalentAccordingToCompareTo(now.plusDays(1));
+    assertThat(loadCursorTime(CursorType.BRDA)).isEquivalentAccordingToCompareTo(now.plusDays(1));
+    assertThat(loadRevision(FULL)).isEqualTo(0);
+    assertThat(loadRevision(THIN)).isEqualTo(0);
+    assertTasksEnqueued(
+        "rde-upload", new TaskMatcher().url(RdeUploadAction.PATH).param("tld", "soy"));
+    assertTasksEnqueued(
+        "brda",
+        new TaskMatcher()
+            .url(BrdaCopyAction.PATH)
+            .param("tld", "soy")
+            .param("watermark", now.toString()));
+  }
+
+  @Test
+  void testJobDone_manualOperation_doesNothing() {
+    expectedJob.setCurrentState("JOB_STATE_DONE");
+    createAction(PendingDeposit.createInManualOperation("soy", now, FULL, "manual/", 0)).run();
+    assertThat(response.getStatus()).isEqualTo(SC_OK);
+    assertThat(loadCursorTime(CursorType.RDE_STAGING)).isEquivalentAccordingToCompareTo(now);
+    assertNoTasksEnqueued("rde-upload");
+  }
+
+  @Test
+  void testJobFailed_doesNotRollCursors() {
+    expectedJob.setCurrentState("JOB_STATE_FAILED");
+    createAction(
+            PendingDeposit.create(
+                    "soy", now, FULL, CursorType.RDE_STAGING, Duration.standardDays(1))
+                .withRevision(0))
+        .run();
+    assertThat(response.getStatus()).isEqualTo(SC_NO_CONTENT);
+    assertThat(loadCursorTime(CursorType.RDE_STAGING)).isEquivalentAccordingToCompareTo(now);
+    assertNoTasksEnqueued("rde-upload");
+  }
+
+  @Test
+  void testJobIndeterminate_returnsRetriableResponse() {
+    expectedJob.setCurrentState("JOB_STATE_RUNNING");
+    createAction().run();
+    assertThat(response.getStatus()).isEqualTo(SC_NOT_MODIFIED);
+  }
+
+  @Test
+  void testIOException_returnsFailureMessage() throws IOException {
+    when(get.execute()).thenThrow(new IOException("expected"));
+    createAction().run();
+    assertThat(response.getStatus()).isEqualTo(SC_INTERNAL_SERVER_ERROR);
+    assertThat(response.getPayload()).isEqualTo("Failed to get job state: expected");
+  }
+
+  private static DateTime loadCursorTime(CursorType type) {
+    return auditedOfy()
+        .load()
+        .key(Cursor.createKey(type, Registry.get("soy")))
+        .now()
+        .getCursorTime();
+  }
+
+  private static int loadRevision(RdeMode mode) {
+    return auditedOfy()
+        .load()
+        .type(RdeRevision.class)
+        .id("soy_2000-01-01_" + mode.getFilenameComponent())
+        .now()
+        .getRevision();
+  }
+}
@@ -16,10 +16,17 @@ package google.registry.rde;
 
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.testing.DatabaseHelper.loadRegistrar;
+import static google.registry.xml.ValidationMode.LENIENT;
 import static google.registry.xml.ValidationMode.STRICT;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import google.registry.testing.AppEngineExtension;
+import google.registry.xjc.XjcXmlTransformer;
+import google.registry.xjc.rdeidn.XjcRdeIdn;
+import google.registry.xjc.rdeidn.XjcRdeIdnElement;
+import google.registry.xjc.rderegistrar.XjcRdeRegistrarElement;
 import google.registry.xml.XmlTestUtils;
+import javax.xml.bind.MarshalException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
@@ -83,4 +90,42 @@ public class RdeMarshallerTest {
         new RdeMarshaller(STRICT).marshalRegistrar(loadRegistrar("TheRegistrar"));
     assertThat(fragment.xml()).contains("123 Example Bőulevard");
   }
+
+  @Test
+  void testMarshal_streamedFragment_sameAsLenientMarshaller() throws Exception {
+    XjcRdeRegistrarElement element =
+        RegistrarToXjcConverter.convert(loadRegistrar("TheRegistrar"));
+    assertThat(new RdeMarshaller(STRICT).marshal(element))
+        .isEqualTo(XjcXmlTransformer.get().createFragmentMarshaller().marshalLenient(element));
+  }
+
+  @Test
+  void testMarshal_invalidElement_throws() {
+    assertThrows(
+        MarshalException.class, () -> new RdeMarshaller(STRICT).marshal(makeInvalidIdnElement()));
+  }
+
+  @Test
+  void testMarshal_invalidElementNotSampled_isNotValidated() throws Exception {
+    assertThat(new RdeMarshaller(STRICT, 0).marshal(makeInvalidIdnElement()))
+        .isEqualTo("\n<rdeIDN:idnTableRef id=\"latin\"/>\n");
+  }
+
+  @Test
+  void testMarshal_invalidElementLenient_isNotValidated() throws Exception {
+    assertThat(new RdeMarshaller(LENIENT).marshal(makeInvalidIdnElement()))
+        .isEqualTo("\n<rdeIDN:idnTableRef id=\"latin\"/>\n");
+  }
+
+  @Test
+  void testConstructor_invalidSampleRate_throws() {
+    assertThrows(IllegalArgumentException.class, () -> new RdeMarshaller(STRICT, 1.5));
+  }
+
+  /** Returns an IDN table reference without the URLs that the schema requires. */
+  private static XjcRdeIdnElement makeInvalidIdnElement() {
+    XjcRdeIdn bean = new XjcRdeIdn();
+    bean.setId("latin");
+    return new XjcRdeIdnElement(bean);
+  }
 }
@@ -0,0 +1,71 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link RdeStageMeter}. */
+class RdeStageMeterTest {
+
+  @Test
+  void testInputStream_countsBytes() throws Exception {
+    RdeStageMeter meter = RdeStageMeter.create("read");
+    try (InputStream input = meter.meter(new ByteArrayInputStream(new byte[12345]))) {
+      ByteStreams.exhaust(input);
+    }
+    assertThat(meter.getBytes()).isEqualTo(12345);
+    assertThat(meter.toString()).startsWith("read: 12,345 bytes in ");
+  }
+
+  @Test
+  void testOutputStream_excludesInnerStage() throws Exception {
+    RdeStageMeter writeMeter = RdeStageMeter.create("write");
+    RdeStageMeter encodeMeter = RdeStageMeter.wrapping("encode", writeMeter);
+    OutputStream slowOutput =
+        new FilterOutputStream(new ByteArrayOutputStream()) {
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            sleep(20);
+            out.write(b, off, len);
+          }
+        };
+    try (OutputStream inner = writeMeter.meter(slowOutput);
+        OutputStream outer = encodeMeter.meter(inner)) {
+      outer.write(new byte[100], 0, 100);
+    }
+    assertThat(encodeMeter.getBytes()).isEqualTo(100);
+    assertThat(writeMeter.getBytes()).isEqualTo(100);
+    // The encoding stage does nothing itself, so it isn't charged for the slow write.
+    assertThat(writeMeter.getNanos()).isAtLeast(20_000_000L);
+    assertThat(encodeMeter.getNanos()).isLessThan(writeMeter.getNanos());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -128,6 +128,7 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
     action.clock = clock;
     action.mrRunner = makeDefaultRunner();
     action.lenient = false;
+    action.validationSampleRate = 1.0;
     action.reducerFactory = new RdeStagingReducer.Factory();
     action.reducerFactory.taskQueueUtils = new TaskQueueUtils(new Retrier(new SystemSleeper(), 1));
     action.reducerFactory.lockHandler = new FakeLockHandler(true);
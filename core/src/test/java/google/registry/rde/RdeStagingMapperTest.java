@@ -80,7 +80,8 @@ class RdeStagingMapperTest {
                             monitoringRegistrar.asBuilder().setState(State.ACTIVE).build())));
 
     rdeStagingMapper =
-        new RdeStagingMapper(ValidationMode.STRICT, ImmutableSetMultimap.of("1", pendingDeposit));
+        new RdeStagingMapper(
+            ValidationMode.STRICT, 1.0, ImmutableSetMultimap.of("1", pendingDeposit));
     rdeStagingMapper.setContext(context);
   }
 
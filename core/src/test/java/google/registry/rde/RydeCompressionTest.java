@@ -22,11 +22,21 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 /** Unit tests for {@link RydeCompression} */
 final class RydeCompressionTest {
 
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterEach
+  void afterEach() {
+    executor.shutdownNow();
+  }
+
   @Test
   void testCompression_decompression() throws Exception {
     byte[] expected = "Testing 1, 2, 3".getBytes(UTF_8);
@@ -42,4 +52,52 @@ final class RydeCompressionTest {
       assertThat(ByteStreams.toByteArray(decompressor)).isEqualTo(expected);
     }
   }
+
+  @Test
+  void testParallelCompression_decompression() throws Exception {
+    byte[] expected = makeDeposit();
+    assertThat(decompress(compressInParallel(expected))).isEqualTo(expected);
+  }
+
+  @Test
+  void testParallelCompression_empty() throws Exception {
+    assertThat(decompress(compressInParallel(new byte[0]))).isEmpty();
+  }
+
+  @Test
+  void testParallelCompression_ratioCloseToSerial() throws Exception {
+    byte[] data = makeDeposit();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (OutputStream compressor = RydeCompression.openCompressor(output)) {
+      compressor.write(data);
+    }
+    assertThat((double) compressInParallel(data).length).isAtMost(output.size() * 1.01);
+  }
+
+  /** Returns data that spans several compression blocks, and ends in the middle of one. */
+  private static byte[] makeDeposit() {
+    StringBuilder deposit = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      deposit.append(String.format("<rdeDomain:name>domain%d.tld</rdeDomain:name>\n", i));
+    }
+    return deposit.toString().getBytes(UTF_8);
+  }
+
+  private byte[] compressInParallel(byte[] data) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (OutputStream compressor = RydeCompression.openParallelCompressor(output, executor, 4)) {
+      // Written in odd-sized chunks, so that writes straddle block boundaries.
+      for (int offset = 0; offset < data.length; offset += 7777) {
+        compressor.write(data, offset, Math.min(7777, data.length - offset));
+      }
+    }
+    return output.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] compressed) throws Exception {
+    try (InputStream decompressor =
+        RydeCompression.openDecompressor(new ByteArrayInputStream(compressed))) {
+      return ByteStreams.toByteArray(decompressor);
+    }
+  }
 }
@@ -35,6 +35,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 import org.bouncycastle.openpgp.PGPKeyPair;
 import org.bouncycastle.openpgp.PGPPublicKey;
@@ -65,6 +67,8 @@ public class RydeGpgIntegrationTest {
       ImmutableList.of(
           "(◕‿◕)",
           Strings.repeat("Fanatics have their dreams, wherewith they weave\n", 1000),
+          // Spans several blocks of the parallel compressor.
+          Strings.repeat("A paradise for a sect; the savage too\n", 100000),
           "\0yolo",
           "");
 
@@ -72,7 +76,8 @@ public class RydeGpgIntegrationTest {
     Stream.Builder<Arguments> stream = Stream.builder();
     for (String command : COMMANDS) {
       for (String content : CONTENTS) {
-        stream.add(Arguments.of(command, content));
+        stream.add(Arguments.of(command, content, false));
+        stream.add(Arguments.of(command, content, true));
       }
     }
     return stream.build();
@@ -80,7 +85,7 @@ public class RydeGpgIntegrationTest {
 
   @ParameterizedTest
   @MethodSource("provideTestCombinations")
-  void test(String command, String content) throws Exception {
+  void test(String command, String content, boolean parallelCompression) throws Exception {
     final String filename = "sloth";
     assumeTrue(hasCommand("tar"));
     assumeTrue(hasCommand(command + " --version"));
@@ -96,15 +101,22 @@ public class RydeGpgIntegrationTest {
     File xmlFile = new File(home, filename + ".xml");
     byte[] data = content.getBytes(UTF_8);
 
+    RydeEncoder.Builder rydeEncoderBuilder = new RydeEncoder.Builder();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    if (parallelCompression) {
+      rydeEncoderBuilder.setCompressionExecutor(executor, 4);
+    }
     try (OutputStream rydeOut = new FileOutputStream(rydeFile);
         OutputStream sigOut = new FileOutputStream(sigFile);
         RydeEncoder rydeEncoder =
-            new RydeEncoder.Builder()
+            rydeEncoderBuilder
                 .setRydeOutput(rydeOut, receiverKey)
                 .setSignatureOutput(sigOut, signingKey)
                 .setFileMetadata(filename, data.length, modified)
                 .build()) {
       rydeEncoder.write(data);
+    } finally {
+      executor.shutdownNow();
     }
 
     // Iron Mountain examines the ryde file to see what sort of OpenPGP layers it contains.
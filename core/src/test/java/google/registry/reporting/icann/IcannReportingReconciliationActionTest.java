@@ -0,0 +1,178 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.reporting.icann;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.reporting.DomainTransactionRecord.TransactionReportField.NET_ADDS_1_YR;
+import static google.registry.testing.DatabaseHelper.createTld;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import google.registry.config.RegistryConfig;
+import google.registry.model.domain.DomainHistory;
+import google.registry.model.reporting.DomainTransactionRecord;
+import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.IcannReportingCounterDao;
+import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
+import google.registry.reporting.icann.IcannReportingModule.ReportType;
+import google.registry.testing.AppEngineExtension;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeResponse;
+import google.registry.testing.FakeSleeper;
+import google.registry.util.EmailMessage;
+import google.registry.util.Retrier;
+import google.registry.util.SendEmailService;
+import java.util.Optional;
+import javax.mail.internet.InternetAddress;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link IcannReportingReconciliationAction}. */
+class IcannReportingReconciliationActionTest {
+
+  private static final YearMonth YEAR_MONTH = new YearMonth(2017, 6);
+  private static final DateTime REPORT_TIME = DateTime.parse("2017-06-15T12:00:00Z");
+
+  private final FakeResponse response = new FakeResponse();
+  private final IcannReportingStager stager = mock(IcannReportingStager.class);
+  private final SendEmailService emailService = mock(SendEmailService.class);
+  private IcannReportingReconciliationAction action;
+
+  @RegisterExtension
+  final AppEngineExtension appEngine =
+      AppEngineExtension.builder().withDatastoreAndCloudSql().build();
+
+  @BeforeEach
+  void beforeEach() throws Exception {
+    RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(true);
+    createTld("tld");
+    action = new IcannReportingReconciliationAction();
+    action.yearMonthOptional = Optional.empty();
+    action.date = new LocalDate(2017, 7, 1);
+    action.stager = stager;
+    action.retrier = new Retrier(new FakeSleeper(new FakeClock()), 3);
+    action.response = response;
+    action.sender = new InternetAddress("sender@example.com");
+    action.recipient = new InternetAddress("recipient@example.com");
+    action.emailService = emailService;
+
+    when(stager.queryReport(YEAR_MONTH, ReportType.ACTIVITY))
+        .thenReturn(
+            new ImmutableTable.Builder<Integer, TableFieldSchema, Object>()
+                .put(1, new TableFieldSchema().setName("tld"), "tld")
+                .put(1, new TableFieldSchema().setName("whois_43_queries"), "10")
+                .put(1, new TableFieldSchema().setName("srs_dom_create"), "1")
+                .put(1, new TableFieldSchema().setName("srs_host_create"), "2")
+                .build());
+    when(stager.queryReport(YEAR_MONTH, ReportType.TRANSACTIONS))
+        .thenReturn(
+            new ImmutableTable.Builder<Integer, TableFieldSchema, Object>()
+                .put(1, new TableFieldSchema().setName("tld"), "tld")
+                .put(1, new TableFieldSchema().setName("registrar_name"), "\"The Registrar\"")
+                .put(1, new TableFieldSchema().setName("iana_id"), "8")
+                .put(1, new TableFieldSchema().setName("total_domains"), "5")
+                .put(1, new TableFieldSchema().setName("net_adds_1_yr"), "1")
+                .put(1, new TableFieldSchema().setName("attempted_adds"), "1")
+                .build());
+
+    IcannReportingCounterDao.recordActivity(
+        "TheRegistrar",
+        ActivityReportField.DOMAIN_CREATE,
+        true,
+        ImmutableSet.of("tld"),
+        REPORT_TIME);
+    IcannReportingCounterDao.recordActivity(
+        "TheRegistrar", ActivityReportField.HOST_CREATE, false, ImmutableSet.of(), REPORT_TIME);
+    IcannReportingCounterDao.recordActivity(
+        "NewRegistrar", ActivityReportField.HOST_CREATE, false, ImmutableSet.of(), REPORT_TIME);
+    recordNetAdd();
+  }
+
+  @AfterEach
+  void afterEach() {
+    RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(false);
+  }
+
+  private static void recordNetAdd() {
+    IcannReportingCounterDao.recordTransactions(
+        new DomainHistory.Builder()
+            .setType(HistoryEntry.Type.DOMAIN_CREATE)
+            .setModificationTime(REPORT_TIME)
+            .setClientId("TheRegistrar")
+            .setDomainTransactionRecords(
+                ImmutableSet.of(
+                    DomainTransactionRecord.create("tld", REPORT_TIME, NET_ADDS_1_YR, 1)))
+            .build());
+  }
+
+  @Test
+  void testRun_countersMatch() {
+    action.run();
+    assertThat(response.getStatus()).isEqualTo(SC_OK);
+    assertThat(response.getPayload())
+        .isEqualTo("ICANN report counters for 2017-06 match BigQuery.");
+    verify(emailService, never()).sendEmail(any());
+  }
+
+  @Test
+  void testRun_countersDiffer_emailsPastMonth() throws Exception {
+    recordNetAdd();
+    action.run();
+    String expectedSummary =
+        "Found 1 differences between ICANN report counters and BigQuery for 2017-06:\n"
+            + "transactions tld \"The Registrar\" net_adds_1_yr: BigQuery 1, counters 2";
+    assertThat(response.getStatus()).isEqualTo(SC_OK);
+    assertThat(response.getPayload()).isEqualTo(expectedSummary);
+    verify(emailService)
+        .sendEmail(
+            EmailMessage.create(
+                "ICANN report counter reconciliation [MISMATCH]",
+                expectedSummary,
+                new InternetAddress("recipient@example.com"),
+                new InternetAddress("sender@example.com")));
+  }
+
+  @Test
+  void testRun_countersDisabled_doesNothing() {
+    RegistryConfig.overrideCloudSqlIcannReportingCountersEnabled(false);
+    action.run();
+    assertThat(response.getStatus()).isEqualTo(SC_OK);
+    assertThat(response.getPayload()).isEqualTo("ICANN report counters are disabled.");
+    verifyNoInteractions(stager);
+    verify(emailService, never()).sendEmail(any());
+  }
+
+  @Test
+  void testRun_countersDiffer_doesNotEmailCurrentMonth() {
+    recordNetAdd();
+    action.date = new LocalDate(2017, 6, 20);
+    action.run();
+    assertThat(response.getPayload()).startsWith("Found 1 differences");
+    verify(emailService, never()).sendEmail(any());
+  }
+}
@@ -247,6 +247,7 @@ public final class RequestHandlerTest {
   private void assertMetric(
       String path, Action.Method method, AuthLevel authLevel, boolean success) {
     verify(requestMetrics).record(any(), eq(path), eq(method), eq(authLevel), eq(success));
+    verify(requestMetrics).recordDatabaseUsage(eq(path), any());
   }
 
   @Test
@@ -16,6 +16,8 @@ package google.registry.schema.integration;
 
 import static com.google.common.truth.Truth.assert_;
 
+import google.registry.dns.SqlDnsQueueTest;
+import google.registry.model.OteStatsTest;
 import google.registry.model.billing.BillingEventTest;
 import google.registry.model.common.CursorTest;
 import google.registry.model.contact.ContactResourceTest;
@@ -29,6 +31,7 @@ import google.registry.model.rde.RdeRevisionTest;
 import google.registry.model.registry.RegistryLockDaoTest;
 import google.registry.model.registry.RegistryTest;
 import google.registry.model.registry.label.ReservedListDaoTest;
+import google.registry.model.reporting.IcannReportingCounterDaoTest;
 import google.registry.model.reporting.Spec11ThreatMatchTest;
 import google.registry.model.server.KmsSecretRevisionSqlDaoTest;
 import google.registry.model.server.LockTest;
@@ -89,8 +92,10 @@ import org.junit.runner.RunWith;
   DomainBaseSqlTest.class,
   DomainHistoryTest.class,
   HostHistoryTest.class,
+  IcannReportingCounterDaoTest.class,
   KmsSecretRevisionSqlDaoTest.class,
   LockTest.class,
+  OteStatsTest.class,
   PollMessageTest.class,
   PremiumListDaoTest.class,
   RdeRevisionTest.class,
@@ -101,6 +106,7 @@ import org.junit.runner.RunWith;
   ServerSecretTest.class,
   SignedMarkRevocationListDaoTest.class,
   Spec11ThreatMatchTest.class,
+  SqlDnsQueueTest.class,
   SqlReplayCheckpointTest.class,
   TmchCrlTest.class,
   // AfterSuiteTest must be the last entry. See class javadoc for details.
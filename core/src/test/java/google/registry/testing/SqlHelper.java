@@ -23,6 +23,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import google.registry.model.registrar.Registrar;
 import google.registry.model.registry.RegistryLockDao;
+import google.registry.monitoring.whitebox.RequestTrace;
 import google.registry.schema.domain.RegistryLock;
 import java.sql.SQLException;
 import java.util.Optional;
@@ -74,5 +75,17 @@ public class SqlHelper {
         .contains("violates foreign key constraint");
   }
 
+  /**
+   * Runs {@code work} and returns the number of SQL statements it executed.
+   *
+   * <p>A JDBC batch counts as a single statement, as it is sent to the database in one round trip.
+   */
+  public static int countSqlStatements(Runnable work) {
+    try (RequestTrace trace = RequestTrace.start()) {
+      work.run();
+      return trace.getStatements();
+    }
+  }
+
   private SqlHelper() {}
 }
@@ -0,0 +1,92 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tldconfig.idn;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link CodepointSet}. */
+class CodepointSetTest {
+
+  @Test
+  void testEmpty() {
+    CodepointSet set = CodepointSet.copyOf(ImmutableList.of());
+    assertThat(set.size()).isEqualTo(0);
+    assertThat(set.contains(0)).isFalse();
+    assertThat(set.contains('a')).isFalse();
+    assertThat(set.contains(Character.MAX_CODE_POINT)).isFalse();
+  }
+
+  @Test
+  void testBoundaries() {
+    CodepointSet set =
+        CodepointSet.copyOf(
+            ImmutableList.of(0, 63, 64, 255, 256, 0x10000, Character.MAX_CODE_POINT));
+    assertThat(set.size()).isEqualTo(7);
+    assertThat(set.contains(0)).isTrue();
+    assertThat(set.contains(1)).isFalse();
+    assertThat(set.contains(63)).isTrue();
+    assertThat(set.contains(64)).isTrue();
+    assertThat(set.contains(65)).isFalse();
+    assertThat(set.contains(255)).isTrue();
+    assertThat(set.contains(256)).isTrue();
+    assertThat(set.contains(0xffff)).isFalse();
+    assertThat(set.contains(0x10000)).isTrue();
+    assertThat(set.contains(Character.MAX_CODE_POINT)).isTrue();
+    assertThat(set.contains(-1)).isFalse();
+    assertThat(set.contains(Character.MAX_CODE_POINT + 1)).isFalse();
+  }
+
+  @Test
+  void testDuplicates() {
+    assertThat(CodepointSet.copyOf(ImmutableList.of(97, 97, 98)).size()).isEqualTo(2);
+  }
+
+  @Test
+  void testMatchesReferenceSet() {
+    Random random = new Random(42);
+    ImmutableSet.Builder<Integer> builder = new ImmutableSet.Builder<>();
+    for (int i = 0; i < 5000; i++) {
+      builder.add(random.nextInt(Character.MAX_CODE_POINT + 1));
+    }
+    // Also add a few identical full pages, which share a bitmap.
+    for (int codepoint = 0x4e00; codepoint < 0x4f00; codepoint++) {
+      builder.add(codepoint, codepoint + 0x200);
+    }
+    ImmutableSet<Integer> expected = builder.build();
+    CodepointSet set = CodepointSet.copyOf(expected);
+    assertThat(set.size()).isEqualTo(expected.size());
+    for (int codepoint = 0; codepoint <= Character.MAX_CODE_POINT; codepoint++) {
+      if (set.contains(codepoint) != expected.contains(codepoint)) {
+        assertWithMessage("Mismatch for codepoint %s", codepoint).fail();
+      }
+    }
+  }
+
+  @Test
+  void testInvalidCodepoint() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> CodepointSet.copyOf(ImmutableList.of(Character.MAX_CODE_POINT + 1)));
+    assertThat(thrown).hasMessageThat().contains("Invalid codepoint");
+  }
+}
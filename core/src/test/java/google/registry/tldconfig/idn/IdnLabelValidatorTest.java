@@ -106,4 +106,17 @@ class IdnLabelValidatorTest {
     assertThat(idnLabelValidator.findValidIdnTableForTld("foo", "tld")).isPresent();
     assertThat(idnLabelValidator.findValidIdnTableForTld("みんな", "tld")).isEmpty();
   }
+
+  @Test
+  void testReturnsFirstValidTableInOrder() {
+    assertThat(idnLabelValidator.findValidIdnTableForTld("foo", "tld")).hasValue("extended_latin");
+    assertThat(idnLabelValidator.findValidIdnTableForTld("みんな", "tld")).hasValue("ja");
+    idnLabelValidator =
+        new IdnLabelValidator(
+            ImmutableMap.of(
+                "tld", ImmutableList.of(IdnTableEnum.JA, IdnTableEnum.EXTENDED_LATIN)));
+    assertThat(idnLabelValidator.findValidIdnTableForTld("foo", "tld")).hasValue("ja");
+    assertThat(idnLabelValidator.findValidIdnTableForTld("abcdefghæ", "tld"))
+        .hasValue("extended_latin");
+  }
 }
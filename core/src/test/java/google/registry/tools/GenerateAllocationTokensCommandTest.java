@@ -47,6 +47,8 @@ import google.registry.testing.DualDatabaseTest;
 import google.registry.testing.FakeClock;
 import google.registry.testing.FakeSleeper;
 import google.registry.testing.TestOfyAndSql;
+import google.registry.testing.TestOfyOnly;
+import google.registry.testing.TestSqlOnly;
 import google.registry.util.Retrier;
 import google.registry.util.StringGenerator.Alphabets;
 import java.io.File;
@@ -201,13 +203,142 @@ class GenerateAllocationTokensCommandTest extends CommandTestCase<GenerateAlloca
     assertThat(loadAllOf(AllocationToken.class).size()).isEqualTo(100);
   }
 
+  @TestOfyAndSql
+  void testSuccess_tokensFile() throws Exception {
+    File tokensFile = tmpDir.resolve("tokens.txt").toFile();
+    Files.asCharSink(tokensFile, UTF_8).write("foobar\nfoobaz\n");
+    runCommand("--tokens_file", tokensFile.getPath());
+    assertAllocationTokens(createToken("foobar", null, null), createToken("foobaz", null, null));
+    assertInStdout("foobar", "foobaz");
+  }
+
+  @TestSqlOnly
+  void testSuccess_bulk() throws Exception {
+    File outputFile = tmpDir.resolve("tokens.txt").toFile();
+    runCommand(
+        "--prefix", "foo",
+        "--number", "3",
+        "--length", "10",
+        "--bulk",
+        "--output_file", outputFile.getPath());
+    assertAllocationTokens(
+        createToken("foo123456789A", null, null),
+        createToken("fooBCDEFGHJKL", null, null),
+        createToken("fooMNPQRSTUVW", null, null));
+    assertThat(Files.readLines(outputFile, UTF_8))
+        .containsExactly("foo123456789A", "fooBCDEFGHJKL", "fooMNPQRSTUVW")
+        .inOrder();
+    assertInStderr("Saved 3 of 3 tokens");
+  }
+
+  @TestSqlOnly
+  void testSuccess_bulk_setsUpdateTimestamp() throws Exception {
+    File outputFile = tmpDir.resolve("tokens.txt").toFile();
+    runCommand("--number", "2", "--bulk", "--output_file", outputFile.getPath());
+    assertThat(loadAllOf(AllocationToken.class)).hasSize(2);
+    for (AllocationToken token : loadAllOf(AllocationToken.class)) {
+      assertThat(token.getUpdateTimestamp().getTimestamp()).isGreaterThan(START_OF_TIME);
+    }
+  }
+
+  @TestSqlOnly
+  void testSuccess_bulk_smallBatchesWithCollision() throws Exception {
+    AllocationToken existingToken = persistResource(createToken("foo123456789A", null, null));
+    File outputFile = tmpDir.resolve("tokens.txt").toFile();
+    runCommand(
+        "--prefix", "foo",
+        "--number", "3",
+        "--length", "10",
+        "--bulk",
+        "--bulk_batch_size", "2",
+        "--output_file", outputFile.getPath());
+    assertAllocationTokens(
+        existingToken,
+        createToken("fooBCDEFGHJKL", null, null),
+        createToken("fooMNPQRSTUVW", null, null),
+        createToken("fooXYZabcdefg", null, null));
+    assertThat(Files.readLines(outputFile, UTF_8))
+        .containsExactly("fooBCDEFGHJKL", "fooMNPQRSTUVW", "fooXYZabcdefg")
+        .inOrder();
+  }
+
+  @TestSqlOnly
+  void testSuccess_bulk_resumesFromOutputFile() throws Exception {
+    persistResource(createToken("foo123456789A", null, null));
+    File outputFile = tmpDir.resolve("tokens.txt").toFile();
+    Files.asCharSink(outputFile, UTF_8).write("foo123456789A\n");
+    runCommand(
+        "--prefix", "foo",
+        "--number", "2",
+        "--length", "10",
+        "--bulk",
+        "--output_file", outputFile.getPath());
+    assertThat(Files.readLines(outputFile, UTF_8))
+        .containsExactly("foo123456789A", "fooBCDEFGHJKL")
+        .inOrder();
+    assertInStderr("Resuming: 1 tokens were already saved.");
+  }
+
+  @TestSqlOnly
+  void testSuccess_bulk_domainNames() throws Exception {
+    createTld("tld");
+    persistResource(createToken("123456789ABCDEFG", null, null));
+    File domainNamesFile = tmpDir.resolve("domain_names.txt").toFile();
+    Files.asCharSink(domainNamesFile, UTF_8).write("foo1.tld\nboo2.tld\n");
+    File outputFile = tmpDir.resolve("tokens.txt").toFile();
+    runCommand(
+        "--domain_names_file", domainNamesFile.getPath(),
+        "--bulk",
+        "--output_file", outputFile.getPath());
+    // The first generated token collides, so foo1.tld gets a token from the next batch.
+    assertThat(Files.readLines(outputFile, UTF_8))
+        .containsExactly("boo2.tld,HJKLMNPQRSTUVWXY", "foo1.tld,Zabcdefghijkmnop")
+        .inOrder();
+  }
+
+  @TestSqlOnly
+  void testSuccess_bulk_importTokensFile() throws Exception {
+    persistResource(createToken("foobar", null, null));
+    File tokensFile = tmpDir.resolve("import.txt").toFile();
+    Files.asCharSink(tokensFile, UTF_8).write("foobar\nfoobaz\nfooqux\n");
+    File outputFile = tmpDir.resolve("tokens.txt").toFile();
+    runCommand(
+        "--tokens_file", tokensFile.getPath(), "--bulk", "--output_file", outputFile.getPath());
+    assertAllocationTokens(
+        createToken("foobar", null, null),
+        createToken("foobaz", null, null),
+        createToken("fooqux", null, null));
+    assertThat(Files.readLines(outputFile, UTF_8)).containsExactly("foobaz", "fooqux").inOrder();
+    assertInStderr("Skipped 1 tokens that already exist.");
+  }
+
+  @TestOfyOnly
+  void testFailure_bulk_requiresCloudSql() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> runCommand("--number", "1", "--bulk", "--output_file", "/tmp/tokens.txt"));
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("--bulk requires Cloud SQL to be the primary database");
+  }
+
+  @TestSqlOnly
+  void testFailure_bulk_requiresOutputFile() {
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> runCommand("--number", "1", "--bulk"));
+    assertThat(thrown).hasMessageThat().isEqualTo("--bulk requires --output_file");
+  }
+
   @TestOfyAndSql
   void testFailure_mustSpecifyNumberOfTokensOrDomainsFile() {
     IllegalArgumentException thrown =
         assertThrows(IllegalArgumentException.class, () -> runCommand("--prefix", "FEET"));
     assertThat(thrown)
         .hasMessageThat()
-        .isEqualTo("Must specify exactly one of '--number', '--domain_names_file', and '--tokens'");
+        .isEqualTo(
+            "Must specify exactly one of '--number', '--domain_names_file', '--tokens', and"
+                + " '--tokens_file'");
   }
 
   @TestOfyAndSql
@@ -222,7 +353,9 @@ class GenerateAllocationTokensCommandTest extends CommandTestCase<GenerateAlloca
                     "--domain_names_file", "/path/to/blaaaaah"));
     assertThat(thrown)
         .hasMessageThat()
-        .isEqualTo("Must specify exactly one of '--number', '--domain_names_file', and '--tokens'");
+        .isEqualTo(
+            "Must specify exactly one of '--number', '--domain_names_file', '--tokens', and"
+                + " '--tokens_file'");
   }
 
   @TestOfyAndSql
@@ -237,7 +370,9 @@ class GenerateAllocationTokensCommandTest extends CommandTestCase<GenerateAlloca
                     "--tokens", "token1,token2"));
     assertThat(thrown)
         .hasMessageThat()
-        .isEqualTo("Must specify exactly one of '--number', '--domain_names_file', and '--tokens'");
+        .isEqualTo(
+            "Must specify exactly one of '--number', '--domain_names_file', '--tokens', and"
+                + " '--tokens_file'");
   }
 
   @TestOfyAndSql
@@ -252,7 +387,9 @@ class GenerateAllocationTokensCommandTest extends CommandTestCase<GenerateAlloca
                     "--domain_names_file", "/path/to/blaaaaah"));
     assertThat(thrown)
         .hasMessageThat()
-        .isEqualTo("Must specify exactly one of '--number', '--domain_names_file', and '--tokens'");
+        .isEqualTo(
+            "Must specify exactly one of '--number', '--domain_names_file', '--tokens', and"
+                + " '--tokens_file'");
   }
 
   @TestOfyAndSql
@@ -0,0 +1,32 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+create table "DnsRefreshRequest" (
+    id bigserial not null,
+    type text not null,
+    name text not null,
+    tld text not null,
+    request_time timestamptz not null,
+    last_request_time timestamptz not null,
+    lease_expiration_time timestamptz,
+    primary key (id)
+);
+
+-- Coalesces repeated refresh requests for the same name.
+alter table if exists "DnsRefreshRequest"
+    add constraint dnsrefreshrequest_type_name_idx unique (type, name);
+
+-- Supports leasing the oldest requests of a TLD.
+create index dnsrefreshrequest_tld_request_time_idx
+    on "DnsRefreshRequest" (tld, request_time);
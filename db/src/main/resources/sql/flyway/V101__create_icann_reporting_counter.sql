@@ -0,0 +1,30 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+create table "IcannReportingCounter" (
+    id bigserial not null,
+    type text not null,
+    tld text not null,
+    registrar_id text not null,
+    report_month text not null,
+    field text not null,
+    count int8 not null,
+    primary key (id)
+);
+
+-- Allows counters to be incremented with a single upsert. Leads with the month,
+-- so that it also supports loading the counters of a month.
+alter table if exists "IcannReportingCounter"
+    add constraint icannreportingcounter_key_idx
+    unique (report_month, type, tld, registrar_id, field);
@@ -0,0 +1,20 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Supports the ORDER BY and keyset cursor comparisons of RDAP nameserver
+-- searches. Under the database's non-"C" collation these use the default
+-- operator class, so host_host_name_prefix_idx (text_pattern_ops) can only
+-- serve the LIKE 'prefix%' predicate. Domain.domain_name and
+-- Contact.search_name already have plain indexes.
+create index host_host_name_idx on "Host" (host_name);
@@ -0,0 +1,22 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Prefix indexes backing RDAP wildcard searches. The default collation of the
+-- database is not "C", so the existing b-tree indexes cannot be used for
+-- LIKE 'prefix%' predicates; text_pattern_ops indexes can.
+create index domain_domain_name_prefix_idx on "Domain" (domain_name text_pattern_ops);
+
+create index host_host_name_prefix_idx on "Host" (host_name text_pattern_ops);
+
+create index contact_search_name_prefix_idx on "Contact" (search_name text_pattern_ops);
@@ -328,6 +328,40 @@ CREATE TABLE public."DelegationSignerData" (
 );
 
 
+--
+-- Name: DnsRefreshRequest; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE public."DnsRefreshRequest" (
+    id bigint NOT NULL,
+    type text NOT NULL,
+    name text NOT NULL,
+    tld text NOT NULL,
+    request_time timestamp with time zone NOT NULL,
+    last_request_time timestamp with time zone NOT NULL,
+    lease_expiration_time timestamp with time zone
+);
+
+
+--
+-- Name: DnsRefreshRequest_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE public."DnsRefreshRequest_id_seq"
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: DnsRefreshRequest_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE public."DnsRefreshRequest_id_seq" OWNED BY public."DnsRefreshRequest".id;
+
+
 --
 -- Name: Domain; Type: TABLE; Schema: public; Owner: -
 --
@@ -635,6 +669,40 @@ CREATE TABLE public."HostHistory" (
 );
 
 
+--
+-- Name: IcannReportingCounter; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE public."IcannReportingCounter" (
+    id bigint NOT NULL,
+    type text NOT NULL,
+    tld text NOT NULL,
+    registrar_id text NOT NULL,
+    report_month text NOT NULL,
+    field text NOT NULL,
+    count bigint NOT NULL
+);
+
+
+--
+-- Name: IcannReportingCounter_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE public."IcannReportingCounter_id_seq"
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: IcannReportingCounter_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE public."IcannReportingCounter_id_seq" OWNED BY public."IcannReportingCounter".id;
+
+
 --
 -- Name: KmsSecret; Type: TABLE; Schema: public; Owner: -
 --
@@ -661,6 +729,17 @@ CREATE TABLE public."Lock" (
 );
 
 
+--
+-- Name: OteStatsCheckpoint; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE public."OteStatsCheckpoint" (
+    registrar_name text NOT NULL,
+    checkpoint_time timestamp with time zone NOT NULL,
+    stat_counts public.hstore NOT NULL
+);
+
+
 --
 -- Name: PollMessage; Type: TABLE; Schema: public; Owner: -
 --
@@ -1098,6 +1177,13 @@ ALTER SEQUENCE public."Transaction_id_seq" OWNED BY public."Transaction".id;
 ALTER TABLE ONLY public."ClaimsList" ALTER COLUMN revision_id SET DEFAULT nextval('public."ClaimsList_revision_id_seq"'::regclass);
 
 
+--
+-- Name: DnsRefreshRequest id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public."DnsRefreshRequest" ALTER COLUMN id SET DEFAULT nextval('public."DnsRefreshRequest_id_seq"'::regclass);
+
+
 --
 -- Name: DomainTransactionRecord id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -1105,6 +1191,13 @@ ALTER TABLE ONLY public."ClaimsList" ALTER COLUMN revision_id SET DEFAULT nextva
 ALTER TABLE ONLY public."DomainTransactionRecord" ALTER COLUMN id SET DEFAULT nextval('public."DomainTransactionRecord_id_seq"'::regclass);
 
 
+--
+-- Name: IcannReportingCounter id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public."IcannReportingCounter" ALTER COLUMN id SET DEFAULT nextval('public."IcannReportingCounter_id_seq"'::regclass);
+
+
 --
 -- Name: PremiumList revision_id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -1227,6 +1320,14 @@ ALTER TABLE ONLY public."DelegationSignerData"
     ADD CONSTRAINT "DelegationSignerData_pkey" PRIMARY KEY (domain_repo_id, key_tag, algorithm, digest_type, digest);
 
 
+--
+-- Name: DnsRefreshRequest DnsRefreshRequest_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public."DnsRefreshRequest"
+    ADD CONSTRAINT "DnsRefreshRequest_pkey" PRIMARY KEY (id);
+
+
 --
 -- Name: DomainDsDataHistory DomainDsDataHistory_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -1291,6 +1392,14 @@ ALTER TABLE ONLY public."Host"
     ADD CONSTRAINT "Host_pkey" PRIMARY KEY (repo_id);
 
 
+--
+-- Name: IcannReportingCounter IcannReportingCounter_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public."IcannReportingCounter"
+    ADD CONSTRAINT "IcannReportingCounter_pkey" PRIMARY KEY (id);
+
+
 --
 -- Name: KmsSecret KmsSecret_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -1307,6 +1416,14 @@ ALTER TABLE ONLY public."Lock"
     ADD CONSTRAINT "Lock_pkey" PRIMARY KEY (resource_name, scope);
 
 
+--
+-- Name: OteStatsCheckpoint OteStatsCheckpoint_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public."OteStatsCheckpoint"
+    ADD CONSTRAINT "OteStatsCheckpoint_pkey" PRIMARY KEY (registrar_name);
+
+
 --
 -- Name: PollMessage PollMessage_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -1443,6 +1560,22 @@ ALTER TABLE ONLY public."Transaction"
     ADD CONSTRAINT "Transaction_pkey" PRIMARY KEY (id);
 
 
+--
+-- Name: DnsRefreshRequest dnsrefreshrequest_type_name_idx; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public."DnsRefreshRequest"
+    ADD CONSTRAINT dnsrefreshrequest_type_name_idx UNIQUE (type, name);
+
+
+--
+-- Name: IcannReportingCounter icannreportingcounter_key_idx; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public."IcannReportingCounter"
+    ADD CONSTRAINT icannreportingcounter_key_idx UNIQUE (report_month, type, tld, registrar_id, field);
+
+
 --
 -- Name: RegistryLock idx_registry_lock_repo_id_revision_id; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -1474,6 +1607,48 @@ ALTER TABLE ONLY public."DomainHistoryHost"
 CREATE INDEX allocation_token_domain_name_idx ON public."AllocationToken" USING btree (domain_name);
 
 
+--
+-- Name: contact_search_name_prefix_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX contact_search_name_prefix_idx ON public."Contact" USING btree (search_name text_pattern_ops);
+
+
+--
+-- Name: dnsrefreshrequest_tld_request_time_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX dnsrefreshrequest_tld_request_time_idx ON public."DnsRefreshRequest" USING btree (tld, request_time);
+
+
+--
+-- Name: domain_domain_name_prefix_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX domain_domain_name_prefix_idx ON public."Domain" USING btree (domain_name text_pattern_ops);
+
+
+--
+-- Name: host_host_name_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX host_host_name_idx ON public."Host" USING btree (host_name);
+
+
+--
+-- Name: host_host_name_prefix_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX host_host_name_prefix_idx ON public."Host" USING btree (host_name text_pattern_ops);
+
+
+--
+-- Name: host_inet_addresses_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX host_inet_addresses_idx ON public."Host" USING gin (inet_addresses);
+
+
 --
 -- Name: idx1iy7njgb7wjmj9piml4l2g0qi; Type: INDEX; Schema: public; Owner: -
 --